@@ -0,0 +1,31 @@
+package ru.hh.nab.metrics;
+
+import java.util.Random;
+
+final class BenchmarkData {
+  static final int NUM_OF_VALUES = 1024;
+  static final int MAX_VALUE = 10_000;
+
+  private BenchmarkData() {
+  }
+
+  /**
+   * @return values with a long tail, like response times in milliseconds
+   */
+  static int[] createValues() {
+    Random random = new Random(42);
+    int[] values = new int[NUM_OF_VALUES];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = (int) Math.min(MAX_VALUE, -100 * Math.log(1 - random.nextDouble()));
+    }
+    return values;
+  }
+
+  static Tag[] createTags(int numOfTagValues) {
+    Tag[] tags = new Tag[numOfTagValues];
+    for (int i = 0; i < tags.length; i++) {
+      tags[i] = new Tag("label", Integer.toString(i));
+    }
+    return tags;
+  }
+}
@@ -0,0 +1,60 @@
+package ru.hh.nab.metrics;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link Counters}, {@link LongCounters} and {@link StripedCounters}.<br/>
+ * numOfTagValues greater than maxNumOfCounters makes every benchmark go through eviction.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CountersBenchmark {
+  private static final int MAX_NUM_OF_COUNTERS = 300;
+
+  @Param({"5", "1000"})
+  int numOfTagValues;
+
+  private Tag[] tags;
+  private Counters counters;
+  private LongCounters longCounters;
+  private StripedCounters stripedCounters;
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    tags = BenchmarkData.createTags(numOfTagValues);
+    counters = new Counters(MAX_NUM_OF_COUNTERS);
+    longCounters = new LongCounters(MAX_NUM_OF_COUNTERS);
+    stripedCounters = new StripedCounters(MAX_NUM_OF_COUNTERS);
+  }
+
+  @Benchmark
+  public void counters(ThreadIteration iteration) {
+    counters.add(1, tags[iteration.next(tags.length)]);
+  }
+
+  @Benchmark
+  public void longCounters(ThreadIteration iteration) {
+    longCounters.add(1L, tags[iteration.next(tags.length)]);
+  }
+
+  @Benchmark
+  public void stripedCounters(ThreadIteration iteration) {
+    stripedCounters.add(1L, tags[iteration.next(tags.length)]);
+  }
+}
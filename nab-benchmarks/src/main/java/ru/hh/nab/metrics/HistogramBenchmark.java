@@ -0,0 +1,62 @@
+package ru.hh.nab.metrics;
+
+import java.util.function.Supplier;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares implementations of {@link Histogram} on the same stream of values.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HistogramBenchmark {
+  private static final int MAX_HISTOGRAM_SIZE = 2000;
+
+  @Param({"SIMPLE", "RANGED", "COMPACT", "SIMPLE_ARRAY", "RANGED_ARRAY", "COMPACT_ARRAY", "LOG_LINEAR"})
+  HistogramType histogramType;
+
+  private int[] values;
+  private Histogram histogram;
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    values = BenchmarkData.createValues();
+    histogram = histogramType.supplier.get();
+  }
+
+  @Benchmark
+  public void save(ThreadIteration iteration) {
+    histogram.save(values[iteration.next(values.length)]);
+  }
+
+  public enum HistogramType {
+    SIMPLE(() -> new SimpleHistogram(MAX_HISTOGRAM_SIZE)),
+    RANGED(() -> new RangedHistogram(MAX_HISTOGRAM_SIZE)),
+    COMPACT(() -> new CompactHistogram(MAX_HISTOGRAM_SIZE, 8)),
+    SIMPLE_ARRAY(() -> new SimpleArrayHistogram(BenchmarkData.MAX_VALUE)),
+    RANGED_ARRAY(RangedArrayHistogram::new),
+    COMPACT_ARRAY(() -> new CompactArrayHistogram(MAX_HISTOGRAM_SIZE, 8)),
+    LOG_LINEAR(() -> new LogLinearHistogram(BenchmarkData.MAX_VALUE, 2));
+
+    private final Supplier<Histogram> supplier;
+
+    HistogramType(Supplier<Histogram> supplier) {
+      this.supplier = supplier;
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package ru.hh.nab.metrics;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares aggregators that maintain a histogram per combination of tags.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HistogramsBenchmark {
+  private static final int MAX_HISTOGRAM_SIZE = 2000;
+  private static final int MAX_NUM_OF_HISTOGRAMS = 300;
+
+  @Param({"5", "100"})
+  int numOfTagValues;
+
+  private int[] values;
+  private Tag[] tags;
+  private Histograms histograms;
+  private UniformHistograms uniformHistograms;
+  private QuantileSketches quantileSketches;
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    values = BenchmarkData.createValues();
+    tags = BenchmarkData.createTags(numOfTagValues);
+    histograms = new Histograms(MAX_NUM_OF_HISTOGRAMS, () -> new SimpleHistogram(MAX_HISTOGRAM_SIZE));
+    uniformHistograms = new UniformHistograms(MAX_HISTOGRAM_SIZE, MAX_NUM_OF_HISTOGRAMS);
+    quantileSketches = new QuantileSketches(0.01, BenchmarkData.MAX_VALUE, MAX_NUM_OF_HISTOGRAMS);
+  }
+
+  @Benchmark
+  public void histograms(ThreadIteration iteration) {
+    histograms.save(values[iteration.next(values.length)], tags[iteration.next(tags.length)]);
+  }
+
+  @Benchmark
+  public void uniformHistograms(ThreadIteration iteration) {
+    uniformHistograms.save(values[iteration.next(values.length)], tags[iteration.next(tags.length)]);
+  }
+
+  @Benchmark
+  public void quantileSketches(ThreadIteration iteration) {
+    quantileSketches.save(values[iteration.next(values.length)], tags[iteration.next(tags.length)]);
+  }
+}
@@ -0,0 +1,44 @@
+package ru.hh.nab.metrics;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MaxAndMomentsBenchmark {
+
+  private int[] values;
+  private Max max;
+  private Moments moments;
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    values = BenchmarkData.createValues();
+    max = new Max(0);
+    moments = new Moments();
+  }
+
+  @Benchmark
+  public void max(ThreadIteration iteration) {
+    max.save(values[iteration.next(values.length)]);
+  }
+
+  @Benchmark
+  public void moments(ThreadIteration iteration) {
+    moments.update(values[iteration.next(values.length)]);
+  }
+}
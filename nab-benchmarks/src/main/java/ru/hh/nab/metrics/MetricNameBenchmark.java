@@ -0,0 +1,58 @@
+package ru.hh.nab.metrics;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures building of StatsD metric names: uncached for ad hoc tags and cached for snapshots of aggregators.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MetricNameBenchmark {
+  private static final String METRIC_NAME = "nab.request.duration";
+
+  @Param({"NAME_SUFFIX", "NATIVE"})
+  StatsDSender.TagsMode tagsMode;
+
+  private Tag[][] tagArrays;
+  private Tags[] tags;
+  private MetricNameCache metricNameCache;
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    Tag[] controllers = BenchmarkData.createTags(100);
+    tagArrays = new Tag[controllers.length][];
+    tags = new Tags[controllers.length];
+    for (int i = 0; i < controllers.length; i++) {
+      tagArrays[i] = new Tag[]{new Tag("app", "nab"), controllers[i]};
+      tags[i] = new MultiTags(tagArrays[i]);
+    }
+    metricNameCache = new MetricNameCache(10_000, tagsMode);
+  }
+
+  @Benchmark
+  public void create(ThreadIteration iteration, Blackhole blackhole) {
+    blackhole.consume(metricNameCache.create(METRIC_NAME, tagArrays[iteration.next(tagArrays.length)]));
+  }
+
+  @Benchmark
+  public void cached(ThreadIteration iteration, Blackhole blackhole) {
+    blackhole.consume(metricNameCache.get(METRIC_NAME, tags[iteration.next(tags.length)]));
+  }
+}
@@ -0,0 +1,33 @@
+package ru.hh.nab.metrics;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs benchmarks of nab-metrics aggregators with 1, 4, 16 and 64 writer threads.<br/>
+ * Every benchmark reports throughput and sampled time per operation (including p99),
+ * GC profiler adds allocation rate per operation (gc.alloc.rate.norm).<br/>
+ * Results are written to jmh-result-{threads}-threads.json to compare them between versions.<br/>
+ * Usage: java -jar nab-benchmarks/target/benchmarks.jar [regexp of benchmarks to run]
+ */
+public class MetricsBenchmarks {
+  private static final int[] THREADS = {1, 4, 16, 64};
+
+  public static void main(String[] args) throws RunnerException {
+    String include = args.length > 0 ? args[0] : MetricsBenchmarks.class.getPackageName() + ".*Benchmark";
+    for (int threads : THREADS) {
+      Options options = new OptionsBuilder()
+          .include(include)
+          .threads(threads)
+          .addProfiler(GCProfiler.class)
+          .resultFormat(ResultFormatType.JSON)
+          .result("jmh-result-" + threads + "-threads.json")
+          .build();
+      new Runner(options).run();
+    }
+  }
+}
@@ -0,0 +1,17 @@
+package ru.hh.nab.metrics;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per thread cursor over prepared tags and values, so that benchmarks neither allocate nor call Random.
+ */
+@State(Scope.Thread)
+public class ThreadIteration {
+  private int iteration;
+
+  int next(int bound) {
+    iteration = iteration + 1 >= bound ? 0 : iteration + 1;
+    return iteration;
+  }
+}
@@ -0,0 +1,51 @@
+package ru.hh.nab.metrics;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link UniformHistogram} with {@link QuantileSketch}, both accept long values.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class UniformHistogramBenchmark {
+
+  @Param({"1000", "10000"})
+  int maxHistogramSize;
+
+  private int[] values;
+  private UniformHistogram uniformHistogram;
+  private QuantileSketch quantileSketch;
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    values = BenchmarkData.createValues();
+    uniformHistogram = new UniformHistogram(maxHistogramSize);
+    quantileSketch = new QuantileSketch(0.01, BenchmarkData.MAX_VALUE);
+  }
+
+  @Benchmark
+  public void uniformHistogram(ThreadIteration iteration) {
+    uniformHistogram.save(values[iteration.next(values.length)]);
+  }
+
+  @Benchmark
+  public void quantileSketch(ThreadIteration iteration) {
+    quantileSketch.save(values[iteration.next(values.length)]);
+  }
+}
@@ -0,0 +1,93 @@
+package ru.hh.nab.common.cache;
+
+/**
+ * Count-min sketch of 4-bit counters that estimates how often keys were seen recently.<br/>
+ * When the number of increments reaches the sample size all counters are halved, so old popularity fades away.<br/>
+ * The table grows with the number of keys, see {@link #ensureCapacity}.<br/>
+ * Not thread-safe, {@link TinyLfuCache} uses it under its lock.
+ */
+class FrequencySketch {
+  private static final int[] SEEDS = {0x97cb3127, 0xb9de2d97, 0x4f2b5c5b, 0x8b5c8d61};
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private static final int MAX_COUNT = 15;
+  private static final int MIN_TABLE_SIZE = 8;
+  private static final int MAX_TABLE_SIZE = 1 << 24;
+
+  private long[] table;
+  private int sampleSize;
+  private int size;
+
+  /**
+   * @param expectedNumOfKeys approximate number of keys the cache holds
+   */
+  FrequencySketch(long expectedNumOfKeys) {
+    this.table = new long[tableSizeFor(expectedNumOfKeys)];
+    this.sampleSize = 10 * table.length;
+  }
+
+  /**
+   * Grows the table if it is too small for the given number of keys, the frequencies counted so far are dropped then.
+   * The table only doubles, so it is reallocated a logarithmic number of times.
+   */
+  void ensureCapacity(long expectedNumOfKeys) {
+    if (expectedNumOfKeys <= table.length || table.length == MAX_TABLE_SIZE) {
+      return;
+    }
+    table = new long[tableSizeFor(expectedNumOfKeys)];
+    sampleSize = 10 * table.length;
+    size = 0;
+  }
+
+  int frequency(Object key) {
+    int hash = spread(key.hashCode());
+    int frequency = MAX_COUNT;
+    for (int i = 0; i < SEEDS.length; i++) {
+      int h = hash * SEEDS[i];
+      frequency = Math.min(frequency, (int) ((table[index(h)] >>> offset(h)) & 0xF));
+    }
+    return frequency;
+  }
+
+  void increment(Object key) {
+    int hash = spread(key.hashCode());
+    boolean incremented = false;
+    for (int i = 0; i < SEEDS.length; i++) {
+      int h = hash * SEEDS[i];
+      int index = index(h);
+      int offset = offset(h);
+      if (((table[index] >>> offset) & 0xF) < MAX_COUNT) {
+        table[index] += 1L << offset;
+        incremented = true;
+      }
+    }
+    if (incremented && ++size >= sampleSize) {
+      reset();
+    }
+  }
+
+  private void reset() {
+    for (int i = 0; i < table.length; i++) {
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    size /= 2;
+  }
+
+  private static int tableSizeFor(long expectedNumOfKeys) {
+    int tableSize = Integer.highestOneBit((int) Math.max(1, Math.min(expectedNumOfKeys, MAX_TABLE_SIZE)) - 1) << 1;
+    return Math.max(tableSize, MIN_TABLE_SIZE);
+  }
+
+  private int index(int h) {
+    return (h ^ (h >>> 17)) & (table.length - 1);
+  }
+
+  private static int offset(int h) {
+    return (h >>> 28) << 2;
+  }
+
+  private static int spread(int hash) {
+    hash ^= hash >>> 16;
+    hash *= 0x45d9f3b;
+    return hash ^ (hash >>> 16);
+  }
+}
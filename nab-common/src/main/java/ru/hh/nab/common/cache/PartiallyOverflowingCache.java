@@ -4,6 +4,11 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import org.springframework.util.ConcurrentReferenceHashMap;
 
+/**
+ * @deprecated soft references are cleared all at once under memory pressure and the cache is not bounded by weight,
+ * use {@link TinyLfuCache}
+ */
+@Deprecated
 public class PartiallyOverflowingCache<K, V> {
   private final ConcurrentHashMap<K, V> strongStorage = new ConcurrentHashMap<>();
   private final ConcurrentReferenceHashMap<K, V> weakStorage = new ConcurrentReferenceHashMap<>(16, 0.75f, 1,
@@ -0,0 +1,261 @@
+package ru.hh.nab.common.cache;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import ru.hh.nab.metrics.StatsDSender;
+import ru.hh.nab.metrics.Tag;
+import ru.hh.nab.metrics.TaggedSender;
+
+/**
+ * Loads values into {@link TinyLfuCache} so that concurrent callers of an absent key wait for one computation instead of computing
+ * the value each.<br/>
+ * A value older than refreshAfter is still returned, and it is reloaded in the background.<br/>
+ * A value older than expireAfter is stale. Within staleWhileRevalidate after expiry it is still returned and reloaded in the background,
+ * after that callers wait for a new value.<br/>
+ * Background loads run on the given executor, {@link #get} of an absent key loads in the calling thread.
+ * A load that failed or returned null is not cached, the next call loads again.<br/>
+ * A loaded value is stored only while its load is still registered, atomically with the registration removal,
+ * so a load that was invalidated or replaced by a newer one never puts its value back.
+ */
+public class SingleFlightLoader<K, V> {
+  static final String COALESCED_WAITS_METRIC_NAME = "cache.coalescedWaits";
+  static final String STALE_HITS_METRIC_NAME = "cache.staleHits";
+  static final String REFRESHES_METRIC_NAME = "cache.refreshes";
+  static final String LOAD_FAILURES_METRIC_NAME = "cache.loadFailures";
+
+  private final Function<? super K, ? extends V> loader;
+  private final Executor executor;
+  private final TinyLfuCache<K, Loaded<V>> cache;
+  private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+  private final long refreshAfterNanos;
+  private final long expireAfterNanos;
+  private final LongSupplier nanoClock;
+  private final LongAdder coalescedWaits = new LongAdder();
+  private final LongAdder staleHits = new LongAdder();
+  private final LongAdder refreshes = new LongAdder();
+  private final LongAdder loadFailures = new LongAdder();
+
+  /**
+   * Values never expire, they are only evicted by size.
+   */
+  public SingleFlightLoader(Function<? super K, ? extends V> loader, Executor executor, long maxSize) {
+    this(loader, executor, maxSize, null, null, Duration.ZERO);
+  }
+
+  /**
+   * @param refreshAfter null if values are not refreshed before expiry
+   * @param expireAfter null if values never expire
+   * @param staleWhileRevalidate how long after expiry a stale value may be returned while a new one is loading
+   */
+  public SingleFlightLoader(Function<? super K, ? extends V> loader, Executor executor, long maxSize,
+                            Duration refreshAfter, Duration expireAfter, Duration staleWhileRevalidate) {
+    this(loader, executor, maxSize, refreshAfter, expireAfter, staleWhileRevalidate, System::nanoTime);
+  }
+
+  SingleFlightLoader(Function<? super K, ? extends V> loader, Executor executor, long maxSize,
+                     Duration refreshAfter, Duration expireAfter, Duration staleWhileRevalidate, LongSupplier nanoClock) {
+    this.loader = loader;
+    this.executor = executor;
+    this.refreshAfterNanos = refreshAfter == null ? Long.MAX_VALUE : refreshAfter.toNanos();
+    this.expireAfterNanos = expireAfter == null ? Long.MAX_VALUE : expireAfter.toNanos();
+    this.nanoClock = nanoClock;
+    Duration cacheExpiry = expireAfter == null ? null : expireAfter.plus(staleWhileRevalidate);
+    this.cache = new TinyLfuCache<>(maxSize, (key, value) -> 1, cacheExpiry, nanoClock);
+  }
+
+  /**
+   * Returns cached value or loads it in the calling thread, or waits for the load another thread has already started.
+   *
+   * @throws RuntimeException thrown by the loader
+   */
+  public V get(K key) {
+    Loaded<V> loaded = cache.get(key);
+    if (loaded != null) {
+      refreshIfOld(key, loaded);
+      return loaded.value;
+    }
+
+    CompletableFuture<V> future = new CompletableFuture<>();
+    CompletableFuture<V> existingFuture = inFlight.putIfAbsent(key, future);
+    if (existingFuture == null) {
+      if (!completeFromCache(key, future)) {
+        load(key, future);
+      }
+      return join(future);
+    }
+    coalescedWaits.increment();
+    return join(existingFuture);
+  }
+
+  /**
+   * Same as {@link #get}, but an absent value is loaded on the executor.
+   */
+  public CompletableFuture<V> getAsync(K key) {
+    Loaded<V> loaded = cache.get(key);
+    if (loaded != null) {
+      refreshIfOld(key, loaded);
+      return CompletableFuture.completedFuture(loaded.value);
+    }
+    return loadAsync(key, true).copy();
+  }
+
+  /**
+   * Starts loading a new value in the background unless the key is already being loaded.
+   */
+  public CompletableFuture<V> refresh(K key) {
+    refreshes.increment();
+    return loadAsync(key, false).copy();
+  }
+
+  /**
+   * A load that is already in progress is not cancelled, but its value is not cached, callers after invalidation start a new one.
+   */
+  public void invalidate(K key) {
+    inFlight.compute(key, (ignored, future) -> {
+      cache.remove(key);
+      return null;
+    });
+  }
+
+  /**
+   * Same as {@link #invalidate} for all keys.
+   */
+  public void invalidateAll() {
+    inFlight.clear();
+    cache.invalidateAll();
+  }
+
+  public int size() {
+    return cache.size();
+  }
+
+  public long getCoalescedWaitCount() {
+    return coalescedWaits.sum();
+  }
+
+  public long getStaleHitCount() {
+    return staleHits.sum();
+  }
+
+  /**
+   * Sends cache metrics and coalesced waits, stale hits, refreshes and load failures since the previous send, tagged by cache name.
+   */
+  public void sendMetrics(StatsDSender statsDSender, String cacheName, String serviceName) {
+    cache.sendMetrics(statsDSender, cacheName, serviceName);
+    var sender = new TaggedSender(statsDSender, Set.of(new Tag(Tag.APP_TAG_NAME, serviceName), new Tag("cache", cacheName)));
+    statsDSender.sendPeriodically(() -> {
+      sender.sendCount(COALESCED_WAITS_METRIC_NAME, coalescedWaits.sumThenReset());
+      sender.sendCount(STALE_HITS_METRIC_NAME, staleHits.sumThenReset());
+      sender.sendCount(REFRESHES_METRIC_NAME, refreshes.sumThenReset());
+      sender.sendCount(LOAD_FAILURES_METRIC_NAME, loadFailures.sumThenReset());
+    });
+  }
+
+  /**
+   * The cache itself removes values once staleWhileRevalidate after expiry elapses, so any value it returns can be served.
+   */
+  private void refreshIfOld(K key, Loaded<V> loaded) {
+    long age = nanoClock.getAsLong() - loaded.loadNanos;
+    if (age >= expireAfterNanos) {
+      staleHits.increment();
+    } else if (age < refreshAfterNanos) {
+      return;
+    }
+    if (!inFlight.containsKey(key)) {
+      refresh(key);
+    }
+  }
+
+  /**
+   * @param useCached whether a value stored by a load that finished after the caller's cache miss is returned instead of loading
+   */
+  private CompletableFuture<V> loadAsync(K key, boolean useCached) {
+    CompletableFuture<V> future = new CompletableFuture<>();
+    CompletableFuture<V> existingFuture = inFlight.putIfAbsent(key, future);
+    if (existingFuture != null) {
+      coalescedWaits.increment();
+      return existingFuture;
+    }
+    if (useCached && completeFromCache(key, future)) {
+      return future;
+    }
+    try {
+      executor.execute(() -> load(key, future));
+    } catch (RejectedExecutionException e) {
+      inFlight.remove(key, future);
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  /**
+   * Another load may have stored the value between the caller's cache miss and the registration of its load.
+   */
+  private boolean completeFromCache(K key, CompletableFuture<V> future) {
+    Loaded<V> loaded = cache.peek(key);
+    if (loaded == null) {
+      return false;
+    }
+    inFlight.remove(key, future);
+    future.complete(loaded.value);
+    return true;
+  }
+
+  private void load(K key, CompletableFuture<V> future) {
+    try {
+      V value = loader.apply(key);
+      Loaded<V> loaded = value == null ? null : new Loaded<>(value, nanoClock.getAsLong());
+      inFlight.computeIfPresent(key, (ignored, registeredFuture) -> {
+        if (registeredFuture != future) {
+          return registeredFuture;
+        }
+        if (loaded != null) {
+          cache.put(key, loaded);
+        }
+        return null;
+      });
+      future.complete(value);
+    } catch (Throwable e) {
+      loadFailures.increment();
+      inFlight.remove(key, future);
+      future.completeExceptionally(e);
+    }
+  }
+
+  private static <V> V join(CompletableFuture<V> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CompletionException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      if (cause instanceof Error error) {
+        throw error;
+      }
+      throw new CompletionException(cause);
+    }
+  }
+
+  private static final class Loaded<V> {
+    private final V value;
+    private final long loadNanos;
+
+    Loaded(V value, long loadNanos) {
+      this.value = value;
+      this.loadNanos = loadNanos;
+    }
+  }
+}
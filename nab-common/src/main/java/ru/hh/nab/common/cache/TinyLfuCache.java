@@ -0,0 +1,497 @@
+package ru.hh.nab.common.cache;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.ToIntBiFunction;
+import ru.hh.nab.metrics.StatsDSender;
+import ru.hh.nab.metrics.Tag;
+import ru.hh.nab.metrics.TaggedSender;
+
+/**
+ * Bounded cache with W-TinyLFU admission and eviction:<br/>
+ * - new entries get into a small LRU window (1% of max weight);<br/>
+ * - entries leaving the window compete with the LRU victim of the main space, the one that was requested more often recently
+ * according to {@link FrequencySketch} stays;<br/>
+ * - the main space is split into probation and protected (80%) LRU segments, an entry is promoted to protected on the second hit.<br/>
+ * So one-hit wonders do not flush popular entries, and unlike soft references nothing is dropped all at once under memory pressure.<br/>
+ * Reads take no locks: the map is concurrent, and reads are recorded in a small lossy buffer that is applied to the policy
+ * on the next write, or by a read that finds the buffer filling up if the policy lock is free. Some reads are not recorded then.
+ * Writes take the policy lock.<br/>
+ * Entries are weighed by the weigher, an entry heavier than max weight is not cached. If expireAfterWrite is given,
+ * entries expire after it elapses since they were written.<br/>
+ * The frequency sketch grows with the number of entries, not with max weight, so a cache weighed in bytes does not allocate
+ * a sketch for max weight entries.<br/>
+ * jmh test {@link ru.hh.nab.performance.PartiallyOverflowingCachePerformanceTest}
+ */
+public class TinyLfuCache<K, V> {
+  static final String HITS_METRIC_NAME = "cache.hits";
+  static final String MISSES_METRIC_NAME = "cache.misses";
+  static final String EVICTIONS_METRIC_NAME = "cache.evictions";
+  static final String SIZE_METRIC_NAME = "cache.size";
+  static final String WEIGHT_METRIC_NAME = "cache.weight";
+  private static final int INITIAL_SKETCH_CAPACITY = 16;
+  private static final int READ_BUFFER_SIZE = 64;
+
+  private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+  private final ReentrantLock lock = new ReentrantLock();
+  private final long maxWeight;
+  private final long maxWindowWeight;
+  private final long maxProtectedWeight;
+  private final ToIntBiFunction<? super K, ? super V> weigher;
+  private final long expireAfterWriteNanos;
+  private final LongSupplier nanoClock;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  /**
+   * Nodes of hits and keys of misses not applied to the policy yet, a read takes a random slot and is dropped if it is taken.
+   */
+  private final AtomicReferenceArray<Object> readBuffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+
+  // guarded by lock
+  private final FrequencySketch sketch;
+  private final AccessOrderDeque<K, V> window = new AccessOrderDeque<>();
+  private final AccessOrderDeque<K, V> probation = new AccessOrderDeque<>();
+  private final AccessOrderDeque<K, V> protectedSegment = new AccessOrderDeque<>();
+  private long windowWeight;
+  private long protectedWeight;
+  private long totalWeight;
+
+  /**
+   * Each entry weighs 1, entries do not expire.
+   */
+  public TinyLfuCache(long maxSize) {
+    this(maxSize, (key, value) -> 1, null);
+  }
+
+  /**
+   * @param expireAfterWrite null if entries do not expire
+   */
+  public TinyLfuCache(long maxWeight, ToIntBiFunction<? super K, ? super V> weigher, Duration expireAfterWrite) {
+    this(maxWeight, weigher, expireAfterWrite, System::nanoTime);
+  }
+
+  TinyLfuCache(long maxWeight, ToIntBiFunction<? super K, ? super V> weigher, Duration expireAfterWrite, LongSupplier nanoClock) {
+    if (maxWeight <= 0) {
+      throw new IllegalArgumentException("maxWeight must be positive: " + maxWeight);
+    }
+    this.maxWeight = maxWeight;
+    this.maxWindowWeight = Math.max(1, maxWeight / 100);
+    this.maxProtectedWeight = (long) ((maxWeight - maxWindowWeight) * 0.8);
+    this.weigher = weigher;
+    this.expireAfterWriteNanos = expireAfterWrite == null ? Long.MAX_VALUE : expireAfterWrite.toNanos();
+    this.nanoClock = nanoClock;
+    this.sketch = new FrequencySketch(Math.min(maxWeight, INITIAL_SKETCH_CAPACITY));
+  }
+
+  /**
+   * @return value or null if there is no such entry or it expired
+   */
+  public V get(K key) {
+    return get(key, true);
+  }
+
+  /**
+   * @param recordMiss whether a miss is counted in the frequency sketch, false if the entry is going to be put and counted then
+   */
+  private V get(K key, boolean recordMiss) {
+    Node<K, V> node = data.get(key);
+    if (node == null) {
+      misses.increment();
+      if (recordMiss) {
+        recordRead(key);
+      }
+      return null;
+    }
+    if (isExpired(node)) {
+      misses.increment();
+      remove(key, node);
+      return null;
+    }
+    hits.increment();
+    recordRead(node);
+    return node.value;
+  }
+
+  /**
+   * Same as {@link #get}, but neither counts a hit or miss nor affects eviction.
+   */
+  V peek(K key) {
+    Node<K, V> node = data.get(key);
+    return node == null || isExpired(node) ? null : node.value;
+  }
+
+  /**
+   * Concurrent calls for the same absent key may compute the value several times, the first stored value wins.
+   */
+  public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+    V value = get(key, false);
+    if (value != null) {
+      return value;
+    }
+    value = mappingFunction.apply(key);
+    if (value == null) {
+      return null;
+    }
+    return putIfAbsent(key, value);
+  }
+
+  public void put(K key, V value) {
+    Node<K, V> node = new Node<>(key, value, weigher.applyAsInt(key, value), nanoClock.getAsLong());
+    lock.lock();
+    try {
+      Node<K, V> previousNode = data.put(key, node);
+      if (previousNode != null) {
+        unlink(previousNode);
+      }
+      admit(node);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return current value if there is an unexpired one, otherwise the given value after it is stored
+   */
+  public V putIfAbsent(K key, V value) {
+    Node<K, V> node = new Node<>(key, value, weigher.applyAsInt(key, value), nanoClock.getAsLong());
+    lock.lock();
+    try {
+      Node<K, V> previousNode = data.putIfAbsent(key, node);
+      if (previousNode != null) {
+        if (!isExpired(previousNode)) {
+          return previousNode.value;
+        }
+        data.put(key, node);
+        unlink(previousNode);
+      }
+      admit(node);
+      return value;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void remove(K key) {
+    lock.lock();
+    try {
+      Node<K, V> node = data.remove(key);
+      if (node != null) {
+        unlink(node);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void invalidateAll() {
+    lock.lock();
+    try {
+      drainReadBuffer();
+      // a node read before clear may still be recorded, it must not be moved in the segments
+      data.values().forEach(node -> node.segment = Segment.NONE);
+      data.clear();
+      window.clear();
+      probation.clear();
+      protectedSegment.clear();
+      windowWeight = 0;
+      protectedWeight = 0;
+      totalWeight = 0;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Removes all expired entries, otherwise they are removed when read or evicted.
+   */
+  public void cleanUp() {
+    if (expireAfterWriteNanos == Long.MAX_VALUE) {
+      return;
+    }
+    data.forEach((key, node) -> {
+      if (isExpired(node)) {
+        remove(key, node);
+      }
+    });
+  }
+
+  public int size() {
+    return data.size();
+  }
+
+  public long getWeight() {
+    lock.lock();
+    try {
+      return totalWeight;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getMaxWeight() {
+    return maxWeight;
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  /**
+   * Sends hits, misses and evictions since the previous send, and current size and weight, tagged by cache name.
+   */
+  public void sendMetrics(StatsDSender statsDSender, String cacheName, String serviceName) {
+    var sender = new TaggedSender(statsDSender, Set.of(new Tag(Tag.APP_TAG_NAME, serviceName), new Tag("cache", cacheName)));
+    statsDSender.sendPeriodically(() -> {
+      sender.sendCount(HITS_METRIC_NAME, hits.sumThenReset());
+      sender.sendCount(MISSES_METRIC_NAME, misses.sumThenReset());
+      sender.sendCount(EVICTIONS_METRIC_NAME, evictions.sumThenReset());
+      sender.sendGauge(SIZE_METRIC_NAME, size());
+      sender.sendGauge(WEIGHT_METRIC_NAME, getWeight());
+    });
+  }
+
+  private boolean isExpired(Node<K, V> node) {
+    return expireAfterWriteNanos != Long.MAX_VALUE && nanoClock.getAsLong() - node.writeNanos >= expireAfterWriteNanos;
+  }
+
+  private void remove(K key, Node<K, V> node) {
+    lock.lock();
+    try {
+      if (data.remove(key, node)) {
+        unlink(node);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @param read node of a hit or key of a miss
+   */
+  private void recordRead(Object read) {
+    int index = ThreadLocalRandom.current().nextInt(READ_BUFFER_SIZE);
+    if (readBuffer.get(index) == null && readBuffer.compareAndSet(index, null, read)) {
+      return;
+    }
+    if (lock.tryLock()) {
+      try {
+        drainReadBuffer();
+        applyRead(read);
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private void drainReadBuffer() {
+    for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+      if (readBuffer.get(i) != null) {
+        applyRead(readBuffer.getAndSet(i, null));
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void applyRead(Object read) {
+    if (read instanceof Node<?, ?> node) {
+      onHit((Node<K, V>) node);
+    } else if (read != null) {
+      sketch.increment(read);
+    }
+  }
+
+  private void onHit(Node<K, V> node) {
+    sketch.increment(node.key);
+    if (node.segment == Segment.WINDOW) {
+      window.moveToTail(node);
+    } else if (node.segment == Segment.PROBATION) {
+      probation.remove(node);
+      node.segment = Segment.PROTECTED;
+      protectedSegment.addLast(node);
+      protectedWeight += node.weight;
+      demoteProtected();
+    } else if (node.segment == Segment.PROTECTED) {
+      protectedSegment.moveToTail(node);
+    }
+  }
+
+  private void admit(Node<K, V> node) {
+    drainReadBuffer();
+    sketch.ensureCapacity(data.size());
+    sketch.increment(node.key);
+    node.segment = Segment.WINDOW;
+    window.addLast(node);
+    windowWeight += node.weight;
+    totalWeight += node.weight;
+
+    Node<K, V> firstCandidate = null;
+    while (windowWeight > maxWindowWeight && window.peekFirst() != null) {
+      Node<K, V> candidate = window.pollFirst();
+      windowWeight -= candidate.weight;
+      candidate.segment = Segment.PROBATION;
+      probation.addLast(candidate);
+      if (firstCandidate == null) {
+        firstCandidate = candidate;
+      }
+    }
+    evict(firstCandidate);
+  }
+
+  private void demoteProtected() {
+    while (protectedWeight > maxProtectedWeight && protectedSegment.peekFirst() != null) {
+      Node<K, V> demoted = protectedSegment.pollFirst();
+      protectedWeight -= demoted.weight;
+      demoted.segment = Segment.PROBATION;
+      probation.addLast(demoted);
+    }
+  }
+
+  /**
+   * Candidates are the entries that have just left the window, from the given one to the tail of probation,
+   * each of them competes with the oldest entry of probation, the victim. Entries demoted from protected are never candidates.
+   * Without candidates the victim is evicted.
+   */
+  private void evict(Node<K, V> candidate) {
+    while (totalWeight > maxWeight) {
+      Node<K, V> victim = probation.peekFirst();
+      if (victim == candidate) {
+        candidate = null;
+      }
+      Node<K, V> evicted;
+      if (victim == null) {
+        evicted = protectedSegment.peekFirst() != null ? protectedSegment.peekFirst() : window.peekFirst();
+      } else if (candidate == null || isExpired(victim)) {
+        evicted = victim;
+      } else if (candidate.weight > maxWeight) {
+        evicted = candidate;
+      } else {
+        evicted = sketch.frequency(candidate.key) > sketch.frequency(victim.key) ? victim : candidate;
+      }
+      if (evicted == null) {
+        return;
+      }
+      if (evicted == candidate) {
+        candidate = candidate.next;
+      }
+      data.remove(evicted.key, evicted);
+      unlink(evicted);
+      evictions.increment();
+    }
+  }
+
+  private void unlink(Node<K, V> node) {
+    if (node.segment == Segment.WINDOW) {
+      window.remove(node);
+      windowWeight -= node.weight;
+    } else if (node.segment == Segment.PROBATION) {
+      probation.remove(node);
+    } else if (node.segment == Segment.PROTECTED) {
+      protectedSegment.remove(node);
+      protectedWeight -= node.weight;
+    } else {
+      return;
+    }
+    node.segment = Segment.NONE;
+    totalWeight -= node.weight;
+  }
+
+  private enum Segment {
+    NONE, WINDOW, PROBATION, PROTECTED
+  }
+
+  private static final class Node<K, V> {
+    private final K key;
+    private final V value;
+    private final int weight;
+    private final long writeNanos;
+    // guarded by lock
+    private Segment segment = Segment.NONE;
+    private Node<K, V> prev;
+    private Node<K, V> next;
+
+    Node(K key, V value, int weight, long writeNanos) {
+      this.key = key;
+      this.value = value;
+      this.weight = weight;
+      this.writeNanos = writeNanos;
+    }
+  }
+
+  /**
+   * Intrusive doubly linked list, head is the least recently used node.
+   */
+  private static final class AccessOrderDeque<K, V> {
+    private Node<K, V> head;
+    private Node<K, V> tail;
+
+    Node<K, V> peekFirst() {
+      return head;
+    }
+
+    Node<K, V> peekLast() {
+      return tail;
+    }
+
+    Node<K, V> pollFirst() {
+      Node<K, V> node = head;
+      if (node != null) {
+        remove(node);
+      }
+      return node;
+    }
+
+    void addLast(Node<K, V> node) {
+      node.prev = tail;
+      node.next = null;
+      if (tail == null) {
+        head = node;
+      } else {
+        tail.next = node;
+      }
+      tail = node;
+    }
+
+    void moveToTail(Node<K, V> node) {
+      if (node != tail) {
+        remove(node);
+        addLast(node);
+      }
+    }
+
+    void remove(Node<K, V> node) {
+      if (node.prev == null) {
+        head = node.next;
+      } else {
+        node.prev.next = node.next;
+      }
+      if (node.next == null) {
+        tail = node.prev;
+      } else {
+        node.next.prev = node.prev;
+      }
+      node.prev = null;
+      node.next = null;
+    }
+
+    void clear() {
+      head = null;
+      tail = null;
+    }
+  }
+}
@@ -0,0 +1,151 @@
+package ru.hh.nab.common.executor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import ru.hh.nab.common.properties.FileSettings;
+
+/**
+ * Limits the number of tasks admitted to a thread pool, the limit is adjusted by the measured task duration and queue lag.<br/>
+ * Samples are aggregated in windows of windowSize completed tasks. At the end of each window:<br/>
+ * - if the max queue lag of the window exceeds maxQueueLag, the limit is multiplied by {@link #BACKOFF_RATIO} (AIMD decrease);<br/>
+ * - otherwise the limit follows the gradient between the long-term average task duration and the average duration of the window:
+ * when tasks get slower than usual the limit shrinks, when they are as fast as usual the limit grows by sqrt(limit).<br/>
+ * The limit does not grow while less than a half of it is used, so idle periods do not inflate it.<br/>
+ * Tasks should be admitted with {@link #tryAcquire()} and completed with {@link #release(long, long)},
+ * tasks that were admitted but did not run should be completed with {@link #release()}.
+ */
+public class AdaptiveConcurrencyLimiter {
+  static final double BACKOFF_RATIO = 0.9;
+  static final double RTT_TOLERANCE = 1.5;
+  static final double SMOOTHING = 0.2;
+  static final int LONG_WINDOW = 20;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final long maxQueueLagNanos;
+  private final int windowSize;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private volatile int limit;
+
+  // guarded by this
+  private double estimatedLimit;
+  private double longRttNanos;
+  private int windowNumOfSamples;
+  private long windowDurationSumNanos;
+  private long windowMaxQueueLagNanos;
+  private int windowMaxInFlight;
+
+  /**
+   * @param initialLimit     limit before the first window is complete
+   * @param minLimit         the limit never goes below it
+   * @param maxLimit         the limit never goes above it
+   * @param maxQueueLagNanos queue lag that is considered an overload
+   * @param windowSize       number of completed tasks per window
+   */
+  public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long maxQueueLagNanos, int windowSize) {
+    if (minLimit <= 0 || minLimit > maxLimit) {
+      throw new IllegalArgumentException("limits must satisfy 0 < minLimit <= maxLimit: minLimit=" + minLimit + ", maxLimit=" + maxLimit);
+    }
+    if (windowSize <= 0) {
+      throw new IllegalArgumentException("windowSize must be positive: " + windowSize);
+    }
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.maxQueueLagNanos = maxQueueLagNanos;
+    this.windowSize = windowSize;
+    this.estimatedLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    this.limit = (int) estimatedLimit;
+  }
+
+  /**
+   * Reads settings without prefix:
+   * minLimit (default 1), maxLimit (default maxLimit argument), initialLimit (default initialLimit argument),
+   * maxQueueLagMs (default 50), windowSize (default 100).
+   */
+  public static AdaptiveConcurrencyLimiter create(FileSettings limiterSettings, int initialLimit, int maxLimit) {
+    return new AdaptiveConcurrencyLimiter(
+        limiterSettings.getInteger("initialLimit", initialLimit),
+        limiterSettings.getInteger("minLimit", 1),
+        limiterSettings.getInteger("maxLimit", maxLimit),
+        TimeUnit.MILLISECONDS.toNanos(limiterSettings.getInteger("maxQueueLagMs", 50)),
+        limiterSettings.getInteger("windowSize", 100)
+    );
+  }
+
+  /**
+   * @return true if the task is admitted, in this case it must be completed with one of release methods
+   */
+  public boolean tryAcquire() {
+    while (true) {
+      int current = inFlight.get();
+      if (current >= limit) {
+        return false;
+      }
+      if (inFlight.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Completes an admitted task that did not run, no sample is taken.
+   */
+  public void release() {
+    inFlight.decrementAndGet();
+  }
+
+  /**
+   * Completes an admitted task and takes its sample.
+   */
+  public void release(long queueLagNanos, long durationNanos) {
+    int currentInFlight = inFlight.getAndDecrement();
+    synchronized (this) {
+      windowNumOfSamples++;
+      windowDurationSumNanos += durationNanos;
+      windowMaxQueueLagNanos = Math.max(windowMaxQueueLagNanos, queueLagNanos);
+      windowMaxInFlight = Math.max(windowMaxInFlight, currentInFlight);
+      if (windowNumOfSamples >= windowSize) {
+        updateLimit();
+      }
+    }
+  }
+
+  private void updateLimit() {
+    double shortRttNanos = Math.max(1.0, (double) windowDurationSumNanos / windowNumOfSamples);
+    if (longRttNanos == 0) {
+      longRttNanos = shortRttNanos;
+    } else {
+      longRttNanos += (shortRttNanos - longRttNanos) / LONG_WINDOW;
+      // tasks got steadily faster, let the long-term average catch up instead of growing the limit for LONG_WINDOW windows
+      if (longRttNanos / shortRttNanos > 2) {
+        longRttNanos *= 0.95;
+      }
+    }
+
+    double newLimit;
+    if (windowMaxQueueLagNanos > maxQueueLagNanos) {
+      newLimit = estimatedLimit * BACKOFF_RATIO;
+    } else if (windowMaxInFlight < estimatedLimit / 2) {
+      newLimit = estimatedLimit;
+    } else {
+      double gradient = Math.max(0.5, Math.min(1.0, RTT_TOLERANCE * longRttNanos / shortRttNanos));
+      newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+      newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+    }
+    estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    limit = (int) estimatedLimit;
+
+    windowNumOfSamples = 0;
+    windowDurationSumNanos = 0;
+    windowMaxQueueLagNanos = 0;
+    windowMaxInFlight = 0;
+  }
+
+  public int getLimit() {
+    return limit;
+  }
+
+  public int getInFlight() {
+    return inFlight.get();
+  }
+}
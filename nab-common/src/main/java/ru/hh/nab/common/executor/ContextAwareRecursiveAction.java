@@ -0,0 +1,25 @@
+package ru.hh.nab.common.executor;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * {@link RecursiveAction} that is computed with the contexts of the task that created it, see {@link ContextAwareRecursiveTask}.
+ */
+public abstract class ContextAwareRecursiveAction extends RecursiveAction {
+  private final ContextSnapshot contextSnapshot = MonitoredForkJoinPool.captureContextOfCurrentPool();
+
+  @Override
+  protected final void compute() {
+    ContextCarrier.Scope scope = contextSnapshot.attach();
+    try {
+      computeInContext();
+    } finally {
+      scope.close();
+    }
+  }
+
+  /**
+   * The main computation, see {@link RecursiveAction#compute()}.
+   */
+  protected abstract void computeInContext();
+}
@@ -0,0 +1,28 @@
+package ru.hh.nab.common.executor;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * {@link RecursiveTask} that is computed with the contexts (by default the MDC, including request id) of the task that created it,
+ * so a subtask stolen by another worker of {@link MonitoredForkJoinPool} logs with the request id of its parent.<br/>
+ * Contexts are captured in the constructor by the pool of the current worker. A root task created outside of the pool captures nothing:
+ * the pool runs it with the contexts of the submitting thread.
+ */
+public abstract class ContextAwareRecursiveTask<V> extends RecursiveTask<V> {
+  private final ContextSnapshot contextSnapshot = MonitoredForkJoinPool.captureContextOfCurrentPool();
+
+  @Override
+  protected final V compute() {
+    ContextCarrier.Scope scope = contextSnapshot.attach();
+    try {
+      return computeInContext();
+    } finally {
+      scope.close();
+    }
+  }
+
+  /**
+   * The main computation, see {@link RecursiveTask#compute()}.
+   */
+  protected abstract V computeInContext();
+}
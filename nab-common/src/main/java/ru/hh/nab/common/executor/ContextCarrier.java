@@ -0,0 +1,28 @@
+package ru.hh.nab.common.executor;
+
+/**
+ * Moves one kind of thread-local context, for example MDC, from the thread that submits a task to the thread that runs it.<br/>
+ * Modules contribute carriers as beans, {@link ContextPropagator} applies all of them.
+ *
+ * @param <C> captured context, it must not change after capture, since it can be attached in several threads at once
+ */
+public interface ContextCarrier<C> {
+
+  /**
+   * Called in the submitting thread.
+   *
+   * @return current context or null if there is nothing to carry
+   */
+  C capture();
+
+  /**
+   * Called in the executing thread before the task.
+   *
+   * @return scope that restores the context of the executing thread, it is closed after the task in the same thread
+   */
+  Scope attach(C context);
+
+  interface Scope {
+    void close();
+  }
+}
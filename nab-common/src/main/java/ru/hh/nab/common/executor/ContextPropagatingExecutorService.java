@@ -0,0 +1,86 @@
+package ru.hh.nab.common.executor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * See {@link ContextPropagator#wrap(ExecutorService)}.<br/>
+ * invokeAll and invokeAny capture the context once for all tasks.
+ */
+class ContextPropagatingExecutorService extends AbstractExecutorService {
+  private final ExecutorService delegate;
+  private final ContextPropagator contextPropagator;
+
+  ContextPropagatingExecutorService(ExecutorService delegate, ContextPropagator contextPropagator) {
+    this.delegate = delegate;
+    this.contextPropagator = contextPropagator;
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    delegate.execute(contextPropagator.wrap(command));
+  }
+
+  @Override
+  public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
+    return delegate.invokeAll(wrap(tasks));
+  }
+
+  @Override
+  public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException {
+    return delegate.invokeAll(wrap(tasks), timeout, unit);
+  }
+
+  @Override
+  public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
+    return delegate.invokeAny(wrap(tasks));
+  }
+
+  @Override
+  public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    return delegate.invokeAny(wrap(tasks), timeout, unit);
+  }
+
+  private <T> List<Callable<T>> wrap(Collection<? extends Callable<T>> tasks) {
+    ContextSnapshot snapshot = contextPropagator.capture();
+    List<Callable<T>> wrappedTasks = new ArrayList<>(tasks.size());
+    for (Callable<T> task : tasks) {
+      wrappedTasks.add(snapshot.wrap(task));
+    }
+    return wrappedTasks;
+  }
+
+  @Override
+  public void shutdown() {
+    delegate.shutdown();
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    return delegate.shutdownNow();
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return delegate.isShutdown();
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return delegate.isTerminated();
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return delegate.awaitTermination(timeout, unit);
+  }
+}
@@ -0,0 +1,49 @@
+package ru.hh.nab.common.executor;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Captures contexts of all {@link ContextCarrier}s in the submitting thread and restores them in the executing thread,
+ * so that MDC, data source, jclient and tracing contexts survive async hops.<br/>
+ * If no carrier has a context, tasks are not wrapped at all.
+ */
+public class ContextPropagator {
+  private final List<ContextCarrier<?>> carriers;
+
+  public ContextPropagator(List<ContextCarrier<?>> carriers) {
+    this.carriers = List.copyOf(carriers);
+  }
+
+  public ContextSnapshot capture() {
+    Object[] contexts = null;
+    for (int i = 0; i < carriers.size(); i++) {
+      Object context = carriers.get(i).capture();
+      if (context != null) {
+        if (contexts == null) {
+          contexts = new Object[carriers.size()];
+        }
+        contexts[i] = context;
+      }
+    }
+    return new ContextSnapshot(carriers, contexts);
+  }
+
+  public Runnable wrap(Runnable task) {
+    return capture().wrap(task);
+  }
+
+  public <T> Callable<T> wrap(Callable<T> task) {
+    return capture().wrap(task);
+  }
+
+  public Executor wrap(Executor executor) {
+    return task -> executor.execute(wrap(task));
+  }
+
+  public ExecutorService wrap(ExecutorService executorService) {
+    return new ContextPropagatingExecutorService(executorService, this);
+  }
+}
@@ -0,0 +1,85 @@
+package ru.hh.nab.common.executor;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Contexts captured by {@link ContextPropagator#capture()}. It is immutable, so one snapshot can wrap any number of tasks,
+ * for example all subtasks of a fan-out.<br/>
+ * An empty snapshot returns tasks as is.
+ */
+public final class ContextSnapshot {
+  private static final ContextCarrier.Scope EMPTY_SCOPE = () -> {};
+
+  private final List<ContextCarrier<?>> carriers;
+  private final Object[] contexts;
+
+  ContextSnapshot(List<ContextCarrier<?>> carriers, Object[] contexts) {
+    this.carriers = carriers;
+    this.contexts = contexts;
+  }
+
+  public boolean isEmpty() {
+    return contexts == null;
+  }
+
+  public Runnable wrap(Runnable task) {
+    if (isEmpty()) {
+      return task;
+    }
+    return () -> {
+      ContextCarrier.Scope[] scopes = attachAll();
+      try {
+        task.run();
+      } finally {
+        close(scopes);
+      }
+    };
+  }
+
+  public <T> Callable<T> wrap(Callable<T> task) {
+    if (isEmpty()) {
+      return task;
+    }
+    return () -> {
+      ContextCarrier.Scope[] scopes = attachAll();
+      try {
+        return task.call();
+      } finally {
+        close(scopes);
+      }
+    };
+  }
+
+  /**
+   * Attaches the contexts to the current thread, for code that can not be wrapped, for example compute of a fork-join task.
+   *
+   * @return scope that restores the previous contexts, it must be closed in the same thread
+   */
+  public ContextCarrier.Scope attach() {
+    if (isEmpty()) {
+      return EMPTY_SCOPE;
+    }
+    ContextCarrier.Scope[] scopes = attachAll();
+    return () -> close(scopes);
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private ContextCarrier.Scope[] attachAll() {
+    ContextCarrier.Scope[] scopes = new ContextCarrier.Scope[contexts.length];
+    for (int i = 0; i < contexts.length; i++) {
+      if (contexts[i] != null) {
+        scopes[i] = ((ContextCarrier) carriers.get(i)).attach(contexts[i]);
+      }
+    }
+    return scopes;
+  }
+
+  private static void close(ContextCarrier.Scope[] scopes) {
+    for (int i = scopes.length - 1; i >= 0; i--) {
+      if (scopes[i] != null) {
+        scopes[i].close();
+      }
+    }
+  }
+}
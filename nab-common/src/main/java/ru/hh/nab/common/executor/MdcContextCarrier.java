@@ -0,0 +1,81 @@
+package ru.hh.nab.common.executor;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.slf4j.MDC;
+import org.slf4j.spi.MDCAdapter;
+
+/**
+ * Carries the whole slf4j MDC, including request id.<br/>
+ * With logback the MDC map is copy-on-write: the map returned by getPropertyMap is replaced, not modified, by the next write.
+ * So the carrier reuses the previous capture of the thread while the map is the same, and keeps the previous context of the executing
+ * thread without copying it. With other MDC adapters the MDC is copied on every capture and attach.
+ */
+public class MdcContextCarrier implements ContextCarrier<Map<String, String>> {
+  private static final MethodHandle GET_PROPERTY_MAP = findGetPropertyMap();
+
+  private final ThreadLocal<Capture> lastCapture = new ThreadLocal<>();
+
+  @Override
+  public Map<String, String> capture() {
+    if (GET_PROPERTY_MAP == null) {
+      Map<String, String> context = MDC.getCopyOfContextMap();
+      return context == null || context.isEmpty() ? null : context;
+    }
+
+    Map<String, String> source = getPropertyMap();
+    if (source == null || source.isEmpty()) {
+      return null;
+    }
+    Capture capture = lastCapture.get();
+    if (capture == null || capture.source != source) {
+      capture = new Capture(source, Collections.unmodifiableMap(new HashMap<>(source)));
+      lastCapture.set(capture);
+    }
+    return capture.context;
+  }
+
+  @Override
+  public Scope attach(Map<String, String> context) {
+    Map<String, String> previousContext = GET_PROPERTY_MAP == null ? MDC.getCopyOfContextMap() : getPropertyMap();
+    MDC.setContextMap(context);
+    return () -> {
+      if (previousContext == null || previousContext.isEmpty()) {
+        MDC.clear();
+      } else {
+        MDC.setContextMap(previousContext);
+      }
+    };
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, String> getPropertyMap() {
+    try {
+      return (Map<String, String>) GET_PROPERTY_MAP.invoke();
+    } catch (Throwable e) {
+      throw new IllegalStateException("Failed to get MDC map", e);
+    }
+  }
+
+  private static MethodHandle findGetPropertyMap() {
+    MDCAdapter adapter = MDC.getMDCAdapter();
+    if (adapter == null || !adapter.getClass().getName().equals("ch.qos.logback.classic.util.LogbackMDCAdapter")) {
+      return null;
+    }
+    try {
+      return MethodHandles
+          .publicLookup()
+          .findVirtual(adapter.getClass(), "getPropertyMap", MethodType.methodType(Map.class))
+          .bindTo(adapter);
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  private record Capture(Map<String, String> source, Map<String, String> context) {
+  }
+}
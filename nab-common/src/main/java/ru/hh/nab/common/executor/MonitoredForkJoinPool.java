@@ -0,0 +1,310 @@
+package ru.hh.nab.common.executor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import static java.util.Optional.ofNullable;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.hh.nab.common.properties.FileSettings;
+import ru.hh.nab.common.util.ExceptionUtils;
+import ru.hh.nab.metrics.CompactHistogram;
+import ru.hh.nab.metrics.Histogram;
+import ru.hh.nab.metrics.LogLinearHistogram;
+import ru.hh.nab.metrics.Max;
+import ru.hh.nab.metrics.StatsDSender;
+import static ru.hh.nab.metrics.StatsDSender.DEFAULT_PERCENTILES;
+import ru.hh.nab.metrics.Tag;
+import ru.hh.nab.metrics.TaggedSender;
+
+/**
+ * Work-stealing pool for CPU-bound fan-out: each worker has its own deque, so many small tasks do not contend on one queue
+ * as they do in {@link MonitoredThreadPoolExecutor}.<br/>
+ * Tasks passed to execute, submit, invoke and invokeAll are run with the contexts captured by {@link ContextPropagator}
+ * (by default the MDC, including request id) in the submitting thread. Runnables and callables are also timed, {@link ForkJoinTask}s are not.
+ * Subtasks forked inside tasks are run as is: a subtask stolen by another worker sees the contexts only if it extends
+ * {@link ContextAwareRecursiveTask} or {@link ContextAwareRecursiveAction}.<br/>
+ * Sends the metrics of {@link MonitoredThreadPoolExecutor}, where maxSize is the parallelism and queueSize is the number of queued tasks,
+ * and also the number of steals, queued submissions and running threads.
+ * Queue sizes and running threads are computed by scanning all work queues, so they are read when metrics are sent, not per task.
+ */
+public class MonitoredForkJoinPool extends ForkJoinPool {
+  private static final Logger LOGGER = LoggerFactory.getLogger(MonitoredForkJoinPool.class);
+
+  static final String STEAL_COUNT_METRIC_NAME = "threadPool.stealCount";
+  static final String QUEUED_SUBMISSIONS_METRIC_NAME = "threadPool.queuedSubmissions";
+  static final String RUNNING_COUNT_METRIC_NAME = "threadPool.runningCount";
+
+  private static final ContextPropagator MDC_CONTEXT_PROPAGATOR = new ContextPropagator(List.of(new MdcContextCarrier()));
+  private static final ContextSnapshot EMPTY_CONTEXT_SNAPSHOT = new ContextSnapshot(List.of(), null);
+
+  private final Max maxPoolSizeMetric = new Max(0);
+  private final Max poolSizeMetric = new Max(0);
+  private final Max activeCountMetric = new Max(0);
+  private final Histogram taskDurationMetric;
+  private final Histogram taskExecutionStartLagMetric;
+  private final LogLinearHistogram taskDurationMicrosMetric =
+      new LogLinearHistogram(MonitoredThreadPoolExecutor.MAX_MICROS, MonitoredThreadPoolExecutor.MICROS_SIGNIFICANT_DIGITS);
+  private final LogLinearHistogram taskExecutionStartLagMicrosMetric =
+      new LogLinearHistogram(MonitoredThreadPoolExecutor.MAX_MICROS, MonitoredThreadPoolExecutor.MICROS_SIGNIFICANT_DIGITS);
+  private final AtomicLong sentStealCount = new AtomicLong();
+  private final String threadPoolName;
+  private final Integer longTaskDurationMs;
+  private final ContextPropagator contextPropagator;
+
+  private MonitoredForkJoinPool(
+      int parallelism,
+      ForkJoinWorkerThreadFactory threadFactory,
+      boolean asyncMode,
+      String threadPoolName,
+      Integer longTaskDurationMs,
+      ContextPropagator contextPropagator,
+      int taskDurationHistogramSize,
+      int taskDurationHistogramCompactionRatio,
+      int taskExecutionStartLagHistogramSize,
+      int taskExecutionStartLagHistogramCompactionRatio
+  ) {
+    super(
+        parallelism,
+        threadFactory,
+        (thread, e) -> LOGGER.error("{} thread pool task failed in thread {}", threadPoolName, thread.getName(), e),
+        asyncMode
+    );
+    this.threadPoolName = threadPoolName;
+    this.longTaskDurationMs = longTaskDurationMs;
+    this.contextPropagator = contextPropagator;
+    this.taskDurationMetric = new CompactHistogram(taskDurationHistogramSize, taskDurationHistogramCompactionRatio);
+    this.taskExecutionStartLagMetric = new CompactHistogram(taskExecutionStartLagHistogramSize, taskExecutionStartLagHistogramCompactionRatio);
+  }
+
+  public String getThreadPoolName() {
+    return threadPoolName;
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    super.execute(wrap(task));
+  }
+
+  @Override
+  public ForkJoinTask<?> submit(Runnable task) {
+    return super.submit(wrap(task));
+  }
+
+  @Override
+  public <T> ForkJoinTask<T> submit(Runnable task, T result) {
+    return super.submit(wrap(task), result);
+  }
+
+  @Override
+  public <T> ForkJoinTask<T> submit(Callable<T> task) {
+    return super.submit(wrap(task));
+  }
+
+  @Override
+  public void execute(ForkJoinTask<?> task) {
+    super.execute(wrap(task));
+  }
+
+  @Override
+  public <T> ForkJoinTask<T> submit(ForkJoinTask<T> task) {
+    super.execute(wrap(task));
+    return task;
+  }
+
+  @Override
+  public <T> T invoke(ForkJoinTask<T> task) {
+    super.invoke(wrap(task));
+    return task.join();
+  }
+
+  @Override
+  public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) {
+    List<Callable<T>> wrappedTasks = new ArrayList<>(tasks.size());
+    for (Callable<T> task : tasks) {
+      wrappedTasks.add(wrap(task));
+    }
+    return super.invokeAll(wrappedTasks);
+  }
+
+  /**
+   * Contexts for a task created in the current thread: captured by the pool of the current worker,
+   * empty if the current thread is not a worker of {@link MonitoredForkJoinPool}.
+   */
+  static ContextSnapshot captureContextOfCurrentPool() {
+    return ForkJoinTask.getPool() instanceof MonitoredForkJoinPool pool ? pool.contextPropagator.capture() : EMPTY_CONTEXT_SNAPSHOT;
+  }
+
+  private ForkJoinTask<?> wrap(ForkJoinTask<?> task) {
+    ContextSnapshot contextSnapshot = contextPropagator.capture();
+    return contextSnapshot.isEmpty() ? task : new ContextAttachingTask(task, contextSnapshot);
+  }
+
+  private Runnable wrap(Runnable task) {
+    Callable<Object> callable = Executors.callable(task);
+    long creationNanos = System.nanoTime();
+    ContextSnapshot contextSnapshot = contextPropagator.capture();
+    return () -> ExceptionUtils.getOrThrow(() -> runTask(contextSnapshot.wrap(callable), creationNanos));
+  }
+
+  private <T> Callable<T> wrap(Callable<T> task) {
+    long creationNanos = System.nanoTime();
+    ContextSnapshot contextSnapshot = contextPropagator.capture();
+    return () -> runTask(contextSnapshot.wrap(task), creationNanos);
+  }
+
+  private <T> T runTask(Callable<T> task, long creationNanos) throws Exception {
+    long startNanos = System.nanoTime();
+    maxPoolSizeMetric.save(getParallelism());
+    poolSizeMetric.save(getPoolSize());
+    activeCountMetric.save(getActiveThreadCount());
+    long taskExecutionStartLagNanos = startNanos - creationNanos;
+    taskExecutionStartLagMetric.save(MonitoredThreadPoolExecutor.toMillis(taskExecutionStartLagNanos));
+    taskExecutionStartLagMicrosMetric.save(MonitoredThreadPoolExecutor.toMicros(taskExecutionStartLagNanos));
+
+    try {
+      return task.call();
+    } finally {
+      long taskDurationNanos = System.nanoTime() - startNanos;
+      int taskDuration = MonitoredThreadPoolExecutor.toMillis(taskDurationNanos);
+      taskDurationMetric.save(taskDuration);
+      taskDurationMicrosMetric.save(MonitoredThreadPoolExecutor.toMicros(taskDurationNanos));
+      if (longTaskDurationMs != null && taskDuration >= longTaskDurationMs) {
+        LOGGER.warn("{} thread pool task execution took too long: {} ms >= {} ms", threadPoolName, taskDuration, longTaskDurationMs);
+      }
+    }
+  }
+
+  private long getStealCountDelta() {
+    long stealCount = getStealCount();
+    return stealCount - sentStealCount.getAndSet(stealCount);
+  }
+
+  /**
+   * Reads settings of {@link MonitoredThreadPoolExecutor}: maxSize is the parallelism (default is the number of available processors),
+   * minSize, queueSize and keepAliveTimeSec are not used.<br/>
+   * asyncMode=true makes local queues FIFO, it suits event-style tasks that are never joined.<br/>
+   * Tasks are run with the MDC of the submitting thread.
+   */
+  public static MonitoredForkJoinPool create(
+      FileSettings threadPoolSettings,
+      String threadPoolName,
+      StatsDSender statsDSender,
+      String serviceName
+  ) {
+    return create(threadPoolSettings, threadPoolName, statsDSender, serviceName, MDC_CONTEXT_PROPAGATOR);
+  }
+
+  /**
+   * Same as {@link #create(FileSettings, String, StatsDSender, String)}, tasks are run with the contexts of contextPropagator.
+   */
+  public static MonitoredForkJoinPool create(
+      FileSettings threadPoolSettings,
+      String threadPoolName,
+      StatsDSender statsDSender,
+      String serviceName,
+      ContextPropagator contextPropagator
+  ) {
+    int parallelism = ofNullable(threadPoolSettings.getInteger("maxSize")).orElse(Runtime.getRuntime().availableProcessors());
+    boolean asyncMode = threadPoolSettings.getBoolean("asyncMode", false);
+    Integer longTaskDurationMs = threadPoolSettings.getInteger("longTaskDurationMs");
+    int taskDurationHistogramSize = ofNullable(threadPoolSettings.getInteger("monitoring.taskDuration.histogramSize")).orElse(512);
+    int taskDurationHistogramCompactionRatio =
+        ofNullable(threadPoolSettings.getInteger("monitoring.taskDuration.histogramCompactionRatio")).orElse(1);
+    int taskExecutionStartLagHistogramSize = ofNullable(threadPoolSettings.getInteger("monitoring.taskExecutionStartLag.histogramSize")).orElse(512);
+    int taskExecutionStartLagHistogramCompactionRatio =
+        ofNullable(threadPoolSettings.getInteger("monitoring.taskExecutionStartLag.histogramCompactionRatio")).orElse(1);
+
+    var count = new AtomicLong(0);
+    ForkJoinWorkerThreadFactory threadFactory = pool -> {
+      ForkJoinWorkerThread thread = defaultForkJoinWorkerThreadFactory.newThread(pool);
+      thread.setName(String.format("%s-%s", threadPoolName, count.getAndIncrement()));
+      thread.setDaemon(true);
+      return thread;
+    };
+
+    var pool = new MonitoredForkJoinPool(
+        parallelism,
+        threadFactory,
+        asyncMode,
+        threadPoolName,
+        longTaskDurationMs,
+        contextPropagator,
+        taskDurationHistogramSize,
+        taskDurationHistogramCompactionRatio,
+        taskExecutionStartLagHistogramSize,
+        taskExecutionStartLagHistogramCompactionRatio
+    );
+
+    var sender = new TaggedSender(statsDSender, Set.of(new Tag(Tag.APP_TAG_NAME, serviceName), new Tag("pool", threadPoolName)));
+    statsDSender.sendPeriodically(() -> {
+      sender.sendMax(MonitoredThreadPoolExecutor.MAX_POOL_SIZE_METRIC_NAME, pool.maxPoolSizeMetric);
+      sender.sendMax(MonitoredThreadPoolExecutor.POOL_SIZE_METRIC_NAME, pool.poolSizeMetric);
+      sender.sendMax(MonitoredThreadPoolExecutor.ACTIVE_COUNT_METRIC_NAME, pool.activeCountMetric);
+      sender.sendGauge(RUNNING_COUNT_METRIC_NAME, pool.getRunningThreadCount());
+      sender.sendGauge(MonitoredThreadPoolExecutor.QUEUE_SIZE_METRIC_NAME, pool.getQueuedTaskCount());
+      sender.sendGauge(QUEUED_SUBMISSIONS_METRIC_NAME, pool.getQueuedSubmissionCount());
+      sender.sendCount(STEAL_COUNT_METRIC_NAME, pool.getStealCountDelta());
+      sender.sendHistogram(MonitoredThreadPoolExecutor.TASK_DURATION_METRIC_NAME, pool.taskDurationMetric, DEFAULT_PERCENTILES);
+      sender.sendHistogram(
+          MonitoredThreadPoolExecutor.TASK_EXECUTION_START_LAG_METRIC_NAME,
+          pool.taskExecutionStartLagMetric,
+          DEFAULT_PERCENTILES
+      );
+      sender.sendHistogram(
+          MonitoredThreadPoolExecutor.TASK_DURATION_MICROS_METRIC_NAME,
+          pool.taskDurationMicrosMetric,
+          DEFAULT_PERCENTILES
+      );
+      sender.sendHistogram(
+          MonitoredThreadPoolExecutor.TASK_EXECUTION_START_LAG_MICROS_METRIC_NAME,
+          pool.taskExecutionStartLagMicrosMetric,
+          DEFAULT_PERCENTILES
+      );
+    });
+
+    return pool;
+  }
+
+  /**
+   * Runs a submitted {@link ForkJoinTask} with the contexts of the submitting thread. The task itself is returned to the caller,
+   * so it completes with its own result or exception.
+   */
+  private static final class ContextAttachingTask extends ForkJoinTask<Void> {
+    private final ForkJoinTask<?> task;
+    private final ContextSnapshot contextSnapshot;
+
+    private ContextAttachingTask(ForkJoinTask<?> task, ContextSnapshot contextSnapshot) {
+      this.task = task;
+      this.contextSnapshot = contextSnapshot;
+    }
+
+    @Override
+    public Void getRawResult() {
+      return null;
+    }
+
+    @Override
+    protected void setRawResult(Void value) {
+    }
+
+    @Override
+    protected boolean exec() {
+      ContextCarrier.Scope scope = contextSnapshot.attach();
+      try {
+        task.quietlyInvoke();
+      } finally {
+        scope.close();
+      }
+      return true;
+    }
+  }
+}
@@ -1,11 +1,10 @@
 package ru.hh.nab.common.executor;
 
-import java.time.Duration;
-import java.time.OffsetDateTime;
 import static java.util.Optional.ofNullable;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
 import static java.util.concurrent.Executors.defaultThreadFactory;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
@@ -13,11 +12,13 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.hh.nab.common.properties.FileSettings;
 import ru.hh.nab.metrics.CompactHistogram;
 import ru.hh.nab.metrics.Histogram;
+import ru.hh.nab.metrics.LogLinearHistogram;
 import ru.hh.nab.metrics.Max;
 import ru.hh.nab.metrics.StatsDSender;
 import static ru.hh.nab.metrics.StatsDSender.DEFAULT_PERCENTILES;
@@ -27,16 +28,37 @@ import ru.hh.nab.metrics.TaggedSender;
 public class MonitoredThreadPoolExecutor extends ThreadPoolExecutor {
   private static final Logger LOGGER = LoggerFactory.getLogger(MonitoredThreadPoolExecutor.class);
   private static final ThreadFactory DEFAULT_THREAD_FACTORY = defaultThreadFactory();
+  private static final String VIRTUAL_TYPE = "virtual";
+  private static final String FORK_JOIN_TYPE = "forkJoin";
+
+  static final String MAX_POOL_SIZE_METRIC_NAME = "threadPool.maxSize";
+  static final String POOL_SIZE_METRIC_NAME = "threadPool.size";
+  static final String ACTIVE_COUNT_METRIC_NAME = "threadPool.activeCount";
+  static final String QUEUE_SIZE_METRIC_NAME = "threadPool.queueSize";
+  static final String REJECTED_TASKS_METRIC_NAME = "threadPool.rejectedTasks";
+  static final String TASK_DURATION_METRIC_NAME = "threadPool.taskDuration";
+  static final String TASK_EXECUTION_START_LAG_METRIC_NAME = "threadPool.taskExecutionStartLag";
+  static final String TASK_DURATION_MICROS_METRIC_NAME = "threadPool.taskDurationMicros";
+  static final String TASK_EXECUTION_START_LAG_MICROS_METRIC_NAME = "threadPool.taskExecutionStartLagMicros";
+  static final String CONCURRENCY_LIMIT_METRIC_NAME = "threadPool.concurrencyLimit";
+  /**
+   * Ten minutes, longer durations are reported as this value in microsecond histograms, millisecond histograms are not affected.
+   */
+  static final int MAX_MICROS = 600_000_000;
+  static final int MICROS_SIGNIFICANT_DIGITS = 2;
 
   private final Max maxPoolSizeMetric = new Max(0);
   private final Max poolSizeMetric = new Max(0);
   private final Max activeCountMetric = new Max(0);
   private final Max queueSizeMetric = new Max(0);
+  private final LongAdder rejectedTasksMetric = new LongAdder();
   private final Histogram taskDurationMetric;
   private final Histogram taskExecutionStartLagMetric;
-  private final ThreadLocal<Long> taskStart = new ThreadLocal<>();
+  private final LogLinearHistogram taskDurationMicrosMetric = new LogLinearHistogram(MAX_MICROS, MICROS_SIGNIFICANT_DIGITS);
+  private final LogLinearHistogram taskExecutionStartLagMicrosMetric = new LogLinearHistogram(MAX_MICROS, MICROS_SIGNIFICANT_DIGITS);
   private final String threadPoolName;
   private final Integer longTaskDurationMs;
+  private final AdaptiveConcurrencyLimiter concurrencyLimiter;
 
   private MonitoredThreadPoolExecutor(
       int corePoolSize,
@@ -48,6 +70,7 @@ public class MonitoredThreadPoolExecutor extends ThreadPoolExecutor {
       RejectedExecutionHandler handler,
       String threadPoolName,
       Integer longTaskDurationMs,
+      AdaptiveConcurrencyLimiter concurrencyLimiter,
       int taskDurationHistogramSize,
       int taskDurationHistogramCompactionRatio,
       int taskExecutionStartLagHistogramSize,
@@ -57,6 +80,7 @@ public class MonitoredThreadPoolExecutor extends ThreadPoolExecutor {
 
     this.longTaskDurationMs = longTaskDurationMs;
     this.threadPoolName = threadPoolName;
+    this.concurrencyLimiter = concurrencyLimiter;
     this.taskDurationMetric = new CompactHistogram(taskDurationHistogramSize, taskDurationHistogramCompactionRatio);
     this.taskExecutionStartLagMetric = new CompactHistogram(taskExecutionStartLagHistogramSize, taskExecutionStartLagHistogramCompactionRatio);
   }
@@ -65,9 +89,24 @@ public class MonitoredThreadPoolExecutor extends ThreadPoolExecutor {
     return threadPoolName;
   }
 
+  /**
+   * @return the limiter if limiter.enabled=true in thread pool settings, otherwise null
+   */
+  public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+    return concurrencyLimiter;
+  }
+
   @Override
   public void execute(Runnable command) {
-    super.execute(new RunnableWithCreationTime(command));
+    var timedRunnable = new TimedRunnable(command);
+    if (concurrencyLimiter != null) {
+      if (!concurrencyLimiter.tryAcquire()) {
+        getRejectedExecutionHandler().rejectedExecution(timedRunnable, this);
+        return;
+      }
+      timedRunnable.admitted = true;
+    }
+    super.execute(timedRunnable);
   }
 
   @Override
@@ -77,24 +116,66 @@ public class MonitoredThreadPoolExecutor extends ThreadPoolExecutor {
     activeCountMetric.save(getActiveCount());
     queueSizeMetric.save(getQueue().size());
 
-    if (r instanceof RunnableWithCreationTime rWithCreationTime) {
-      int taskExecutionStartLag = (int) Duration.between(rWithCreationTime.getCreationTime(), OffsetDateTime.now()).toMillis();
-      taskExecutionStartLagMetric.save(taskExecutionStartLag);
+    if (r instanceof TimedRunnable timedRunnable) {
+      timedRunnable.startNanos = System.nanoTime();
+      long taskExecutionStartLagNanos = timedRunnable.startNanos - timedRunnable.creationNanos;
+      taskExecutionStartLagMetric.save(toMillis(taskExecutionStartLagNanos));
+      taskExecutionStartLagMicrosMetric.save(toMicros(taskExecutionStartLagNanos));
     }
-    taskStart.set(System.currentTimeMillis());
   }
 
   @Override
   protected void afterExecute(Runnable r, Throwable t) {
-    int taskDuration = (int) (System.currentTimeMillis() - taskStart.get());
+    if (!(r instanceof TimedRunnable timedRunnable)) {
+      return;
+    }
+    long taskDurationNanos = System.nanoTime() - timedRunnable.startNanos;
+    int taskDuration = toMillis(taskDurationNanos);
 
     taskDurationMetric.save(taskDuration);
+    taskDurationMicrosMetric.save(toMicros(taskDurationNanos));
+
+    if (timedRunnable.admitted) {
+      concurrencyLimiter.release(timedRunnable.startNanos - timedRunnable.creationNanos, taskDurationNanos);
+    }
 
     if (longTaskDurationMs != null && taskDuration >= longTaskDurationMs) {
       LOGGER.warn("{} thread pool task execution took too long: {} ms >= {} ms", threadPoolName, taskDuration, longTaskDurationMs);
     }
   }
 
+  private void onRejected(Runnable r) {
+    rejectedTasksMetric.increment();
+    if (r instanceof TimedRunnable timedRunnable && timedRunnable.admitted) {
+      timedRunnable.admitted = false;
+      concurrencyLimiter.release();
+    }
+  }
+
+  /**
+   * Creates {@link MonitoredVirtualThreadExecutor} if threadPoolSettings has type=virtual
+   * (falls back to MonitoredThreadPoolExecutor if the JVM doesn't support virtual threads),
+   * {@link MonitoredForkJoinPool} if threadPoolSettings has type=forkJoin,
+   * otherwise creates MonitoredThreadPoolExecutor as {@link #create(FileSettings, String, StatsDSender, String)} does.
+   */
+  public static ExecutorService createExecutorService(
+      FileSettings threadPoolSettings,
+      String threadPoolName,
+      StatsDSender statsDSender,
+      String serviceName
+  ) {
+    if (VIRTUAL_TYPE.equals(threadPoolSettings.getString("type"))) {
+      if (MonitoredVirtualThreadExecutor.isSupported()) {
+        return MonitoredVirtualThreadExecutor.create(threadPoolSettings, threadPoolName, statsDSender, serviceName);
+      }
+      LOGGER.warn("Virtual threads are not available, {} thread pool is created as MonitoredThreadPoolExecutor", threadPoolName);
+    }
+    if (FORK_JOIN_TYPE.equals(threadPoolSettings.getString("type"))) {
+      return MonitoredForkJoinPool.create(threadPoolSettings, threadPoolName, statsDSender, serviceName);
+    }
+    return create(threadPoolSettings, threadPoolName, statsDSender, serviceName);
+  }
+
   public static ThreadPoolExecutor create(FileSettings threadPoolSettings, String threadPoolName, StatsDSender statsDSender, String serviceName) {
     return create(threadPoolSettings, threadPoolName, statsDSender, serviceName, (r, executor) -> {
       LOGGER.warn(
@@ -108,6 +189,11 @@ public class MonitoredThreadPoolExecutor extends ThreadPoolExecutor {
     });
   }
 
+  /**
+   * If threadPoolSettings has limiter.enabled=true, tasks are admitted by {@link AdaptiveConcurrencyLimiter},
+   * tasks that are not admitted go to rejectedExecutionHandler as if the pool was full.
+   * The limiter is configured by limiter.* settings, its limit is between 1 and maxSize + queueSize and starts from maxSize.
+   */
   public static ThreadPoolExecutor create(
       FileSettings threadPoolSettings,
       String threadPoolName,
@@ -126,6 +212,9 @@ public class MonitoredThreadPoolExecutor extends ThreadPoolExecutor {
     int taskExecutionStartLagHistogramSize = ofNullable(threadPoolSettings.getInteger("monitoring.taskExecutionStartLag.histogramSize")).orElse(512);
     int taskExecutionStartLagHistogramCompactionRatio =
         ofNullable(threadPoolSettings.getInteger("monitoring.taskExecutionStartLag.histogramCompactionRatio")).orElse(1);
+    AdaptiveConcurrencyLimiter concurrencyLimiter = threadPoolSettings.getBoolean("limiter.enabled", false)
+        ? AdaptiveConcurrencyLimiter.create(threadPoolSettings.getSubSettings("limiter"), maxThreads, maxThreads + queueSize)
+        : null;
 
     var count = new AtomicLong(0);
     ThreadFactory threadFactory = r -> {
@@ -142,41 +231,64 @@ public class MonitoredThreadPoolExecutor extends ThreadPoolExecutor {
         TimeUnit.SECONDS,
         new ArrayBlockingQueue<>(queueSize),
         threadFactory,
-        rejectedExecutionHandler,
+        (r, executor) -> {
+          ((MonitoredThreadPoolExecutor) executor).onRejected(r);
+          rejectedExecutionHandler.rejectedExecution(r, executor);
+        },
         threadPoolName,
         longTaskDurationMs,
+        concurrencyLimiter,
         taskDurationHistogramSize,
         taskDurationHistogramCompactionRatio,
         taskExecutionStartLagHistogramSize,
         taskExecutionStartLagHistogramCompactionRatio
     );
 
-    String maxPoolSizeMetricName = "threadPool.maxSize";
-    String poolSizeMetricName = "threadPool.size";
-    String activeCountMetricName = "threadPool.activeCount";
-    String queueSizeMetricName = "threadPool.queueSize";
-    String taskDurationMetricName = "threadPool.taskDuration";
-    String taskExecutionStartLagMetricName = "threadPool.taskExecutionStartLag";
     var sender = new TaggedSender(statsDSender, Set.of(new Tag(Tag.APP_TAG_NAME, serviceName), new Tag("pool", threadPoolName)));
 
     statsDSender.sendPeriodically(() -> {
-      sender.sendMax(maxPoolSizeMetricName, threadPoolExecutor.maxPoolSizeMetric);
-      sender.sendMax(poolSizeMetricName, threadPoolExecutor.poolSizeMetric);
-      sender.sendMax(activeCountMetricName, threadPoolExecutor.activeCountMetric);
-      sender.sendMax(queueSizeMetricName, threadPoolExecutor.queueSizeMetric);
-      sender.sendHistogram(taskDurationMetricName, threadPoolExecutor.taskDurationMetric, DEFAULT_PERCENTILES);
-      sender.sendHistogram(taskExecutionStartLagMetricName, threadPoolExecutor.taskExecutionStartLagMetric, DEFAULT_PERCENTILES);
+      sender.sendMax(MAX_POOL_SIZE_METRIC_NAME, threadPoolExecutor.maxPoolSizeMetric);
+      sender.sendMax(POOL_SIZE_METRIC_NAME, threadPoolExecutor.poolSizeMetric);
+      sender.sendMax(ACTIVE_COUNT_METRIC_NAME, threadPoolExecutor.activeCountMetric);
+      sender.sendMax(QUEUE_SIZE_METRIC_NAME, threadPoolExecutor.queueSizeMetric);
+      sender.sendCount(REJECTED_TASKS_METRIC_NAME, threadPoolExecutor.rejectedTasksMetric.sumThenReset());
+      sender.sendHistogram(TASK_DURATION_METRIC_NAME, threadPoolExecutor.taskDurationMetric, DEFAULT_PERCENTILES);
+      sender.sendHistogram(TASK_EXECUTION_START_LAG_METRIC_NAME, threadPoolExecutor.taskExecutionStartLagMetric, DEFAULT_PERCENTILES);
+      sender.sendHistogram(TASK_DURATION_MICROS_METRIC_NAME, threadPoolExecutor.taskDurationMicrosMetric, DEFAULT_PERCENTILES);
+      sender.sendHistogram(
+          TASK_EXECUTION_START_LAG_MICROS_METRIC_NAME,
+          threadPoolExecutor.taskExecutionStartLagMicrosMetric,
+          DEFAULT_PERCENTILES
+      );
+      if (concurrencyLimiter != null) {
+        sender.sendGauge(CONCURRENCY_LIMIT_METRIC_NAME, concurrencyLimiter.getLimit());
+      }
     });
 
     threadPoolExecutor.prestartAllCoreThreads();
     return threadPoolExecutor;
   }
 
-  private static class RunnableWithCreationTime implements Runnable {
+  static int toMillis(long nanos) {
+    return (int) Math.min(TimeUnit.NANOSECONDS.toMillis(nanos), Integer.MAX_VALUE);
+  }
+
+  static int toMicros(long nanos) {
+    return (int) Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), Integer.MAX_VALUE);
+  }
+
+  /**
+   * Keeps timestamps of the task in primitive fields, so that timing does not allocate anything but the wrapper itself.<br/>
+   * startNanos is written and read by the same worker thread in beforeExecute and afterExecute.<br/>
+   * admitted is true if the task holds a permit of the concurrency limiter.
+   */
+  private static class TimedRunnable implements Runnable {
     private final Runnable runnable;
-    private final OffsetDateTime creationTime = OffsetDateTime.now();
+    private final long creationNanos = System.nanoTime();
+    private long startNanos;
+    private boolean admitted;
 
-    public RunnableWithCreationTime(Runnable runnable) {
+    public TimedRunnable(Runnable runnable) {
       this.runnable = runnable;
     }
 
@@ -184,14 +296,5 @@ public class MonitoredThreadPoolExecutor extends ThreadPoolExecutor {
     public void run() {
       runnable.run();
     }
-
-
-    public Runnable getRunnable() {
-      return runnable;
-    }
-
-    public OffsetDateTime getCreationTime() {
-      return creationTime;
-    }
   }
 }
@@ -0,0 +1,284 @@
+package ru.hh.nab.common.executor;
+
+import java.util.List;
+import static java.util.Optional.ofNullable;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.hh.nab.common.properties.FileSettings;
+import ru.hh.nab.metrics.CompactHistogram;
+import ru.hh.nab.metrics.Histogram;
+import ru.hh.nab.metrics.LogLinearHistogram;
+import ru.hh.nab.metrics.Max;
+import ru.hh.nab.metrics.StatsDSender;
+import static ru.hh.nab.metrics.StatsDSender.DEFAULT_PERCENTILES;
+import ru.hh.nab.metrics.Tag;
+import ru.hh.nab.metrics.TaggedSender;
+
+/**
+ * Executor that starts a new thread for each task and limits the number of concurrently running tasks with a semaphore.<br/>
+ * Requires a JVM with virtual threads (Java 21+), see {@link #isSupported()}.<br/>
+ * Tasks that can't run because of the limit wait for a permit, at most queueSize tasks can wait, others are rejected.<br/>
+ * Sends the same metrics as {@link MonitoredThreadPoolExecutor}: maxSize is the concurrency limit, size is the number of started threads,
+ * activeCount is the number of running tasks and queueSize is the number of tasks waiting for a permit.
+ */
+public class MonitoredVirtualThreadExecutor extends AbstractExecutorService {
+  private static final Logger LOGGER = LoggerFactory.getLogger(MonitoredVirtualThreadExecutor.class);
+
+  private final Max maxPoolSizeMetric = new Max(0);
+  private final Max poolSizeMetric = new Max(0);
+  private final Max activeCountMetric = new Max(0);
+  private final Max queueSizeMetric = new Max(0);
+  private final LongAdder rejectedTasksMetric = new LongAdder();
+  private final Histogram taskDurationMetric;
+  private final Histogram taskExecutionStartLagMetric;
+  private final LogLinearHistogram taskDurationMicrosMetric =
+      new LogLinearHistogram(MonitoredThreadPoolExecutor.MAX_MICROS, MonitoredThreadPoolExecutor.MICROS_SIGNIFICANT_DIGITS);
+  private final LogLinearHistogram taskExecutionStartLagMicrosMetric =
+      new LogLinearHistogram(MonitoredThreadPoolExecutor.MAX_MICROS, MonitoredThreadPoolExecutor.MICROS_SIGNIFICANT_DIGITS);
+
+  private final ThreadFactory threadFactory;
+  private final Semaphore permits;
+  private final int maxConcurrency;
+  private final int maxNumOfTasks;
+  private final AtomicInteger numOfTasks = new AtomicInteger();
+  private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+  private final Object terminationLock = new Object();
+  private final String threadPoolName;
+  private final Integer longTaskDurationMs;
+  private volatile boolean shutdown;
+
+  private MonitoredVirtualThreadExecutor(
+      ThreadFactory threadFactory,
+      int maxConcurrency,
+      int queueSize,
+      String threadPoolName,
+      Integer longTaskDurationMs,
+      int taskDurationHistogramSize,
+      int taskDurationHistogramCompactionRatio,
+      int taskExecutionStartLagHistogramSize,
+      int taskExecutionStartLagHistogramCompactionRatio
+  ) {
+    this.threadFactory = threadFactory;
+    this.permits = new Semaphore(maxConcurrency);
+    this.maxConcurrency = maxConcurrency;
+    this.maxNumOfTasks = maxConcurrency + queueSize;
+    this.threadPoolName = threadPoolName;
+    this.longTaskDurationMs = longTaskDurationMs;
+    this.taskDurationMetric = new CompactHistogram(taskDurationHistogramSize, taskDurationHistogramCompactionRatio);
+    this.taskExecutionStartLagMetric = new CompactHistogram(taskExecutionStartLagHistogramSize, taskExecutionStartLagHistogramCompactionRatio);
+  }
+
+  public String getThreadPoolName() {
+    return threadPoolName;
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    if (shutdown) {
+      throw new RejectedExecutionException(threadPoolName + " thread pool is shut down");
+    }
+    int currentNumOfTasks = numOfTasks.incrementAndGet();
+    if (currentNumOfTasks > maxNumOfTasks) {
+      onTaskFinished();
+      rejectedTasksMetric.increment();
+      LOGGER.warn(
+          "{} thread pool is low on threads: activeCount={}, queueSize={}",
+          threadPoolName,
+          getActiveCount(),
+          Math.max(0, currentNumOfTasks - 1 - getActiveCount())
+      );
+      throw new RejectedExecutionException(threadPoolName + " thread pool is low on threads");
+    }
+
+    long creationTime = System.nanoTime();
+    Thread thread;
+    try {
+      thread = threadFactory.newThread(() -> runTask(command, creationTime));
+      threads.add(thread);
+      thread.start();
+    } catch (RuntimeException | Error e) {
+      onTaskFinished();
+      throw e;
+    }
+    poolSizeMetric.save(currentNumOfTasks);
+  }
+
+  private void runTask(Runnable command, long creationTime) {
+    try {
+      queueSizeMetric.save(Math.max(0, numOfTasks.get() - getActiveCount()));
+      permits.acquire();
+      try {
+        long taskStart = System.nanoTime();
+        maxPoolSizeMetric.save(maxConcurrency);
+        activeCountMetric.save(getActiveCount());
+        taskExecutionStartLagMetric.save(MonitoredThreadPoolExecutor.toMillis(taskStart - creationTime));
+        taskExecutionStartLagMicrosMetric.save(MonitoredThreadPoolExecutor.toMicros(taskStart - creationTime));
+
+        command.run();
+
+        long taskDurationNanos = System.nanoTime() - taskStart;
+        int taskDuration = MonitoredThreadPoolExecutor.toMillis(taskDurationNanos);
+        taskDurationMetric.save(taskDuration);
+        taskDurationMicrosMetric.save(MonitoredThreadPoolExecutor.toMicros(taskDurationNanos));
+        if (longTaskDurationMs != null && taskDuration >= longTaskDurationMs) {
+          LOGGER.warn("{} thread pool task execution took too long: {} ms >= {} ms", threadPoolName, taskDuration, longTaskDurationMs);
+        }
+      } finally {
+        permits.release();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      threads.remove(Thread.currentThread());
+      onTaskFinished();
+    }
+  }
+
+  private void onTaskFinished() {
+    if (numOfTasks.decrementAndGet() == 0 && shutdown) {
+      synchronized (terminationLock) {
+        terminationLock.notifyAll();
+      }
+    }
+  }
+
+  public int getActiveCount() {
+    return maxConcurrency - permits.availablePermits();
+  }
+
+  @Override
+  public void shutdown() {
+    shutdown = true;
+    if (numOfTasks.get() == 0) {
+      synchronized (terminationLock) {
+        terminationLock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Interrupts all started threads. Each task gets its own thread as soon as it is submitted, so there are no tasks that never started.
+   */
+  @Override
+  public List<Runnable> shutdownNow() {
+    shutdown();
+    threads.forEach(Thread::interrupt);
+    return List.of();
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return shutdown;
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return shutdown && numOfTasks.get() == 0;
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    synchronized (terminationLock) {
+      while (!isTerminated()) {
+        long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remainingMs <= 0) {
+          return false;
+        }
+        terminationLock.wait(remainingMs);
+      }
+      return true;
+    }
+  }
+
+  public static MonitoredVirtualThreadExecutor create(
+      FileSettings threadPoolSettings,
+      String threadPoolName,
+      StatsDSender statsDSender,
+      String serviceName
+  ) {
+    int maxConcurrency = ofNullable(threadPoolSettings.getInteger("maxSize")).orElse(16);
+    int queueSize = ofNullable(threadPoolSettings.getInteger("queueSize")).orElse(maxConcurrency);
+    Integer longTaskDurationMs = threadPoolSettings.getInteger("longTaskDurationMs");
+    int taskDurationHistogramSize = ofNullable(threadPoolSettings.getInteger("monitoring.taskDuration.histogramSize")).orElse(512);
+    int taskDurationHistogramCompactionRatio =
+        ofNullable(threadPoolSettings.getInteger("monitoring.taskDuration.histogramCompactionRatio")).orElse(1);
+    int taskExecutionStartLagHistogramSize = ofNullable(threadPoolSettings.getInteger("monitoring.taskExecutionStartLag.histogramSize")).orElse(512);
+    int taskExecutionStartLagHistogramCompactionRatio =
+        ofNullable(threadPoolSettings.getInteger("monitoring.taskExecutionStartLag.histogramCompactionRatio")).orElse(1);
+
+    var executor = new MonitoredVirtualThreadExecutor(
+        createThreadFactory(threadPoolName),
+        maxConcurrency,
+        queueSize,
+        threadPoolName,
+        longTaskDurationMs,
+        taskDurationHistogramSize,
+        taskDurationHistogramCompactionRatio,
+        taskExecutionStartLagHistogramSize,
+        taskExecutionStartLagHistogramCompactionRatio
+    );
+
+    var sender = new TaggedSender(statsDSender, Set.of(new Tag(Tag.APP_TAG_NAME, serviceName), new Tag("pool", threadPoolName)));
+    statsDSender.sendPeriodically(() -> {
+      sender.sendMax(MonitoredThreadPoolExecutor.MAX_POOL_SIZE_METRIC_NAME, executor.maxPoolSizeMetric);
+      sender.sendMax(MonitoredThreadPoolExecutor.POOL_SIZE_METRIC_NAME, executor.poolSizeMetric);
+      sender.sendMax(MonitoredThreadPoolExecutor.ACTIVE_COUNT_METRIC_NAME, executor.activeCountMetric);
+      sender.sendMax(MonitoredThreadPoolExecutor.QUEUE_SIZE_METRIC_NAME, executor.queueSizeMetric);
+      sender.sendCount(MonitoredThreadPoolExecutor.REJECTED_TASKS_METRIC_NAME, executor.rejectedTasksMetric.sumThenReset());
+      sender.sendHistogram(MonitoredThreadPoolExecutor.TASK_DURATION_METRIC_NAME, executor.taskDurationMetric, DEFAULT_PERCENTILES);
+      sender.sendHistogram(
+          MonitoredThreadPoolExecutor.TASK_EXECUTION_START_LAG_METRIC_NAME,
+          executor.taskExecutionStartLagMetric,
+          DEFAULT_PERCENTILES
+      );
+      sender.sendHistogram(
+          MonitoredThreadPoolExecutor.TASK_DURATION_MICROS_METRIC_NAME,
+          executor.taskDurationMicrosMetric,
+          DEFAULT_PERCENTILES
+      );
+      sender.sendHistogram(
+          MonitoredThreadPoolExecutor.TASK_EXECUTION_START_LAG_MICROS_METRIC_NAME,
+          executor.taskExecutionStartLagMicrosMetric,
+          DEFAULT_PERCENTILES
+      );
+    });
+
+    return executor;
+  }
+
+  /**
+   * Returns true if the JVM supports virtual threads (Java 21+).
+   */
+  public static boolean isSupported() {
+    try {
+      Thread.class.getMethod("ofVirtual");
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  /**
+   * The project is compiled for Java 17, so virtual threads are created via reflection when the JVM provides them.
+   */
+  private static ThreadFactory createThreadFactory(String threadPoolName) {
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, threadPoolName + "-", 0L);
+      return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      throw new IllegalStateException("Virtual threads are not available, can't create " + threadPoolName + " thread pool", e);
+    }
+  }
+}
@@ -1,128 +1,391 @@
 package ru.hh.nab.common.executor;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Delayed;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.hh.nab.metrics.LogLinearHistogram;
+import ru.hh.nab.metrics.Max;
+import ru.hh.nab.metrics.StatsDSender;
+import static ru.hh.nab.metrics.StatsDSender.DEFAULT_PERCENTILES;
+import ru.hh.nab.metrics.Tag;
+import ru.hh.nab.metrics.TaggedSender;
 
 /**
  * Scheduled executor that catches exceptions in order to: <br/>
  * - avoid stop execution of scheduleAtFixedRate and scheduleWithFixedDelay<br/>
  * - log them <br/>
+ * Delays are tracked by a hashed wheel timer: one timer thread moves tasks around a wheel of buckets every tick,
+ * so scheduling and cancelling are O(1) for any number of timers, and a task fires at most one tick late.<br/>
+ * Task bodies run in lanes, each lane has its own worker threads, so a slow task, for example a blocking health check,
+ * delays only tasks of its lane. Methods of this class use {@link #DEFAULT_LANE}, other lanes are available via {@link #lane(String)}.
  **/
 public class ScheduledExecutor implements ScheduledExecutorService {
 
   private static final Logger logger = LoggerFactory.getLogger(ScheduledExecutor.class);
 
-  private final ScheduledExecutorService scheduledExecutorService;
+  public static final String DEFAULT_LANE = "default";
+  public static final String METRICS_LANE = "metrics";
+  public static final String HEALTH_LANE = "health";
+  public static final String MAINTENANCE_LANE = "maintenance";
 
+  static final String TASK_LAG_MICROS_METRIC_NAME = "scheduledExecutor.taskLagMicros";
+  static final String TASK_DURATION_MICROS_METRIC_NAME = "scheduledExecutor.taskDurationMicros";
+  static final String QUEUE_SIZE_METRIC_NAME = "scheduledExecutor.queueSize";
+
+  private static final long DEFAULT_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+  private static final int DEFAULT_WHEEL_SIZE = 512;
+
+  private final Map<String, Lane> lanes = new LinkedHashMap<>();
+  private final Lane defaultLane;
+  private final long tickNanos;
+  private final long startNanos;
+  private final Queue<WheelTask<?>> newTasks = new ConcurrentLinkedQueue<>();
+  private final ArrayDeque<WheelTask<?>>[] wheel;
+  private final Thread timerThread;
+  private final List<Runnable> notFiredTasks = new ArrayList<>();
+  private volatile boolean shutdown;
+  private volatile boolean keepNotFiredTasks;
+
+  /**
+   * Creates {@link #DEFAULT_LANE} of two threads, one thread is dangerous, because some long running task can block it.
+   */
   public ScheduledExecutor() {
-    ThreadFactory threadFactory = runnable -> {
-      Thread thread = new Thread(runnable, "hh_scheduled_executor");
-      thread.setDaemon(true);
-      return thread;
-    };
+    this(Map.of(DEFAULT_LANE, 2));
+  }
+
+  /**
+   * @param laneToNumOfThreads lanes and numbers of their worker threads, {@link #DEFAULT_LANE} of two threads is added if it is absent
+   */
+  public ScheduledExecutor(Map<String, Integer> laneToNumOfThreads) {
+    this(laneToNumOfThreads, DEFAULT_TICK_NANOS, DEFAULT_WHEEL_SIZE);
+  }
+
+  @SuppressWarnings("unchecked")
+  ScheduledExecutor(Map<String, Integer> laneToNumOfThreads, long tickNanos, int wheelSize) {
+    if (Integer.bitCount(wheelSize) != 1) {
+      throw new IllegalArgumentException("wheelSize must be a power of two: " + wheelSize);
+    }
+    lanes.put(DEFAULT_LANE, new Lane(DEFAULT_LANE, laneToNumOfThreads.getOrDefault(DEFAULT_LANE, 2)));
+    laneToNumOfThreads.forEach((laneName, numOfThreads) -> lanes.putIfAbsent(laneName, new Lane(laneName, numOfThreads)));
+    this.defaultLane = lanes.get(DEFAULT_LANE);
+    this.tickNanos = tickNanos;
+    this.wheel = new ArrayDeque[wheelSize];
+    for (int i = 0; i < wheelSize; i++) {
+      wheel[i] = new ArrayDeque<>();
+    }
+
+    this.startNanos = System.nanoTime();
+    this.timerThread = new Thread(this::runTimer, "hh_scheduled_executor_timer");
+    timerThread.setDaemon(true);
+    timerThread.start();
+  }
+
+  /**
+   * @return executor that runs tasks in the given lane, its lifecycle methods affect the whole ScheduledExecutor
+   * @throws IllegalArgumentException if there is no such lane
+   */
+  public ScheduledExecutorService lane(String laneName) {
+    Lane lane = lanes.get(laneName);
+    if (lane == null) {
+      throw new IllegalArgumentException("Unknown lane " + laneName + ", known lanes are " + lanes.keySet());
+    }
+    return lane;
+  }
+
+  public Set<String> getLaneNames() {
+    return lanes.keySet();
+  }
+
+  /**
+   * Grows the lane to at least numOfThreads workers if executor is a lane of ScheduledExecutor, otherwise does nothing.<br/>
+   * Owners of blocking periodic tasks, for example data source health checks, size the lane by the number of such tasks,
+   * so that one hanging task doesn't delay the others.
+   */
+  public static void ensureNumOfThreads(ScheduledExecutorService executor, int numOfThreads) {
+    if (executor instanceof ScheduledExecutor.Lane lane) {
+      lane.ensureNumOfThreads(numOfThreads);
+    }
+  }
+
+  /**
+   * @return the lane if executor is ScheduledExecutor that has it, otherwise executor itself
+   */
+  public static ScheduledExecutorService lane(ScheduledExecutorService executor, String laneName) {
+    if (executor instanceof ScheduledExecutor scheduledExecutor && scheduledExecutor.lanes.containsKey(laneName)) {
+      return scheduledExecutor.lane(laneName);
+    }
+    return executor;
+  }
+
+  /**
+   * Sends task lag (actual start - scheduled start), task duration and the number of tasks waiting for a worker, tagged by lane.
+   */
+  public void sendMetrics(StatsDSender statsDSender, String serviceName) {
+    for (Lane lane : lanes.values()) {
+      var sender = new TaggedSender(statsDSender, Set.of(new Tag(Tag.APP_TAG_NAME, serviceName), new Tag("lane", lane.name)));
+      statsDSender.sendPeriodically(() -> {
+        sender.sendHistogram(TASK_LAG_MICROS_METRIC_NAME, lane.taskLagMicrosMetric, DEFAULT_PERCENTILES);
+        sender.sendHistogram(TASK_DURATION_MICROS_METRIC_NAME, lane.taskDurationMicrosMetric, DEFAULT_PERCENTILES);
+        sender.sendMax(QUEUE_SIZE_METRIC_NAME, lane.queueSizeMetric);
+      });
+    }
+  }
+
+  /**
+   * After {@link #shutdown()} the timer runs until the wheel is drained, after {@link #shutdownNow()} it stops at once.
+   * Lanes are shut down when the timer stops, so they run the tasks it has dispatched.
+   */
+  private void runTimer() {
+    long tick = 0;
+    while (!keepNotFiredTasks && !(shutdown && isDrainedAfterShutdown(tick))) {
+      long deadline = startNanos + tickNanos * (tick + 1);
+      long sleepNanos;
+      while (!keepNotFiredTasks && (sleepNanos = deadline - System.nanoTime()) > 0) {
+        LockSupport.parkNanos(this, sleepNanos);
+      }
+      if (keepNotFiredTasks) {
+        break;
+      }
+      transferNewTasks(tick);
+      expire(wheel[(int) (tick & (wheel.length - 1))]);
+      tick++;
+    }
+
+    List<WheelTask<?>> remainingTasks = new ArrayList<>(newTasks);
+    newTasks.clear();
+    for (ArrayDeque<WheelTask<?>> bucket : wheel) {
+      remainingTasks.addAll(bucket);
+      bucket.clear();
+    }
+    if (keepNotFiredTasks) {
+      remainingTasks.removeIf(FutureTask::isCancelled);
+      synchronized (notFiredTasks) {
+        notFiredTasks.addAll(remainingTasks);
+      }
+    } else {
+      // added concurrently with the last check of the drained wheel
+      remainingTasks.forEach(task -> task.cancel(false));
+    }
+    lanes.values().forEach(lane -> lane.workers.shutdown());
+  }
+
+  /**
+   * Cancels periodic tasks, since they would never let the wheel drain, and drops cancelled tasks.
+   * One-shot tasks are kept to fire on time, as in {@link java.util.concurrent.ScheduledThreadPoolExecutor} by default.
+   *
+   * @return true if there are no tasks left to fire
+   */
+  private boolean isDrainedAfterShutdown(long currentTick) {
+    transferNewTasks(currentTick);
+    boolean drained = true;
+    for (ArrayDeque<WheelTask<?>> bucket : wheel) {
+      bucket.removeIf(task -> {
+        if (task.isPeriodic()) {
+          task.cancel(false);
+        }
+        return task.isCancelled();
+      });
+      drained &= bucket.isEmpty();
+    }
+    return drained;
+  }
+
+  private void transferNewTasks(long currentTick) {
+    WheelTask<?> task;
+    while ((task = newTasks.poll()) != null) {
+      if (task.isCancelled()) {
+        continue;
+      }
+      long taskTick = Math.max(Math.floorDiv(task.deadlineNanos - startNanos, tickNanos), currentTick);
+      task.remainingRounds = (taskTick - currentTick) / wheel.length;
+      wheel[(int) (taskTick & (wheel.length - 1))].add(task);
+    }
+  }
+
+  private static void expire(ArrayDeque<WheelTask<?>> bucket) {
+    for (int i = bucket.size(); i > 0; i--) {
+      WheelTask<?> task = bucket.poll();
+      if (task.isCancelled()) {
+        continue;
+      }
+      if (task.remainingRounds > 0) {
+        task.remainingRounds--;
+        bucket.add(task);
+      } else {
+        task.lane.dispatch(task);
+      }
+    }
+  }
+
+  /**
+   * The timer thread drains newTasks until it stops, so a task added concurrently with shutdown
+   * is either drained by the timer thread or removed back here, otherwise its future would never complete.
+   */
+  private boolean offer(WheelTask<?> task) {
+    if (!shutdown) {
+      newTasks.add(task);
+      if (!shutdown || !newTasks.remove(task)) {
+        return true;
+      }
+    }
+    task.cancel(false);
+    return false;
+  }
 
-    // One thread is dangerous, because some long running task can block it. Let's use a little bit more.
-    this.scheduledExecutorService = new ScheduledThreadPoolExecutor(2, threadFactory);
+  private void enqueue(WheelTask<?> task) {
+    if (!offer(task)) {
+      throw new RejectedExecutionException("ScheduledExecutor is shut down");
+    }
   }
 
   @Override
   public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
-    return scheduledExecutorService.schedule(command, delay, unit);
+    return defaultLane.schedule(command, delay, unit);
   }
 
   @Override
   public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
-    return scheduledExecutorService.schedule(callable, delay, unit);
+    return defaultLane.schedule(callable, delay, unit);
   }
 
   @Override
   public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
-    Runnable wrappedCommand = wrap(command);
-    return scheduledExecutorService.scheduleAtFixedRate(wrappedCommand, initialDelay, period, unit);
+    return defaultLane.scheduleAtFixedRate(command, initialDelay, period, unit);
   }
 
   @Override
   public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
-    Runnable wrappedCommand = wrap(command);
-    return scheduledExecutorService.scheduleWithFixedDelay(wrappedCommand, initialDelay, delay, unit);
+    return defaultLane.scheduleWithFixedDelay(command, initialDelay, delay, unit);
   }
 
+  /**
+   * Rejects new tasks and cancels periodic ones. One-shot tasks that are already scheduled still fire on time,
+   * the executor terminates after the last of them is run.
+   */
   @Override
   public void shutdown() {
-    scheduledExecutorService.shutdown();
+    shutdown = true;
+    LockSupport.unpark(timerThread);
   }
 
+  /**
+   * Stops the timer at once and returns not cancelled tasks waiting in the wheel and in lane queues.
+   */
   @Override
   public List<Runnable> shutdownNow() {
-    return scheduledExecutorService.shutdownNow();
+    keepNotFiredTasks = true;
+    shutdown();
+    boolean interrupted = false;
+    while (timerThread.isAlive()) {
+      try {
+        timerThread.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+
+    List<Runnable> notStartedTasks = new ArrayList<>();
+    synchronized (notFiredTasks) {
+      notStartedTasks.addAll(notFiredTasks);
+      notFiredTasks.clear();
+    }
+    lanes.values().forEach(lane -> notStartedTasks.addAll(lane.workers.shutdownNow()));
+    return notStartedTasks;
   }
 
   @Override
   public boolean isShutdown() {
-    return scheduledExecutorService.isShutdown();
+    return shutdown;
   }
 
   @Override
   public boolean isTerminated() {
-    return scheduledExecutorService.isTerminated();
+    return shutdown && !timerThread.isAlive() && lanes.values().stream().allMatch(lane -> lane.workers.isTerminated());
   }
 
   @Override
   public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
-    return scheduledExecutorService.awaitTermination(timeout, unit);
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    TimeUnit.NANOSECONDS.timedJoin(timerThread, deadline - System.nanoTime());
+    if (timerThread.isAlive()) {
+      return false;
+    }
+    for (Lane lane : lanes.values()) {
+      if (!lane.workers.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Override
   public <T> Future<T> submit(Callable<T> task) {
-    return scheduledExecutorService.submit(task);
+    return defaultLane.submit(task);
   }
 
   @Override
   public <T> Future<T> submit(Runnable task, T result) {
-    return scheduledExecutorService.submit(task, result);
+    return defaultLane.submit(task, result);
   }
 
   @Override
   public Future<?> submit(Runnable task) {
-    return scheduledExecutorService.submit(task);
+    return defaultLane.submit(task);
   }
 
   @Override
   public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
-    return scheduledExecutorService.invokeAll(tasks);
+    return defaultLane.invokeAll(tasks);
   }
 
   @Override
   public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout,
                                        TimeUnit unit) throws InterruptedException {
-    return scheduledExecutorService.invokeAll(tasks, timeout, unit);
+    return defaultLane.invokeAll(tasks, timeout, unit);
   }
 
   @Override
   public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
-    return scheduledExecutorService.invokeAny(tasks);
+    return defaultLane.invokeAny(tasks);
   }
 
   @Override
   public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
           throws InterruptedException, ExecutionException, TimeoutException {
-    return scheduledExecutorService.invokeAny(tasks, timeout, unit);
+    return defaultLane.invokeAny(tasks, timeout, unit);
   }
 
   @Override
   public void execute(Runnable command) {
-    scheduledExecutorService.execute(command);
+    defaultLane.execute(command);
   }
 
   private static Runnable wrap(Runnable runnable) {
@@ -134,4 +397,156 @@ public class ScheduledExecutor implements ScheduledExecutorService {
       }
     };
   }
+
+  private final class Lane extends AbstractExecutorService implements ScheduledExecutorService {
+    private final String name;
+    private final ThreadPoolExecutor workers;
+    private final LogLinearHistogram taskLagMicrosMetric =
+        new LogLinearHistogram(MonitoredThreadPoolExecutor.MAX_MICROS, MonitoredThreadPoolExecutor.MICROS_SIGNIFICANT_DIGITS);
+    private final LogLinearHistogram taskDurationMicrosMetric =
+        new LogLinearHistogram(MonitoredThreadPoolExecutor.MAX_MICROS, MonitoredThreadPoolExecutor.MICROS_SIGNIFICANT_DIGITS);
+    private final Max queueSizeMetric = new Max(0);
+
+    Lane(String name, int numOfThreads) {
+      this.name = name;
+      var count = new AtomicLong(0);
+      this.workers = new ThreadPoolExecutor(numOfThreads, numOfThreads, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, String.format("hh_scheduled_executor_%s-%s", name, count.getAndIncrement()));
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+
+    synchronized void ensureNumOfThreads(int numOfThreads) {
+      if (numOfThreads > workers.getMaximumPoolSize()) {
+        workers.setMaximumPoolSize(numOfThreads);
+        workers.setCorePoolSize(numOfThreads);
+      }
+    }
+
+    void dispatch(WheelTask<?> task) {
+      try {
+        workers.execute(task);
+        queueSizeMetric.save(workers.getQueue().size());
+      } catch (RejectedExecutionException e) {
+        task.cancel(false);
+      }
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+      return schedule(new WheelTask<>(this, Executors.callable(command), unit.toNanos(delay), 0));
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+      return schedule(new WheelTask<>(this, callable, unit.toNanos(delay), 0));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+      if (period <= 0) {
+        throw new IllegalArgumentException("period must be positive: " + period);
+      }
+      return schedule(new WheelTask<>(this, Executors.callable(wrap(command)), unit.toNanos(initialDelay), unit.toNanos(period)));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+      if (delay <= 0) {
+        throw new IllegalArgumentException("delay must be positive: " + delay);
+      }
+      return schedule(new WheelTask<>(this, Executors.callable(wrap(command)), unit.toNanos(initialDelay), -unit.toNanos(delay)));
+    }
+
+    private <V> ScheduledFuture<V> schedule(WheelTask<V> task) {
+      enqueue(task);
+      return task;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+      if (shutdown) {
+        throw new RejectedExecutionException("ScheduledExecutor is shut down");
+      }
+      workers.execute(command);
+    }
+
+    @Override
+    public void shutdown() {
+      ScheduledExecutor.this.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      return ScheduledExecutor.this.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+      return ScheduledExecutor.this.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return ScheduledExecutor.this.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+      return ScheduledExecutor.this.awaitTermination(timeout, unit);
+    }
+  }
+
+  /**
+   * period > 0 means fixed rate, period < 0 means fixed delay, 0 means one-shot.<br/>
+   * remainingRounds is accessed by the timer thread only.
+   */
+  private final class WheelTask<V> extends FutureTask<V> implements RunnableScheduledFuture<V> {
+    private final Lane lane;
+    private final long period;
+    private volatile long deadlineNanos;
+    private long remainingRounds;
+
+    WheelTask(Lane lane, Callable<V> callable, long delayNanos, long period) {
+      super(callable);
+      this.lane = lane;
+      this.period = period;
+      this.deadlineNanos = System.nanoTime() + Math.max(0, delayNanos);
+    }
+
+    @Override
+    public boolean isPeriodic() {
+      return period != 0;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public void run() {
+      long taskStartNanos = System.nanoTime();
+      lane.taskLagMicrosMetric.save(MonitoredThreadPoolExecutor.toMicros(taskStartNanos - deadlineNanos));
+      boolean rescheduled = isPeriodic() ? runAndReset() : runOnce();
+      long taskEndNanos = System.nanoTime();
+      lane.taskDurationMicrosMetric.save(MonitoredThreadPoolExecutor.toMicros(taskEndNanos - taskStartNanos));
+
+      if (rescheduled) {
+        deadlineNanos = period > 0 ? deadlineNanos + period : taskEndNanos - period;
+        offer(this);
+      }
+    }
+
+    private boolean runOnce() {
+      super.run();
+      return false;
+    }
+  }
 }
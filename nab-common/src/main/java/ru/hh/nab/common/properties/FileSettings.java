@@ -6,74 +6,78 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
-import java.util.function.Function;
-import static java.util.function.Function.identity;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicReference;
 import static org.springframework.util.Assert.hasLength;
+import ru.hh.nab.common.properties.SettingsSnapshot.ValueType;
 
+/**
+ * Reads an immutable snapshot of properties taken on construction, later changes of the given properties are not visible.<br/>
+ * Sub-settings are views of the same snapshot under a key prefix, so they are created without copying.
+ * {@link #reload} atomically replaces the snapshot for these settings and all their sub-settings.
+ */
 public class FileSettings {
-  private final Properties properties;
+  private final AtomicReference<SettingsSnapshot> snapshot;
+  private final String prefix;
 
   public FileSettings(final Properties properties) {
-    this.properties = properties;
+    this(new AtomicReference<>(new SettingsSnapshot(properties)), "");
+  }
+
+  private FileSettings(AtomicReference<SettingsSnapshot> snapshot, String prefix) {
+    this.snapshot = snapshot;
+    this.prefix = prefix;
   }
 
   public String getString(String key) {
-    return properties.getProperty(key);
+    return snapshot.get().get(fullKey(key));
   }
 
   public String getString(String key, String defaultValue) {
-    return Objects.requireNonNullElse(properties.getProperty(key), defaultValue);
+    return Objects.requireNonNullElse(getString(key), defaultValue);
   }
 
   public int getInteger(String key, int defaultValue) {
-    return parseValueOrDefault(key, Integer::parseInt, defaultValue);
+    return parseValueOrDefault(key, ValueType.INTEGER, defaultValue);
   }
 
   public Integer getInteger(String key) {
-    return parseValueOrDefault(key, Integer::parseInt, null);
+    return parseValueOrDefault(key, ValueType.INTEGER, null);
   }
 
   public long getLong(final String key, long defaultValue) {
-    return parseValueOrDefault(key, Long::parseLong, defaultValue);
+    return parseValueOrDefault(key, ValueType.LONG, defaultValue);
   }
 
   public Long getLong(final String key) {
-    return parseValueOrDefault(key, Long::parseLong, null);
+    return parseValueOrDefault(key, ValueType.LONG, null);
   }
 
   public double getDouble(final String key, double defaultValue) {
-    return parseValueOrDefault(key, Double::parseDouble, defaultValue);
+    return parseValueOrDefault(key, ValueType.DOUBLE, defaultValue);
   }
 
   public Double getDouble(final String key) {
-    return parseValueOrDefault(key, Double::parseDouble, null);
+    return parseValueOrDefault(key, ValueType.DOUBLE, null);
   }
 
   public boolean getBoolean(String key, boolean defaultValue) {
-    return parseValueOrDefault(key, Boolean::parseBoolean, defaultValue);
+    return parseValueOrDefault(key, ValueType.BOOLEAN, defaultValue);
   }
 
   public Boolean getBoolean(String key) {
-    return parseValueOrDefault(key, Boolean::parseBoolean, null);
+    return parseValueOrDefault(key, ValueType.BOOLEAN, null);
   }
 
   public Properties getSubProperties(String prefix) {
     hasLength(prefix, "prefix should not be null or empty");
     final Properties subProperties = new Properties();
-    properties
-        .stringPropertyNames()
-        .stream()
-        .filter(key -> key.startsWith(prefix + "."))
-        .forEach(key -> {
-          String newKey = prefix.isEmpty() ? key : key.substring(prefix.length() + 1);
-          subProperties.put(newKey, properties.getProperty(key));
-        });
+    subProperties.putAll(snapshot.get().getSubMap(fullKey(prefix) + "."));
     return subProperties;
   }
 
   public FileSettings getSubSettings(String prefix) {
-    return new FileSettings(getSubProperties(prefix));
+    hasLength(prefix, "prefix should not be null or empty");
+    return new FileSettings(snapshot, fullKey(prefix) + ".");
   }
 
   public List<String> getStringList(String key) {
@@ -86,20 +90,34 @@ public class FileSettings {
 
   public Properties getProperties() {
     Properties propertiesCopy = new Properties();
-    propertiesCopy.putAll(this.properties);
+    propertiesCopy.putAll(getAsMap());
     return propertiesCopy;
   }
 
+  /**
+   * @return unmodifiable map, it is not copied on each call
+   */
   public Map<String, ? extends String> getAsMap() {
-    return properties
-        .stringPropertyNames()
-        .stream()
-        .collect(Collectors.toUnmodifiableMap(identity(), properties::getProperty));
+    return snapshot.get().getSubMap(prefix);
   }
 
-  private <R> R parseValueOrDefault(String key, Function<String, R> function, R defaultValue) {
-    String value = getString(key);
-    return value == null ? defaultValue : function.apply(value);
+  /**
+   * Replaces all properties of the root settings, sub-settings see the new values as well.
+   */
+  public void reload(Properties properties) {
+    if (!prefix.isEmpty()) {
+      throw new IllegalStateException("Only root settings can be reloaded, these are sub-settings of " + prefix);
+    }
+    snapshot.set(new SettingsSnapshot(properties));
+  }
+
+  private <R> R parseValueOrDefault(String key, ValueType type, R defaultValue) {
+    R value = snapshot.get().getParsed(fullKey(key), type);
+    return value == null ? defaultValue : value;
+  }
+
+  private String fullKey(String key) {
+    return prefix.isEmpty() ? key : prefix.concat(key);
   }
 
   public String getNotEmptyOrThrow(String propertyKey) {
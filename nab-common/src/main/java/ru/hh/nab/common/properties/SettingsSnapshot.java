@@ -0,0 +1,84 @@
+package ru.hh.nab.common.properties;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Immutable sorted copy of properties, so that sub-settings are a range of keys instead of a scan of all of them.<br/>
+ * Parsed values and sub-maps are cached, they can not become stale because the snapshot never changes.
+ */
+final class SettingsSnapshot {
+  private static final char AFTER_SEPARATOR = '.' + 1;
+
+  private final NavigableMap<String, String> values;
+  private final Map<ValueType, Map<String, Object>> parsedValues = new ConcurrentHashMap<>();
+  private final Map<String, Map<String, String>> subMaps = new ConcurrentHashMap<>();
+
+  SettingsSnapshot(Properties properties) {
+    TreeMap<String, String> values = new TreeMap<>();
+    for (String key : properties.stringPropertyNames()) {
+      values.put(key, properties.getProperty(key));
+    }
+    this.values = Collections.unmodifiableNavigableMap(values);
+  }
+
+  String get(String key) {
+    return values.get(key);
+  }
+
+  @SuppressWarnings("unchecked")
+  <R> R getParsed(String key, ValueType type) {
+    Map<String, Object> parsed = parsedValues.computeIfAbsent(type, t -> new ConcurrentHashMap<>());
+    Object value = parsed.get(key);
+    if (value == null) {
+      String stringValue = values.get(key);
+      if (stringValue == null) {
+        return null;
+      }
+      value = type.parser.apply(stringValue);
+      parsed.putIfAbsent(key, value);
+    }
+    return (R) value;
+  }
+
+  /**
+   * @param prefix empty or ends with a dot
+   * @return unmodifiable map of keys starting with the prefix, the prefix is cut off
+   */
+  Map<String, String> getSubMap(String prefix) {
+    if (prefix.isEmpty()) {
+      return values;
+    }
+    return subMaps.computeIfAbsent(prefix, p -> {
+      Map<String, String> subMap = new TreeMap<>();
+      range(p).forEach((key, value) -> subMap.put(key.substring(p.length()), value));
+      return Collections.unmodifiableMap(subMap);
+    });
+  }
+
+  /**
+   * @param prefix ends with a dot
+   */
+  private NavigableMap<String, String> range(String prefix) {
+    String upperBound = prefix.substring(0, prefix.length() - 1) + AFTER_SEPARATOR;
+    return values.subMap(prefix, true, upperBound, false);
+  }
+
+  enum ValueType {
+    INTEGER(Integer::parseInt),
+    LONG(Long::parseLong),
+    DOUBLE(Double::parseDouble),
+    BOOLEAN(Boolean::parseBoolean);
+
+    private final Function<String, Object> parser;
+
+    ValueType(Function<String, Object> parser) {
+      this.parser = parser;
+    }
+  }
+}
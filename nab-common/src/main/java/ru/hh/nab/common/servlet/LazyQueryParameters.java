@@ -0,0 +1,162 @@
+package ru.hh.nab.common.servlet;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read-only view of a query string that decodes parameters when they are read, not when the view is created.<br/>
+ * Escapes are validated when the view is created, so a malformed query fails there as with {@link UriComponent#decodeQuery}.<br/>
+ * {@link #get} scans the query string for the name and caches the decoded values,
+ * iteration and size decode the whole query once with {@link UriComponent#decodeQuery}.<br/>
+ * Thread-safe and immutable: it can be shared with other threads, for example in HttpClientContext.
+ */
+final class LazyQueryParameters extends AbstractMap<String, List<String>> {
+  private static final List<String> ABSENT = Collections.emptyList();
+
+  private final String queryString;
+  private final boolean decodeNames;
+  private final boolean decodeValues;
+  private final Map<String, List<String>> decodedParameters = new ConcurrentHashMap<>();
+  private volatile Map<String, List<String>> allParameters;
+
+  /**
+   * @throws IllegalArgumentException if the query string has a malformed escape in a part that is decoded
+   */
+  LazyQueryParameters(String queryString, boolean decodeNames, boolean decodeValues) {
+    this.queryString = queryString == null ? "" : queryString;
+    this.decodeNames = decodeNames;
+    this.decodeValues = decodeValues;
+    if (decodeNames || decodeValues) {
+      validateEscapes();
+    }
+  }
+
+  @Override
+  public List<String> get(Object key) {
+    if (!(key instanceof String name)) {
+      return null;
+    }
+    Map<String, List<String>> parameters = allParameters;
+    if (parameters != null) {
+      return parameters.get(name);
+    }
+    List<String> values = decodedParameters.get(name);
+    if (values == null) {
+      values = findValues(name);
+      decodedParameters.putIfAbsent(name, values);
+    }
+    return values == ABSENT ? null : values;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return queryString.isEmpty() || super.isEmpty();
+  }
+
+  @Override
+  public Set<Entry<String, List<String>>> entrySet() {
+    Map<String, List<String>> parameters = allParameters;
+    if (parameters == null) {
+      parameters = UriComponent.decodeQuery(queryString, decodeNames, decodeValues);
+      parameters.replaceAll((name, values) -> Collections.unmodifiableList(values));
+      parameters = Collections.unmodifiableMap(parameters);
+      allParameters = parameters;
+    }
+    return parameters.entrySet();
+  }
+
+  /**
+   * @return unmodifiable values or {@link #ABSENT}
+   */
+  private List<String> findValues(String name) {
+    List<String> values = null;
+    int startIndex = 0;
+    int length = queryString.length();
+    while (startIndex < length) {
+      int endIndex = queryString.indexOf('&', startIndex);
+      if (endIndex == -1) {
+        endIndex = length;
+      }
+      int equalsIndex = queryString.indexOf('=', startIndex);
+      int nameEndIndex = equalsIndex == -1 || equalsIndex > endIndex ? endIndex : equalsIndex;
+      if (nameEndIndex > startIndex && nameMatches(name, startIndex, nameEndIndex)) {
+        if (values == null) {
+          values = new ArrayList<>(1);
+        }
+        values.add(nameEndIndex == endIndex ? "" : decode(queryString.substring(nameEndIndex + 1, endIndex), decodeValues));
+      }
+      startIndex = endIndex + 1;
+    }
+    return values == null ? ABSENT : Collections.unmodifiableList(values);
+  }
+
+  private void validateEscapes() {
+    int startIndex = 0;
+    int length = queryString.length();
+    while (startIndex < length) {
+      int endIndex = queryString.indexOf('&', startIndex);
+      if (endIndex == -1) {
+        endIndex = length;
+      }
+      int equalsIndex = queryString.indexOf('=', startIndex);
+      int nameEndIndex = equalsIndex == -1 || equalsIndex > endIndex ? endIndex : equalsIndex;
+      if (nameEndIndex > startIndex) {
+        if (decodeNames) {
+          validateEscapes(startIndex, nameEndIndex);
+        }
+        if (decodeValues && nameEndIndex < endIndex) {
+          validateEscapes(nameEndIndex + 1, endIndex);
+        }
+      }
+      startIndex = endIndex + 1;
+    }
+  }
+
+  /**
+   * Same checks as {@link URLDecoder#decode(String, java.nio.charset.Charset)} makes, without decoding.
+   */
+  private void validateEscapes(int startIndex, int endIndex) {
+    for (int i = startIndex; i < endIndex; i++) {
+      if (queryString.charAt(i) == '%') {
+        if (i + 2 >= endIndex || Character.digit(queryString.charAt(i + 1), 16) == -1
+            || Character.digit(queryString.charAt(i + 2), 16) == -1) {
+          throw new IllegalArgumentException("URLDecoder: Illegal hex characters in escape (%) pattern");
+        }
+        i += 2;
+      }
+    }
+  }
+
+  private boolean nameMatches(String name, int startIndex, int endIndex) {
+    if (decodeNames && needsDecoding(startIndex, endIndex)) {
+      return name.equals(decode(queryString.substring(startIndex, endIndex), true));
+    }
+    return endIndex - startIndex == name.length() && queryString.regionMatches(startIndex, name, 0, name.length());
+  }
+
+  private boolean needsDecoding(int startIndex, int endIndex) {
+    for (int i = startIndex; i < endIndex; i++) {
+      char c = queryString.charAt(i);
+      if (c == '%' || c == '+') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String decode(String value, boolean decode) {
+    return decode ? URLDecoder.decode(value, StandardCharsets.UTF_8) : value;
+  }
+}
@@ -35,6 +35,15 @@ public final class UriComponent {
     return result;
   }
 
+  /**
+   * Same as {@link #decodeQuery}, but parameters are decoded only when they are read, see {@link LazyQueryParameters}.<br/>
+   * The returned map is immutable and can be shared between threads. A malformed escape fails here, as with decodeQuery.<br/>
+   * jmh test {@link ru.hh.nab.performance.QueryDecoderPerformanceTest}
+   */
+  public static Map<String, List<String>> decodeQueryLazily(String queryString, boolean decodeNames, boolean decodeValues) {
+    return new LazyQueryParameters(queryString, decodeNames, decodeValues);
+  }
+
   private static void parseKVDecodeIfNeededAddToResult(Map<String, List<String>> params, String param, boolean decodeNames,
                                                        boolean decodeValues) {
     int equalsIndex = param.indexOf('=');
@@ -0,0 +1,140 @@
+package ru.hh.nab.common.cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class SingleFlightLoaderTest {
+
+  @Test
+  public void concurrentCallersShareOneLoad() throws InterruptedException, ExecutionException {
+    AtomicInteger numOfLoads = new AtomicInteger();
+    CountDownLatch loadStarted = new CountDownLatch(1);
+    CountDownLatch releaseLoad = new CountDownLatch(1);
+    var loader = new SingleFlightLoader<String, String>(key -> {
+      numOfLoads.incrementAndGet();
+      loadStarted.countDown();
+      try {
+        releaseLoad.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return key + "-value";
+    }, Runnable::run, 10);
+
+    ExecutorService executorService = Executors.newFixedThreadPool(4);
+    List<Future<String>> futures = new ArrayList<>();
+    futures.add(executorService.submit(() -> loader.get("key")));
+    assertTrue(loadStarted.await(10, TimeUnit.SECONDS));
+    for (int i = 0; i < 3; i++) {
+      futures.add(executorService.submit(() -> loader.get("key")));
+    }
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (loader.getCoalescedWaitCount() < 3 && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    releaseLoad.countDown();
+
+    for (Future<String> future : futures) {
+      assertEquals("key-value", future.get());
+    }
+    assertEquals(1, numOfLoads.get());
+    assertEquals(3, loader.getCoalescedWaitCount());
+    executorService.shutdown();
+  }
+
+  @Test
+  public void staleValueIsServedWhileRevalidating() {
+    AtomicLong nanos = new AtomicLong();
+    AtomicInteger version = new AtomicInteger();
+    List<Runnable> backgroundLoads = new ArrayList<>();
+    var loader = new SingleFlightLoader<String, Integer>(
+        key -> version.incrementAndGet(),
+        backgroundLoads::add,
+        10,
+        Duration.ofSeconds(5),
+        Duration.ofSeconds(10),
+        Duration.ofSeconds(5),
+        nanos::get
+    );
+    assertEquals(1, loader.get("key"));
+
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(6));
+    assertEquals(1, loader.get("key"));
+    assertEquals(1, loader.get("key"));
+    assertEquals(1, backgroundLoads.size());
+    backgroundLoads.remove(0).run();
+    assertEquals(2, loader.get("key"));
+
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(11));
+    assertEquals(2, loader.get("key"));
+    assertEquals(1, loader.getStaleHitCount());
+    backgroundLoads.remove(0).run();
+    assertEquals(3, loader.get("key"));
+
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(15));
+    assertEquals(4, loader.get("key"));
+    assertEquals(0, backgroundLoads.size());
+  }
+
+  @Test
+  public void failedLoadIsNotCached() {
+    AtomicInteger numOfLoads = new AtomicInteger();
+    var loader = new SingleFlightLoader<String, String>(key -> {
+      if (numOfLoads.incrementAndGet() == 1) {
+        throw new IllegalStateException("test");
+      }
+      return "value";
+    }, Runnable::run, 10);
+
+    assertThrows(IllegalStateException.class, () -> loader.get("key"));
+    assertEquals("value", loader.get("key"));
+    assertEquals("value", loader.get("key"));
+    assertEquals(2, numOfLoads.get());
+  }
+
+  @Test
+  public void loadInvalidatedWhileInProgressIsNotCached() {
+    AtomicInteger version = new AtomicInteger();
+    List<Runnable> backgroundLoads = new ArrayList<>();
+    var loader = new SingleFlightLoader<String, Integer>(key -> version.incrementAndGet(), backgroundLoads::add, 10);
+
+    loader.getAsync("key");
+    loader.invalidate("key");
+    loader.getAsync("key");
+    assertEquals(2, backgroundLoads.size());
+    backgroundLoads.get(1).run();
+    backgroundLoads.get(0).run();
+    assertEquals(1, loader.get("key"));
+
+    loader.getAsync("other");
+    loader.invalidateAll();
+    backgroundLoads.get(2).run();
+    assertEquals(0, loader.size());
+    assertEquals(4, loader.get("other"));
+  }
+
+  @Test
+  public void getAsyncLoadsOnExecutor() throws ExecutionException, InterruptedException {
+    ExecutorService executorService = Executors.newSingleThreadExecutor();
+    var loader = new SingleFlightLoader<String, String>(key -> Thread.currentThread().getName(), executorService, 10);
+
+    String loadingThreadName = loader.getAsync("key").get();
+    assertNotEquals(Thread.currentThread().getName(), loadingThreadName);
+    assertEquals(loadingThreadName, loader.getAsync("key").get());
+    executorService.shutdown();
+  }
+}
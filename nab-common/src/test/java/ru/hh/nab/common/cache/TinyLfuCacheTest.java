@@ -0,0 +1,102 @@
+package ru.hh.nab.common.cache;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class TinyLfuCacheTest {
+
+  @Test
+  public void sizeIsBounded() {
+    TinyLfuCache<Integer, Integer> cache = new TinyLfuCache<>(100);
+    for (int i = 0; i < 1000; i++) {
+      cache.put(i, i);
+    }
+
+    assertEquals(100, cache.size());
+    assertEquals(100, cache.getWeight());
+    assertEquals(900, cache.getEvictionCount());
+  }
+
+  @Test
+  public void frequentlyUsedEntriesSurviveScan() {
+    TinyLfuCache<Integer, Integer> cache = new TinyLfuCache<>(100);
+    for (int i = 0; i < 50; i++) {
+      cache.put(i, i);
+    }
+    for (int round = 0; round < 5; round++) {
+      for (int i = 0; i < 50; i++) {
+        cache.get(i);
+      }
+    }
+
+    for (int i = 1000; i < 11000; i++) {
+      cache.computeIfAbsent(i, key -> key);
+      cache.get(i % 50);
+    }
+
+    for (int i = 0; i < 50; i++) {
+      assertEquals(i, cache.get(i));
+    }
+  }
+
+  @Test
+  public void weightIsBounded() {
+    TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(100, (key, value) -> value.length(), null);
+    for (int i = 0; i < 100; i++) {
+      cache.put(i, "0123456789");
+    }
+    cache.put(-1, "x".repeat(101));
+
+    assertTrue(cache.getWeight() <= 100);
+    assertEquals(10, cache.size());
+    assertNull(cache.get(-1));
+  }
+
+  @Test
+  public void sketchIsSizedByEntriesNotByWeight() {
+    TinyLfuCache<Integer, byte[]> cache = new TinyLfuCache<>(1L << 40, (key, value) -> value.length, null);
+    for (int i = 0; i < 1000; i++) {
+      cache.put(i, new byte[1024]);
+    }
+
+    assertEquals(1000, cache.size());
+    assertEquals(1000 * 1024, cache.getWeight());
+    assertEquals(0, cache.getEvictionCount());
+  }
+
+  @Test
+  public void entriesExpireAfterWrite() {
+    AtomicLong nanos = new AtomicLong();
+    TinyLfuCache<String, String> cache = new TinyLfuCache<>(10, (key, value) -> 1, Duration.ofSeconds(1), nanos::get);
+    cache.put("key", "value");
+    nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+    assertEquals("value", cache.get("key"));
+    assertEquals(1, cache.getHitCount());
+
+    nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+    assertNull(cache.get("key"));
+    assertEquals(1, cache.getMissCount());
+    assertEquals(0, cache.size());
+    assertEquals("new value", cache.computeIfAbsent("key", key -> "new value"));
+  }
+
+  @Test
+  public void removeAndInvalidateAll() {
+    TinyLfuCache<Integer, Integer> cache = new TinyLfuCache<>(10);
+    for (int i = 0; i < 5; i++) {
+      cache.put(i, i);
+    }
+    cache.remove(0);
+    assertNull(cache.get(0));
+    assertEquals(4, cache.getWeight());
+
+    cache.invalidateAll();
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getWeight());
+  }
+}
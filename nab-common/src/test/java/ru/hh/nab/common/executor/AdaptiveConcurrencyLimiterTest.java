@@ -0,0 +1,124 @@
+package ru.hh.nab.common.executor;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import ru.hh.nab.common.properties.FileSettings;
+import ru.hh.nab.metrics.StatsDSender;
+
+public class AdaptiveConcurrencyLimiterTest {
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final int WINDOW_SIZE = 10;
+
+  @Test
+  public void tryAcquireRespectsLimit() {
+    var limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 50 * MS, WINDOW_SIZE);
+    assertTrue(limiter.tryAcquire());
+    assertTrue(limiter.tryAcquire());
+    assertFalse(limiter.tryAcquire());
+
+    limiter.release();
+    assertTrue(limiter.tryAcquire());
+    assertEquals(2, limiter.getInFlight());
+  }
+
+  @Test
+  public void limitGrowsWhileLatencyIsStable() {
+    var limiter = new AdaptiveConcurrencyLimiter(10, 1, 100, 50 * MS, WINDOW_SIZE);
+    for (int window = 0; window < 20; window++) {
+      runWindow(limiter, 0, 10 * MS);
+    }
+    assertTrue(limiter.getLimit() > 10, "limit: " + limiter.getLimit());
+  }
+
+  @Test
+  public void limitShrinksWhenLatencyGrows() {
+    var limiter = new AdaptiveConcurrencyLimiter(50, 1, 100, 50 * MS, WINDOW_SIZE);
+    for (int window = 0; window < 5; window++) {
+      runWindow(limiter, 0, 10 * MS);
+    }
+    int stableLimit = limiter.getLimit();
+    for (int window = 0; window < 5; window++) {
+      runWindow(limiter, 0, 100 * MS);
+    }
+    assertTrue(limiter.getLimit() < stableLimit, "limit: " + limiter.getLimit() + ", stable limit: " + stableLimit);
+  }
+
+  @Test
+  public void limitBacksOffOnQueueLagDownToMinLimit() {
+    var limiter = new AdaptiveConcurrencyLimiter(20, 5, 100, 50 * MS, WINDOW_SIZE);
+    runWindow(limiter, 100 * MS, 10 * MS);
+    assertEquals(18, limiter.getLimit());
+
+    for (int window = 0; window < 100; window++) {
+      runWindow(limiter, 100 * MS, 10 * MS);
+    }
+    assertEquals(5, limiter.getLimit());
+  }
+
+  @Test
+  public void limitDoesNotGrowWhenUnderused() {
+    var limiter = new AdaptiveConcurrencyLimiter(20, 1, 100, 50 * MS, WINDOW_SIZE);
+    for (int i = 0; i < 10 * WINDOW_SIZE; i++) {
+      assertTrue(limiter.tryAcquire());
+      limiter.release(0, 10 * MS);
+    }
+    assertEquals(20, limiter.getLimit());
+  }
+
+  @Test
+  public void executorRejectsTasksOverLimit() throws InterruptedException {
+    var properties = new Properties();
+    properties.setProperty("minSize", "4");
+    properties.setProperty("maxSize", "4");
+    properties.setProperty("queueSize", "10");
+    properties.setProperty("limiter.enabled", "true");
+    properties.setProperty("limiter.initialLimit", "2");
+    ThreadPoolExecutor executor = MonitoredThreadPoolExecutor.create(new FileSettings(properties), "test", mock(StatsDSender.class), "test");
+    AdaptiveConcurrencyLimiter limiter = ((MonitoredThreadPoolExecutor) executor).getConcurrencyLimiter();
+    assertNotNull(limiter);
+
+    CountDownLatch latch = new CountDownLatch(1);
+    Runnable task = () -> {
+      try {
+        latch.await();
+      } catch (InterruptedException e) {
+        //
+      }
+    };
+    executor.execute(task);
+    executor.execute(task);
+    assertThrows(RejectedExecutionException.class, () -> executor.execute(task));
+    assertEquals(2, limiter.getInFlight());
+
+    latch.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    assertEquals(0, limiter.getInFlight());
+  }
+
+  private static void runWindow(AdaptiveConcurrencyLimiter limiter, long queueLagNanos, long durationNanos) {
+    int limit = limiter.getLimit();
+    for (int i = 0; i < limit; i++) {
+      assertTrue(limiter.tryAcquire());
+    }
+    for (int i = 0; i < WINDOW_SIZE; i++) {
+      if (i >= limit) {
+        assertTrue(limiter.tryAcquire());
+      }
+      limiter.release(queueLagNanos, durationNanos);
+    }
+    while (limiter.getInFlight() > 0) {
+      limiter.release();
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package ru.hh.nab.common.executor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import ru.hh.nab.common.mdc.MDC;
+
+public class ContextPropagatorTest {
+  private static final ThreadLocal<String> CUSTOM_CONTEXT = new ThreadLocal<>();
+
+  private final AtomicInteger numOfCaptures = new AtomicInteger();
+  private final ContextCarrier<String> customCarrier = new ContextCarrier<>() {
+    @Override
+    public String capture() {
+      numOfCaptures.incrementAndGet();
+      return CUSTOM_CONTEXT.get();
+    }
+
+    @Override
+    public Scope attach(String context) {
+      String previousContext = CUSTOM_CONTEXT.get();
+      CUSTOM_CONTEXT.set(context);
+      return () -> CUSTOM_CONTEXT.set(previousContext);
+    }
+  };
+  private final ContextPropagator contextPropagator = new ContextPropagator(List.of(new MdcContextCarrier(), customCarrier));
+
+  @Test
+  public void contextIsPropagatedAndRestored() throws ExecutionException, InterruptedException {
+    ExecutorService executorService = contextPropagator.wrap(Executors.newSingleThreadExecutor());
+    assertEquals("null null", executorService.submit(ContextPropagatorTest::currentContext).get());
+    MDC.setRequestId("rid");
+    CUSTOM_CONTEXT.set("custom");
+    try {
+      assertEquals("rid custom", executorService.submit(ContextPropagatorTest::currentContext).get());
+      assertEquals("rid custom", CompletableFuture.supplyAsync(ContextPropagatorTest::currentContext, executorService).get());
+    } finally {
+      MDC.clearRequestId();
+      CUSTOM_CONTEXT.remove();
+    }
+
+    assertEquals("null null", executorService.submit(ContextPropagatorTest::currentContext).get());
+    executorService.shutdown();
+    assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void invokeAllCapturesOnce() throws ExecutionException, InterruptedException {
+    ExecutorService executorService = contextPropagator.wrap(Executors.newFixedThreadPool(4));
+    CUSTOM_CONTEXT.set("custom");
+    try {
+      List<Future<String>> futures = executorService.invokeAll(List.of(CUSTOM_CONTEXT::get, CUSTOM_CONTEXT::get, CUSTOM_CONTEXT::get));
+      for (Future<String> future : futures) {
+        assertEquals("custom", future.get());
+      }
+      assertEquals(1, numOfCaptures.get());
+    } finally {
+      CUSTOM_CONTEXT.remove();
+    }
+    executorService.shutdown();
+  }
+
+  @Test
+  public void emptySnapshotDoesNotWrap() {
+    ContextSnapshot snapshot = contextPropagator.capture();
+    assertTrue(snapshot.isEmpty());
+    Runnable task = () -> { };
+    assertSame(task, snapshot.wrap(task));
+  }
+
+  @Test
+  public void scopeRestoresExecutingThreadContext() {
+    CUSTOM_CONTEXT.set("submitter");
+    ContextSnapshot snapshot = contextPropagator.capture();
+    assertFalse(snapshot.isEmpty());
+
+    CUSTOM_CONTEXT.set("executor");
+    snapshot.wrap(() -> assertEquals("submitter", CUSTOM_CONTEXT.get())).run();
+    assertEquals("executor", CUSTOM_CONTEXT.get());
+
+    CUSTOM_CONTEXT.remove();
+    assertNull(CUSTOM_CONTEXT.get());
+  }
+
+  @Test
+  public void mdcIsCopiedOnlyAfterChange() {
+    var mdcContextCarrier = new MdcContextCarrier();
+    assertNull(mdcContextCarrier.capture());
+    MDC.setRequestId("rid");
+    try {
+      Map<String, String> context = mdcContextCarrier.capture();
+      assertSame(context, mdcContextCarrier.capture());
+
+      MDC.setRequestId("rid2");
+      assertEquals("rid2", mdcContextCarrier.capture().get(MDC.REQUEST_ID_MDC_KEY));
+      assertEquals("rid", context.get(MDC.REQUEST_ID_MDC_KEY));
+    } finally {
+      MDC.clearRequestId();
+    }
+    assertNull(mdcContextCarrier.capture());
+  }
+
+  private static String currentContext() {
+    return MDC.getRequestId().orElse(null) + " " + CUSTOM_CONTEXT.get();
+  }
+}
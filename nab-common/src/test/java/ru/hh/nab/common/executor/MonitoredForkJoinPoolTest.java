@@ -0,0 +1,123 @@
+package ru.hh.nab.common.executor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static java.util.stream.Collectors.toSet;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import ru.hh.nab.common.mdc.MDC;
+import ru.hh.nab.common.properties.FileSettings;
+import ru.hh.nab.metrics.StatsDSender;
+
+public class MonitoredForkJoinPoolTest {
+
+  @Test
+  public void testTypeForkJoin() {
+    var properties = new Properties();
+    properties.setProperty("type", "forkJoin");
+    properties.setProperty("maxSize", "3");
+
+    ExecutorService executorService = MonitoredThreadPoolExecutor.createExecutorService(
+        new FileSettings(properties),
+        "test",
+        mock(StatsDSender.class),
+        "test"
+    );
+
+    assertTrue(executorService instanceof MonitoredForkJoinPool);
+    assertEquals(3, ((MonitoredForkJoinPool) executorService).getParallelism());
+    executorService.shutdown();
+  }
+
+  @Test
+  public void testRequestIdIsPropagated() throws InterruptedException, ExecutionException {
+    MonitoredForkJoinPool pool = MonitoredForkJoinPool.create(new FileSettings(new Properties()), "test", mock(StatsDSender.class), "test");
+    MDC.setRequestId("rid");
+    try {
+      assertEquals("rid", pool.submit(() -> MDC.getRequestId().orElse(null)).get());
+      assertEquals("rid", CompletableFuture.supplyAsync(() -> MDC.getRequestId().orElse(null), pool).get());
+
+      List<Callable<String>> tasks = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        tasks.add(() -> MDC.getRequestId().orElse(null));
+      }
+      for (Future<String> future : pool.invokeAll(tasks)) {
+        assertEquals("rid", future.get());
+      }
+    } finally {
+      MDC.clearRequestId();
+    }
+
+    assertFalse(pool.submit(() -> MDC.getRequestId().isPresent()).get());
+    pool.shutdown();
+    assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testRequestIdIsPropagatedToForkJoinTasks() throws InterruptedException, ExecutionException {
+    var properties = new Properties();
+    properties.setProperty("maxSize", "4");
+    MonitoredForkJoinPool pool = MonitoredForkJoinPool.create(new FileSettings(properties), "test", mock(StatsDSender.class), "test");
+    Queue<String> leafRequestIds = new ConcurrentLinkedQueue<>();
+    Queue<String> leafThreads = new ConcurrentLinkedQueue<>();
+    MDC.setRequestId("rid");
+    try {
+      assertEquals("rid", pool.invoke(ForkJoinTask.adapt(() -> MDC.getRequestId().orElse(null))));
+      assertEquals("rid", pool.submit(ForkJoinTask.adapt(() -> MDC.getRequestId().orElse(null))).get());
+
+      pool.invoke(new Split(0, 64, leafRequestIds, leafThreads));
+    } finally {
+      MDC.clearRequestId();
+    }
+
+    assertEquals(64, leafRequestIds.size());
+    assertEquals(Set.of("rid"), leafRequestIds.stream().collect(toSet()));
+    assertTrue(leafThreads.stream().distinct().count() > 1, "subtasks were not stolen");
+    pool.shutdown();
+    assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+  }
+
+  private static final class Split extends ContextAwareRecursiveAction {
+    private final int from;
+    private final int to;
+    private final Queue<String> leafRequestIds;
+    private final Queue<String> leafThreads;
+
+    private Split(int from, int to, Queue<String> leafRequestIds, Queue<String> leafThreads) {
+      this.from = from;
+      this.to = to;
+      this.leafRequestIds = leafRequestIds;
+      this.leafThreads = leafThreads;
+    }
+
+    @Override
+    protected void computeInContext() {
+      if (to - from == 1) {
+        try {
+          Thread.sleep(5);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        leafRequestIds.add(MDC.getRequestId().orElse("none"));
+        leafThreads.add(Thread.currentThread().getName());
+        return;
+      }
+      int middle = (from + to) / 2;
+      invokeAll(new Split(from, middle, leafRequestIds, leafThreads), new Split(middle, to, leafRequestIds, leafThreads));
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package ru.hh.nab.common.executor;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import ru.hh.nab.common.properties.FileSettings;
+import ru.hh.nab.metrics.StatsDSender;
+
+public class MonitoredVirtualThreadExecutorTest {
+
+  @Test
+  public void testTypeVirtual() {
+    var properties = new Properties();
+    properties.setProperty("type", "virtual");
+
+    ExecutorService executorService = MonitoredThreadPoolExecutor.createExecutorService(
+        new FileSettings(properties),
+        "test",
+        mock(StatsDSender.class),
+        "test"
+    );
+
+    if (MonitoredVirtualThreadExecutor.isSupported()) {
+      assertTrue(executorService instanceof MonitoredVirtualThreadExecutor);
+    } else {
+      assertTrue(executorService instanceof ThreadPoolExecutor);
+    }
+    executorService.shutdown();
+  }
+
+  @Test
+  public void testCreateFailsWithoutVirtualThreads() {
+    assumeFalse(MonitoredVirtualThreadExecutor.isSupported());
+
+    assertThrows(
+        IllegalStateException.class,
+        () -> MonitoredVirtualThreadExecutor.create(new FileSettings(new Properties()), "test", mock(StatsDSender.class), "test")
+    );
+  }
+
+  @Test
+  public void testConcurrencyIsLimited() throws InterruptedException {
+    assumeTrue(MonitoredVirtualThreadExecutor.isSupported());
+
+    var properties = new Properties();
+    properties.setProperty("maxSize", "2");
+    properties.setProperty("queueSize", "2");
+    var executor = MonitoredVirtualThreadExecutor.create(new FileSettings(properties), "test", mock(StatsDSender.class), "test");
+
+    CountDownLatch latch = new CountDownLatch(1);
+    AtomicInteger started = new AtomicInteger();
+    Runnable task = () -> {
+      started.incrementAndGet();
+      try {
+        latch.await();
+      } catch (InterruptedException e) {
+        //
+      }
+    };
+    for (int i = 0; i < 4; i++) {
+      executor.execute(task);
+    }
+    assertThrows(RejectedExecutionException.class, () -> executor.execute(task));
+
+    while (executor.getActiveCount() < 2) {
+      Thread.sleep(1);
+    }
+    assertEquals(2, started.get());
+
+    latch.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    assertEquals(4, started.get());
+    assertThrows(RejectedExecutionException.class, () -> executor.execute(task));
+  }
+}
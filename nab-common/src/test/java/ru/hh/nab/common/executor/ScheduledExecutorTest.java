@@ -0,0 +1,143 @@
+package ru.hh.nab.common.executor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class ScheduledExecutorTest {
+
+  @Test
+  public void scheduleFiresAfterDelayLongerThanWheelRound() throws ExecutionException, InterruptedException, TimeoutException {
+    var executor = new ScheduledExecutor(Map.of(), TimeUnit.MILLISECONDS.toNanos(1), 4);
+    long start = System.nanoTime();
+    ScheduledFuture<Long> future = executor.schedule(System::nanoTime, 30, TimeUnit.MILLISECONDS);
+
+    assertTrue(future.get(10, TimeUnit.SECONDS) - start >= TimeUnit.MILLISECONDS.toNanos(30));
+    executor.shutdown();
+  }
+
+  @Test
+  public void fixedRateTaskSurvivesExceptionsAndCanBeCancelled() throws InterruptedException {
+    var executor = new ScheduledExecutor(Map.of(), TimeUnit.MILLISECONDS.toNanos(1), 8);
+    AtomicInteger runs = new AtomicInteger();
+    CountDownLatch latch = new CountDownLatch(3);
+    ScheduledFuture<?> future = executor.scheduleAtFixedRate(() -> {
+      runs.incrementAndGet();
+      latch.countDown();
+      throw new IllegalStateException("test");
+    }, 0, 5, TimeUnit.MILLISECONDS);
+
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    future.cancel(false);
+    int runsAfterCancel = runs.get();
+    Thread.sleep(50);
+    assertTrue(runs.get() <= runsAfterCancel + 1);
+    executor.shutdown();
+  }
+
+  @Test
+  public void slowTaskDoesNotBlockOtherLanes() throws InterruptedException {
+    var executor = new ScheduledExecutor(
+        Map.of(ScheduledExecutor.DEFAULT_LANE, 1, ScheduledExecutor.METRICS_LANE, 1),
+        TimeUnit.MILLISECONDS.toNanos(1),
+        64
+    );
+    CountDownLatch release = new CountDownLatch(1);
+    executor.execute(() -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+
+    CountDownLatch metricsSent = new CountDownLatch(1);
+    executor.lane(ScheduledExecutor.METRICS_LANE).schedule(metricsSent::countDown, 5, TimeUnit.MILLISECONDS);
+    assertTrue(metricsSent.await(10, TimeUnit.SECONDS));
+
+    release.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void unknownLane() {
+    var executor = new ScheduledExecutor();
+    assertThrows(IllegalArgumentException.class, () -> executor.lane("unknown"));
+    assertEquals(executor, ScheduledExecutor.lane(executor, "unknown"));
+    executor.shutdown();
+  }
+
+  @Test
+  public void shutdownCancelsPeriodicTasks() throws InterruptedException {
+    var executor = new ScheduledExecutor();
+    ScheduledFuture<?> fixedRateFuture = executor.scheduleAtFixedRate(() -> { }, 1, 1, TimeUnit.HOURS);
+    ScheduledFuture<?> fixedDelayFuture = executor.scheduleWithFixedDelay(() -> { }, 1, 1, TimeUnit.HOURS);
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    assertTrue(executor.isTerminated());
+    assertTrue(fixedRateFuture.isCancelled());
+    assertTrue(fixedDelayFuture.isCancelled());
+    assertThrows(RejectedExecutionException.class, () -> executor.schedule(() -> { }, 1, TimeUnit.HOURS));
+  }
+
+  @Test
+  public void shutdownFiresScheduledOneShotTasks() throws InterruptedException, ExecutionException, TimeoutException {
+    var executor = new ScheduledExecutor(Map.of(), TimeUnit.MILLISECONDS.toNanos(1), 8);
+    ScheduledFuture<String> future = executor.schedule(() -> "fired", 50, TimeUnit.MILLISECONDS);
+    ScheduledFuture<?> periodicFuture = executor.scheduleAtFixedRate(() -> { }, 10, 10, TimeUnit.MILLISECONDS);
+    executor.shutdown();
+
+    assertFalse(executor.isTerminated());
+    assertEquals("fired", future.get(10, TimeUnit.SECONDS));
+    assertTrue(periodicFuture.isCancelled());
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void shutdownNowReturnsScheduledTasks() throws InterruptedException {
+    var executor = new ScheduledExecutor(Map.of(), TimeUnit.MILLISECONDS.toNanos(1), 8);
+    ScheduledFuture<?> future = executor.schedule(() -> { }, 1, TimeUnit.HOURS);
+    ScheduledFuture<?> cancelledFuture = executor.schedule(() -> { }, 1, TimeUnit.HOURS);
+    cancelledFuture.cancel(false);
+    Thread.sleep(10);
+
+    List<Runnable> notStartedTasks = executor.shutdownNow();
+
+    assertEquals(List.of(future), notStartedTasks);
+    assertFalse(future.isDone());
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void healthLaneIsSizedByNumOfTasks() throws InterruptedException {
+    var executor = new ScheduledExecutor(Map.of(ScheduledExecutor.HEALTH_LANE, 1), TimeUnit.MILLISECONDS.toNanos(1), 64);
+    ScheduledExecutorService healthLane = executor.lane(ScheduledExecutor.HEALTH_LANE);
+    ScheduledExecutor.ensureNumOfThreads(healthLane, 2);
+
+    CountDownLatch release = new CountDownLatch(1);
+    healthLane.schedule(() -> {
+      release.await();
+      return null;
+    }, 0, TimeUnit.MILLISECONDS);
+    CountDownLatch checked = new CountDownLatch(1);
+    healthLane.scheduleWithFixedDelay(checked::countDown, 5, 5, TimeUnit.MILLISECONDS);
+    assertTrue(checked.await(10, TimeUnit.SECONDS));
+
+    release.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+  }
+}
@@ -2,7 +2,9 @@ package ru.hh.nab.common.mdc;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 
 public class MDCTest {
@@ -44,7 +46,10 @@ public class MDCTest {
 
   @Test
   public void testGenerateRequestId() {
-    assertEquals(32, MDC.generateRequestId().length());
+    String requestId = MDC.generateRequestId();
+    assertEquals(32, requestId.length());
+    assertTrue(requestId.matches("\\d{13}[0-9a-f]{19}"));
+    assertNotEquals(requestId, MDC.generateRequestId());
   }
 
   @Test
@@ -1,6 +1,7 @@
 package ru.hh.nab.common.properties;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -107,4 +108,36 @@ public class FileSettingsTest {
     assertEquals("newValue", properties.getProperty("strProperty"));
     assertEquals("value", fileSettings.getString("strProperty"));
   }
+
+  @Test
+  public void testNestedSubSettings() {
+    Properties properties = new Properties();
+    properties.put("namespace.boolProperty", "true");
+    properties.put("namespace.nested.intProperty", "7");
+    properties.put("namespace-suffix.strProperty", "value");
+    FileSettings settings = new FileSettings(properties);
+    FileSettings nestedSettings = settings.getSubSettings("namespace").getSubSettings("nested");
+
+    assertEquals(7, nestedSettings.getInteger("intProperty"));
+    assertEquals(Map.of("intProperty", "7"), nestedSettings.getAsMap());
+    assertEquals(Map.of("intProperty", "7"), settings.getSubSettings("namespace").getSubProperties("nested"));
+    assertEquals(Map.of("boolProperty", "true", "nested.intProperty", "7"), settings.getSubSettings("namespace").getAsMap());
+  }
+
+  @Test
+  public void testReload() {
+    Properties properties = new Properties();
+    properties.put("namespace.intProperty", "1");
+    FileSettings settings = new FileSettings(properties);
+    FileSettings subSettings = settings.getSubSettings("namespace");
+    assertEquals(1, subSettings.getInteger("intProperty"));
+
+    properties.put("namespace.intProperty", "2");
+    assertEquals(1, subSettings.getInteger("intProperty"));
+
+    settings.reload(properties);
+    assertEquals(2, subSettings.getInteger("intProperty"));
+    assertEquals(2, settings.getInteger("namespace.intProperty"));
+    assertThrows(IllegalStateException.class, () -> subSettings.reload(properties));
+  }
 }
@@ -5,6 +5,10 @@ import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 
 public class UriComponentTest {
@@ -23,4 +27,31 @@ public class UriComponentTest {
     assertEquals(1, shortParam.size());
     assertEquals("", shortParam.get(0));
   }
+
+  @Test
+  public void testDecodeLazily() {
+    String queryString = "a=1&%62=2&b=3&empty&=ignored&c=%20x+y&&";
+    Map<String, List<String>> result = UriComponent.decodeQueryLazily(queryString, true, true);
+
+    assertEquals(List.of("2", "3"), result.get("b"));
+    assertEquals(List.of(""), result.get("empty"));
+    assertEquals(List.of(" x y"), result.get("c"));
+    assertNull(result.get("missing"));
+    assertFalse(result.containsKey(""));
+    assertEquals(UriComponent.decodeQuery(queryString, true, true), result);
+    assertEquals(Map.of("%62", List.of("2")), Map.of("%62", UriComponent.decodeQueryLazily(queryString, false, true).get("%62")));
+    assertTrue(UriComponent.decodeQueryLazily(null, true, true).isEmpty());
+    assertThrows(UnsupportedOperationException.class, () -> result.get("b").add("4"));
+  }
+
+  @Test
+  public void testDecodeLazilyValidatesEscapes() {
+    for (String queryString : List.of("%", "a=%", "a=%2", "a=1&b=%zz", "%zz=1")) {
+      assertThrows(IllegalArgumentException.class, () -> UriComponent.decodeQuery(queryString, true, true));
+      assertThrows(IllegalArgumentException.class, () -> UriComponent.decodeQueryLazily(queryString, true, true));
+    }
+    assertEquals(List.of("%zz"), UriComponent.decodeQueryLazily("a=%zz", true, false).get("a"));
+    assertEquals(List.of("1"), UriComponent.decodeQueryLazily("%zz=1", false, true).get("%zz"));
+    assertEquals(List.of("%"), UriComponent.decodeQueryLazily("a=%25", true, true).get("a"));
+  }
 }
@@ -0,0 +1,42 @@
+package ru.hh.nab.datasource;
+
+import ru.hh.nab.common.executor.ContextCarrier;
+
+/**
+ * Carries the data source chosen by {@link DataSourceContextUnsafe#executeOn} and the request scope data source type,
+ * the "db" MDC key is carried with the rest of MDC.
+ */
+public class DataSourceContextCarrier implements ContextCarrier<DataSourceContextCarrier.DataSourceContext> {
+
+  @Override
+  public DataSourceContext capture() {
+    String dataSourceName = DataSourceContextUnsafe.getCurrentDataSourceName();
+    String requestScopeDataSourceType = DataSourceContextUnsafe.getRequestDataSourceType();
+    if (dataSourceName == null && requestScopeDataSourceType == null) {
+      return null;
+    }
+    return new DataSourceContext(dataSourceName, requestScopeDataSourceType);
+  }
+
+  @Override
+  public Scope attach(DataSourceContext context) {
+    DataSourceContext previousContext = new DataSourceContext(
+        DataSourceContextUnsafe.getCurrentDataSourceName(),
+        DataSourceContextUnsafe.getRequestDataSourceType()
+    );
+    set(context);
+    return () -> set(previousContext);
+  }
+
+  private static void set(DataSourceContext context) {
+    DataSourceContextUnsafe.setCurrentDataSourceName(context.dataSourceName());
+    if (context.requestScopeDataSourceType() == null) {
+      DataSourceContextUnsafe.clearRequestScopeDataSourceType();
+    } else {
+      DataSourceContextUnsafe.setRequestScopeDataSourceType(context.requestScopeDataSourceType());
+    }
+  }
+
+  public record DataSourceContext(String dataSourceName, String requestScopeDataSourceType) {
+  }
+}
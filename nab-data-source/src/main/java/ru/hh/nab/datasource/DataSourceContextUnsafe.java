@@ -84,6 +84,18 @@ public final class DataSourceContextUnsafe {
     return requestScopeDataSourceType.get();
   }
 
+  static String getCurrentDataSourceName() {
+    return currentDataSourceName.get();
+  }
+
+  static void setCurrentDataSourceName(String dataSourceName) {
+    if (dataSourceName == null) {
+      currentDataSourceName.remove();
+    } else {
+      currentDataSourceName.set(dataSourceName);
+    }
+  }
+
   public static String createDataSourceName(String dataSourceType) {
     return databaseSwitcher == null ? dataSourceType : databaseSwitcher.getDataSourceName(dataSourceType);
   }
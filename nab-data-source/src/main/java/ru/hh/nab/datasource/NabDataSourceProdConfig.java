@@ -1,9 +1,12 @@
 package ru.hh.nab.datasource;
 
+import java.util.concurrent.ScheduledExecutorService;
 import javax.annotation.Nullable;
 import javax.inject.Named;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import ru.hh.nab.common.executor.ScheduledExecutor;
+import static ru.hh.nab.common.executor.ScheduledExecutor.HEALTH_LANE;
 import static ru.hh.nab.common.qualifier.NamedQualifier.SERVICE_NAME;
 import ru.hh.nab.datasource.ext.OpenTelemetryJdbcExtension;
 import ru.hh.nab.datasource.healthcheck.HealthCheckHikariDataSourceFactory;
@@ -16,14 +19,20 @@ public class NabDataSourceProdConfig {
   DataSourceFactory dataSourceFactory(
       @Named(SERVICE_NAME) String serviceName,
       StatsDSender statsDSender,
+      ScheduledExecutorService scheduledExecutorService,
       @Nullable OpenTelemetryJdbcExtension openTelemetryJdbcExtension,
       @Nullable DatabaseSwitcher databaseSwitcher
   ) {
     return new DataSourceFactory(
         new NabMetricsTrackerFactoryProvider(serviceName, statsDSender),
-        new HealthCheckHikariDataSourceFactory(serviceName, statsDSender),
+        new HealthCheckHikariDataSourceFactory(serviceName, statsDSender, ScheduledExecutor.lane(scheduledExecutorService, HEALTH_LANE)),
         openTelemetryJdbcExtension,
         databaseSwitcher
     );
   }
+
+  @Bean
+  DataSourceContextCarrier dataSourceContextCarrier() {
+    return new DataSourceContextCarrier();
+  }
 }
@@ -5,9 +5,12 @@ import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Map;
 import static java.util.Optional.ofNullable;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.hh.nab.common.executor.ScheduledExecutor;
@@ -23,14 +26,26 @@ public class HealthCheckHikariDataSource extends HikariDataSource implements Hea
   private final String dataSourceName;
   private final AsyncHealthCheckDecorator healthCheck;
 
+  /**
+   * Runs the health check in a health lane shared by all data sources created with this constructor, the lane has a thread per data source.
+   */
   public HealthCheckHikariDataSource(HikariConfig hikariConfig, TaggedSender metricsSender) {
+    this(hikariConfig, metricsSender, SharedHealthCheckExecutor.acquireThread());
+  }
+
+  public HealthCheckHikariDataSource(HikariConfig hikariConfig, TaggedSender metricsSender, ScheduledExecutorService healthCheckExecutor) {
     super(hikariConfig);
     this.dataSourceName = hikariConfig.getPoolName();
     Long healthCheckDelayMs = ofNullable(hikariConfig.getHealthCheckProperties().getProperty(HEALTHCHECK_DELAY))
         .map(Long::parseLong)
         .filter(delay -> delay > 0)
         .orElse(DEFAULT_HEALTHCHECK_DELAY);
-    this.healthCheck = new AsyncHealthCheckDecorator((HealthCheckRegistry) hikariConfig.getHealthCheckRegistry(), metricsSender, healthCheckDelayMs);
+    this.healthCheck = new AsyncHealthCheckDecorator(
+        (HealthCheckRegistry) hikariConfig.getHealthCheckRegistry(),
+        metricsSender,
+        healthCheckExecutor,
+        healthCheckDelayMs
+    );
   }
 
   @Override
@@ -43,6 +58,12 @@ public class HealthCheckHikariDataSource extends HikariDataSource implements Hea
     return healthCheck;
   }
 
+  @Override
+  public void close() {
+    healthCheck.scheduledCheck.cancel(false);
+    super.close();
+  }
+
   @Override
   public Connection getConnection() throws SQLException {
     return getConnection(super::getConnection);
@@ -66,15 +87,20 @@ public class HealthCheckHikariDataSource extends HikariDataSource implements Hea
 
     private final HealthCheckRegistry healthCheckRegistry;
     private final TaggedSender metricsSender;
+    private final ScheduledFuture<?> scheduledCheck;
     private volatile Result result;
 
-    private AsyncHealthCheckDecorator(HealthCheckRegistry healthCheckRegistry, TaggedSender metricsSender, long healthCheckDelayMs) {
+    private AsyncHealthCheckDecorator(
+        HealthCheckRegistry healthCheckRegistry,
+        TaggedSender metricsSender,
+        ScheduledExecutorService executorService,
+        long healthCheckDelayMs
+    ) {
       this.healthCheckRegistry = healthCheckRegistry;
       this.metricsSender = metricsSender;
       this.result = Result.healthy();
 
-      ScheduledExecutorService executorService = new ScheduledExecutor();
-      executorService.scheduleWithFixedDelay(this, 0L, healthCheckDelayMs, TimeUnit.MILLISECONDS);
+      this.scheduledCheck = executorService.scheduleWithFixedDelay(this, 0L, healthCheckDelayMs, TimeUnit.MILLISECONDS);
     }
 
     @Override
@@ -102,6 +128,20 @@ public class HealthCheckHikariDataSource extends HikariDataSource implements Hea
     }
   }
 
+  /**
+   * Created on first use, so services that pass an executor to every data source don't start it.
+   */
+  private static final class SharedHealthCheckExecutor {
+    private static final ScheduledExecutorService HEALTH_LANE =
+        new ScheduledExecutor(Map.of(ScheduledExecutor.HEALTH_LANE, 1)).lane(ScheduledExecutor.HEALTH_LANE);
+    private static final AtomicInteger NUM_OF_HEALTH_CHECKS = new AtomicInteger();
+
+    static ScheduledExecutorService acquireThread() {
+      ScheduledExecutor.ensureNumOfThreads(HEALTH_LANE, NUM_OF_HEALTH_CHECKS.incrementAndGet());
+      return HEALTH_LANE;
+    }
+  }
+
   @FunctionalInterface
   private interface ConnectionSupplier {
     Connection get() throws SQLException;
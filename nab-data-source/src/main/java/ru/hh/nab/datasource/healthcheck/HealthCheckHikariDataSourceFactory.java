@@ -3,6 +3,9 @@ package ru.hh.nab.datasource.healthcheck;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import ru.hh.nab.common.executor.ScheduledExecutor;
 import ru.hh.nab.metrics.StatsDSender;
 import ru.hh.nab.metrics.Tag;
 import static ru.hh.nab.metrics.Tag.APP_TAG_NAME;
@@ -13,10 +16,23 @@ public class HealthCheckHikariDataSourceFactory {
 
   private final String serviceName;
   private final StatsDSender statsDSender;
+  private final ScheduledExecutorService healthCheckExecutor;
+  private final AtomicInteger numOfHealthChecks = new AtomicInteger();
 
   public HealthCheckHikariDataSourceFactory(String serviceName, StatsDSender statsDSender) {
+    this(serviceName, statsDSender, null);
+  }
+
+  /**
+   * @param healthCheckExecutor executor shared by health checks of all data sources,
+   *                            if null they run in the health lane shared by all data sources created without an executor.<br/>
+   *                            If it is a lane of {@link ScheduledExecutor}, the lane gets a thread per data source,
+   *                            so a hanging health check of one data source doesn't delay health checks of others
+   */
+  public HealthCheckHikariDataSourceFactory(String serviceName, StatsDSender statsDSender, ScheduledExecutorService healthCheckExecutor) {
     this.serviceName = serviceName;
     this.statsDSender = statsDSender;
+    this.healthCheckExecutor = healthCheckExecutor;
   }
 
   public HikariDataSource create(HikariConfig hikariConfig) {
@@ -25,6 +41,10 @@ public class HealthCheckHikariDataSourceFactory {
         new Tag(DATASOURCE_TAG_NAME, hikariConfig.getPoolName())
     );
     TaggedSender metricsSender = new TaggedSender(statsDSender, tags);
-    return new HealthCheckHikariDataSource(hikariConfig, metricsSender);
+    if (healthCheckExecutor == null) {
+      return new HealthCheckHikariDataSource(hikariConfig, metricsSender);
+    }
+    ScheduledExecutor.ensureNumOfThreads(healthCheckExecutor, numOfHealthChecks.incrementAndGet());
+    return new HealthCheckHikariDataSource(hikariConfig, metricsSender, healthCheckExecutor);
   }
 }
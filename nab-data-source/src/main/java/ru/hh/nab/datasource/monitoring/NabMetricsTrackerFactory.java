@@ -3,7 +3,9 @@ package ru.hh.nab.datasource.monitoring;
 import com.zaxxer.hikari.metrics.IMetricsTracker;
 import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
 import com.zaxxer.hikari.metrics.PoolStats;
+import java.util.Map;
 import static java.util.Optional.ofNullable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
@@ -40,9 +42,11 @@ import ru.hh.nab.metrics.Counters;
 import ru.hh.nab.metrics.Histogram;
 import ru.hh.nab.metrics.StatsDSender;
 import static ru.hh.nab.metrics.StatsDSender.DEFAULT_PERCENTILES;
+import ru.hh.nab.metrics.StripedCounters;
 import ru.hh.nab.metrics.Tag;
 import static ru.hh.nab.metrics.Tag.APP_TAG_NAME;
 import static ru.hh.nab.metrics.Tag.DATASOURCE_TAG_NAME;
+import ru.hh.nab.metrics.TagSet;
 
 public class NabMetricsTrackerFactory implements MetricsTrackerFactory {
   private static final Logger LOGGER = LoggerFactory.getLogger(NabMetricsTrackerFactory.class);
@@ -73,10 +77,13 @@ public class NabMetricsTrackerFactory implements MetricsTrackerFactory {
     private final String poolName;
     private final boolean sendSampledStats;
     private final Integer longConnectionUsageMs;
-    private final Counters usageCounters, timeoutCounters, sampledUsageCounters;
+    private final StripedCounters usageCounters, sampledUsageCounters;
+    private final Counters timeoutCounters;
     private final Histogram creationHistogram, acquisitionHistogram, usageHistogram;
     private final CompressedStackFactory compressedStackFactory;
     private final Tag datasourceTag, appTag;
+    private final int maxNumOfUsageCounters;
+    private final Map<String, TagSet> controllerToUsageTags = new ConcurrentHashMap<>();
 
     MonitoringMetricsTracker(String poolName, PoolStats poolStats) {
       this.poolName = poolName;
@@ -98,12 +105,15 @@ public class NabMetricsTrackerFactory implements MetricsTrackerFactory {
           ofNullable(dataSourceSettings.getInteger(MONITORING_USAGE_HISTOGRAM_SIZE)).orElse(2048),
           ofNullable(dataSourceSettings.getInteger(MONITORING_USAGE_HISTOGRAM_COMPACTION_RATIO)).orElse(1)
       );
-      usageCounters = new Counters(ofNullable(dataSourceSettings.getInteger(MONITORING_TOTAL_USAGE_MAX_NUM_OF_COUNTERS)).orElse(500));
+      maxNumOfUsageCounters = ofNullable(dataSourceSettings.getInteger(MONITORING_TOTAL_USAGE_MAX_NUM_OF_COUNTERS)).orElse(500);
+      usageCounters = new StripedCounters(maxNumOfUsageCounters);
       timeoutCounters = new Counters(ofNullable(dataSourceSettings.getInteger(MONITORING_CONNECTION_TIMEOUT_MAX_NUM_OF_COUNTERS)).orElse(500));
 
       if (sendSampledStats) {
         compressedStackFactory = new CompressedStackFactory(compressedStackFactoryConfig);
-        sampledUsageCounters = new Counters(ofNullable(dataSourceSettings.getInteger(MONITORING_SAMPLED_USAGE_MAX_NUM_OF_COUNTERS)).orElse(2000));
+        sampledUsageCounters = new StripedCounters(
+            ofNullable(dataSourceSettings.getInteger(MONITORING_SAMPLED_USAGE_MAX_NUM_OF_COUNTERS)).orElse(2000)
+        );
       } else {
         sampledUsageCounters = null;
         compressedStackFactory = null;
@@ -113,7 +123,7 @@ public class NabMetricsTrackerFactory implements MetricsTrackerFactory {
         statsDSender.sendHistogram(CREATION_MS, jdbcTags, creationHistogram, DEFAULT_PERCENTILES);
         statsDSender.sendHistogram(ACQUISITION_MS, jdbcTags, acquisitionHistogram, DEFAULT_PERCENTILES);
         statsDSender.sendHistogram(USAGE_MS, jdbcTags, usageHistogram, DEFAULT_PERCENTILES);
-        statsDSender.sendCounters(TOTAL_USAGE_MS, usageCounters);
+        statsDSender.sendCounters(TOTAL_USAGE_MS, jdbcTags, usageCounters);
         statsDSender.sendCounters(CONNECTION_TIMEOUTS, timeoutCounters);
 
         statsDSender.sendGauge(ACTIVE_CONNECTIONS, poolStats.getActiveConnections(), jdbcTags);
@@ -124,7 +134,7 @@ public class NabMetricsTrackerFactory implements MetricsTrackerFactory {
         statsDSender.sendGauge(PENDING_THREADS, poolStats.getPendingThreads(), jdbcTags);
 
         if (sampledUsageCounters != null) {
-          statsDSender.sendCounters(SAMPLED_USAGE_MS, sampledUsageCounters);
+          statsDSender.sendCounters(SAMPLED_USAGE_MS, jdbcTags, sampledUsageCounters);
         }
       });
     }
@@ -152,8 +162,7 @@ public class NabMetricsTrackerFactory implements MetricsTrackerFactory {
         );
         LOGGER.error(message, new RuntimeException(poolName + " connection usage duration exceeded"));
       }
-      Tag[] tags = new Tag[]{datasourceTag, appTag, new Tag("controller", MDC.getController().orElse("unknown"))};
-      usageCounters.add(connectionUsageMs, tags);
+      usageCounters.add(connectionUsageMs, getUsageTags(MDC.getController().orElse("unknown")));
       usageHistogram.save(connectionUsageMs);
 
       if (sendSampledStats && ThreadLocalRandom.current().nextInt(100) == 0) {
@@ -161,6 +170,17 @@ public class NabMetricsTrackerFactory implements MetricsTrackerFactory {
       }
     }
 
+    private TagSet getUsageTags(String controller) {
+      TagSet tags = controllerToUsageTags.get(controller);
+      if (tags == null) {
+        tags = TagSet.of(datasourceTag, appTag, new Tag("controller", controller));
+        if (controllerToUsageTags.size() < maxNumOfUsageCounters) {
+          controllerToUsageTags.putIfAbsent(controller, tags);
+        }
+      }
+      return tags;
+    }
+
     @Override
     public void recordConnectionTimeout() {
       timeoutCounters.add(1, datasourceTag, appTag);
@@ -0,0 +1,36 @@
+package ru.hh.nab.jclient;
+
+import ru.hh.jclient.common.HttpClientContext;
+import ru.hh.jclient.common.HttpClientContextThreadLocalSupplier;
+import ru.hh.nab.common.executor.ContextCarrier;
+
+/**
+ * Carries {@link HttpClientContext} only.<br/>
+ * Other storages registered in {@link HttpClientContextThreadLocalSupplier} are not replayed: MDC and OpenTelemetry context
+ * have their own carriers, replaying jclient MDCStorage would copy MDC twice.
+ */
+public class JClientContextCarrier implements ContextCarrier<HttpClientContext> {
+  private final HttpClientContextThreadLocalSupplier contextSupplier;
+
+  public JClientContextCarrier(HttpClientContextThreadLocalSupplier contextSupplier) {
+    this.contextSupplier = contextSupplier;
+  }
+
+  @Override
+  public HttpClientContext capture() {
+    return contextSupplier.get();
+  }
+
+  @Override
+  public Scope attach(HttpClientContext context) {
+    HttpClientContext previousContext = contextSupplier.get();
+    contextSupplier.set(context);
+    return () -> {
+      if (previousContext == null) {
+        contextSupplier.clear();
+      } else {
+        contextSupplier.set(previousContext);
+      }
+    };
+  }
+}
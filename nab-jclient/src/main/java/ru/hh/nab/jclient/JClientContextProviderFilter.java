@@ -53,6 +53,6 @@ public class JClientContextProviderFilter implements Filter, NabServletFilter {
 
   private static Map<String, List<String>> getQueryParamsMap(ServletRequest req) {
     HttpServletRequest request = (HttpServletRequest) req;
-    return UriComponent.decodeQuery(request.getQueryString(), true, true);
+    return UriComponent.decodeQueryLazily(request.getQueryString(), true, true);
   }
 }
@@ -84,6 +84,11 @@ public class NabJClientConfig {
     return contextSupplier.register(new MDCStorage());
   }
 
+  @Bean
+  JClientContextCarrier jClientContextCarrier(HttpClientContextThreadLocalSupplier contextSupplier) {
+    return new JClientContextCarrier(contextSupplier);
+  }
+
   @Bean
   JClientContextProviderFilter jClientContextProviderFilter(HttpClientContextThreadLocalSupplier contextSupplier) {
     return new JClientContextProviderFilter(contextSupplier);
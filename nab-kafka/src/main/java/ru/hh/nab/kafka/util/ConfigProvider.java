@@ -143,8 +143,8 @@ public class ConfigProvider {
   private Optional<String> findAnyMatchedKey(String pattern) {
     Pattern compiledPattern = Pattern.compile(pattern);
     return fileSettings
-        .getProperties()
-        .stringPropertyNames()
+        .getAsMap()
+        .keySet()
         .stream()
         .filter(key -> compiledPattern.matcher(key).matches())
         .findAny();
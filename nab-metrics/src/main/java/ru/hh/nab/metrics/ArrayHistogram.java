@@ -0,0 +1,84 @@
+package ru.hh.nab.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link Histogram} that keeps counters in a fixed array of buckets instead of a map.<br/>
+ * {@link ArrayHistogram#save(int)} neither boxes the value nor allocates, so it is suitable for hot paths.<br/>
+ * Values that map outside of the array are counted in the first or the last bucket, so no observation is dropped.
+ */
+public abstract class ArrayHistogram extends Histogram {
+
+  private final AtomicLongArray bucketToCount;
+
+  /**
+   * @param numOfBuckets number of buckets. Memory footprint is 8 bytes per bucket and does not depend on the stream of values.
+   */
+  protected ArrayHistogram(int numOfBuckets) {
+    if (numOfBuckets <= 0) {
+      throw new IllegalArgumentException("numOfBuckets must be positive: " + numOfBuckets);
+    }
+    this.bucketToCount = new AtomicLongArray(numOfBuckets);
+  }
+
+  @Override
+  public void save(int value) {
+    bucketToCount.incrementAndGet(clampedBucketIndex(value));
+  }
+
+  @Override
+  public Map<Integer, Integer> getValueToCountAndReset() {
+    Map<Integer, Integer> valueToCount = new HashMap<>();
+    for (int bucket = 0; bucket < bucketToCount.length(); bucket++) {
+      if (bucketToCount.get(bucket) == 0) {
+        continue;
+      }
+      long count = bucketToCount.getAndSet(bucket, 0);
+      if (count > 0) {
+        valueToCount.put(bucketValue(bucket), (int) Math.min(count, Integer.MAX_VALUE));
+      }
+    }
+    return valueToCount;
+  }
+
+  protected int getNumOfBuckets() {
+    return bucketToCount.length();
+  }
+
+  /**
+   * @return counts indexed by bucket, counters are reset
+   */
+  protected long[] getBucketCountsAndReset() {
+    long[] counts = new long[bucketToCount.length()];
+    for (int bucket = 0; bucket < counts.length; bucket++) {
+      if (bucketToCount.get(bucket) != 0) {
+        counts[bucket] = bucketToCount.getAndSet(bucket, 0);
+      }
+    }
+    return counts;
+  }
+
+  @Override
+  protected final int calculateValue(int value) {
+    return bucketValue(clampedBucketIndex(value));
+  }
+
+  /**
+   * @return index of the bucket the value is counted in
+   */
+  protected final int clampedBucketIndex(int value) {
+    return Math.max(0, Math.min(bucketIndex(value), bucketToCount.length() - 1));
+  }
+
+  /**
+   * @return index of the bucket the value belongs to. May be out of array bounds, such values are clamped.
+   */
+  protected abstract int bucketIndex(int value);
+
+  /**
+   * @return value that represents all observations of the bucket in {@link ArrayHistogram#getValueToCountAndReset()}
+   */
+  protected abstract int bucketValue(int bucket);
+}
@@ -0,0 +1,30 @@
+package ru.hh.nab.metrics;
+
+/**
+ * Allocation-free counterpart of {@link CompactHistogram}. Values are compacted into the same cluster points,
+ * but each cluster point is a slot of a preallocated array.<br/>
+ * Covers values up to (histogramSize - 1) * compactionRatio, greater values are saved into the last cluster point.
+ */
+public class CompactArrayHistogram extends ArrayHistogram {
+
+  private final int compactionShift;
+
+  /**
+   * @param histogramSize number of cluster points
+   * @param compactionRatio size of a cluster, rounded down to power of 2
+   */
+  public CompactArrayHistogram(int histogramSize, int compactionRatio) {
+    super(histogramSize);
+    this.compactionShift = Integer.numberOfTrailingZeros(Integer.highestOneBit(compactionRatio));
+  }
+
+  @Override
+  protected int bucketIndex(int value) {
+    return value <= 0 ? 0 : ((value - 1) >>> compactionShift) + 1;
+  }
+
+  @Override
+  protected int bucketValue(int bucket) {
+    return bucket << compactionShift;
+  }
+}
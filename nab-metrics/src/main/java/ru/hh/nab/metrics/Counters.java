@@ -31,11 +31,15 @@ public class Counters {
     addInner(value, tag);
   }
 
+  public void add(int value, TagSet tags) {
+    addInner(value, tags);
+  }
+
   public void add(int value, Tag... tagsArr) {
     addInner(value, new MultiTags(tagsArr));
   }
 
-  private void addInner(int value, Tags tags) {
+  void addInner(int value, Tags tags) {
     AtomicInteger counter = tagsToCounter.get(tags);
     if (counter == null) {
       if (tagsToCounter.size() >= maxNumOfCounters) {
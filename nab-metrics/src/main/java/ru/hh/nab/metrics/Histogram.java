@@ -10,7 +10,8 @@ import org.slf4j.LoggerFactory;
 /**
  * An aggregator that accumulates a stream of values as a histogram to compute percentiles.<br/>
  * For example, response times.
- * Implementation moved to {@link SimpleHistogram} and {@link RangedHistogram}
+ * Implementation moved to {@link SimpleHistogram} and {@link RangedHistogram}.
+ * Allocation-free implementations backed by a bucket array are {@link ArrayHistogram} subclasses.
  */
 public abstract class Histogram {
   private static final Logger logger = LoggerFactory.getLogger(Histogram.class);
@@ -29,6 +30,15 @@ public abstract class Histogram {
     this.valueToCounter = new ConcurrentHashMap<>(maxHistogramSize);
   }
 
+  /**
+   * For implementations that keep observations in their own storage.<br/>
+   * Such implementations must override both {@link Histogram#save(int)} and {@link Histogram#getValueToCountAndReset()}.
+   */
+  protected Histogram() {
+    this.maxHistogramSize = 0;
+    this.valueToCounter = null;
+  }
+
   public void save(int value) {
     value = calculateValue(value);
     AtomicInteger counter = valueToCounter.get(value);
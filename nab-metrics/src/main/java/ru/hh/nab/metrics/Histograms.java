@@ -65,6 +65,10 @@ public class Histograms {
     saveInner(value, tag);
   }
 
+  public void save(int value, TagSet tags) {
+    saveInner(value, tags);
+  }
+
   public void save(int value, Tag... tags) {
     saveInner(value, new MultiTags(tags));
   }
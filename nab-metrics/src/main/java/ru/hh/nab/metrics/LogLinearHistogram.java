@@ -0,0 +1,160 @@
+package ru.hh.nab.metrics;
+
+import java.util.Arrays;
+
+/**
+ * A {@link Histogram} with bounded relative error, similar to HdrHistogram.<br/>
+ * Values are split into power of 2 ranges, each range is split into the same number of linear sub-buckets,
+ * so that every recorded value is reported with precision of the given number of significant decimal digits.<br/>
+ * Memory footprint is fixed and depends only on maxValue and significantDigits: for maxValue of one hour in milliseconds
+ * and 2 significant digits it is about 16 KB.<br/>
+ * Observations are never dropped: values greater than maxValue are saved as maxValue, negative values are saved as 0.<br/>
+ * Values are reported as the highest value of their bucket, so percentiles are never underestimated.
+ */
+public class LogLinearHistogram extends ArrayHistogram {
+
+  private final int subBucketBits;
+
+  /**
+   * @param maxValue          the highest value that is reported without clamping
+   * @param significantDigits number of significant decimal digits to keep, from 1 to 5
+   */
+  public LogLinearHistogram(int maxValue, int significantDigits) {
+    super(bucketIndex(subBucketBits(significantDigits), Math.max(maxValue, 0)) + 1);
+    this.subBucketBits = subBucketBits(significantDigits);
+  }
+
+  @Override
+  protected int bucketIndex(int value) {
+    return bucketIndex(subBucketBits, value);
+  }
+
+  @Override
+  protected int bucketValue(int bucket) {
+    return bucketValue(subBucketBits, bucket);
+  }
+
+  /**
+   * Snapshot can be merged with snapshots of other histograms of the same configuration or taken during other intervals.
+   */
+  public Snapshot getSnapshotAndReset() {
+    return new Snapshot(subBucketBits, getBucketCountsAndReset());
+  }
+
+  /**
+   * @return an empty snapshot which can be used as an accumulator for {@link Snapshot#merge(Snapshot)}
+   */
+  public Snapshot newSnapshot() {
+    return new Snapshot(subBucketBits, new long[getNumOfBuckets()]);
+  }
+
+  private static int subBucketBits(int significantDigits) {
+    if (significantDigits < 1 || significantDigits > 5) {
+      throw new IllegalArgumentException("significantDigits must be from 1 to 5: " + significantDigits);
+    }
+    int subBucketCount = 2 * (int) Math.pow(10, significantDigits);
+    return Integer.SIZE - Integer.numberOfLeadingZeros(subBucketCount - 1);
+  }
+
+  private static int bucketIndex(int subBucketBits, int value) {
+    if (value < 0) {
+      return -1;
+    }
+    int exponent = Math.max(0, Integer.SIZE - Integer.numberOfLeadingZeros(value) - subBucketBits);
+    return (exponent << (subBucketBits - 1)) + (value >>> exponent);
+  }
+
+  private static int bucketValue(int subBucketBits, int bucket) {
+    int subBucketHalfCount = 1 << (subBucketBits - 1);
+    if (bucket < 2 * subBucketHalfCount) {
+      return bucket;
+    }
+    int exponent = bucket / subBucketHalfCount - 1;
+    int subBucket = bucket - exponent * subBucketHalfCount;
+    long highestEquivalentValue = ((long) (subBucket + 1) << exponent) - 1;
+    return (int) Math.min(highestEquivalentValue, Integer.MAX_VALUE);
+  }
+
+  public static class Snapshot {
+    private final int subBucketBits;
+    private final long[] counts;
+
+    private Snapshot(int subBucketBits, long[] counts) {
+      this.subBucketBits = subBucketBits;
+      this.counts = counts;
+    }
+
+    /**
+     * Adds counts of another snapshot to this one.
+     *
+     * @return this snapshot
+     * @throws IllegalArgumentException if the snapshot was taken from a histogram with another configuration
+     */
+    public Snapshot merge(Snapshot other) {
+      if (subBucketBits != other.subBucketBits || counts.length != other.counts.length) {
+        throw new IllegalArgumentException("Can't merge snapshots of histograms with different configuration");
+      }
+      for (int bucket = 0; bucket < counts.length; bucket++) {
+        counts[bucket] += other.counts[bucket];
+      }
+      return this;
+    }
+
+    long[] getCounts() {
+      return counts;
+    }
+
+    int getBucketValue(int bucket) {
+      return bucketValue(subBucketBits, bucket);
+    }
+
+    public long getTotalCount() {
+      long totalCount = 0;
+      for (long count : counts) {
+        totalCount += count;
+      }
+      return totalCount;
+    }
+
+    public boolean isEmpty() {
+      return getTotalCount() == 0;
+    }
+
+    /**
+     * Computes all percentiles in a single pass over buckets
+     * with the same semantics as {@link Percentiles#computePercentiles(java.util.Map, int...)}.
+     *
+     * @return values in the order of given percentiles. For an empty snapshot all values are 0.
+     */
+    public int[] getValuesAtPercentiles(int... percentiles) {
+      int[] values = new int[percentiles.length];
+      long totalCount = getTotalCount();
+      if (totalCount == 0) {
+        return values;
+      }
+
+      int[] sortedPercentiles = percentiles.clone();
+      Arrays.sort(sortedPercentiles);
+      int[] sortedValues = new int[sortedPercentiles.length];
+
+      long currentCount = 0;
+      int percentileIndex = 0;
+      for (int bucket = 0; bucket < counts.length && percentileIndex < sortedPercentiles.length; bucket++) {
+        if (counts[bucket] == 0) {
+          continue;
+        }
+        currentCount += counts[bucket];
+        for (; percentileIndex < sortedPercentiles.length
+            && totalCount * sortedPercentiles[percentileIndex] / 100.0 <= currentCount;
+             percentileIndex++) {
+          sortedValues[percentileIndex] = bucketValue(subBucketBits, bucket);
+        }
+      }
+
+      for (int i = 0; i < percentiles.length; i++) {
+        values[i] = sortedValues[Arrays.binarySearch(sortedPercentiles, percentiles[i])];
+      }
+      return values;
+    }
+  }
+}
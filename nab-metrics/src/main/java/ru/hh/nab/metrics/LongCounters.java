@@ -31,6 +31,10 @@ public class LongCounters {
     addInner(value, tag);
   }
 
+  public void add(long value, TagSet tags) {
+    addInner(value, tags);
+  }
+
   public void add(long value, Tag... tagsArr) {
     addInner(value, new MultiTags(tagsArr));
   }
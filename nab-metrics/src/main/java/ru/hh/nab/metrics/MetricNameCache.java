@@ -0,0 +1,96 @@
+package ru.hh.nab.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded cache of StatsD metric names for combinations of a metric name and tags.<br/>
+ * When maxSize is reached new names are built on every call and are not cached.
+ */
+class MetricNameCache {
+  private static final int MAX_PERCENTILE = 100;
+  private static final String[] NO_TAGS = new String[0];
+
+  private final int maxSize;
+  private final StatsDSender.TagsMode tagsMode;
+  private final AtomicInteger size = new AtomicInteger();
+  private final Map<String, Map<Tags, MetricName>> metricToTagsToName = new ConcurrentHashMap<>();
+
+  MetricNameCache(int maxSize, StatsDSender.TagsMode tagsMode) {
+    this.maxSize = maxSize;
+    this.tagsMode = tagsMode;
+  }
+
+  MetricName get(String metricName, Tags tags) {
+    Map<Tags, MetricName> tagsToName = metricToTagsToName.get(metricName);
+    if (tagsToName == null) {
+      if (size.get() >= maxSize) {
+        return create(metricName, tags.getTags());
+      }
+      tagsToName = metricToTagsToName.computeIfAbsent(metricName, key -> new ConcurrentHashMap<>());
+    }
+
+    MetricName name = tagsToName.get(tags);
+    if (name == null) {
+      name = create(metricName, tags.getTags(), true);
+      if (size.get() < maxSize && tagsToName.putIfAbsent(tags, name) == null) {
+        size.incrementAndGet();
+      }
+    }
+    return name;
+  }
+
+  /**
+   * Builds a name without caching it.
+   */
+  MetricName create(String metricName, Tag[] tags) {
+    return create(metricName, tags, false);
+  }
+
+  private MetricName create(String metricName, Tag[] tags, boolean cachePercentileNames) {
+    if (tagsMode == StatsDSender.TagsMode.NATIVE) {
+      return new MetricName(metricName, StatsDSender.getNativeTags(metricName, tags), cachePercentileNames);
+    }
+    return new MetricName(StatsDSender.getFullMetricName(metricName, tags), NO_TAGS, cachePercentileNames);
+  }
+
+  static final class MetricName {
+    private final String name;
+    private final String[] tags;
+    private final String[] percentileNames;
+
+    MetricName(String name, String[] tags, boolean cachePercentileNames) {
+      this.name = name;
+      this.tags = tags;
+      this.percentileNames = cachePercentileNames ? new String[MAX_PERCENTILE + 1] : null;
+    }
+
+    String getName() {
+      return name;
+    }
+
+    /**
+     * @return DogStatsD tags, empty if tags are a part of the name
+     */
+    String[] getTags() {
+      return tags;
+    }
+
+    /**
+     * Percentile names are cached only for names created by {@link MetricNameCache#get(String, Tags)}.
+     */
+    String getPercentileName(int percentile) {
+      String[] names = percentileNames;
+      if (names == null || percentile < 0 || percentile > MAX_PERCENTILE) {
+        return StatsDSender.getPercentileMetricName(name, percentile);
+      }
+      String percentileName = names[percentile];
+      if (percentileName == null) {
+        percentileName = StatsDSender.getPercentileMetricName(name, percentile);
+        names[percentile] = percentileName;
+      }
+      return percentileName;
+    }
+  }
+}
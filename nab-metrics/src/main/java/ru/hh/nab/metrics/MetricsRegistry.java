@@ -0,0 +1,68 @@
+package ru.hh.nab.metrics;
+
+import com.timgroup.statsd.StatsDClient;
+import com.timgroup.statsd.StatsDClientErrorHandler;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A list of flush tasks that send snapshots of aggregators, see {@link StatsDSender#sendPeriodically(Runnable)}.<br/>
+ * All tasks are run one after another in a single pass by {@link #flush(StatsDClient)},
+ * so the metrics of all aggregators are queued to StatsDClient together and are packed into as few UDP packets as possible.<br/>
+ * A failed task is logged and does not prevent other tasks from running.<br/>
+ * Each flush also sends its own metrics:<br/>
+ * - nab.metrics.flush.duration - duration of the flush in milliseconds<br/>
+ * - nab.metrics.flush.errors - number of failed tasks<br/>
+ * - nab.metrics.dropped.packets - number of errors reported by StatsDClient via {@link #getErrorHandler()} since the previous flush
+ */
+public class MetricsRegistry {
+  private static final Logger LOGGER = LoggerFactory.getLogger(MetricsRegistry.class);
+
+  static final String FLUSH_DURATION_METRIC = "nab.metrics.flush.duration";
+  static final String FLUSH_ERRORS_METRIC = "nab.metrics.flush.errors";
+  static final String DROPPED_PACKETS_METRIC = "nab.metrics.dropped.packets";
+
+  private final List<Runnable> flushTasks = new CopyOnWriteArrayList<>();
+  private final LongAdder droppedPackets = new LongAdder();
+  private final StatsDClientErrorHandler errorHandler = exception -> {
+    droppedPackets.increment();
+    LOGGER.debug("Failed to send metrics: {}", exception.toString());
+  };
+
+  public void register(Runnable flushTask) {
+    flushTasks.add(flushTask);
+  }
+
+  /**
+   * @return an error handler to pass to StatsDClient, so that lost packets are counted
+   */
+  public StatsDClientErrorHandler getErrorHandler() {
+    return errorHandler;
+  }
+
+  int getNumOfFlushTasks() {
+    return flushTasks.size();
+  }
+
+  public void flush(StatsDClient statsDClient) {
+    long start = System.nanoTime();
+    int errors = 0;
+    for (Runnable flushTask : flushTasks) {
+      try {
+        flushTask.run();
+      } catch (RuntimeException e) {
+        errors++;
+        LOGGER.error("failed to flush metrics: {}", e.toString(), e);
+      }
+    }
+    long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    statsDClient.time(FLUSH_DURATION_METRIC, durationMs);
+    statsDClient.count(FLUSH_ERRORS_METRIC, errors);
+    statsDClient.count(DROPPED_PACKETS_METRIC, droppedPackets.sumThenReset());
+  }
+}
@@ -1,52 +1,58 @@
 package ru.hh.nab.metrics;
 
-import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
-
 /**
- * Central moments aggregator.
+ * Central moments aggregator.<br/>
+ * Values are accumulated in several cells, a thread always updates the same cell,
+ * so concurrent updates from different threads rarely contend.<br/>
+ * Cells are merged on read with the formula for parallel computation of moments.
  *
  * References:
  * "Simpler Online Updates for Arbitrary-Order Central Moments." http://arxiv.org/abs/1510.04923
+ * "Formulas for Robust, One-Pass Parallel Computation of Covariances and Arbitrary-Order Statistical Moments." SAND2008-6212
  */
 public class Moments {
 
-  private static final AtomicReferenceFieldUpdater<Moments, MomentsData> UPDATER =
-      AtomicReferenceFieldUpdater.newUpdater(Moments.class, MomentsData.class, "data");
+  private static final int NUM_OF_CELLS =
+      1 << (Integer.SIZE - Integer.numberOfLeadingZeros(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+  private final MomentsData[] cells = new MomentsData[NUM_OF_CELLS];
 
-  private volatile MomentsData data = new MomentsData();
+  public Moments() {
+    for (int i = 0; i < cells.length; i++) {
+      cells[i] = new MomentsData();
+    }
+  }
 
   public void update(double value) {
-    data.n += 1;
-    data.max = data.n > 1 ? Double.max(data.max, value) : value;
-    data.min = data.n > 1 ? Double.min(data.min, value) : value;
-    double delta = value - data.mean;
-    double deltaN = delta / data.n;
-    data.mean += deltaN;
-    data.variance += delta * (delta - deltaN);
+    MomentsData cell = cells[(int) Thread.currentThread().getId() & (cells.length - 1)];
+    synchronized (cell) {
+      cell.update(value);
+    }
   }
 
   public void merge(Moments moments) {
-    MomentsData newData = new MomentsData();
-    MomentsData left, right;
-
-    do {
-      left = UPDATER.get(this);
-      right = UPDATER.get(moments);
-
-      newData.n = left.n + right.n;
-      if (left.n != 0 || right.n != 0) {
-        newData.max = left.n == 0 ? right.max : right.n == 0 ? left.max : Double.max(left.max, right.max);
-        newData.min = left.n == 0 ? right.min : right.n == 0 ? left.min : Double.min(left.min, right.min);
-      }
-      double delta = right.mean - left.mean;
-      double deltaN = newData.n == 0 ? 0.0f : delta / newData.n;
-      newData.mean = left.mean + deltaN * right.n;
-      newData.variance = left.variance + right.variance + delta * deltaN * left.n * right.n;
-    } while (!UPDATER.compareAndSet(this, left, newData));
+    MomentsData other = moments.get(false);
+    MomentsData cell = cells[0];
+    synchronized (cell) {
+      cell.merge(other);
+    }
   }
 
   public MomentsData getAndReset() {
-    return UPDATER.getAndSet(this, new MomentsData());
+    return get(true);
+  }
+
+  private MomentsData get(boolean reset) {
+    MomentsData data = new MomentsData();
+    for (MomentsData cell : cells) {
+      synchronized (cell) {
+        data.merge(cell);
+        if (reset) {
+          cell.reset();
+        }
+      }
+    }
+    return data;
   }
 
   public static class MomentsData {
@@ -55,6 +61,8 @@ public class Moments {
     private double min;
     private double mean;
     private double variance;
+    private double m3;
+    private double m4;
 
     public int getNumber() {
       return n;
@@ -75,5 +83,81 @@ public class Moments {
     public double getVariance() {
       return n == 0 ? 0.0f : variance / n;
     }
+
+    public double getSkewness() {
+      return variance == 0 ? 0.0f : Math.sqrt(n) * m3 / Math.pow(variance, 1.5);
+    }
+
+    /**
+     * @return excess kurtosis, 0 for normal distribution
+     */
+    public double getKurtosis() {
+      return variance == 0 ? 0.0f : n * m4 / (variance * variance) - 3;
+    }
+
+    private void update(double value) {
+      int previousN = n;
+      n += 1;
+      max = n > 1 ? Double.max(max, value) : value;
+      min = n > 1 ? Double.min(min, value) : value;
+      double delta = value - mean;
+      double deltaN = delta / n;
+      double deltaN2 = deltaN * deltaN;
+      double term = delta * deltaN * previousN;
+      mean += deltaN;
+      m4 += term * deltaN2 * ((double) n * n - 3.0 * n + 3) + 6 * deltaN2 * variance - 4 * deltaN * m3;
+      m3 += term * deltaN * (n - 2) - 3 * deltaN * variance;
+      variance += term;
+    }
+
+    private void merge(MomentsData other) {
+      if (other.n == 0) {
+        return;
+      }
+      if (n == 0) {
+        n = other.n;
+        max = other.max;
+        min = other.min;
+        mean = other.mean;
+        variance = other.variance;
+        m3 = other.m3;
+        m4 = other.m4;
+        return;
+      }
+
+      double leftN = n;
+      double rightN = other.n;
+      double totalN = leftN + rightN;
+      double delta = other.mean - mean;
+      double deltaN = delta / totalN;
+      double deltaN2 = deltaN * deltaN;
+
+      double newVariance = variance + other.variance + delta * deltaN * leftN * rightN;
+      double newM3 = m3 + other.m3
+          + delta * deltaN2 * leftN * rightN * (leftN - rightN)
+          + 3 * deltaN * (leftN * other.variance - rightN * variance);
+      double newM4 = m4 + other.m4
+          + delta * deltaN2 * deltaN * leftN * rightN * (leftN * leftN - leftN * rightN + rightN * rightN)
+          + 6 * deltaN2 * (leftN * leftN * other.variance + rightN * rightN * variance)
+          + 4 * deltaN * (leftN * other.m3 - rightN * m3);
+
+      n += other.n;
+      max = Double.max(max, other.max);
+      min = Double.min(min, other.min);
+      mean += deltaN * rightN;
+      variance = newVariance;
+      m3 = newM3;
+      m4 = newM4;
+    }
+
+    private void reset() {
+      n = 0;
+      max = 0;
+      min = 0;
+      mean = 0;
+      variance = 0;
+      m3 = 0;
+      m4 = 0;
+    }
   }
 }
@@ -6,10 +6,12 @@ import java.util.Comparator;
 class MultiTags extends Tags {
 
   private final Tag[] tags;
+  private final int hashCode;
 
   MultiTags(Tag[] tags) {
     Arrays.sort(tags, Comparator.comparing(tag -> tag.name));
     this.tags = tags;
+    this.hashCode = Arrays.hashCode(tags);
   }
 
   @Override
@@ -22,18 +24,16 @@ class MultiTags extends Tags {
     if (this == thatObject) {
       return true;
     }
-    if (thatObject == null || getClass() != thatObject.getClass()) {
+    if (!(thatObject instanceof MultiTags thatTags)) {
       return false;
     }
 
-    MultiTags thatTags = (MultiTags) thatObject;
-
-    return Arrays.equals(tags, thatTags.tags);
+    return hashCode == thatTags.hashCode && Arrays.equals(tags, thatTags.tags);
   }
 
   @Override
   public int hashCode() {
-    return Arrays.hashCode(tags);
+    return hashCode;
   }
 
   @Override
@@ -0,0 +1,176 @@
+package ru.hh.nab.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A streaming quantile sketch with bounded relative error, a replacement for {@link UniformHistogram}.<br/>
+ * Positive values are counted in logarithmic buckets (as in DDSketch): a bucket covers values from gamma^(k-1) to gamma^k,
+ * where gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy),
+ * so every value is reported with relative error not greater than relativeAccuracy.<br/>
+ * Unlike {@link UniformHistogram} no observation is sampled out and computing percentiles does not sort values,
+ * it is a single pass over buckets.<br/>
+ * {@link QuantileSketch#save(long)} is lock-free and does not allocate.<br/>
+ * Memory footprint is fixed and depends only on relativeAccuracy and maxValue:
+ * for relativeAccuracy of 1% and maxValue of one hour in microseconds it is about 9 KB.<br/>
+ * Values greater than maxValue are saved as maxValue, non-positive values are saved as 0.
+ */
+public class QuantileSketch {
+
+  private final double relativeAccuracy;
+  private final double logGamma;
+  private final long maxValue;
+  private final AtomicLongArray bucketToCount;
+
+  /**
+   * @param relativeAccuracy relative error of reported values, for example 0.01
+   * @param maxValue         the highest value that is reported without clamping
+   */
+  public QuantileSketch(double relativeAccuracy, long maxValue) {
+    if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+      throw new IllegalArgumentException("relativeAccuracy must be between 0 and 1: " + relativeAccuracy);
+    }
+    if (maxValue <= 0) {
+      throw new IllegalArgumentException("maxValue must be positive: " + maxValue);
+    }
+    this.relativeAccuracy = relativeAccuracy;
+    this.logGamma = logGamma(relativeAccuracy);
+    this.maxValue = maxValue;
+    this.bucketToCount = new AtomicLongArray(bucketIndex(logGamma, maxValue) + 1);
+  }
+
+  public void save(long value) {
+    bucketToCount.incrementAndGet(bucketIndex(logGamma, Math.min(value, maxValue)));
+  }
+
+  /**
+   * Snapshot can be merged with snapshots of other sketches of the same configuration or taken during other intervals.
+   */
+  public Snapshot getSnapshotAndReset() {
+    long[] counts = new long[bucketToCount.length()];
+    for (int bucket = 0; bucket < counts.length; bucket++) {
+      if (bucketToCount.get(bucket) != 0) {
+        counts[bucket] = bucketToCount.getAndSet(bucket, 0);
+      }
+    }
+    return new Snapshot(relativeAccuracy, counts);
+  }
+
+  /**
+   * @return an empty snapshot which can be used as an accumulator for {@link Snapshot#merge(Snapshot)}
+   */
+  public Snapshot newSnapshot() {
+    return new Snapshot(relativeAccuracy, new long[bucketToCount.length()]);
+  }
+
+  int getNumOfBuckets() {
+    return bucketToCount.length();
+  }
+
+  private static double logGamma(double relativeAccuracy) {
+    return Math.log((1 + relativeAccuracy) / (1 - relativeAccuracy));
+  }
+
+  /**
+   * Bucket 0 is for non-positive values, bucket k + 1 is for values from gamma^(k-1) exclusive to gamma^k inclusive.
+   */
+  private static int bucketIndex(double logGamma, long value) {
+    if (value <= 0) {
+      return 0;
+    }
+    return (int) Math.ceil(Math.log(value) / logGamma) + 1;
+  }
+
+  private static long bucketValue(double logGamma, int bucket) {
+    if (bucket == 0) {
+      return 0;
+    }
+    double upperBound = Math.exp((bucket - 1) * logGamma);
+    double gamma = Math.exp(logGamma);
+    return Math.max(1, Math.round(2 * upperBound / (gamma + 1)));
+  }
+
+  public static class Snapshot {
+    private final double relativeAccuracy;
+    private final long[] counts;
+
+    private Snapshot(double relativeAccuracy, long[] counts) {
+      this.relativeAccuracy = relativeAccuracy;
+      this.counts = counts;
+    }
+
+    /**
+     * Adds counts of another snapshot to this one.
+     *
+     * @return this snapshot
+     * @throws IllegalArgumentException if the snapshot was taken from a sketch with another configuration
+     */
+    public Snapshot merge(Snapshot other) {
+      if (relativeAccuracy != other.relativeAccuracy || counts.length != other.counts.length) {
+        throw new IllegalArgumentException("Can't merge snapshots of sketches with different configuration");
+      }
+      for (int bucket = 0; bucket < counts.length; bucket++) {
+        counts[bucket] += other.counts[bucket];
+      }
+      return this;
+    }
+
+    long[] getCounts() {
+      return counts;
+    }
+
+    long getBucketValue(int bucket) {
+      return bucketValue(logGamma(relativeAccuracy), bucket);
+    }
+
+    public long getTotalCount() {
+      long totalCount = 0;
+      for (long count : counts) {
+        totalCount += count;
+      }
+      return totalCount;
+    }
+
+    public boolean isEmpty() {
+      return getTotalCount() == 0;
+    }
+
+    /**
+     * Computes all percentiles in a single pass over buckets
+     * with the same semantics as {@link Percentiles#computePercentiles(java.util.Map, int...)}.
+     *
+     * @return values in the order of given percentiles. For an empty snapshot all values are 0.
+     */
+    public long[] getValuesAtPercentiles(int... percentiles) {
+      long[] values = new long[percentiles.length];
+      long totalCount = getTotalCount();
+      if (totalCount == 0) {
+        return values;
+      }
+
+      double logGamma = logGamma(relativeAccuracy);
+      int[] sortedPercentiles = percentiles.clone();
+      Arrays.sort(sortedPercentiles);
+      long[] sortedValues = new long[sortedPercentiles.length];
+
+      long currentCount = 0;
+      int percentileIndex = 0;
+      for (int bucket = 0; bucket < counts.length && percentileIndex < sortedPercentiles.length; bucket++) {
+        if (counts[bucket] == 0) {
+          continue;
+        }
+        currentCount += counts[bucket];
+        for (; percentileIndex < sortedPercentiles.length
+            && totalCount * sortedPercentiles[percentileIndex] / 100.0 <= currentCount;
+             percentileIndex++) {
+          sortedValues[percentileIndex] = bucketValue(logGamma, bucket);
+        }
+      }
+
+      for (int i = 0; i < percentiles.length; i++) {
+        values[i] = sortedValues[Arrays.binarySearch(sortedPercentiles, percentiles[i])];
+      }
+      return values;
+    }
+  }
+}
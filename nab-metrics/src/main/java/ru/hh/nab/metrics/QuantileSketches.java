@@ -0,0 +1,74 @@
+package ru.hh.nab.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Maintains a separate {@link QuantileSketch} for each combination of tags.<br/>
+ */
+public class QuantileSketches {
+  private static final Logger LOGGER = LoggerFactory.getLogger(QuantileSketches.class);
+
+  private final double relativeAccuracy;
+  private final long maxValue;
+  private final Map<Tags, QuantileSketch> tagsToSketch = new ConcurrentHashMap<>();
+  private final int maxNumOfSketches;
+
+  /**
+   * @param relativeAccuracy relative error of reported values. See {@link QuantileSketch#QuantileSketch(double, long)}.
+   * @param maxValue the highest value that is reported without clamping.
+   * @param maxNumOfSketches an upper limit on the number of sketches.<br/>
+   * An instance of QuantileSketches maintains a separate {@link QuantileSketch} for each combination of tags.<br/>
+   * If there are too many combinations we can consume too much memory.<br/>
+   * To prevent this, when maxNumOfSketches is reached, observations with new combinations of tags will be dropped.
+   */
+  public QuantileSketches(double relativeAccuracy, long maxValue, int maxNumOfSketches) {
+    this.relativeAccuracy = relativeAccuracy;
+    this.maxValue = maxValue;
+    this.maxNumOfSketches = maxNumOfSketches;
+  }
+
+  public void save(long value, Tag tag) {
+    saveInner(value, tag);
+  }
+
+  public void save(long value, TagSet tags) {
+    saveInner(value, tags);
+  }
+
+  public void save(long value, Tag... tags) {
+    saveInner(value, new MultiTags(tags));
+  }
+
+  private void saveInner(long value, Tags tags) {
+    QuantileSketch sketch = tagsToSketch.get(tags);
+    if (sketch == null) {
+      if (tagsToSketch.size() >= maxNumOfSketches) {
+        LOGGER.error("Max number of sketches, dropping observation");
+        return;
+      }
+      sketch = new QuantileSketch(relativeAccuracy, maxValue);
+      QuantileSketch currentSketch = tagsToSketch.putIfAbsent(tags, sketch);
+      if (currentSketch != null) {
+        sketch = currentSketch;
+      }
+    }
+    sketch.save(value);
+  }
+
+  Map<Tags, QuantileSketch.Snapshot> getTagsToSnapshotAndReset() {
+    Map<Tags, QuantileSketch.Snapshot> tagsToSnapshot = new HashMap<>(tagsToSketch.size());
+    for (Map.Entry<Tags, QuantileSketch> entry : tagsToSketch.entrySet()) {
+      QuantileSketch.Snapshot snapshot = entry.getValue().getSnapshotAndReset();
+      if (!snapshot.isEmpty()) {
+        tagsToSnapshot.put(entry.getKey(), snapshot);
+      } else {
+        tagsToSketch.remove(entry.getKey());
+      }
+    }
+    return tagsToSnapshot;
+  }
+}
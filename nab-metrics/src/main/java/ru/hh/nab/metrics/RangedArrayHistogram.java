@@ -0,0 +1,24 @@
+package ru.hh.nab.metrics;
+
+/**
+ * Allocation-free counterpart of {@link RangedHistogram}. Rounds values up to power of 2, so 32 buckets cover all int values.
+ */
+public class RangedArrayHistogram extends ArrayHistogram {
+
+  private static final int NUM_OF_BUCKETS = Integer.SIZE;
+
+  public RangedArrayHistogram() {
+    super(NUM_OF_BUCKETS);
+  }
+
+  @Override
+  protected int bucketIndex(int value) {
+    int roundedValue = Integer.highestOneBit(value - 1) << 1;
+    return roundedValue == 0 ? 0 : Integer.numberOfTrailingZeros(roundedValue);
+  }
+
+  @Override
+  protected int bucketValue(int bucket) {
+    return bucket == 0 ? 0 : 1 << bucket;
+  }
+}
@@ -0,0 +1,22 @@
+package ru.hh.nab.metrics;
+
+/**
+ * Allocation-free counterpart of {@link SimpleHistogram}. Keeps values "as is" in range [0, maxValue].<br/>
+ * Values greater than maxValue are saved as maxValue, negative values are saved as 0.
+ */
+public class SimpleArrayHistogram extends ArrayHistogram {
+
+  public SimpleArrayHistogram(int maxValue) {
+    super(maxValue + 1);
+  }
+
+  @Override
+  protected int bucketIndex(int value) {
+    return value;
+  }
+
+  @Override
+  protected int bucketValue(int bucket) {
+    return bucket;
+  }
+}
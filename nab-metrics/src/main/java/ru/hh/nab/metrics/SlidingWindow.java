@@ -0,0 +1,59 @@
+package ru.hh.nab.metrics;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * A ring of time slots that backs windowed aggregators.<br/>
+ * The window is split into numOfSlots slots of equal duration, the window slides by one slot at a time.<br/>
+ * When a slot is reused for a new period, {@link #resetSlot(int)} is called once by the thread that noticed it.
+ * Values recorded concurrently with the reset may be lost, it is acceptable for the window of many slots.
+ */
+abstract class SlidingWindow {
+
+  private final WindowPeriods windowPeriods;
+  private final AtomicLongArray slotToPeriod;
+
+  SlidingWindow(Duration window, int numOfSlots, LongSupplier nanoClock) {
+    this.windowPeriods = new WindowPeriods(window, numOfSlots, nanoClock);
+    this.slotToPeriod = new AtomicLongArray(numOfSlots);
+    long period = currentPeriod();
+    for (int slot = 0; slot < numOfSlots; slot++) {
+      slotToPeriod.set(slot, period);
+    }
+  }
+
+  int getNumOfSlots() {
+    return windowPeriods.getNumOfSlots();
+  }
+
+  /**
+   * @return index of the slot for the current moment, the slot is reset if it was used for one of the previous periods
+   */
+  int currentSlot() {
+    long period = currentPeriod();
+    int slot = windowPeriods.slotOf(period);
+    long slotPeriod = slotToPeriod.get(slot);
+    if (slotPeriod < period && slotToPeriod.compareAndSet(slot, slotPeriod, period)) {
+      resetSlot(slot);
+    }
+    return slot;
+  }
+
+  /**
+   * @return period of the current moment, pass it to {@link #isInWindow(int, long)}
+   */
+  long currentPeriod() {
+    return windowPeriods.currentPeriod();
+  }
+
+  /**
+   * @return true if the slot holds values of the window that ends with the given period
+   */
+  boolean isInWindow(int slot, long period) {
+    return windowPeriods.isPeriodInWindow(slotToPeriod.get(slot), period);
+  }
+
+  protected abstract void resetSlot(int slot);
+}
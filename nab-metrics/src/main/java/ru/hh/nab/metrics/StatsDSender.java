@@ -1,144 +1,387 @@
 package ru.hh.nab.metrics;
 
 import com.timgroup.statsd.StatsDClient;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntToLongFunction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * A glue between aggregators ({@link Counters}, {@link Histogram}, etc.) and StatsDClient.<br/>
- * For each aggregator there is a corresponding method that registers a periodic task.<br/>
- * This task sends snapshot of the aggregator to a monitoring system and resets the aggregator.
+ * For each aggregator there is a corresponding method that sends snapshot of the aggregator to a monitoring system
+ * and resets the aggregator.<br/>
+ * Tasks registered with {@link #sendPeriodically(Runnable)} are collected in {@link MetricsRegistry}
+ * and are run together by a single scheduled flush.
  */
 public class StatsDSender {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(StatsDSender.class);
   private static final int DEFAULT_SEND_INTERVAL_SECONDS = 60;
   public static final int[] DEFAULT_PERCENTILES = {95, 99, 100};
+  public static final int DEFAULT_MAX_DISTRIBUTION_SAMPLES = 200;
+
+  private static final int METRIC_NAME_CACHE_SIZE = 10_000;
 
   private final StatsDClient statsDClient;
   private final ScheduledExecutorService scheduledExecutorService;
   private final int defaultPeriodicSendInterval;
+  private final HistogramMode histogramMode;
+  private final int maxDistributionSamples;
+  private final MetricNameCache metricNameCache;
+  private final MetricsRegistry metricsRegistry;
+  private final AtomicBoolean flushScheduled = new AtomicBoolean();
 
   public StatsDSender(StatsDClient statsDClient, ScheduledExecutorService scheduledExecutorService) {
     this(statsDClient, scheduledExecutorService, DEFAULT_SEND_INTERVAL_SECONDS);
   }
 
   public StatsDSender(StatsDClient statsDClient, ScheduledExecutorService scheduledExecutorService, int defaultPeriodicSendInterval) {
+    this(statsDClient, scheduledExecutorService, defaultPeriodicSendInterval, TagsMode.NAME_SUFFIX, HistogramMode.PERCENTILES);
+  }
+
+  /**
+   * @param defaultPeriodicSendInterval interval for {@link StatsDSender#sendPeriodically(Runnable)}, non-positive value means 60 seconds
+   * @param tagsMode      how tags are sent, see {@link TagsMode}
+   * @param histogramMode how histograms are sent, see {@link HistogramMode}
+   */
+  public StatsDSender(
+      StatsDClient statsDClient,
+      ScheduledExecutorService scheduledExecutorService,
+      int defaultPeriodicSendInterval,
+      TagsMode tagsMode,
+      HistogramMode histogramMode
+  ) {
+    this(statsDClient, scheduledExecutorService, defaultPeriodicSendInterval, tagsMode, histogramMode, DEFAULT_MAX_DISTRIBUTION_SAMPLES);
+  }
+
+  /**
+   * @param maxDistributionSamples the expected number of values sent for one histogram snapshot in {@link HistogramMode#DISTRIBUTION},
+   *                               if it has more observations they are sampled with a sample rate
+   */
+  public StatsDSender(
+      StatsDClient statsDClient,
+      ScheduledExecutorService scheduledExecutorService,
+      int defaultPeriodicSendInterval,
+      TagsMode tagsMode,
+      HistogramMode histogramMode,
+      int maxDistributionSamples
+  ) {
+    this(
+        statsDClient,
+        scheduledExecutorService,
+        defaultPeriodicSendInterval,
+        tagsMode,
+        histogramMode,
+        maxDistributionSamples,
+        new MetricsRegistry()
+    );
+  }
+
+  /**
+   * @param metricsRegistry a registry for tasks of {@link #sendPeriodically(Runnable)},
+   *                        pass the same registry whose {@link MetricsRegistry#getErrorHandler()} is used by statsDClient
+   */
+  public StatsDSender(
+      StatsDClient statsDClient,
+      ScheduledExecutorService scheduledExecutorService,
+      int defaultPeriodicSendInterval,
+      TagsMode tagsMode,
+      HistogramMode histogramMode,
+      int maxDistributionSamples,
+      MetricsRegistry metricsRegistry
+  ) {
     this.statsDClient = statsDClient;
     this.scheduledExecutorService = scheduledExecutorService;
     this.defaultPeriodicSendInterval = defaultPeriodicSendInterval > 0 ? defaultPeriodicSendInterval : DEFAULT_SEND_INTERVAL_SECONDS;
+    this.histogramMode = histogramMode;
+    this.maxDistributionSamples = maxDistributionSamples > 0 ? maxDistributionSamples : DEFAULT_MAX_DISTRIBUTION_SAMPLES;
+    this.metricNameCache = new MetricNameCache(METRIC_NAME_CACHE_SIZE, tagsMode);
+    this.metricsRegistry = metricsRegistry;
   }
 
   public void sendTime(String metricName, long value, Tag... tags) {
-    statsDClient.time(getFullMetricName(metricName, tags), value);
+    MetricNameCache.MetricName name = metricNameCache.create(metricName, tags);
+    statsDClient.time(name.getName(), value, name.getTags());
   }
 
   public void sendCount(String metricName, long delta, Tag... tags) {
-    statsDClient.count(getFullMetricName(metricName, tags), delta);
+    count(metricNameCache.create(metricName, tags), delta);
   }
 
   public void sendCounters(String metricName, Counters counters) {
     Map<Tags, Integer> counterAggregatorSnapshot = counters.getSnapshotAndReset();
-    counterAggregatorSnapshot.forEach((tags, count) -> statsDClient.count(getFullMetricName(metricName, tags.getTags()), count));
+    counterAggregatorSnapshot.forEach((tags, count) -> count(metricNameCache.get(metricName, tags), count));
   }
 
   public void sendLongCounters(String metricName, LongCounters counters) {
     Map<Tags, Long> counterAggregatorSnapshot = counters.getSnapshotAndReset();
-    counterAggregatorSnapshot.forEach((tags, count) -> statsDClient.count(getFullMetricName(metricName, tags.getTags()), count));
+    counterAggregatorSnapshot.forEach((tags, count) -> count(metricNameCache.get(metricName, tags), count));
+  }
+
+  public void sendCounters(String metricName, StripedCounters counters) {
+    sendCounters(metricName, null, counters);
+  }
+
+  /**
+   * Also sends number of counters evicted due to maxNumOfCounters limit as metricName.overflow, if any.
+   *
+   * @param overflowTags tags of metricName.overflow, evicted counters have different tags so they can't be used
+   */
+  public void sendCounters(String metricName, Tag[] overflowTags, StripedCounters counters) {
+    Map<Tags, Long> counterAggregatorSnapshot = counters.getSnapshotAndReset();
+    counterAggregatorSnapshot.forEach((tags, count) -> count(metricNameCache.get(metricName, tags), count));
+    long overflowCount = counters.getOverflowCountAndReset();
+    if (overflowCount > 0) {
+      count(metricNameCache.create(metricName + ".overflow", overflowTags), overflowCount);
+    }
   }
 
   public void sendGauge(String metricName, long metric, Tag... tags) {
-    statsDClient.gauge(getFullMetricName(metricName, tags), metric);
+    MetricNameCache.MetricName name = metricNameCache.create(metricName, tags);
+    statsDClient.gauge(name.getName(), metric, name.getTags());
   }
 
   public void sendMax(String metricName, Max max, Tag... tags) {
-    statsDClient.gauge(getFullMetricName(metricName, tags), max.getAndReset());
+    MetricNameCache.MetricName name = metricNameCache.create(metricName, tags);
+    statsDClient.gauge(name.getName(), max.getAndReset(), name.getTags());
   }
 
   public void sendHistogram(String metricName, Histogram histogram, int... percentiles) {
-    computeAndSendPercentiles(metricName, null, histogram.getValueToCountAndReset(), percentiles);
+    sendHistogram(metricNameCache.create(metricName, null), histogram.getValueToCountAndReset(), percentiles);
   }
 
   public void sendHistogram(String metricName, Tag[] tags, Histogram histogram, int... percentiles) {
-    computeAndSendPercentiles(metricName, tags, histogram.getValueToCountAndReset(), percentiles);
+    sendHistogram(metricNameCache.create(metricName, tags), histogram.getValueToCountAndReset(), percentiles);
+  }
+
+  public void sendHistogram(String metricName, LogLinearHistogram histogram, int... percentiles) {
+    sendHistogramSnapshot(metricName, null, histogram.getSnapshotAndReset(), percentiles);
+  }
+
+  public void sendHistogram(String metricName, Tag[] tags, LogLinearHistogram histogram, int... percentiles) {
+    sendHistogramSnapshot(metricName, tags, histogram.getSnapshotAndReset(), percentiles);
+  }
+
+  /**
+   * Sends percentiles of a snapshot, for example, of snapshots merged from several histograms.
+   */
+  public void sendHistogramSnapshot(String metricName, Tag[] tags, LogLinearHistogram.Snapshot snapshot, int... percentiles) {
+    if (snapshot.isEmpty()) {
+      return;
+    }
+    MetricNameCache.MetricName name = metricNameCache.create(metricName, tags);
+    if (histogramMode == HistogramMode.DISTRIBUTION) {
+      sendDistribution(name, snapshot.getCounts(), snapshot::getBucketValue);
+      return;
+    }
+    int[] values = snapshot.getValuesAtPercentiles(percentiles);
+    for (int i = 0; i < percentiles.length; i++) {
+      statsDClient.gauge(name.getPercentileName(percentiles[i]), values[i], name.getTags());
+    }
   }
 
   public void sendHistograms(String metricName, Histograms histograms, int... percentiles) {
     Map<Tags, Map<Integer, Integer>> tagsToHistogram = histograms.getTagsToHistogramAndReset();
     for (Map.Entry<Tags, Map<Integer, Integer>> tagsAndHistogram : tagsToHistogram.entrySet()) {
-      computeAndSendPercentiles(
-          metricName,
-          tagsAndHistogram.getKey().getTags(),
-          tagsAndHistogram.getValue(),
-          percentiles
-      );
+      sendHistogram(metricNameCache.get(metricName, tagsAndHistogram.getKey()), tagsAndHistogram.getValue(), percentiles);
     }
   }
 
   public void sendUniformHistogram(String metricName, UniformHistogram histogram, int... percentiles) {
-    computeAndSendPercentiles(metricName, null, histogram.getValuesAndReset(), percentiles);
+    sendUniformHistogram(metricNameCache.create(metricName, null), histogram.getSnapshotAndReset(), percentiles);
   }
 
   public void sendUniformHistogram(String metricName, Tag[] tags, UniformHistogram histogram, int... percentiles) {
-    computeAndSendPercentiles(metricName, tags, histogram.getValuesAndReset(), percentiles);
+    sendUniformHistogram(metricNameCache.create(metricName, tags), histogram.getSnapshotAndReset(), percentiles);
   }
 
   public void sendUniformHistograms(String metricName, UniformHistograms histograms, int... percentiles) {
-    Map<Tags, long[]> tagsToHistogram = histograms.getTagsToHistogramAndReset();
-    for (Map.Entry<Tags, long[]> tagsAndHistogram : tagsToHistogram.entrySet()) {
-      computeAndSendPercentiles(
-          metricName,
-          tagsAndHistogram.getKey().getTags(),
-          tagsAndHistogram.getValue(),
-          percentiles
-      );
+    Map<Tags, UniformHistogram.Snapshot> tagsToHistogram = histograms.getTagsToSnapshotAndReset();
+    for (Map.Entry<Tags, UniformHistogram.Snapshot> tagsAndHistogram : tagsToHistogram.entrySet()) {
+      sendUniformHistogram(metricNameCache.get(metricName, tagsAndHistogram.getKey()), tagsAndHistogram.getValue(), percentiles);
     }
   }
 
-  private void computeAndSendPercentiles(String metricName, Tag[] tags, Map<Integer, Integer> valueToCount, int... percentiles) {
+  public void sendQuantileSketch(String metricName, QuantileSketch sketch, int... percentiles) {
+    sendQuantileSketch(metricNameCache.create(metricName, null), sketch.getSnapshotAndReset(), percentiles);
+  }
+
+  public void sendQuantileSketch(String metricName, Tag[] tags, QuantileSketch sketch, int... percentiles) {
+    sendQuantileSketch(metricNameCache.create(metricName, tags), sketch.getSnapshotAndReset(), percentiles);
+  }
+
+  public void sendQuantileSketches(String metricName, QuantileSketches sketches, int... percentiles) {
+    Map<Tags, QuantileSketch.Snapshot> tagsToSnapshot = sketches.getTagsToSnapshotAndReset();
+    for (Map.Entry<Tags, QuantileSketch.Snapshot> tagsAndSnapshot : tagsToSnapshot.entrySet()) {
+      sendQuantileSketch(metricNameCache.get(metricName, tagsAndSnapshot.getKey()), tagsAndSnapshot.getValue(), percentiles);
+    }
+  }
+
+  private void sendQuantileSketch(MetricNameCache.MetricName name, QuantileSketch.Snapshot snapshot, int... percentiles) {
+    if (snapshot.isEmpty()) {
+      return;
+    }
+    if (histogramMode == HistogramMode.DISTRIBUTION) {
+      sendDistribution(name, snapshot.getCounts(), snapshot::getBucketValue);
+      return;
+    }
+    long[] values = snapshot.getValuesAtPercentiles(percentiles);
+    for (int i = 0; i < percentiles.length; i++) {
+      statsDClient.gauge(name.getPercentileName(percentiles[i]), values[i], name.getTags());
+    }
+  }
+
+  private void sendHistogram(MetricNameCache.MetricName name, Map<Integer, Integer> valueToCount, int... percentiles) {
+    if (histogramMode == HistogramMode.DISTRIBUTION) {
+      sendDistribution(name, valueToCount);
+      return;
+    }
     Map<Integer, Integer> percentileToValue = Percentiles.computePercentiles(valueToCount, percentiles);
-    for (Map.Entry<Integer, Integer> percentileAndValue : percentileToValue.entrySet()) {
-      statsDClient.gauge(
-          getFullMetricName(metricName, tags) + ".percentile_is_" + percentileAndValue.getKey(),
-          percentileAndValue.getValue()
-      );
+    sendPercentiles(name, percentileToValue);
+  }
+
+  private void sendUniformHistogram(MetricNameCache.MetricName name, UniformHistogram.Snapshot snapshot, int... percentiles) {
+    if (histogramMode == HistogramMode.DISTRIBUTION) {
+      long[] values = snapshot.values();
+      sendDistribution(name, values, null, values.length, Math.max(snapshot.count(), values.length));
+      return;
     }
+    Map<Integer, Long> percentileToValue = Percentiles.computePercentiles(snapshot.values(), percentiles);
+    sendPercentiles(name, percentileToValue);
   }
 
-  private void computeAndSendPercentiles(String metricName, Tag[] tags, long[] values, int... percentiles) {
-    Map<Integer, Long> percentileToValue = Percentiles.computePercentiles(values, percentiles);
-    for (Map.Entry<Integer, Long> percentileAndValue : percentileToValue.entrySet()) {
-      statsDClient.gauge(
-          getFullMetricName(metricName, tags) + ".percentile_is_" + percentileAndValue.getKey(),
-          percentileAndValue.getValue()
-      );
+  private <T extends Number> void sendPercentiles(MetricNameCache.MetricName name, Map<Integer, T> percentileToValue) {
+    for (Map.Entry<Integer, T> percentileAndValue : percentileToValue.entrySet()) {
+      statsDClient.gauge(name.getPercentileName(percentileAndValue.getKey()), percentileAndValue.getValue().longValue(), name.getTags());
     }
   }
 
+  private void sendDistribution(MetricNameCache.MetricName name, Map<Integer, Integer> valueToCount) {
+    long[] values = new long[valueToCount.size()];
+    long[] counts = new long[valueToCount.size()];
+    int size = 0;
+    for (Map.Entry<Integer, Integer> valueAndCount : valueToCount.entrySet()) {
+      values[size] = valueAndCount.getKey();
+      counts[size] = valueAndCount.getValue();
+      size++;
+    }
+    sendDistribution(name, values, counts, size, totalCount(counts, size));
+  }
+
+  private void sendDistribution(MetricNameCache.MetricName name, long[] bucketCounts, IntToLongFunction bucketValue) {
+    long[] values = new long[bucketCounts.length];
+    long[] counts = new long[bucketCounts.length];
+    int size = 0;
+    for (int bucket = 0; bucket < bucketCounts.length; bucket++) {
+      if (bucketCounts[bucket] > 0) {
+        values[size] = bucketValue.applyAsLong(bucket);
+        counts[size] = bucketCounts[bucket];
+        size++;
+      }
+    }
+    sendDistribution(name, values, counts, size, totalCount(counts, size));
+  }
+
+  /**
+   * Sends a distribution of values.<br/>
+   * At most about maxDistributionSamples values are sent: each value is sent count * min(1, maxDistributionSamples / sampledCount) times,
+   * rounded up or down at random so that the expected number of sends is not rounded.
+   * All values are sent with sample rate = sent / observations, so the aggregator counts each received value 1 / sample rate times,
+   * and counts and quantiles aggregated over all instances are not biased.
+   * A reservoir keeps fewer values than observations, then observations is greater than sampledCount.<br/>
+   * Work is proportional to the number of sent values, not to the number of observations.
+   *
+   * @param counts number of times each value is kept, null means each value is kept once
+   * @param observations number of observations the values stand for
+   */
+  private void sendDistribution(MetricNameCache.MetricName name, long[] values, long[] counts, int size, long observations) {
+    long sampledCount = totalCount(counts, size);
+    if (sampledCount <= maxDistributionSamples && sampledCount == observations) {
+      for (int i = 0; i < size; i++) {
+        for (long j = countAt(counts, i); j > 0; j--) {
+          statsDClient.distribution(name.getName(), values[i], name.getTags());
+        }
+      }
+      return;
+    }
+
+    long sentCount = Math.min(sampledCount, maxDistributionSamples);
+    double sendRatio = (double) sentCount / sampledCount;
+    double sampleRate = (double) sentCount / observations;
+    for (int i = 0; i < size; i++) {
+      for (long j = stochasticRound(countAt(counts, i) * sendRatio); j > 0; j--) {
+        statsDClient.distribution(name.getName(), values[i], sampleRate, name.getTags());
+      }
+    }
+  }
+
+  private static long stochasticRound(double value) {
+    long floor = (long) value;
+    return ThreadLocalRandom.current().nextDouble() < value - floor ? floor + 1 : floor;
+  }
+
+  private static long totalCount(long[] counts, int size) {
+    long totalCount = 0;
+    for (int i = 0; i < size; i++) {
+      totalCount += countAt(counts, i);
+    }
+    return totalCount;
+  }
+
+  private static long countAt(long[] counts, int index) {
+    return counts == null ? 1 : counts[index];
+  }
+
   public void sendMoments(String metricName, Moments moments, Tag... tags) {
     Moments.MomentsData data = moments.getAndReset();
-    setGaugeValue(getFullMetricName(metricName + ".min", tags), data.getMin());
-    setGaugeValue(getFullMetricName(metricName + ".max", tags), data.getMax());
-    setGaugeValue(getFullMetricName(metricName + ".mean", tags), data.getMean());
-    setGaugeValue(getFullMetricName(metricName + ".variance", tags), data.getVariance());
+    setGaugeValue(metricNameCache.create(metricName + ".min", tags), data.getMin());
+    setGaugeValue(metricNameCache.create(metricName + ".max", tags), data.getMax());
+    setGaugeValue(metricNameCache.create(metricName + ".mean", tags), data.getMean());
+    setGaugeValue(metricNameCache.create(metricName + ".variance", tags), data.getVariance());
+    setGaugeValue(metricNameCache.create(metricName + ".skewness", tags), data.getSkewness());
+    setGaugeValue(metricNameCache.create(metricName + ".kurtosis", tags), data.getKurtosis());
   }
 
-  private void setGaugeValue(String name, double value) {
+  private void setGaugeValue(MetricNameCache.MetricName name, double value) {
     if (value < 0) {
-      statsDClient.gauge(name, 0);
+      statsDClient.gauge(name.getName(), 0, name.getTags());
     }
-    statsDClient.gauge(name, value);
+    statsDClient.gauge(name.getName(), value, name.getTags());
+  }
+
+  private void count(MetricNameCache.MetricName name, long delta) {
+    statsDClient.count(name.getName(), delta, name.getTags());
   }
 
+  /**
+   * Registers the command in {@link MetricsRegistry}, all registered commands are run together every defaultPeriodicSendInterval seconds.
+   */
   public void sendPeriodically(Runnable command) {
-    sendPeriodically(command, defaultPeriodicSendInterval);
+    metricsRegistry.register(command);
+    if (flushScheduled.compareAndSet(false, true)) {
+      scheduledExecutorService.scheduleAtFixedRate(
+          () -> metricsRegistry.flush(statsDClient),
+          defaultPeriodicSendInterval,
+          defaultPeriodicSendInterval,
+          TimeUnit.SECONDS
+      );
+    }
   }
 
+  /**
+   * Schedules a separate task for the command, use it only if the command must be run with a non-default interval.
+   */
   public void sendPeriodically(Runnable command, int sendIntervalSeconds) {
+    if (sendIntervalSeconds == defaultPeriodicSendInterval) {
+      sendPeriodically(command);
+      return;
+    }
     scheduledExecutorService.scheduleAtFixedRate(command, sendIntervalSeconds, sendIntervalSeconds, TimeUnit.SECONDS);
   }
 
@@ -150,20 +393,62 @@ public class StatsDSender {
     StringBuilder stringBuilder = new StringBuilder(metricName);
 
     for (Tag tag : tags) {
-      if (tag.name == null) {
-        LOGGER.warn("Null tag name for metric: {}", metricName);
-        continue;
+      if (isValidTag(metricName, tag)) {
+        stringBuilder.append(tag.getStatsDSuffix());
       }
-      if (tag.value == null) {
-        LOGGER.warn("Null tag value for tag name: {}, for metric: {}", tag.name, metricName);
+    }
+    return stringBuilder.toString();
+  }
+
+  static String[] getNativeTags(String metricName, Tag[] tags) {
+    if (tags == null || tags.length == 0) {
+      return new String[0];
+    }
+
+    List<String> nativeTags = new ArrayList<>(tags.length);
+    for (Tag tag : tags) {
+      if (isValidTag(metricName, tag)) {
+        nativeTags.add(tag.getDogStatsDTag());
       }
+    }
+    return nativeTags.toArray(String[]::new);
+  }
 
-      stringBuilder
-          .append('.')
-          .append(tag.name.replace('.', '-'))
-          .append("_is_")
-          .append(Optional.ofNullable(tag.value).map(value -> value.replace('.', '-')).orElse("null"));
+  private static boolean isValidTag(String metricName, Tag tag) {
+    if (tag.name == null) {
+      LOGGER.warn("Null tag name for metric: {}", metricName);
+      return false;
     }
-    return stringBuilder.toString();
+    if (tag.value == null) {
+      LOGGER.warn("Null tag value for tag name: {}, for metric: {}", tag.name, metricName);
+    }
+    return true;
+  }
+
+  static String getPercentileMetricName(String fullMetricName, int percentile) {
+    return fullMetricName + ".percentile_is_" + percentile;
+  }
+
+  public enum TagsMode {
+    /**
+     * Tags are flattened into the metric name: metricName.tagName_is_tagValue
+     */
+    NAME_SUFFIX,
+    /**
+     * Tags are sent as DogStatsD tags: metricName|#tagName:tagValue
+     */
+    NATIVE
+  }
+
+  public enum HistogramMode {
+    /**
+     * Percentiles are computed in-process and sent as gauges metricName.percentile_is_N
+     */
+    PERCENTILES,
+    /**
+     * Values are sent as a DogStatsD distribution, so percentiles are computed by the agent and can be aggregated across nodes.
+     * Requested percentiles are ignored.
+     */
+    DISTRIBUTION
   }
 }
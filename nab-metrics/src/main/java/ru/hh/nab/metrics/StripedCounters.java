@@ -0,0 +1,141 @@
+package ru.hh.nab.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An aggregator that accumulates metrics that can be summed, like {@link Counters} and {@link LongCounters}.<br/>
+ * Each counter is a {@link LongAdder}, so concurrent updates of the same counter do not contend on a single CAS cell.<br/>
+ * When maxNumOfCounters is reached, a counter is evicted in constant time:
+ * a few random counters are sampled and the one with the least value is thrown away (approximate LFU).<br/>
+ * Number of evicted counters is sent by {@link StatsDSender#sendCounters(String, StripedCounters)} as a separate metric.
+ */
+public class StripedCounters {
+  private static final Logger logger = LoggerFactory.getLogger(StripedCounters.class);
+  private static final int EVICTION_SAMPLE_SIZE = 5;
+
+  private final Map<Tags, Slot> tagsToSlot = new ConcurrentHashMap<>();
+  private final Slot[] slots;
+  private final LongAdder overflowCounter = new LongAdder();
+  private int size;
+
+  /**
+   * @param maxNumOfCounters an upper limit on the number of counters.<br/>
+   * An instance of StripedCounters maintains a separate counter for each combination of tags.<br/>
+   * If there are too many combinations, we can consume too much memory.<br/>
+   * To prevent this, when maxNumOfCounters is reached one of the counters with a small value will be thrown away.
+   */
+  public StripedCounters(int maxNumOfCounters) {
+    if (maxNumOfCounters <= 0) {
+      throw new IllegalArgumentException("maxNumOfCounters must be positive: " + maxNumOfCounters);
+    }
+    this.slots = new Slot[maxNumOfCounters];
+  }
+
+  public void add(long value, Tag tag) {
+    addInner(value, tag);
+  }
+
+  public void add(long value, TagSet tags) {
+    addInner(value, tags);
+  }
+
+  public void add(long value, Tag... tagsArr) {
+    addInner(value, new MultiTags(tagsArr));
+  }
+
+  private void addInner(long value, Tags tags) {
+    Slot slot = tagsToSlot.get(tags);
+    if (slot == null) {
+      slot = insert(tags);
+    }
+    slot.counter.add(value);
+  }
+
+  private synchronized Slot insert(Tags tags) {
+    Slot slot = tagsToSlot.get(tags);
+    if (slot != null) {
+      return slot;
+    }
+
+    int index;
+    if (size < slots.length) {
+      index = size++;
+    } else {
+      index = chooseVictim();
+      tagsToSlot.remove(slots[index].tags);
+      overflowCounter.increment();
+    }
+    slot = new Slot(tags, index);
+    slots[index] = slot;
+    tagsToSlot.put(tags, slot);
+    return slot;
+  }
+
+  private int chooseVictim() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int victim = random.nextInt(size);
+    long minValue = slots[victim].counter.sum();
+    for (int i = 1; i < EVICTION_SAMPLE_SIZE; i++) {
+      int candidate = random.nextInt(size);
+      long value = slots[candidate].counter.sum();
+      if (value < minValue) {
+        victim = candidate;
+        minValue = value;
+      }
+    }
+    return victim;
+  }
+
+  private void removeSlot(Slot slot) {
+    if (slots[slot.index] != slot) {
+      return;
+    }
+    tagsToSlot.remove(slot.tags);
+    Slot last = slots[--size];
+    slots[slot.index] = last;
+    last.index = slot.index;
+    slots[size] = null;
+  }
+
+  Map<Tags, Long> getSnapshotAndReset() {
+    Map<Tags, Long> tagsToCountSnapshot = new HashMap<>();
+    for (Slot slot : tagsToSlot.values()) {
+      long count = slot.counter.sumThenReset();
+      if (count == 0) {
+        synchronized (this) {
+          removeSlot(slot);
+        }
+      }
+      tagsToCountSnapshot.put(slot.tags, count);
+    }
+    return tagsToCountSnapshot;
+  }
+
+  /**
+   * @return number of counters evicted because maxNumOfCounters was reached since the previous call
+   */
+  long getOverflowCountAndReset() {
+    long overflowCount = overflowCounter.sumThenReset();
+    if (overflowCount > 0) {
+      logger.warn("Max num ({}) of counters reached, {} counters were evicted", slots.length, overflowCount);
+    }
+    return overflowCount;
+  }
+
+  private static final class Slot {
+    private final Tags tags;
+    private final LongAdder counter = new LongAdder();
+    private int index;
+
+    private Slot(Tags tags, int index) {
+      this.tags = tags;
+      this.index = index;
+    }
+  }
+}
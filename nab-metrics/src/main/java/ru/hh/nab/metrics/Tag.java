@@ -14,6 +14,8 @@ public class Tag extends Tags implements Comparable<Tag> {
   public final String name;
   public final String value;
   private final String tag;
+  private String statsDSuffix;
+  private String dogStatsDTag;
 
   public Tag(String name, String value) {
     this.name = name;
@@ -52,4 +54,32 @@ public class Tag extends Tags implements Comparable<Tag> {
   Tag[] getTags() {
     return new Tag[]{this};
   }
+
+  /**
+   * @return ".name_is_value" with dots replaced, computed once. Tag name must not be null.
+   */
+  String getStatsDSuffix() {
+    String suffix = statsDSuffix;
+    if (suffix == null) {
+      suffix = '.' + name.replace('.', '-') + "_is_" + (value == null ? "null" : value.replace('.', '-'));
+      statsDSuffix = suffix;
+    }
+    return suffix;
+  }
+
+  /**
+   * @return "name:value" with characters reserved by DogStatsD protocol replaced, computed once. Tag name must not be null.
+   */
+  String getDogStatsDTag() {
+    String dogStatsDTag = this.dogStatsDTag;
+    if (dogStatsDTag == null) {
+      dogStatsDTag = sanitizeDogStatsD(name) + ':' + (value == null ? "null" : sanitizeDogStatsD(value));
+      this.dogStatsDTag = dogStatsDTag;
+    }
+    return dogStatsDTag;
+  }
+
+  private static String sanitizeDogStatsD(String tagPart) {
+    return tagPart.replace(',', '_').replace('|', '_');
+  }
 }
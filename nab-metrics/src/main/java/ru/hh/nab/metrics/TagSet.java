@@ -0,0 +1,24 @@
+package ru.hh.nab.metrics;
+
+/**
+ * An immutable combination of tags, prepared once and reused on hot paths.<br/>
+ * Aggregators accept it instead of Tag... to avoid allocating and sorting a new combination on every call,
+ * StatsD names of the tags are prepared once, so {@link StatsDSender} does not sanitize them on every send.<br/>
+ * Equal to a combination built from the same tags in any order.
+ */
+public final class TagSet extends MultiTags {
+
+  private TagSet(Tag[] tags) {
+    super(tags);
+  }
+
+  public static TagSet of(Tag... tags) {
+    TagSet tagSet = new TagSet(tags.clone());
+    for (Tag tag : tagSet.getTags()) {
+      if (tag.name != null) {
+        tag.getStatsDSuffix();
+      }
+    }
+    return tagSet;
+  }
+}
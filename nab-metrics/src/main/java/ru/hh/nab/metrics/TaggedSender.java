@@ -32,6 +32,10 @@ public class TaggedSender {
     delegate.sendHistogram(metricName, tags, histogram, percentiles);
   }
 
+  public void sendHistogram(String metricName, LogLinearHistogram histogram, int... percentiles) {
+    delegate.sendHistogram(metricName, tags, histogram, percentiles);
+  }
+
   public void sendMoments(String metricName, Moments moments) {
     delegate.sendMoments(metricName, moments, tags);
   }
@@ -6,7 +6,8 @@ import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * An aggregator that accumulates a stream of values as a histogram to compute percentiles.<br/>
- * For example, response times.
+ * For example, response times.<br/>
+ * For large maxHistogramSize consider {@link QuantileSketch}, which neither samples nor sorts values.
  */
 public class UniformHistogram {
   private final AtomicInteger count = new AtomicInteger();
@@ -34,6 +35,10 @@ public class UniformHistogram {
   }
 
   public long[] getValuesAndReset() {
+    return getSnapshotAndReset().values();
+  }
+
+  Snapshot getSnapshotAndReset() {
     int size = values.length();
     long c = count.getAndSet(0);
     if (c < size) {
@@ -45,7 +50,14 @@ public class UniformHistogram {
       data[i] = values.get(i);
     }
 
-    return data;
+    return new Snapshot(data, c);
+  }
+
+  /**
+   * @param values sampled values, there are fewer of them than observations once maxHistogramSize is reached
+   * @param count number of observations
+   */
+  record Snapshot(long[] values, long count) {
   }
 }
 
@@ -32,6 +32,10 @@ public class UniformHistograms {
     saveInner(value, tag);
   }
 
+  public void save(long value, TagSet tags) {
+    saveInner(value, tags);
+  }
+
   public void save(long value, Tag... tags) {
     saveInner(value, new MultiTags(tags));
   }
@@ -53,18 +57,27 @@ public class UniformHistograms {
   }
 
   Map<Tags, long[]> getTagsToHistogramAndReset() {
-    Map<Tags, long[]> tagsToHistogramSnapshot = new HashMap<>(tagsToHistogram.size());
+    Map<Tags, UniformHistogram.Snapshot> tagsToSnapshot = getTagsToSnapshotAndReset();
+    Map<Tags, long[]> tagsToHistogramSnapshot = new HashMap<>(tagsToSnapshot.size());
+    for (Map.Entry<Tags, UniformHistogram.Snapshot> entry : tagsToSnapshot.entrySet()) {
+      tagsToHistogramSnapshot.put(entry.getKey(), entry.getValue().values());
+    }
+    return tagsToHistogramSnapshot;
+  }
+
+  Map<Tags, UniformHistogram.Snapshot> getTagsToSnapshotAndReset() {
+    Map<Tags, UniformHistogram.Snapshot> tagsToSnapshot = new HashMap<>(tagsToHistogram.size());
     for (Map.Entry<Tags, UniformHistogram> entry : tagsToHistogram.entrySet()) {
       Tags tags = entry.getKey();
       UniformHistogram histogram = entry.getValue();
-      long[] histSnapshot = histogram.getValuesAndReset();
-      if (histSnapshot.length != 0) {
-        tagsToHistogramSnapshot.put(tags, histSnapshot);
+      UniformHistogram.Snapshot histSnapshot = histogram.getSnapshotAndReset();
+      if (histSnapshot.values().length != 0) {
+        tagsToSnapshot.put(tags, histSnapshot);
       } else {
         tagsToHistogram.remove(tags);
       }
     }
-    return tagsToHistogramSnapshot;
+    return tagsToSnapshot;
   }
 
   protected int getMaxNumOfHistograms() {
@@ -0,0 +1,45 @@
+package ru.hh.nab.metrics;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Splits time into periods of window / numOfSlots and maps them to slots of a ring, the window is the last numOfSlots periods.<br/>
+ * Keeps no state of the slots, so it is shared by {@link SlidingWindow} and by aggregators that stamp their slots with periods themselves.
+ */
+final class WindowPeriods {
+  private final long slotDurationNanos;
+  private final int numOfSlots;
+  private final LongSupplier nanoClock;
+
+  WindowPeriods(Duration window, int numOfSlots, LongSupplier nanoClock) {
+    if (numOfSlots <= 0) {
+      throw new IllegalArgumentException("numOfSlots must be positive: " + numOfSlots);
+    }
+    this.slotDurationNanos = window.toNanos() / numOfSlots;
+    if (slotDurationNanos <= 0) {
+      throw new IllegalArgumentException("window is too short for " + numOfSlots + " slots: " + window);
+    }
+    this.numOfSlots = numOfSlots;
+    this.nanoClock = nanoClock;
+  }
+
+  int getNumOfSlots() {
+    return numOfSlots;
+  }
+
+  long currentPeriod() {
+    return Math.floorDiv(nanoClock.getAsLong(), slotDurationNanos);
+  }
+
+  int slotOf(long period) {
+    return (int) Math.floorMod(period, (long) numOfSlots);
+  }
+
+  /**
+   * @return true if values of slotPeriod belong to the window that ends with the given period
+   */
+  boolean isPeriodInWindow(long slotPeriod, long period) {
+    return slotPeriod <= period && slotPeriod > period - numOfSlots;
+  }
+}
@@ -0,0 +1,139 @@
+package ru.hh.nab.metrics;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link Counters} that also keep the sums of the last window, for example, of the last 10 seconds.<br/>
+ * The window can be read by any thread at any moment via getWindowCount methods, reading does not reset it.<br/>
+ * {@link StatsDSender} sends and resets the counters as usual, the window is not affected.<br/>
+ * Each combination of tags stamps its slots with their periods and resets a slot lazily on the first add in a new period,
+ * so sliding the window does not iterate all combinations.
+ * Combinations with nothing in the window are removed when the counters are sent.<br/>
+ * Adding to an existing combination of tags does not allocate.
+ */
+public class WindowedCounters extends Counters {
+  private static final Logger logger = LoggerFactory.getLogger(WindowedCounters.class);
+
+  private final Map<Tags, SlotCounts> tagsToSlotCounts = new ConcurrentHashMap<>();
+  private final int maxNumOfCounters;
+  private final WindowPeriods windowPeriods;
+
+  /**
+   * @param maxNumOfCounters an upper limit on the number of counters, see {@link Counters#Counters(int)}.<br/>
+   *                         When it is reached, new combinations of tags are not counted in the window until old ones expire.
+   * @param window           duration of the window
+   * @param numOfSlots       the window slides by window / numOfSlots
+   */
+  public WindowedCounters(int maxNumOfCounters, Duration window, int numOfSlots) {
+    this(maxNumOfCounters, window, numOfSlots, System::nanoTime);
+  }
+
+  WindowedCounters(int maxNumOfCounters, Duration window, int numOfSlots, LongSupplier nanoClock) {
+    super(maxNumOfCounters);
+    this.maxNumOfCounters = maxNumOfCounters;
+    this.windowPeriods = new WindowPeriods(window, numOfSlots, nanoClock);
+  }
+
+  @Override
+  void addInner(int value, Tags tags) {
+    super.addInner(value, tags);
+    long period = windowPeriods.currentPeriod();
+    SlotCounts slotCounts = tagsToSlotCounts.get(tags);
+    if (slotCounts == null) {
+      if (tagsToSlotCounts.size() >= maxNumOfCounters) {
+        removeExpired(period);
+      }
+      if (tagsToSlotCounts.size() >= maxNumOfCounters) {
+        logger.warn("Max num ({}) of windowed counters reached, {} is not counted in the window", maxNumOfCounters, tags);
+        return;
+      }
+      slotCounts = new SlotCounts(windowPeriods.getNumOfSlots());
+      SlotCounts currentSlotCounts = tagsToSlotCounts.putIfAbsent(tags, slotCounts);
+      if (currentSlotCounts != null) {
+        slotCounts = currentSlotCounts;
+      }
+    }
+    slotCounts.add(windowPeriods.slotOf(period), period, value);
+  }
+
+  /**
+   * Is called by {@link StatsDSender} on its thread, so expired combinations of tags are removed there.
+   */
+  @Override
+  Map<Tags, Integer> getSnapshotAndReset() {
+    removeExpired(windowPeriods.currentPeriod());
+    return super.getSnapshotAndReset();
+  }
+
+  public long getWindowCount(Tag tag) {
+    return getWindowCountInner(tag);
+  }
+
+  public long getWindowCount(TagSet tags) {
+    return getWindowCountInner(tags);
+  }
+
+  public long getWindowCount(Tag... tagsArr) {
+    return getWindowCountInner(new MultiTags(tagsArr));
+  }
+
+  private long getWindowCountInner(Tags tags) {
+    SlotCounts slotCounts = tagsToSlotCounts.get(tags);
+    return slotCounts == null ? 0 : slotCounts.getWindowCount(windowPeriods.currentPeriod());
+  }
+
+  private void removeExpired(long period) {
+    tagsToSlotCounts.values().removeIf(slotCounts -> slotCounts.isExpired(period));
+  }
+
+  /**
+   * Counts of the slots and the periods they are counted for.<br/>
+   * Values added concurrently with the reset of a slot may be lost, as in {@link SlidingWindow}.
+   */
+  private final class SlotCounts {
+    private final AtomicLongArray counts;
+    private final AtomicLongArray periods;
+
+    SlotCounts(int numOfSlots) {
+      counts = new AtomicLongArray(numOfSlots);
+      periods = new AtomicLongArray(numOfSlots);
+      for (int slot = 0; slot < numOfSlots; slot++) {
+        periods.set(slot, Long.MIN_VALUE);
+      }
+    }
+
+    void add(int slot, long period, int value) {
+      long slotPeriod = periods.get(slot);
+      if (slotPeriod < period && periods.compareAndSet(slot, slotPeriod, period)) {
+        counts.set(slot, value);
+        return;
+      }
+      counts.addAndGet(slot, value);
+    }
+
+    boolean isExpired(long period) {
+      for (int slot = 0; slot < periods.length(); slot++) {
+        if (windowPeriods.isPeriodInWindow(periods.get(slot), period)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    long getWindowCount(long period) {
+      long count = 0;
+      for (int slot = 0; slot < counts.length(); slot++) {
+        if (windowPeriods.isPeriodInWindow(periods.get(slot), period)) {
+          count += counts.get(slot);
+        }
+      }
+      return count;
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package ru.hh.nab.metrics;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * A {@link LogLinearHistogram} that also keeps the values of the last window, for example, of the last 10 seconds.<br/>
+ * The window can be read by any thread at any moment via {@link #getWindowSnapshot()}, reading does not reset it,
+ * so the application can use live percentiles, for example, for load shedding or adaptive timeouts.<br/>
+ * {@link StatsDSender} sends and resets the histogram as usual, the window is not affected.<br/>
+ * {@link #save(int)} does not allocate. Memory footprint is numOfSlots + 1 times footprint of {@link LogLinearHistogram}.
+ */
+public class WindowedHistogram extends LogLinearHistogram {
+
+  private final AtomicLongArray[] slotToCounts;
+  private final SlidingWindow slidingWindow;
+
+  /**
+   * @param maxValue          the highest value that is reported without clamping
+   * @param significantDigits number of significant decimal digits to keep, from 1 to 5
+   * @param window            duration of the window
+   * @param numOfSlots        the window slides by window / numOfSlots
+   */
+  public WindowedHistogram(int maxValue, int significantDigits, Duration window, int numOfSlots) {
+    this(maxValue, significantDigits, window, numOfSlots, System::nanoTime);
+  }
+
+  WindowedHistogram(int maxValue, int significantDigits, Duration window, int numOfSlots, LongSupplier nanoClock) {
+    super(maxValue, significantDigits);
+    this.slotToCounts = new AtomicLongArray[numOfSlots];
+    for (int slot = 0; slot < numOfSlots; slot++) {
+      slotToCounts[slot] = new AtomicLongArray(getNumOfBuckets());
+    }
+    this.slidingWindow = new SlidingWindow(window, numOfSlots, nanoClock) {
+      @Override
+      protected void resetSlot(int slot) {
+        AtomicLongArray counts = slotToCounts[slot];
+        for (int bucket = 0; bucket < counts.length(); bucket++) {
+          counts.set(bucket, 0);
+        }
+      }
+    };
+  }
+
+  @Override
+  public void save(int value) {
+    super.save(value);
+    slotToCounts[slidingWindow.currentSlot()].incrementAndGet(clampedBucketIndex(value));
+  }
+
+  /**
+   * @return values of the current window, the window is not reset
+   */
+  public Snapshot getWindowSnapshot() {
+    Snapshot snapshot = newSnapshot();
+    long[] snapshotCounts = snapshot.getCounts();
+    long period = slidingWindow.currentPeriod();
+    for (int slot = 0; slot < slotToCounts.length; slot++) {
+      if (!slidingWindow.isInWindow(slot, period)) {
+        continue;
+      }
+      AtomicLongArray counts = slotToCounts[slot];
+      for (int bucket = 0; bucket < snapshotCounts.length; bucket++) {
+        snapshotCounts[bucket] += counts.get(bucket);
+      }
+    }
+    return snapshot;
+  }
+}
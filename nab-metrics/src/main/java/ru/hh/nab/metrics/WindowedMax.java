@@ -0,0 +1,65 @@
+package ru.hh.nab.metrics;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.LongSupplier;
+
+/**
+ * A {@link Max} that also keeps the maximum of the last window, for example, of the last 10 seconds.<br/>
+ * The window can be read by any thread at any moment via {@link #getWindowMax()}, reading does not reset it.<br/>
+ * {@link StatsDSender} sends and resets the maximum as usual, the window is not affected.
+ */
+public class WindowedMax extends Max {
+
+  private final int defaultValue;
+  private final AtomicIntegerArray slotToMax;
+  private final SlidingWindow slidingWindow;
+
+  /**
+   * @param defaultValue every value passed to {@link WindowedMax#save} must be greater or equal to this default value.
+   * @param window       duration of the window
+   * @param numOfSlots   the window slides by window / numOfSlots
+   */
+  public WindowedMax(int defaultValue, Duration window, int numOfSlots) {
+    this(defaultValue, window, numOfSlots, System::nanoTime);
+  }
+
+  WindowedMax(int defaultValue, Duration window, int numOfSlots, LongSupplier nanoClock) {
+    super(defaultValue);
+    this.defaultValue = defaultValue;
+    this.slotToMax = new AtomicIntegerArray(numOfSlots);
+    for (int slot = 0; slot < numOfSlots; slot++) {
+      slotToMax.set(slot, defaultValue);
+    }
+    this.slidingWindow = new SlidingWindow(window, numOfSlots, nanoClock) {
+      @Override
+      protected void resetSlot(int slot) {
+        slotToMax.set(slot, defaultValue);
+      }
+    };
+  }
+
+  @Override
+  public void save(int value) {
+    super.save(value);
+    int slot = slidingWindow.currentSlot();
+    int currentMax = slotToMax.get(slot);
+    while (value > currentMax && !slotToMax.compareAndSet(slot, currentMax, value)) {
+      currentMax = slotToMax.get(slot);
+    }
+  }
+
+  /**
+   * @return maximum of the current window or defaultValue if nothing was saved during the window, the window is not reset
+   */
+  public int getWindowMax() {
+    int max = defaultValue;
+    long period = slidingWindow.currentPeriod();
+    for (int slot = 0; slot < slotToMax.length(); slot++) {
+      if (slidingWindow.isInWindow(slot, period)) {
+        max = Math.max(max, slotToMax.get(slot));
+      }
+    }
+    return max;
+  }
+}
@@ -0,0 +1,110 @@
+package ru.hh.nab.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class ArrayHistogramTest {
+
+  @Test
+  public void oneThread() {
+    Histogram histogram = new SimpleArrayHistogram(100);
+    assertTrue(histogram.getValueToCountAndReset().isEmpty());
+
+    histogram.save(7);
+    histogram.save(13);
+    histogram.save(7);
+    Map<Integer, Integer> valueToCount = histogram.getValueToCountAndReset();
+    assertEquals(2, valueToCount.size());
+    assertEquals(2, valueToCount.get(7).intValue());
+    assertEquals(1, valueToCount.get(13).intValue());
+
+    assertTrue(histogram.getValueToCountAndReset().isEmpty());
+  }
+
+  @Test
+  public void outOfRangeValuesAreNotDropped() {
+    Histogram histogram = new SimpleArrayHistogram(10);
+    histogram.save(-5);
+    histogram.save(11);
+    histogram.save(1000);
+
+    Map<Integer, Integer> valueToCount = histogram.getValueToCountAndReset();
+    assertEquals(2, valueToCount.size());
+    assertEquals(1, valueToCount.get(0).intValue());
+    assertEquals(2, valueToCount.get(10).intValue());
+  }
+
+  @Test
+  public void compactSameAsCompactHistogram() {
+    int histogramSize = 128;
+    int compactionRatio = 10;
+    Histogram expected = new CompactHistogram(histogramSize, compactionRatio);
+    Histogram actual = new CompactArrayHistogram(histogramSize, compactionRatio);
+    for (int value = 0; value < (histogramSize - 1) * 8; value++) {
+      expected.save(value);
+      actual.save(value);
+    }
+    assertEquals(expected.getValueToCountAndReset(), actual.getValueToCountAndReset());
+  }
+
+  @Test
+  public void rangedSameAsRangedHistogram() {
+    Histogram expected = new RangedHistogram(100);
+    Histogram actual = new RangedArrayHistogram();
+    for (int value : new int[]{0, 1, 2, 3, 4, 5, 17, 1000, 65_537, Integer.MAX_VALUE}) {
+      expected.save(value);
+      actual.save(value);
+    }
+    assertEquals(expected.getValueToCountAndReset(), actual.getValueToCountAndReset());
+  }
+
+  @Test
+  public void withHistograms() {
+    Histograms histograms = new Histograms(10, () -> new SimpleArrayHistogram(100));
+    histograms.save(7, new Tag("label", "first"));
+    histograms.save(7, new Tag("label", "first"));
+    histograms.save(8, new Tag("label", "second"));
+
+    Map<Tags, Map<Integer, Integer>> tagsToHistogram = histograms.getTagsToHistogramAndReset();
+    assertEquals(Map.of(7, 2), tagsToHistogram.get(new Tag("label", "first")));
+    assertEquals(Map.of(8, 1), tagsToHistogram.get(new Tag("label", "second")));
+  }
+
+  @Test
+  public void twoThreads() throws InterruptedException {
+    Histogram histogram = new SimpleArrayHistogram(10);
+    int increases = 1_000_000;
+    Runnable task = () -> {
+      for (int i = 0; i < increases; i++) {
+        histogram.save(1);
+        histogram.save(2);
+      }
+    };
+
+    List<Map<Integer, Integer>> snapshots = new ArrayList<>();
+    Thread thread = new Thread(task);
+    thread.start();
+    for (int i = 0; i < increases; i++) {
+      histogram.save(2);
+      histogram.save(1);
+      if (i % 1000 == 0) {
+        snapshots.add(histogram.getValueToCountAndReset());
+      }
+    }
+    thread.join();
+    snapshots.add(histogram.getValueToCountAndReset());
+
+    int firstSum = 0;
+    int secondSum = 0;
+    for (Map<Integer, Integer> snapshot : snapshots) {
+      firstSum += snapshot.getOrDefault(1, 0);
+      secondSum += snapshot.getOrDefault(2, 0);
+    }
+    assertEquals(increases * 2, firstSum);
+    assertEquals(increases * 2, secondSum);
+  }
+}
@@ -0,0 +1,94 @@
+package ru.hh.nab.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class LogLinearHistogramTest {
+
+  @Test
+  public void smallValuesAreExact() {
+    LogLinearHistogram histogram = new LogLinearHistogram(1_000_000, 2);
+    for (int value = 0; value < 256; value++) {
+      histogram.save(value);
+    }
+
+    Map<Integer, Integer> valueToCount = histogram.getValueToCountAndReset();
+    assertEquals(256, valueToCount.size());
+    for (int value = 0; value < 256; value++) {
+      assertEquals(1, valueToCount.get(value).intValue());
+    }
+  }
+
+  @Test
+  public void relativeErrorIsBounded() {
+    int maxValue = 3_600_000;
+    for (int significantDigits = 1; significantDigits <= 3; significantDigits++) {
+      LogLinearHistogram histogram = new LogLinearHistogram(maxValue, significantDigits);
+      double maxRelativeError = Math.pow(10, -significantDigits);
+      for (int i = 0; i < 100_000; i++) {
+        int value = ThreadLocalRandom.current().nextInt(1, maxValue);
+        int reportedValue = histogram.calculateValue(value);
+        assertTrue(reportedValue >= value, value + " reported as " + reportedValue);
+        assertTrue((reportedValue - value) / (double) value <= maxRelativeError, value + " reported as " + reportedValue);
+      }
+    }
+  }
+
+  @Test
+  public void outOfRangeValuesAreNotDropped() {
+    LogLinearHistogram histogram = new LogLinearHistogram(1000, 2);
+    histogram.save(-1);
+    histogram.save(Integer.MAX_VALUE);
+
+    LogLinearHistogram.Snapshot snapshot = histogram.getSnapshotAndReset();
+    assertEquals(2, snapshot.getTotalCount());
+    int[] values = snapshot.getValuesAtPercentiles(0, 100);
+    assertEquals(0, values[0]);
+    assertTrue(values[1] >= 1000);
+  }
+
+  @Test
+  public void percentilesSameAsPercentilesOfExactValues() {
+    LogLinearHistogram histogram = new LogLinearHistogram(1000, 3);
+    Map<Integer, Integer> valueToCount = new HashMap<>();
+    for (int i = 0; i < 10_000; i++) {
+      int value = ThreadLocalRandom.current().nextInt(1000);
+      histogram.save(value);
+      valueToCount.merge(value, 1, Integer::sum);
+    }
+
+    int[] percentiles = {99, 50, 95, 100};
+    int[] values = histogram.getSnapshotAndReset().getValuesAtPercentiles(percentiles);
+    Map<Integer, Integer> expected = Percentiles.computePercentiles(valueToCount, percentiles.clone());
+    for (int i = 0; i < percentiles.length; i++) {
+      assertEquals(expected.get(percentiles[i]).intValue(), values[i]);
+    }
+  }
+
+  @Test
+  public void mergeSnapshots() {
+    LogLinearHistogram first = new LogLinearHistogram(10_000, 2);
+    LogLinearHistogram second = new LogLinearHistogram(10_000, 2);
+    for (int value = 1; value <= 90; value++) {
+      first.save(value);
+    }
+    for (int value = 91; value <= 100; value++) {
+      second.save(value);
+    }
+
+    LogLinearHistogram.Snapshot snapshot = first.newSnapshot().merge(first.getSnapshotAndReset()).merge(second.getSnapshotAndReset());
+    assertEquals(100, snapshot.getTotalCount());
+    int[] values = snapshot.getValuesAtPercentiles(50, 95, 100);
+    assertEquals(50, values[0]);
+    assertEquals(95, values[1]);
+    assertEquals(100, values[2]);
+
+    assertTrue(first.getSnapshotAndReset().isEmpty());
+    assertThrows(IllegalArgumentException.class, () -> snapshot.merge(new LogLinearHistogram(10_000, 3).getSnapshotAndReset()));
+  }
+}
@@ -0,0 +1,80 @@
+package ru.hh.nab.metrics;
+
+import com.timgroup.statsd.NoOpStatsDClient;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class MetricsRegistryTest {
+
+  @Test
+  public void flushRunsAllTasksEvenIfOneFails() {
+    MetricsRegistry metricsRegistry = new MetricsRegistry();
+    AtomicInteger runs = new AtomicInteger();
+    metricsRegistry.register(runs::incrementAndGet);
+    metricsRegistry.register(() -> {
+      throw new IllegalStateException("test");
+    });
+    metricsRegistry.register(runs::incrementAndGet);
+    RecordingStatsDClient statsDClient = new RecordingStatsDClient();
+
+    metricsRegistry.flush(statsDClient);
+
+    assertEquals(2, runs.get());
+    assertEquals(1L, statsDClient.metrics.get(MetricsRegistry.FLUSH_ERRORS_METRIC));
+    assertEquals(0L, statsDClient.metrics.get(MetricsRegistry.DROPPED_PACKETS_METRIC));
+    assertTrue(statsDClient.metrics.containsKey(MetricsRegistry.FLUSH_DURATION_METRIC));
+  }
+
+  @Test
+  public void droppedPacketsAreReset() {
+    MetricsRegistry metricsRegistry = new MetricsRegistry();
+    metricsRegistry.getErrorHandler().handle(new IOException("test"));
+    metricsRegistry.getErrorHandler().handle(new IOException("test"));
+    RecordingStatsDClient statsDClient = new RecordingStatsDClient();
+
+    metricsRegistry.flush(statsDClient);
+    assertEquals(2L, statsDClient.metrics.get(MetricsRegistry.DROPPED_PACKETS_METRIC));
+
+    metricsRegistry.flush(statsDClient);
+    assertEquals(0L, statsDClient.metrics.get(MetricsRegistry.DROPPED_PACKETS_METRIC));
+  }
+
+  @Test
+  public void sendPeriodicallyUsesSingleFlushTask() {
+    MetricsRegistry metricsRegistry = new MetricsRegistry();
+    StatsDSender statsDSender = new StatsDSender(
+        new NoOpStatsDClient(),
+        Executors.newSingleThreadScheduledExecutor(),
+        60,
+        StatsDSender.TagsMode.NAME_SUFFIX,
+        StatsDSender.HistogramMode.PERCENTILES,
+        StatsDSender.DEFAULT_MAX_DISTRIBUTION_SAMPLES,
+        metricsRegistry
+    );
+
+    statsDSender.sendPeriodically(() -> {});
+    statsDSender.sendPeriodically(() -> {}, 60);
+
+    assertEquals(2, metricsRegistry.getNumOfFlushTasks());
+  }
+
+  private static class RecordingStatsDClient extends NoOpStatsDClient {
+    private final Map<String, Long> metrics = new HashMap<>();
+
+    @Override
+    public void count(String aspect, long delta, String... tags) {
+      metrics.put(aspect, delta);
+    }
+
+    @Override
+    public void time(String aspect, long value, String... tags) {
+      metrics.put(aspect, value);
+    }
+  }
+}
@@ -85,4 +85,67 @@ public class MomentsTest {
     assertEquals(22.0238770076f, data.getMean(), DELTA);
     assertEquals(104.527133008f, data.getVariance(), DELTA);
   }
+
+  @Test
+  public void concurrentUpdates() throws InterruptedException {
+    Moments moments = new Moments();
+    List<Thread> threads = new ArrayList<>(THREAD_COUNT);
+
+    for (int i = 0; i < THREAD_COUNT; i++) {
+      Thread thread = new Thread(() -> {
+        for (float value : SAMPLE) {
+          moments.update(value);
+        }
+      });
+      threads.add(thread);
+    }
+
+    threads.forEach(Thread::start);
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Moments.MomentsData data = moments.getAndReset();
+
+    assertEquals(7 * THREAD_COUNT, data.getNumber());
+    assertEquals(10.0454f, data.getMin(), DELTA);
+    assertEquals(40.6656f, data.getMax(), DELTA);
+    assertEquals(22.0238770076f, data.getMean(), DELTA);
+    assertEquals(104.527133008f, data.getVariance(), DELTA);
+    assertEquals(0, moments.getAndReset().getNumber());
+  }
+
+  @Test
+  public void testSkewnessAndKurtosis() {
+    Moments moments = new Moments();
+    Moments partial = new Moments();
+    for (int i = 0; i < SAMPLE.length; i++) {
+      (i < 3 ? partial : moments).update(SAMPLE[i]);
+    }
+    moments.merge(partial);
+
+    double mean = 0;
+    for (float value : SAMPLE) {
+      mean += value;
+    }
+    mean /= SAMPLE.length;
+    double m2 = 0;
+    double m3 = 0;
+    double m4 = 0;
+    for (float value : SAMPLE) {
+      double delta = value - mean;
+      m2 += delta * delta;
+      m3 += delta * delta * delta;
+      m4 += delta * delta * delta * delta;
+    }
+    m2 /= SAMPLE.length;
+    m3 /= SAMPLE.length;
+    m4 /= SAMPLE.length;
+
+    Moments.MomentsData data = moments.getAndReset();
+
+    assertEquals(m3 / Math.pow(m2, 1.5), data.getSkewness(), DELTA);
+    assertEquals(m4 / (m2 * m2) - 3, data.getKurtosis(), DELTA);
+  }
 }
@@ -0,0 +1,118 @@
+package ru.hh.nab.metrics;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class QuantileSketchTest {
+
+  @Test
+  public void relativeErrorIsBounded() {
+    double relativeAccuracy = 0.01;
+    QuantileSketch sketch = new QuantileSketch(relativeAccuracy, 3_600_000_000L);
+    long[] values = new long[10_000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = ThreadLocalRandom.current().nextLong(100, 3_600_000_000L);
+      sketch.save(values[i]);
+    }
+
+    int[] percentiles = {50, 95, 99, 100};
+    long[] sketchValues = sketch.getSnapshotAndReset().getValuesAtPercentiles(percentiles);
+
+    Arrays.sort(values);
+    for (int i = 0; i < percentiles.length; i++) {
+      long exactValue = values[(int) Math.ceil(values.length * percentiles[i] / 100.0) - 1];
+      assertTrue(
+          Math.abs(sketchValues[i] - exactValue) <= exactValue * relativeAccuracy,
+          "p" + percentiles[i] + ": " + exactValue + " reported as " + sketchValues[i]
+      );
+    }
+  }
+
+  @Test
+  public void smallValues() {
+    QuantileSketch sketch = new QuantileSketch(0.01, 1000);
+    sketch.save(0);
+    sketch.save(1);
+    sketch.save(2);
+    sketch.save(3);
+
+    long[] values = sketch.getSnapshotAndReset().getValuesAtPercentiles(25, 50, 75, 100);
+    assertEquals(0, values[0]);
+    assertEquals(1, values[1]);
+    assertEquals(2, values[2]);
+    assertEquals(3, values[3]);
+  }
+
+  @Test
+  public void outOfRangeValuesAreNotDropped() {
+    QuantileSketch sketch = new QuantileSketch(0.01, 1000);
+    sketch.save(-1);
+    sketch.save(Long.MAX_VALUE);
+
+    QuantileSketch.Snapshot snapshot = sketch.getSnapshotAndReset();
+    assertEquals(2, snapshot.getTotalCount());
+    long[] values = snapshot.getValuesAtPercentiles(0, 100);
+    assertEquals(0, values[0]);
+    assertTrue(Math.abs(values[1] - 1000) <= 10);
+  }
+
+  @Test
+  public void snapshotResets() {
+    QuantileSketch sketch = new QuantileSketch(0.01, 1000);
+    sketch.save(5);
+
+    assertEquals(1, sketch.getSnapshotAndReset().getTotalCount());
+    assertTrue(sketch.getSnapshotAndReset().isEmpty());
+  }
+
+  @Test
+  public void mergeSnapshots() {
+    QuantileSketch first = new QuantileSketch(0.01, 10_000);
+    QuantileSketch second = new QuantileSketch(0.01, 10_000);
+    for (int value = 1; value <= 90; value++) {
+      first.save(value);
+    }
+    for (int value = 91; value <= 100; value++) {
+      second.save(value);
+    }
+
+    QuantileSketch.Snapshot merged = first.newSnapshot().merge(first.getSnapshotAndReset()).merge(second.getSnapshotAndReset());
+
+    assertEquals(100, merged.getTotalCount());
+    long p95 = merged.getValuesAtPercentiles(95)[0];
+    assertTrue(Math.abs(p95 - 95) <= 1, "p95 reported as " + p95);
+  }
+
+  @Test
+  public void mergeSnapshotsOfDifferentConfiguration() {
+    QuantileSketch.Snapshot first = new QuantileSketch(0.01, 10_000).newSnapshot();
+    QuantileSketch.Snapshot second = new QuantileSketch(0.02, 10_000).newSnapshot();
+
+    assertThrows(IllegalArgumentException.class, () -> first.merge(second));
+  }
+
+  @Test
+  public void memoryIsBounded() {
+    QuantileSketch sketch = new QuantileSketch(0.01, 3_600_000_000L);
+    assertTrue(sketch.getNumOfBuckets() < 1200, "number of buckets: " + sketch.getNumOfBuckets());
+  }
+
+  @Test
+  public void sketchesPerTags() {
+    QuantileSketches sketches = new QuantileSketches(0.01, 1000, 1);
+    Tag tag = new Tag("label", "first");
+    sketches.save(10, tag);
+    sketches.save(20, tag);
+    sketches.save(30, new Tag("label", "second"));
+
+    Map<Tags, QuantileSketch.Snapshot> tagsToSnapshot = sketches.getTagsToSnapshotAndReset();
+    assertEquals(1, tagsToSnapshot.size());
+    assertEquals(2, tagsToSnapshot.get(tag).getTotalCount());
+    assertTrue(sketches.getTagsToSnapshotAndReset().isEmpty());
+  }
+}
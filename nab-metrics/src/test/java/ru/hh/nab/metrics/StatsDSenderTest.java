@@ -1,6 +1,12 @@
 package ru.hh.nab.metrics;
 
+import com.timgroup.statsd.NoOpStatsDClient;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 
 public class StatsDSenderTest {
@@ -73,4 +79,131 @@ public class StatsDSenderTest {
         StatsDSender.getFullMetricName("metricName", new Tag[]{new Tag("answer", null)})
     );
   }
+
+  @Test
+  public void testNativeTags() {
+    RecordingStatsDClient statsDClient = new RecordingStatsDClient();
+    StatsDSender statsDSender = createSender(statsDClient, StatsDSender.TagsMode.NATIVE, StatsDSender.HistogramMode.PERCENTILES);
+
+    statsDSender.sendCount("metricName", 5, new Tag("label", "right"), new Tag(null, "42"), new Tag("answer", "4|2"));
+    Counters counters = new Counters(10);
+    counters.add(3, new Tag("label", "right"));
+    statsDSender.sendCounters("countersName", counters);
+
+    assertEquals(List.of("metricName:5|c|#label:right,answer:4_2", "countersName:3|c|#label:right"), statsDClient.lines);
+  }
+
+  @Test
+  public void testStripedCountersOverflowIsSentWithTags() {
+    RecordingStatsDClient statsDClient = new RecordingStatsDClient();
+    StatsDSender statsDSender = createSender(statsDClient, StatsDSender.TagsMode.NATIVE, StatsDSender.HistogramMode.PERCENTILES);
+    StripedCounters counters = new StripedCounters(1);
+    counters.add(3, new Tag("label", "first"));
+    counters.add(1, new Tag("label", "second"));
+
+    statsDSender.sendCounters("countersName", new Tag[]{new Tag("app", "test")}, counters);
+
+    assertEquals(2, statsDClient.lines.size());
+    assertTrue(statsDClient.lines.get(0).startsWith("countersName:"));
+    assertEquals("countersName.overflow:1|c|#app:test", statsDClient.lines.get(1));
+  }
+
+  @Test
+  public void testDistribution() {
+    RecordingStatsDClient statsDClient = new RecordingStatsDClient();
+    StatsDSender statsDSender = createSender(statsDClient, StatsDSender.TagsMode.NAME_SUFFIX, StatsDSender.HistogramMode.DISTRIBUTION);
+    Histogram histogram = new SimpleHistogram(100);
+    histogram.save(3);
+    histogram.save(1);
+    histogram.save(3);
+
+    statsDSender.sendHistogram("metricName", new Tag[]{new Tag("label", "right")}, histogram, StatsDSender.DEFAULT_PERCENTILES);
+
+    assertEquals(
+        List.of("metricName.label_is_right:1|d", "metricName.label_is_right:3|d", "metricName.label_is_right:3|d"),
+        statsDClient.lines
+    );
+  }
+
+  @Test
+  public void testDistributionIsSampledWithSampleRate() {
+    RecordingStatsDClient statsDClient = new RecordingStatsDClient();
+    StatsDSender statsDSender = new StatsDSender(
+        statsDClient,
+        Executors.newSingleThreadScheduledExecutor(),
+        60,
+        StatsDSender.TagsMode.NAME_SUFFIX,
+        StatsDSender.HistogramMode.DISTRIBUTION,
+        10
+    );
+    LogLinearHistogram histogram = new LogLinearHistogram(1000, 3);
+    for (int value = 1; value <= 10; value++) {
+      for (int i = 0; i < 10; i++) {
+        histogram.save(value);
+      }
+    }
+
+    statsDSender.sendHistogram("metricName", histogram);
+
+    assertEquals(10, statsDClient.lines.size());
+    for (int value = 1; value <= 10; value++) {
+      assertEquals("metricName:" + value + "|d|@0.1", statsDClient.lines.get(value - 1));
+    }
+  }
+
+  @Test
+  public void testUniformDistributionIsWeightedByObservations() {
+    RecordingStatsDClient statsDClient = new RecordingStatsDClient();
+    StatsDSender statsDSender = createSender(statsDClient, StatsDSender.TagsMode.NAME_SUFFIX, StatsDSender.HistogramMode.DISTRIBUTION);
+    UniformHistogram histogram = new UniformHistogram(10);
+    for (int i = 0; i < 100; i++) {
+      histogram.save(7);
+    }
+
+    statsDSender.sendUniformHistogram("metricName", histogram);
+
+    assertEquals(10, statsDClient.lines.size());
+    for (String line : statsDClient.lines) {
+      assertEquals("metricName:7|d|@0.1", line);
+    }
+  }
+
+  @Test
+  public void testGetNativeTags() {
+    assertArrayEquals(
+        new String[]{"answer:42", "label:null"},
+        StatsDSender.getNativeTags("metricName", new Tag[]{new Tag("answer", "42"), new Tag(null, "43"), new Tag("label", null)})
+    );
+  }
+
+  private static StatsDSender createSender(
+      RecordingStatsDClient statsDClient,
+      StatsDSender.TagsMode tagsMode,
+      StatsDSender.HistogramMode histogramMode
+  ) {
+    return new StatsDSender(statsDClient, Executors.newSingleThreadScheduledExecutor(), 60, tagsMode, histogramMode);
+  }
+
+  private static class RecordingStatsDClient extends NoOpStatsDClient {
+    private final List<String> lines = new ArrayList<>();
+
+    @Override
+    public void count(String aspect, long delta, String... tags) {
+      record(aspect, delta, "c", tags);
+    }
+
+    @Override
+    public void distribution(String aspect, long value, String... tags) {
+      record(aspect, value, "d", tags);
+    }
+
+    @Override
+    public void distribution(String aspect, long value, double sampleRate, String... tags) {
+      record(aspect, value, "d|@" + sampleRate, tags);
+    }
+
+    private void record(String aspect, long value, String type, String... tags) {
+      lines.add(aspect + ":" + value + "|" + type + (tags.length == 0 ? "" : "|#" + String.join(",", tags)));
+    }
+  }
 }
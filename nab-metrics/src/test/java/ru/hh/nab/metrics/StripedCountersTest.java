@@ -0,0 +1,101 @@
+package ru.hh.nab.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import static ru.hh.nab.metrics.TestUtils.tagsOf;
+
+public class StripedCountersTest {
+  private final StripedCounters counters = new StripedCounters(300);
+
+  @Test
+  public void oneCounter() {
+    Tag tag = new Tag("label", "first");
+    counters.add(5, tag);
+    Map<Tags, Long> tagsToValue;
+
+    tagsToValue = counters.getSnapshotAndReset();
+    assertEquals(1, tagsToValue.size());
+    assertEquals(5L, tagsToValue.get(tag));
+
+    tagsToValue = counters.getSnapshotAndReset();
+    assertEquals(1, tagsToValue.size());
+    assertEquals(0L, tagsToValue.get(tag));
+
+    tagsToValue = counters.getSnapshotAndReset();
+    assertTrue(tagsToValue.isEmpty());
+  }
+
+  @Test
+  public void differentTagsOrder() {
+    counters.add(5, new Tag("label", "first"), new Tag("notlabel", "a"));
+    counters.add(3, new Tag("notlabel", "a"), new Tag("label", "first"));
+
+    Map<Tags, Long> tagsToCount = counters.getSnapshotAndReset();
+
+    assertEquals(1, tagsToCount.size());
+    assertEquals(8L, tagsToCount.get(tagsOf(new Tag("label", "first"), new Tag("notlabel", "a"))));
+  }
+
+  @Test
+  public void evictionKeepsLimitAndCountsOverflow() {
+    StripedCounters counters = new StripedCounters(10);
+    Tag frequentTag = new Tag("label", "frequent");
+    for (int i = 0; i < 100; i++) {
+      counters.add(1_000, frequentTag);
+      counters.add(1, new Tag("label", Integer.toString(i)));
+    }
+
+    Map<Tags, Long> tagsToCount = counters.getSnapshotAndReset();
+    assertEquals(10, tagsToCount.size());
+    assertEquals(91L, counters.getOverflowCountAndReset());
+    assertEquals(0L, counters.getOverflowCountAndReset());
+  }
+
+  @Test
+  public void slotsAreReusedAfterRemoval() {
+    StripedCounters counters = new StripedCounters(2);
+    counters.add(1, new Tag("label", "first"));
+    counters.add(1, new Tag("label", "second"));
+    counters.getSnapshotAndReset();
+    counters.getSnapshotAndReset();
+
+    counters.add(1, new Tag("label", "third"));
+    counters.add(1, new Tag("label", "fourth"));
+
+    assertEquals(2, counters.getSnapshotAndReset().size());
+    assertEquals(0L, counters.getOverflowCountAndReset());
+  }
+
+  @Test
+  public void twoThreads() throws InterruptedException {
+    int increases = 1_000_000;
+    Tag tag = new Tag("label", "first");
+    Runnable increaseMetricTask = () -> {
+      for (int i = 0; i < increases; i++) {
+        counters.add(1, tag);
+      }
+    };
+
+    List<Map<Tags, Long>> snapshots = new ArrayList<>();
+    Thread increaseMetricThread = new Thread(increaseMetricTask);
+    increaseMetricThread.start();
+    for (int i = 0; i < increases; i++) {
+      counters.add(1, tag);
+      if (i % 1000 == 0) {
+        snapshots.add(counters.getSnapshotAndReset());
+      }
+    }
+    increaseMetricThread.join();
+    snapshots.add(counters.getSnapshotAndReset());
+
+    long sum = 0;
+    for (Map<Tags, Long> snapshot : snapshots) {
+      sum += snapshot.getOrDefault(tag, 0L);
+    }
+    assertEquals(increases * 2L, sum);
+  }
+}
@@ -0,0 +1,47 @@
+package ru.hh.nab.metrics;
+
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+import static ru.hh.nab.metrics.TestUtils.tagsOf;
+
+public class TagSetTest {
+
+  @Test
+  public void equalToTagsInAnyOrder() {
+    TagSet tagSet = TagSet.of(new Tag("label", "first"), new Tag("answer", "42"));
+
+    assertEquals(tagsOf(new Tag("answer", "42"), new Tag("label", "first")), tagSet);
+    assertEquals(tagSet, tagsOf(new Tag("label", "first"), new Tag("answer", "42")));
+    assertEquals(tagsOf(new Tag("answer", "42"), new Tag("label", "first")).hashCode(), tagSet.hashCode());
+  }
+
+  @Test
+  public void sameCounterAsTagsArray() {
+    Counters counters = new Counters(10);
+    TagSet tagSet = TagSet.of(new Tag("label", "first"), new Tag("answer", "42"));
+    counters.add(5, tagSet);
+    counters.add(3, new Tag("answer", "42"), new Tag("label", "first"));
+
+    Map<Tags, Integer> tagsToCount = counters.getSnapshotAndReset();
+    assertEquals(1, tagsToCount.size());
+    assertEquals(8, tagsToCount.get(tagSet).intValue());
+  }
+
+  @Test
+  public void metricNameCache() {
+    MetricNameCache cache = new MetricNameCache(1, StatsDSender.TagsMode.NAME_SUFFIX);
+    TagSet tagSet = TagSet.of(new Tag("label", "first.second"), new Tag("answer", "42"));
+
+    MetricNameCache.MetricName name = cache.get("metricName", tagSet);
+    assertEquals("metricName.answer_is_42.label_is_first-second", name.getName());
+    assertEquals("metricName.answer_is_42.label_is_first-second.percentile_is_99", name.getPercentileName(99));
+    assertSame(name, cache.get("metricName", tagsOf(new Tag("answer", "42"), new Tag("label", "first.second"))));
+    assertSame(name.getPercentileName(99), name.getPercentileName(99));
+
+    Tag otherTag = new Tag("label", "other");
+    assertEquals("metricName.label_is_other", cache.get("metricName", otherTag).getName());
+    assertEquals("otherMetric.label_is_other", cache.get("otherMetric", otherTag).getName());
+  }
+}
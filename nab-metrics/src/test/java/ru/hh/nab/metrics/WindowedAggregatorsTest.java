@@ -0,0 +1,122 @@
+package ru.hh.nab.metrics;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class WindowedAggregatorsTest {
+  private static final Duration WINDOW = Duration.ofSeconds(10);
+  private static final int NUM_OF_SLOTS = 10;
+
+  private final AtomicLong nanoClock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+
+  @Test
+  public void histogramWindowSlides() {
+    WindowedHistogram histogram = new WindowedHistogram(10_000, 2, WINDOW, NUM_OF_SLOTS, nanoClock::get);
+    for (int value = 1; value <= 100; value++) {
+      histogram.save(value);
+    }
+    advanceSeconds(5);
+    histogram.save(1000);
+
+    LogLinearHistogram.Snapshot windowSnapshot = histogram.getWindowSnapshot();
+    assertEquals(101, windowSnapshot.getTotalCount());
+    assertEquals(1000, windowSnapshot.getValuesAtPercentiles(100)[0], 10);
+
+    advanceSeconds(6);
+    windowSnapshot = histogram.getWindowSnapshot();
+    assertEquals(1, windowSnapshot.getTotalCount());
+
+    advanceSeconds(10);
+    assertTrue(histogram.getWindowSnapshot().isEmpty());
+  }
+
+  @Test
+  public void histogramExportIsNotAffectedByWindow() {
+    WindowedHistogram histogram = new WindowedHistogram(10_000, 2, WINDOW, NUM_OF_SLOTS, nanoClock::get);
+    histogram.save(10);
+    histogram.save(20);
+
+    Map<Integer, Integer> valueToCount = histogram.getValueToCountAndReset();
+    assertEquals(2, valueToCount.size());
+    assertTrue(histogram.getValueToCountAndReset().isEmpty());
+
+    assertEquals(2, histogram.getWindowSnapshot().getTotalCount());
+  }
+
+  @Test
+  public void slotIsResetWhenReused() {
+    WindowedHistogram histogram = new WindowedHistogram(10_000, 2, WINDOW, NUM_OF_SLOTS, nanoClock::get);
+    histogram.save(10);
+    advanceSeconds(10);
+    histogram.save(20);
+
+    LogLinearHistogram.Snapshot windowSnapshot = histogram.getWindowSnapshot();
+    assertEquals(1, windowSnapshot.getTotalCount());
+    assertEquals(20, windowSnapshot.getValuesAtPercentiles(50)[0]);
+  }
+
+  @Test
+  public void counters() {
+    WindowedCounters counters = new WindowedCounters(10, WINDOW, NUM_OF_SLOTS, nanoClock::get);
+    Tag tag = new Tag("label", "first");
+    counters.add(5, tag);
+    advanceSeconds(5);
+    counters.add(3, tag);
+    counters.add(1, new Tag("label", "second"));
+
+    assertEquals(8, counters.getWindowCount(tag));
+    assertEquals(1, counters.getWindowCount(new Tag("label", "second")));
+    assertEquals(0, counters.getWindowCount(new Tag("label", "third")));
+
+    assertEquals(8, counters.getSnapshotAndReset().get(tag).intValue());
+    assertEquals(8, counters.getWindowCount(tag));
+
+    advanceSeconds(6);
+    assertEquals(3, counters.getWindowCount(tag));
+  }
+
+  @Test
+  public void expiredCountersAreRemovedWhenSent() {
+    WindowedCounters counters = new WindowedCounters(2, WINDOW, NUM_OF_SLOTS, nanoClock::get);
+    Tag first = new Tag("label", "first");
+    Tag second = new Tag("label", "second");
+    Tag third = new Tag("label", "third");
+    counters.add(1, first);
+    counters.add(1, second);
+    counters.add(1, third);
+    assertEquals(0, counters.getWindowCount(third));
+
+    advanceSeconds(11);
+    counters.getSnapshotAndReset();
+    counters.add(1, third);
+    assertEquals(1, counters.getWindowCount(third));
+    assertEquals(0, counters.getWindowCount(first));
+  }
+
+  @Test
+  public void max() {
+    WindowedMax max = new WindowedMax(0, WINDOW, NUM_OF_SLOTS, nanoClock::get);
+    max.save(100);
+    advanceSeconds(5);
+    max.save(50);
+
+    assertEquals(100, max.getWindowMax());
+    assertEquals(100, max.getAndReset());
+    assertEquals(100, max.getWindowMax());
+
+    advanceSeconds(6);
+    assertEquals(50, max.getWindowMax());
+
+    advanceSeconds(10);
+    assertEquals(0, max.getWindowMax());
+  }
+
+  private void advanceSeconds(int seconds) {
+    nanoClock.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+  }
+}
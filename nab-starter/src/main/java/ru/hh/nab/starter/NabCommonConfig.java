@@ -1,7 +1,9 @@
 package ru.hh.nab.starter;
 
 import com.timgroup.statsd.StatsDClient;
-import java.util.Optional;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import static java.util.Optional.ofNullable;
 import java.util.Properties;
 import java.util.concurrent.ScheduledExecutorService;
@@ -11,11 +13,19 @@ import org.springframework.beans.factory.config.PropertiesFactoryBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
+import ru.hh.nab.common.executor.ContextCarrier;
+import ru.hh.nab.common.executor.ContextPropagator;
+import ru.hh.nab.common.executor.MdcContextCarrier;
 import ru.hh.nab.common.executor.ScheduledExecutor;
+import static ru.hh.nab.common.executor.ScheduledExecutor.DEFAULT_LANE;
+import static ru.hh.nab.common.executor.ScheduledExecutor.HEALTH_LANE;
+import static ru.hh.nab.common.executor.ScheduledExecutor.MAINTENANCE_LANE;
+import static ru.hh.nab.common.executor.ScheduledExecutor.METRICS_LANE;
 import ru.hh.nab.common.properties.FileSettings;
 import static ru.hh.nab.common.qualifier.NamedQualifier.DATACENTER;
 import static ru.hh.nab.common.qualifier.NamedQualifier.NODE_NAME;
 import static ru.hh.nab.common.qualifier.NamedQualifier.SERVICE_NAME;
+import ru.hh.nab.metrics.MetricsRegistry;
 import ru.hh.nab.metrics.StatsDSender;
 import ru.hh.nab.starter.metrics.JvmMetricsSender;
 import ru.hh.nab.starter.qualifier.Service;
@@ -27,7 +37,10 @@ import ru.hh.nab.starter.server.jetty.MonitoredQueuedThreadPool;
 public class NabCommonConfig {
 
   private static final String STATSD_DEFAULT_PERIODIC_SEND_INTERVAL = "statsd.defaultPeriodicSendIntervalSec";
+  private static final String STATSD_NATIVE_TAGS = "statsd.nativeTags";
+  private static final String STATSD_DISTRIBUTIONS = "statsd.distributions";
   private static final String NODE_NAME_ENV = "NODE_NAME";
+  private static final String SCHEDULED_EXECUTOR_LANES = "scheduledExecutor.lanes";
 
   public static final String TEST_PROPERTIES_FILE_NAME = "service-test.properties";
 
@@ -73,21 +86,53 @@ public class NabCommonConfig {
   }
 
   @Bean
-  ScheduledExecutorService scheduledExecutorService() {
-    return new ScheduledExecutor();
+  ScheduledExecutorService scheduledExecutorService(FileSettings fileSettings) {
+    // health lane grows to a thread per data source, see HealthCheckHikariDataSourceFactory
+    Map<String, Integer> laneToNumOfThreads = new HashMap<>(Map.of(DEFAULT_LANE, 2, METRICS_LANE, 1, HEALTH_LANE, 1, MAINTENANCE_LANE, 1));
+    fileSettings
+        .getSubSettings(SCHEDULED_EXECUTOR_LANES)
+        .getAsMap()
+        .forEach((laneName, numOfThreads) -> laneToNumOfThreads.put(laneName, Integer.parseInt(numOfThreads)));
+    return new ScheduledExecutor(laneToNumOfThreads);
+  }
+
+  @Bean
+  MdcContextCarrier mdcContextCarrier() {
+    return new MdcContextCarrier();
+  }
+
+  @Bean
+  ContextPropagator contextPropagator(List<ContextCarrier<?>> contextCarriers) {
+    return new ContextPropagator(contextCarriers);
+  }
+
+  @Bean
+  MetricsRegistry metricsRegistry() {
+    return new MetricsRegistry();
   }
 
   @Bean
   StatsDSender statsDSender(
       ScheduledExecutorService scheduledExecutorService,
       StatsDClient statsDClient,
+      MetricsRegistry metricsRegistry,
       @Named(SERVICE_NAME) String serviceNameValue,
       FileSettings fileSettings
   ) {
-    StatsDSender statsDSender = Optional
-        .ofNullable(fileSettings.getInteger(STATSD_DEFAULT_PERIODIC_SEND_INTERVAL))
-        .map(defaultPeriodicSendInterval -> new StatsDSender(statsDClient, scheduledExecutorService, defaultPeriodicSendInterval))
-        .orElseGet(() -> new StatsDSender(statsDClient, scheduledExecutorService));
+    StatsDSender statsDSender = new StatsDSender(
+        statsDClient,
+        ScheduledExecutor.lane(scheduledExecutorService, METRICS_LANE),
+        ofNullable(fileSettings.getInteger(STATSD_DEFAULT_PERIODIC_SEND_INTERVAL)).orElse(0),
+        Boolean.TRUE.equals(fileSettings.getBoolean(STATSD_NATIVE_TAGS)) ? StatsDSender.TagsMode.NATIVE : StatsDSender.TagsMode.NAME_SUFFIX,
+        Boolean.TRUE.equals(fileSettings.getBoolean(STATSD_DISTRIBUTIONS))
+            ? StatsDSender.HistogramMode.DISTRIBUTION
+            : StatsDSender.HistogramMode.PERCENTILES,
+        StatsDSender.DEFAULT_MAX_DISTRIBUTION_SAMPLES,
+        metricsRegistry
+    );
+    if (scheduledExecutorService instanceof ScheduledExecutor scheduledExecutor) {
+      scheduledExecutor.sendMetrics(statsDSender, serviceNameValue);
+    }
     if (Boolean.TRUE.equals(fileSettings.getBoolean("metrics.jvm.enabled"))) {
       JvmMetricsSender.create(statsDSender, serviceNameValue);
     }
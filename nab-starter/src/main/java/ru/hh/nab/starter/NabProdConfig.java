@@ -8,6 +8,7 @@ import java.util.Objects;
 import static java.util.Objects.requireNonNullElse;
 import static java.util.Optional.ofNullable;
 import java.util.Properties;
+import java.util.concurrent.ScheduledExecutorService;
 import javax.annotation.Nullable;
 import javax.inject.Named;
 import org.eclipse.jetty.servlet.FilterHolder;
@@ -20,10 +21,13 @@ import ru.hh.consul.Consul;
 import ru.hh.consul.HealthClient;
 import ru.hh.consul.KeyValueClient;
 import ru.hh.consul.util.Address;
+import ru.hh.nab.common.executor.ScheduledExecutor;
+import static ru.hh.nab.common.executor.ScheduledExecutor.MAINTENANCE_LANE;
 import ru.hh.nab.common.properties.FileSettings;
 import static ru.hh.nab.common.properties.PropertiesUtils.fromFilesInSettingsDir;
 import static ru.hh.nab.common.qualifier.NamedQualifier.NODE_NAME;
 import static ru.hh.nab.common.qualifier.NamedQualifier.SERVICE_NAME;
+import ru.hh.nab.metrics.MetricsRegistry;
 import ru.hh.nab.metrics.StatsDSender;
 import ru.hh.nab.starter.consul.ConsulFetcher;
 import ru.hh.nab.starter.consul.ConsulMetricsTracker;
@@ -31,6 +35,9 @@ import ru.hh.nab.starter.consul.ConsulService;
 import ru.hh.nab.starter.events.JettyEventListener;
 import ru.hh.nab.starter.logging.LogLevelOverrideExtension;
 import ru.hh.nab.starter.qualifier.Service;
+import ru.hh.nab.starter.server.cache.CacheFilter;
+import ru.hh.nab.starter.server.cache.CacheKeyBuilder;
+import ru.hh.nab.starter.server.cache.HttpCacheInvalidator;
 import static ru.hh.nab.starter.server.cache.HttpCacheFilterFactory.createCacheFilterHolder;
 
 @Configuration
@@ -64,7 +71,7 @@ public class NabProdConfig {
   }
 
   @Bean
-  StatsDClient statsDClient(FileSettings fileSettings) {
+  StatsDClient statsDClient(FileSettings fileSettings, MetricsRegistry metricsRegistry) {
 
     String host = ofNullable(fileSettings.getString(STATSD_HOST_PROPERTY))
         .or(() -> ofNullable(System.getProperty(STATSD_HOST_ENV)))
@@ -96,12 +103,30 @@ public class NabProdConfig {
         .port(port)
         .maxPacketSizeBytes(maxPacketSizeBytes)
         .bufferPoolSize(bufferPoolSize)
+        .errorHandler(metricsRegistry.getErrorHandler())
         .build();
   }
 
   @Bean
-  FilterHolder cacheFilter(FileSettings fileSettings, String serviceName, StatsDSender statsDSender) {
-    return createCacheFilterHolder(fileSettings, serviceName, statsDSender);
+  FilterHolder cacheFilter(
+      FileSettings fileSettings,
+      String serviceName,
+      StatsDSender statsDSender,
+      @Nullable CacheKeyBuilder cacheKeyBuilder,
+      ScheduledExecutorService scheduledExecutorService
+  ) {
+    return createCacheFilterHolder(
+        fileSettings,
+        serviceName,
+        statsDSender,
+        cacheKeyBuilder,
+        ScheduledExecutor.lane(scheduledExecutorService, MAINTENANCE_LANE)
+    );
+  }
+
+  @Bean
+  HttpCacheInvalidator httpCacheInvalidator(@Named("cacheFilter") FilterHolder cacheFilter) {
+    return cacheFilter.isInstance() ? ((CacheFilter) cacheFilter.getFilter()).getInvalidator() : HttpCacheInvalidator.noCache();
   }
 
   @Bean
@@ -27,7 +27,7 @@ public class ConsulFetcher implements HostsFetcher {
   @Override
   public Set<HostPort> fetchHostsByName(String serviceName) {
     return Optional
-        .ofNullable(settings.getProperties().getProperty(DATACENTERS))
+        .ofNullable(settings.getString(DATACENTERS))
         .filter(Predicate.not(String::isBlank))
         .map(separatedDcList -> List.of(separatedDcList.split("[,\\s]+")))
         .orElseGet(List::of)
@@ -2,13 +2,14 @@ package ru.hh.nab.starter.jersey;
 
 import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import javax.inject.Inject;
 import javax.ws.rs.ext.ContextResolver;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import org.springframework.core.serializer.support.SerializationFailedException;
-import ru.hh.nab.common.cache.PartiallyOverflowingCache;
+import ru.hh.nab.common.cache.SingleFlightLoader;
 import ru.hh.nab.common.properties.FileSettings;
 import static ru.hh.nab.common.qualifier.NamedQualifier.SERVICE_NAME;
 import ru.hh.nab.metrics.StatsDSender;
@@ -18,33 +19,28 @@ import ru.hh.nab.metrics.TaggedSender;
 public class MarshallerContextResolver implements ContextResolver<Marshaller> {
   private final int maxCollectionSize;
   private static final int defaultMaxCollectionSize = 256;
-  private final PartiallyOverflowingCache<Class<?>, JAXBContext> jaxbContexts;
+  private final SingleFlightLoader<Class<?>, JAXBContext> jaxbContexts;
 
   @Inject
   public MarshallerContextResolver(FileSettings fileSettings, StatsDSender statsDSender) {
     String serviceName = fileSettings.getNotEmptyOrThrow(SERVICE_NAME);
     maxCollectionSize = fileSettings.getInteger("jaxbContexts.max.collection.size", defaultMaxCollectionSize);
-    jaxbContexts = new PartiallyOverflowingCache<>(maxCollectionSize);
+    jaxbContexts = new SingleFlightLoader<>(MarshallerContextResolver::createJaxbContext, ForkJoinPool.commonPool(), maxCollectionSize);
 
     String cacheSizeMetricName = "JAXBContextCacheSize";
     String cacheMaxSizeMetricName = "JAXBContextCacheMaxSize";
     var sender = new TaggedSender(statsDSender, Set.of(new Tag(Tag.APP_TAG_NAME, serviceName)));
     statsDSender.sendPeriodically(() -> {
-          sender.sendGauge(cacheSizeMetricName, jaxbContexts.getStorageSize());
+          sender.sendGauge(cacheSizeMetricName, jaxbContexts.size());
           sender.sendGauge(cacheMaxSizeMetricName, maxCollectionSize);
         }
     );
+    jaxbContexts.sendMetrics(statsDSender, "jaxbContexts", serviceName);
   }
 
   @Override
   public Marshaller getContext(Class<?> type) {
-    JAXBContext jaxbContext = jaxbContexts.computeIfAbsent(type, clazz -> {
-      try {
-        return JAXBContext.newInstance(new Class[] {clazz}, Collections.emptyMap());
-      } catch (JAXBException e) {
-        throw new SerializationFailedException("Failed to create JAXBContext", e);
-      }
-    });
+    JAXBContext jaxbContext = jaxbContexts.get(type);
 
     try {
       Marshaller marshaller = jaxbContext.createMarshaller();
@@ -54,4 +50,12 @@ public class MarshallerContextResolver implements ContextResolver<Marshaller> {
       throw new SerializationFailedException("Failed to create Marshaller", e);
     }
   }
+
+  private static JAXBContext createJaxbContext(Class<?> clazz) {
+    try {
+      return JAXBContext.newInstance(new Class[] {clazz}, Collections.emptyMap());
+    } catch (JAXBException e) {
+      throw new SerializationFailedException("Failed to create JAXBContext", e);
+    }
+  }
 }
@@ -1,9 +1,25 @@
 package ru.hh.nab.starter.server.cache;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
@@ -14,39 +30,146 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.core.CacheControl;
 import static javax.ws.rs.core.HttpHeaders.CACHE_CONTROL;
+import static javax.ws.rs.core.HttpHeaders.CONTENT_ENCODING;
+import org.caffinitas.ohc.DirectValueAccess;
 import org.caffinitas.ohc.OHCache;
 import org.caffinitas.ohc.OHCacheBuilder;
 import org.caffinitas.ohc.OHCacheStats;
+import org.eclipse.jetty.server.HttpOutput;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import static ru.hh.nab.common.constants.RequestAttributes.HTTP_ROUTE;
+import static ru.hh.nab.common.mdc.MDC.CONTROLLER_MDC_KEY;
+import ru.hh.nab.common.properties.FileSettings;
+import ru.hh.nab.metrics.Counters;
 import ru.hh.nab.metrics.StatsDSender;
 import ru.hh.nab.metrics.Tag;
 import ru.hh.nab.metrics.TaggedSender;
+import ru.hh.nab.starter.server.cache.CacheKeyResolver.RequestKey;
 import static ru.hh.nab.starter.server.cache.CachedResponse.PLACEHOLDER;
 import static ru.hh.nab.starter.server.logging.RequestInfo.CACHE_ATTRIBUTE;
 import static ru.hh.nab.starter.server.logging.RequestInfo.HIT;
 import static ru.hh.nab.starter.server.logging.RequestInfo.MISS;
 
+/**
+ * Caches 200 responses with max-age in Cache-Control off-heap.<br/>
+ * By default a key is cached on its second miss, the first one only leaves a placeholder, and concurrent misses all go to the handler.<br/>
+ * With coalescing, the first miss caches the response while concurrent requests of the same key wait for it up to the coalescing timeout,
+ * and after the timeout they go to the handler themselves. A response is kept for stale-while-revalidate from Cache-Control
+ * (max-age if absent) after it expires, while one request revalidates it the others get the stale response.<br/>
+ * Keys are 128-bit hashes of what {@link CacheKeyBuilder} builds and of the request headers listed in Vary of the response,
+ * responses with Vary: * are not cached.<br/>
+ * A share of requests set by http.cache.hitRatio.sampleRate is counted per route (controller if the route is unknown)
+ * and result (hit, miss, bypass), to see which endpoints benefit from the cache. Responses are stored with their route then,
+ * since a hit does not reach the handler.<br/>
+ * With http.cache.compression.enabled bodies are stored gzipped, they are sent as is to clients that accept gzip
+ * and gunzipped on the fly for the others.<br/>
+ * With http.cache.invalidation.enabled responses are stored with their URI and tags from the http.cache.invalidation.tagHeader
+ * response header, so that they can be purged by {@link #getInvalidator()}. Purges are forgotten after the responses they match
+ * have expired, by a periodic task in the maintenance executor if it is given.
+ */
 public class CacheFilter implements Filter {
   private static final Logger LOGGER = LoggerFactory.getLogger(CacheFilter.class);
   private static final int NO_CACHE = -1;
+  private static final String STALE_WHILE_REVALIDATE = "stale-while-revalidate";
   private static final int STATS_UPDATE_RATE = 15;
+  private static final int BODY_COPY_CHUNK_SIZE = 8192;
+  private static final int DEFAULT_COALESCING_TIMEOUT_MS = 1000;
+  private static final long MAX_VARY_KEYS = 10_000;
+  private static final int MAX_SAMPLED_ENDPOINTS = 500;
+  private static final int DEFAULT_COMPRESSION_MIN_SIZE_BYTES = 1024;
+  private static final String DEFAULT_TAG_HEADER = "Surrogate-Key";
+  private static final Pattern TAG_SEPARATOR = Pattern.compile("[,\\s]+");
+  private static final String ENDPOINT_TAG_NAME = "endpoint";
+  private static final String UNKNOWN_ENDPOINT = "unknown";
+  private static final String ROUTE_ATTRIBUTE = "HttpCacheRoute";
+  private static final String RESULT_TAG_NAME = "result";
 
-  private final OHCache<byte[], byte[]> ohCache;
+  private final OHCache<byte[], CachedResponse> ohCache;
   private final AtomicInteger cachedHits = new AtomicInteger(0);
   private final AtomicInteger cachedMisses = new AtomicInteger(0);
   private final AtomicInteger cachedPlaceholder = new AtomicInteger(0);
   private final AtomicInteger cachedBypass = new AtomicInteger(0);
+  private final AtomicInteger cachedStale = new AtomicInteger(0);
+  private final AtomicInteger coalescedHits = new AtomicInteger(0);
+  private final AtomicInteger coalescedTimeouts = new AtomicInteger(0);
+  private final AtomicInteger gunzippedHits = new AtomicInteger(0);
+  private final AtomicLong compressionSavedBytes = new AtomicLong(0);
+  private final AtomicInteger purgedHits = new AtomicInteger(0);
+  private final Map<ByteBuffer, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+  private final long coalescingTimeoutMs;
+  private final CacheKeyResolver cacheKeyResolver;
+  private final double hitRatioSampleRate;
+  private final CachedBodyCompressor compressor;
+  private final String tagHeader;
+  private final HttpCacheInvalidator invalidator;
+  private final ScheduledFuture<?> invalidatorCleanUp;
+  private final Counters sampledRequests = new Counters(MAX_SAMPLED_ENDPOINTS);
+  private final Tag appTag;
 
   public CacheFilter(String serviceName, int size, StatsDSender statsDSender) {
-    Serializer serializer = new Serializer();
+    this(serviceName, size, statsDSender, null, new DefaultCacheKeyBuilder(), 0, null, false, null, null);
+  }
+
+  public CacheFilter(String serviceName, FileSettings cacheSettings, StatsDSender statsDSender, CacheKeyBuilder cacheKeyBuilder) {
+    this(serviceName, cacheSettings, statsDSender, cacheKeyBuilder, null);
+  }
+
+  /**
+   * @param cacheSettings settings under http.cache: sizeInMB, coalescing.enabled, coalescing.timeoutMs, hitRatio.sampleRate,
+   *                      compression.enabled, compression.minSizeBytes, compression.level, invalidation.enabled,
+   *                      invalidation.tagHeader and key.*
+   * @param cacheKeyBuilder null to build keys by {@link DefaultCacheKeyBuilder} with key.* settings
+   * @param maintenanceExecutor runs the clean up of purges, null to run it on purges
+   */
+  public CacheFilter(String serviceName, FileSettings cacheSettings, StatsDSender statsDSender, CacheKeyBuilder cacheKeyBuilder,
+                     ScheduledExecutorService maintenanceExecutor) {
+    this(
+        serviceName,
+        Integer.parseInt(cacheSettings.getNotEmptyOrThrow("sizeInMB")),
+        statsDSender,
+        cacheSettings.getBoolean("coalescing.enabled", false)
+            ? Duration.ofMillis(cacheSettings.getInteger("coalescing.timeoutMs", DEFAULT_COALESCING_TIMEOUT_MS))
+            : null,
+        cacheKeyBuilder == null ? DefaultCacheKeyBuilder.create(cacheSettings.getSubSettings("key")) : cacheKeyBuilder,
+        cacheSettings.getDouble("hitRatio.sampleRate", 0),
+        cacheSettings.getBoolean("compression.enabled", false)
+            ? new CachedBodyCompressor(
+                cacheSettings.getInteger("compression.minSizeBytes", DEFAULT_COMPRESSION_MIN_SIZE_BYTES),
+                cacheSettings.getInteger("compression.level", Deflater.DEFAULT_COMPRESSION)
+            )
+            : null,
+        cacheSettings.getBoolean("invalidation.enabled", false),
+        cacheSettings.getString("invalidation.tagHeader", DEFAULT_TAG_HEADER),
+        maintenanceExecutor
+    );
+  }
+
+  /**
+   * @param coalescingTimeout how long concurrent misses wait for the first one, null disables coalescing
+   * @param hitRatioSampleRate share of requests counted per endpoint, 0 disables sampling
+   * @param compressor null to store bodies as is
+   * @param invalidationEnabled whether responses are stored with their URI and tags, otherwise they can only be purged all at once
+   * @param tagHeader response header with tags of the response
+   */
+  private CacheFilter(String serviceName, int size, StatsDSender statsDSender, Duration coalescingTimeout,
+                      CacheKeyBuilder cacheKeyBuilder, double hitRatioSampleRate, CachedBodyCompressor compressor,
+                      boolean invalidationEnabled, String tagHeader, ScheduledExecutorService maintenanceExecutor) {
+    coalescingTimeoutMs = coalescingTimeout == null ? NO_CACHE : coalescingTimeout.toMillis();
+    cacheKeyResolver = new CacheKeyResolver(cacheKeyBuilder, MAX_VARY_KEYS);
+    this.hitRatioSampleRate = hitRatioSampleRate;
+    this.compressor = compressor;
+    this.tagHeader = tagHeader;
+    appTag = new Tag(Tag.APP_TAG_NAME, serviceName);
     ohCache = OHCacheBuilder
-        .<byte[], byte[]>newBuilder()
+        .<byte[], CachedResponse>newBuilder()
         .capacity(size * 1024L * 1024L)
         .timeouts(true)
-        .keySerializer(serializer)
-        .valueSerializer(serializer)
+        .keySerializer(new Serializer())
+        .valueSerializer(new CachedResponseSerializer())
         .build();
+    invalidator = new HttpCacheInvalidator(ohCache, invalidationEnabled);
+    invalidatorCleanUp = invalidationEnabled && maintenanceExecutor != null ? invalidator.scheduleCleanUp(maintenanceExecutor) : null;
 
     String internalHitsMetricName = "http.cache.internal.hits";
     String internalMissesMetricName = "http.cache.internal.misses";
@@ -60,7 +183,17 @@ public class CacheFilter implements Filter {
     String missesMetricName = "http.cache.misses";
     String placeholderMetricName = "http.cache.placeholder";
     String bypassMetricName = "http.cache.bypass";
-    var sender = new TaggedSender(statsDSender, Set.of(new Tag(Tag.APP_TAG_NAME, serviceName)));
+    String staleMetricName = "http.cache.stale";
+    String coalescedMetricName = "http.cache.coalesced";
+    String coalescedTimeoutMetricName = "http.cache.coalesced.timeout";
+    String varyKeysMetricName = "http.cache.vary.keys";
+    String sampledMetricName = "http.cache.sampled";
+    String gunzippedMetricName = "http.cache.gunzipped";
+    String compressionSavedBytesMetricName = "http.cache.compression.savedBytes";
+    String purgesMetricName = "http.cache.invalidation.purges";
+    String purgedHitsMetricName = "http.cache.invalidation.purgedHits";
+    String purgeRecordsMetricName = "http.cache.invalidation.records";
+    var sender = new TaggedSender(statsDSender, Set.of(appTag));
 
     statsDSender.sendPeriodically(() -> {
       OHCacheStats stats = ohCache.stats();
@@ -81,78 +214,313 @@ public class CacheFilter implements Filter {
       sender.sendCount(missesMetricName, cachedMisses.getAndSet(0));
       sender.sendCount(placeholderMetricName, cachedPlaceholder.getAndSet(0));
       sender.sendCount(bypassMetricName, cachedBypass.getAndSet(0));
+      sender.sendCount(staleMetricName, cachedStale.getAndSet(0));
+      sender.sendCount(coalescedMetricName, coalescedHits.getAndSet(0));
+      sender.sendCount(coalescedTimeoutMetricName, coalescedTimeouts.getAndSet(0));
+      sender.sendGauge(varyKeysMetricName, cacheKeyResolver.getVaryKeysCount());
+      sender.sendCount(gunzippedMetricName, gunzippedHits.getAndSet(0));
+      sender.sendCount(compressionSavedBytesMetricName, compressionSavedBytes.getAndSet(0));
+      sender.sendCount(purgesMetricName, invalidator.getPurgesAndReset());
+      sender.sendCount(purgedHitsMetricName, purgedHits.getAndSet(0));
+      sender.sendGauge(purgeRecordsMetricName, invalidator.getPurgeRecordCount());
+      statsDSender.sendCounters(sampledMetricName, sampledRequests);
     }, STATS_UPDATE_RATE);
   }
 
-  private static byte[] getCacheKey(HttpServletRequest request) {
-    return (request.getMethod() + request.getRequestURI() + '?' + request.getQueryString() + request.getHeader("Accept")).getBytes();
+  public HttpCacheInvalidator getInvalidator() {
+    return invalidator;
+  }
+
+  @Override
+  public void destroy() {
+    if (invalidatorCleanUp != null) {
+      invalidatorCleanUp.cancel(false);
+    }
   }
 
   private static int getMaxAge(HttpServletResponse response) {
+    CacheControl cacheControl = getCacheControl(response);
+    return cacheControl == null ? NO_CACHE : cacheControl.getMaxAge();
+  }
+
+  private static CacheControl getCacheControl(HttpServletResponse response) {
     if (response.getStatus() != 200) {
-      return NO_CACHE;
+      return null;
     }
 
     String cacheHeaderValue = response.getHeader(CACHE_CONTROL);
     if (cacheHeaderValue == null) {
-      return NO_CACHE;
+      return null;
     }
 
     try {
-      return CacheControl.valueOf(cacheHeaderValue).getMaxAge();
+      return CacheControl.valueOf(cacheHeaderValue);
     } catch (IllegalArgumentException e) {
       LOGGER.error("Invalid Cache-Control header value {}", cacheHeaderValue, e);
-      return NO_CACHE;
+      return null;
     }
   }
 
+  private static int getStaleWhileRevalidate(CacheControl cacheControl) {
+    String value = cacheControl.getCacheExtension().get(STALE_WHILE_REVALIDATE);
+    if (value != null) {
+      try {
+        return Integer.parseInt(value);
+      } catch (NumberFormatException e) {
+        LOGGER.warn("Invalid {} value {}", STALE_WHILE_REVALIDATE, value);
+      }
+    }
+    return cacheControl.getMaxAge();
+  }
+
   @Override
   public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain)
       throws IOException, ServletException {
     HttpServletRequest httpServletRequest = (HttpServletRequest) servletRequest;
     HttpServletResponse httpServletResponse = (HttpServletResponse) servletResponse;
 
-    byte[] key = getCacheKey(httpServletRequest);
-    CachedResponse cachedResponse = CachedResponse.from(ohCache.get(key));
+    if (hitRatioSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < hitRatioSampleRate) {
+      try {
+        doFilter(httpServletRequest, httpServletResponse, filterChain);
+      } finally {
+        sampleResult(httpServletRequest);
+      }
+    } else {
+      doFilter(httpServletRequest, httpServletResponse, filterChain);
+    }
+  }
 
-    if (cachedResponse == null) {
-      filterChain.doFilter(servletRequest, servletResponse);
+  private void doFilter(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse, FilterChain filterChain)
+      throws IOException, ServletException {
+    RequestKey requestKey = cacheKeyResolver.resolve(httpServletRequest);
+    if (requestKey == null) {
+      cachedBypass.incrementAndGet();
+      filterChain.doFilter(httpServletRequest, httpServletResponse);
+      return;
+    }
+
+    byte[] key = requestKey.hash;
+    boolean coalescing = coalescingTimeoutMs != NO_CACHE;
+    CompletableFuture<Void> revalidation = null;
+    boolean placeholder;
+    try (DirectValueAccess cachedValue = ohCache.getDirect(key)) {
+      CachedResponse cachedResponse = cachedValue == null ? null : CachedResponseSerializer.readHead(cachedValue.buffer());
+      if (cachedResponse != null && !cachedResponse.isPlaceholder() && invalidator.isPurged(cachedResponse)) {
+        // the key has been requested before, so it is cached again right away as after a placeholder
+        purgedHits.incrementAndGet();
+        cachedResponse = PLACEHOLDER;
+      }
+      if (cachedResponse != null && !cachedResponse.isPlaceholder()) {
+        if (!coalescing || cachedResponse.isFresh(System.currentTimeMillis())) {
+          cachedHits.incrementAndGet();
+          writeCachedResponse(cachedResponse, cachedValue.buffer(), httpServletRequest, httpServletResponse);
+          return;
+        }
+        revalidation = new CompletableFuture<>();
+        if (inFlight.putIfAbsent(ByteBuffer.wrap(key), revalidation) != null) {
+          cachedStale.incrementAndGet();
+          writeCachedResponse(cachedResponse, cachedValue.buffer(), httpServletRequest, httpServletResponse);
+          return;
+        }
+      }
+      placeholder = cachedResponse != null;
+    }
+
+    if (coalescing) {
+      doFilterCoalesced(requestKey, revalidation, httpServletRequest, httpServletResponse, filterChain);
+    } else if (!placeholder) {
+      filterChain.doFilter(httpServletRequest, httpServletResponse);
 
       int maxAge = getMaxAge(httpServletResponse);
-      if (maxAge != NO_CACHE) {
-        servletRequest.setAttribute(CACHE_ATTRIBUTE, MISS);
+      byte[] storeKey = maxAge == NO_CACHE ? null : cacheKeyResolver.storeHash(requestKey, httpServletRequest, httpServletResponse);
+      if (storeKey != null) {
+        httpServletRequest.setAttribute(CACHE_ATTRIBUTE, MISS);
         cachedMisses.incrementAndGet();
-        ohCache.putIfAbsent(key, PLACEHOLDER, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(maxAge));
+        ohCache.putIfAbsent(storeKey, PLACEHOLDER, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(maxAge));
       } else {
         cachedBypass.incrementAndGet();
       }
-    } else if (cachedResponse.isPlaceholder()) {
-      CachingResponseWrapper responseWrapper = new CachingResponseWrapper(httpServletResponse);
+    } else {
+      doFilterAndCache(requestKey, httpServletRequest, httpServletResponse, filterChain, cachedPlaceholder);
+    }
+  }
 
-      filterChain.doFilter(servletRequest, responseWrapper);
-      responseWrapper.flushBuffer();
+  /**
+   * @param revalidation in-flight marker this request has already registered for a stale response, or null
+   */
+  private void doFilterCoalesced(RequestKey key, CompletableFuture<Void> revalidation, HttpServletRequest request,
+                                 HttpServletResponse response, FilterChain filterChain) throws IOException, ServletException {
+    ByteBuffer inFlightKey = ByteBuffer.wrap(key.hash);
+    CompletableFuture<Void> populating = revalidation;
+    if (populating == null) {
+      populating = new CompletableFuture<>();
+      CompletableFuture<Void> existing = inFlight.putIfAbsent(inFlightKey, populating);
+      if (existing != null) {
+        if (!awaitAndWriteCachedResponse(key, existing, request, response)) {
+          cachedBypass.incrementAndGet();
+          filterChain.doFilter(request, response);
+        }
+        return;
+      }
+    }
 
-      int maxAge = getMaxAge(httpServletResponse);
-      if (maxAge != NO_CACHE && !responseWrapper.hasError()) {
-        servletRequest.setAttribute(CACHE_ATTRIBUTE, MISS);
-        cachedPlaceholder.incrementAndGet();
-        CachedResponse response = CachedResponse.from(responseWrapper);
+    try {
+      doFilterAndCache(key, request, response, filterChain, cachedMisses);
+    } finally {
+      inFlight.remove(inFlightKey, populating);
+      populating.complete(null);
+    }
+  }
 
-        ohCache.put(key, response.getSerialized(), System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(maxAge));
-      } else {
-        cachedBypass.incrementAndGet();
+  private boolean awaitAndWriteCachedResponse(RequestKey key, CompletableFuture<Void> populating, HttpServletRequest request,
+                                              HttpServletResponse response) throws IOException {
+    try {
+      populating.get(coalescingTimeoutMs, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      coalescedTimeouts.incrementAndGet();
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (ExecutionException e) {
+      return false;
+    }
+
+    // the first response could have brought Vary headers this request has not been looked up with
+    try (DirectValueAccess cachedValue = ohCache.getDirect(cacheKeyResolver.lookupHash(key, request))) {
+      CachedResponse cachedResponse = cachedValue == null ? null : CachedResponseSerializer.readHead(cachedValue.buffer());
+      if (cachedResponse == null || cachedResponse.isPlaceholder() || invalidator.isPurged(cachedResponse)) {
+        return false;
+      }
+      coalescedHits.incrementAndGet();
+      writeCachedResponse(cachedResponse, cachedValue.buffer(), request, response);
+      return true;
+    }
+  }
+
+  private void doFilterAndCache(RequestKey key, HttpServletRequest request, HttpServletResponse response, FilterChain filterChain,
+                                AtomicInteger cachedCounter) throws IOException, ServletException {
+    CachingResponseWrapper responseWrapper = new CachingResponseWrapper(response);
+
+    long createdAtMillis = System.currentTimeMillis();
+    long invalidationEpoch = invalidator.getEpoch();
+    filterChain.doFilter(request, responseWrapper);
+    responseWrapper.flushBuffer();
+
+    CacheControl cacheControl = getCacheControl(response);
+    int maxAge = cacheControl == null ? NO_CACHE : cacheControl.getMaxAge();
+    byte[] storeKey = maxAge == NO_CACHE || responseWrapper.hasError() ? null : cacheKeyResolver.storeHash(key, request, response);
+    if (storeKey != null) {
+      request.setAttribute(CACHE_ATTRIBUTE, MISS);
+      cachedCounter.incrementAndGet();
+
+      long currentTimeMillis = System.currentTimeMillis();
+      long freshUntilMillis = currentTimeMillis + TimeUnit.SECONDS.toMillis(maxAge);
+      long expireAtMillis = coalescingTimeoutMs == NO_CACHE
+          ? freshUntilMillis
+          : freshUntilMillis + TimeUnit.SECONDS.toMillis(Math.max(getStaleWhileRevalidate(cacheControl), 0));
+      String route = hitRatioSampleRate > 0 ? getRoute(request) : null;
+      CachedResponse cachedResponse = invalidator.isEnabled()
+          ? CachedResponse.from(responseWrapper, invalidationEpoch, freshUntilMillis, getUri(request), getTags(response), route)
+          : CachedResponse.from(responseWrapper, invalidationEpoch, freshUntilMillis, null, List.of(), route);
+      invalidator.recordLifetime(createdAtMillis, expireAtMillis);
+      ohCache.put(storeKey, compress(cachedResponse), expireAtMillis);
+    } else {
+      cachedBypass.incrementAndGet();
+    }
+  }
+
+  private static String getUri(HttpServletRequest request) {
+    String queryString = request.getQueryString();
+    return queryString == null || queryString.isEmpty() ? request.getRequestURI() : request.getRequestURI() + '?' + queryString;
+  }
+
+  private List<String> getTags(HttpServletResponse response) {
+    Collection<String> tagHeaderValues = response.getHeaders(tagHeader);
+    if (tagHeaderValues == null || tagHeaderValues.isEmpty()) {
+      return List.of();
+    }
+    List<String> tags = new ArrayList<>();
+    for (String tagHeaderValue : tagHeaderValues) {
+      for (String tag : TAG_SEPARATOR.split(tagHeaderValue)) {
+        if (!tag.isEmpty()) {
+          tags.add(tag);
+        }
       }
+    }
+    return tags;
+  }
+
+  private CachedResponse compress(CachedResponse cachedResponse) {
+    if (compressor == null) {
+      return cachedResponse;
+    }
+    CachedResponse compressedResponse = compressor.compress(cachedResponse);
+    compressionSavedBytes.addAndGet(cachedResponse.body.length - compressedResponse.body.length);
+    return compressedResponse;
+  }
+
+  private void sampleResult(HttpServletRequest request) {
+    Object cacheResult = request.getAttribute(CACHE_ATTRIBUTE);
+    String result = HIT.equals(cacheResult) ? "hit" : MISS.equals(cacheResult) ? "miss" : "bypass";
+    Object cachedRoute = request.getAttribute(ROUTE_ATTRIBUTE);
+    String route = cachedRoute != null ? (String) cachedRoute : getRoute(request);
+    sampledRequests.add(1, appTag, new Tag(ENDPOINT_TAG_NAME, route == null ? UNKNOWN_ENDPOINT : route), new Tag(RESULT_TAG_NAME, result));
+  }
+
+  /**
+   * @return route template or controller set by {@link ru.hh.nab.starter.filters.ResourceInformationFilter} during handling, or null
+   */
+  private static String getRoute(HttpServletRequest request) {
+    Object route = request.getAttribute(HTTP_ROUTE);
+    if (route == null) {
+      route = request.getAttribute(CONTROLLER_MDC_KEY);
+    }
+    return (String) route;
+  }
+
+  /**
+   * @param buffer off-heap entry positioned at the body by {@link CachedResponseSerializer#readHead}
+   */
+  private void writeCachedResponse(CachedResponse cachedResponse, ByteBuffer buffer, HttpServletRequest request,
+                                   HttpServletResponse response) throws IOException {
+    request.setAttribute(CACHE_ATTRIBUTE, HIT);
+    if (cachedResponse.route != null) {
+      request.setAttribute(ROUTE_ATTRIBUTE, cachedResponse.route);
+    }
+    response.setStatus(cachedResponse.status);
+    cachedResponse.headers.forEach(header -> response.addHeader(header.header, header.value));
+
+    ByteBuffer body = CachedResponseSerializer.readBody(buffer);
+    ServletOutputStream outputStream = response.getOutputStream();
+    if (cachedResponse.isGzipEncoded() && !CachedBodyCompressor.acceptsGzip(request)) {
+      gunzippedHits.incrementAndGet();
+      response.setContentLength(CachedBodyCompressor.getUncompressedLength(body));
+      CachedBodyCompressor.writeUncompressed(body, outputStream);
     } else {
-      servletRequest.setAttribute(CACHE_ATTRIBUTE, HIT);
-      cachedHits.incrementAndGet();
-      httpServletResponse.setStatus(cachedResponse.status);
-      cachedResponse.headers.forEach(header -> httpServletResponse.addHeader(header.header, header.value));
-
-      httpServletResponse.setContentLength(cachedResponse.body.length);
-      ServletOutputStream outputStream = httpServletResponse.getOutputStream();
-      outputStream.write(cachedResponse.body);
-      outputStream.flush();
-      httpServletResponse.flushBuffer();
+      if (cachedResponse.isGzipEncoded()) {
+        response.addHeader(CONTENT_ENCODING, CachedBodyCompressor.GZIP);
+      }
+      response.setContentLength(body.remaining());
+      writeBody(body, outputStream);
+    }
+    outputStream.flush();
+    response.flushBuffer();
+  }
+
+  /**
+   * Must be called before the off-heap entry is released. Jetty output writes the buffer as is, other streams get it by chunks.
+   */
+  private static void writeBody(ByteBuffer body, ServletOutputStream outputStream) throws IOException {
+    if (outputStream instanceof HttpOutput httpOutput) {
+      httpOutput.write(body);
+      return;
+    }
+    byte[] chunk = new byte[Math.min(body.remaining(), BODY_COPY_CHUNK_SIZE)];
+    while (body.hasRemaining()) {
+      int length = Math.min(body.remaining(), chunk.length);
+      body.get(chunk, 0, length);
+      outputStream.write(chunk, 0, length);
     }
   }
 }
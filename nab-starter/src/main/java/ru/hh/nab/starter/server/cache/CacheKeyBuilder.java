@@ -0,0 +1,16 @@
+package ru.hh.nab.starter.server.cache;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Builds the part of a cache key that identifies a request, {@link CacheFilter} hashes it to a fixed size key.<br/>
+ * Values of headers listed in Vary of the cached response are added to the key by the filter.
+ */
+@FunctionalInterface
+public interface CacheKeyBuilder {
+
+  /**
+   * @return key of the request or null if the request should not be cached
+   */
+  String build(HttpServletRequest request);
+}
@@ -0,0 +1,125 @@
+package ru.hh.nab.starter.server.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import static javax.ws.rs.core.HttpHeaders.VARY;
+import ru.hh.nab.common.cache.TinyLfuCache;
+
+/**
+ * Turns requests into 128-bit OHC keys, hashed by {@link SipHash} with a random key of the resolver.<br/>
+ * Vary headers are known only after a response, so they are remembered per request key in a bounded on-heap map.
+ * A request is looked up by the hash of its key and the values of the remembered headers,
+ * a response is stored under the key with the headers from its own Vary.
+ */
+final class CacheKeyResolver {
+  private static final String ANY_HEADER = "*";
+
+  private final CacheKeyBuilder cacheKeyBuilder;
+  private final SipHash keyHash = SipHash.withRandomKey();
+  private final TinyLfuCache<ByteBuffer, List<String>> varyHeaders;
+
+  CacheKeyResolver(CacheKeyBuilder cacheKeyBuilder, long maxVaryKeys) {
+    this.cacheKeyBuilder = cacheKeyBuilder;
+    this.varyHeaders = new TinyLfuCache<>(maxVaryKeys);
+  }
+
+  /**
+   * @return key to look up the request or null if the request should not be cached
+   */
+  RequestKey resolve(HttpServletRequest request) {
+    String value = cacheKeyBuilder.build(request);
+    if (value == null) {
+      return null;
+    }
+    byte[] primaryHash = keyHash.hash128(value.getBytes(StandardCharsets.UTF_8));
+    return new RequestKey(value, primaryHash, hash(value, primaryHash, varyHeaders.get(ByteBuffer.wrap(primaryHash)), request));
+  }
+
+  /**
+   * Key of the request with the currently remembered Vary headers, they could have changed since {@link #resolve}.
+   */
+  byte[] lookupHash(RequestKey key, HttpServletRequest request) {
+    return hash(key.value, key.primaryHash, varyHeaders.get(ByteBuffer.wrap(key.primaryHash)), request);
+  }
+
+  /**
+   * Remembers Vary of the response for the next lookups.
+   *
+   * @return key to store the response under or null if the response varies on any header and should not be cached
+   */
+  byte[] storeHash(RequestKey key, HttpServletRequest request, HttpServletResponse response) {
+    List<String> headers = getVaryHeaders(response.getHeaders(VARY));
+    if (headers == null) {
+      return null;
+    }
+    ByteBuffer primaryKey = ByteBuffer.wrap(key.primaryHash);
+    if (headers.isEmpty()) {
+      if (varyHeaders.get(primaryKey) != null) {
+        varyHeaders.remove(primaryKey);
+      }
+      return key.primaryHash;
+    }
+    if (!headers.equals(varyHeaders.get(primaryKey))) {
+      varyHeaders.put(primaryKey, headers);
+    }
+    return hash(key.value, key.primaryHash, headers, request);
+  }
+
+  int getVaryKeysCount() {
+    return varyHeaders.size();
+  }
+
+  /**
+   * @return sorted lower case header names or null for Vary: *
+   */
+  static List<String> getVaryHeaders(Collection<String> varyValues) {
+    if (varyValues == null || varyValues.isEmpty()) {
+      return List.of();
+    }
+    List<String> headers = new ArrayList<>();
+    for (String varyValue : varyValues) {
+      if (varyValue == null) {
+        continue;
+      }
+      for (String header : varyValue.split(",")) {
+        String name = header.trim().toLowerCase();
+        if (name.equals(ANY_HEADER)) {
+          return null;
+        }
+        if (!name.isEmpty() && !headers.contains(name)) {
+          headers.add(name);
+        }
+      }
+    }
+    headers.sort(null);
+    return List.copyOf(headers);
+  }
+
+  private byte[] hash(String value, byte[] primaryHash, List<String> headers, HttpServletRequest request) {
+    if (headers == null || headers.isEmpty()) {
+      return primaryHash;
+    }
+    StringBuilder key = new StringBuilder(value);
+    for (String header : headers) {
+      DefaultCacheKeyBuilder.appendHeader(key, header, request);
+    }
+    return keyHash.hash128(key.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  static final class RequestKey {
+    final String value;
+    final byte[] primaryHash;
+    final byte[] hash;
+
+    private RequestKey(String value, byte[] primaryHash, byte[] hash) {
+      this.value = value;
+      this.primaryHash = primaryHash;
+      this.hash = hash;
+    }
+  }
+}
@@ -0,0 +1,191 @@
+package ru.hh.nab.starter.server.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import javax.servlet.http.HttpServletRequest;
+import static javax.ws.rs.core.HttpHeaders.ACCEPT_ENCODING;
+import static javax.ws.rs.core.HttpHeaders.CONTENT_ENCODING;
+import static javax.ws.rs.core.HttpHeaders.CONTENT_LENGTH;
+import static javax.ws.rs.core.HttpHeaders.ETAG;
+import static javax.ws.rs.core.HttpHeaders.VARY;
+
+/**
+ * Gzips cached bodies, so that the same capacity holds more responses and hits are sent to gzip clients without compressing them again.
+ * Bodies are gunzipped on the fly for clients that do not accept gzip.<br/>
+ * Both representations share the headers of the stored response, so the headers describing exact bytes are adjusted on compression:
+ * a strong ETag is weakened and Content-MD5 and Digest are dropped.
+ */
+final class CachedBodyCompressor {
+  static final String GZIP = "gzip";
+
+  private static final String CONTENT_MD5 = "Content-MD5";
+  private static final String DIGEST = "Digest";
+  private static final String WEAK_ETAG_PREFIX = "W/";
+
+  private static final int GZIP_HEADER_SIZE = 10;
+  private static final int GZIP_TRAILER_SIZE = 8;
+  private static final int CHUNK_SIZE = 8192;
+
+  private final int minSize;
+  private final int level;
+
+  /**
+   * @param minSize smaller bodies are stored as is, the gain would not pay for gunzipping them
+   * @param level {@link Deflater} compression level
+   */
+  CachedBodyCompressor(int minSize, int level) {
+    this.minSize = minSize;
+    this.level = level;
+  }
+
+  /**
+   * @return response with gzipped body or the given response if it is small, already encoded or does not shrink
+   */
+  CachedResponse compress(CachedResponse response) {
+    if (response.body == null || response.body.length < minSize || hasHeader(response.headers, CONTENT_ENCODING)) {
+      return response;
+    }
+    byte[] compressedBody = gzip(response.body);
+    if (compressedBody.length >= response.body.length) {
+      return response;
+    }
+
+    List<Header> headers = new ArrayList<>(response.headers.size() + 1);
+    for (Header header : response.headers) {
+      if (header.header.equalsIgnoreCase(ETAG)) {
+        headers.add(new Header(header.header, weaken(header.value)));
+      } else if (!isRepresentationDigest(header.header)) {
+        headers.add(header);
+      }
+    }
+    if (!varies(response.headers, ACCEPT_ENCODING)) {
+      headers.add(new Header(VARY, ACCEPT_ENCODING));
+    }
+    return response.withBody(headers, compressedBody, CachedResponse.GZIP_ENCODED);
+  }
+
+  /**
+   * The stored gzipped body and the gunzipped one are not byte-identical to the one the ETag was computed for,
+   * so only weak validation stays correct for them.
+   */
+  private static String weaken(String etag) {
+    return etag.startsWith(WEAK_ETAG_PREFIX) ? etag : WEAK_ETAG_PREFIX + etag;
+  }
+
+  private static boolean isRepresentationDigest(String name) {
+    return name.equalsIgnoreCase(CONTENT_LENGTH) || name.equalsIgnoreCase(CONTENT_MD5) || name.equalsIgnoreCase(DIGEST);
+  }
+
+  private byte[] gzip(byte[] body) {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4);
+    try (GZIPOutputStream gzipOutputStream = new LeveledGZIPOutputStream(compressed, level)) {
+      gzipOutputStream.write(body);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return compressed.toByteArray();
+  }
+
+  /**
+   * @param body written by {@link #compress}
+   */
+  static int getUncompressedLength(ByteBuffer body) {
+    return body.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(body.limit() - Integer.BYTES);
+  }
+
+  /**
+   * Gunzips the body written by {@link #compress} straight from the off-heap buffer, the body is known to have a bare gzip header.
+   */
+  static void writeUncompressed(ByteBuffer body, OutputStream outputStream) throws IOException {
+    ByteBuffer deflated = body.duplicate();
+    deflated.position(body.position() + GZIP_HEADER_SIZE);
+    deflated.limit(body.limit() - GZIP_TRAILER_SIZE);
+
+    Inflater inflater = new Inflater(true);
+    try {
+      inflater.setInput(deflated);
+      byte[] chunk = new byte[CHUNK_SIZE];
+      while (!inflater.finished()) {
+        int length = inflater.inflate(chunk);
+        if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IOException("Truncated gzip body in cache");
+        }
+        outputStream.write(chunk, 0, length);
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Corrupted gzip body in cache", e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * @return true if Accept-Encoding of the request lists gzip or * without q=0
+   */
+  static boolean acceptsGzip(HttpServletRequest request) {
+    Enumeration<String> acceptEncodings = request.getHeaders(ACCEPT_ENCODING);
+    if (acceptEncodings == null) {
+      return false;
+    }
+    while (acceptEncodings.hasMoreElements()) {
+      String acceptEncoding = acceptEncodings.nextElement();
+      if (acceptEncoding == null) {
+        continue;
+      }
+      for (String coding : acceptEncoding.split(",")) {
+        int parametersIndex = coding.indexOf(';');
+        String name = (parametersIndex == -1 ? coding : coding.substring(0, parametersIndex)).trim();
+        if ((name.equalsIgnoreCase(GZIP) || name.equals("*")) && !isZeroQuality(coding, parametersIndex)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean isZeroQuality(String coding, int parametersIndex) {
+    if (parametersIndex == -1) {
+      return false;
+    }
+    for (String parameter : coding.substring(parametersIndex + 1).split(";")) {
+      int equalsIndex = parameter.indexOf('=');
+      if (equalsIndex != -1 && parameter.substring(0, equalsIndex).trim().equalsIgnoreCase("q")) {
+        try {
+          return Double.parseDouble(parameter.substring(equalsIndex + 1).trim()) == 0;
+        } catch (NumberFormatException e) {
+          return false;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean hasHeader(List<Header> headers, String name) {
+    return headers.stream().anyMatch(header -> header.header.equalsIgnoreCase(name));
+  }
+
+  private static boolean varies(List<Header> headers, String name) {
+    return headers.stream()
+        .filter(header -> header.header.equalsIgnoreCase(VARY))
+        .flatMap(header -> List.of(header.value.split(",")).stream())
+        .anyMatch(value -> value.trim().equalsIgnoreCase(name) || value.trim().equals("*"));
+  }
+
+  private static final class LeveledGZIPOutputStream extends GZIPOutputStream {
+    LeveledGZIPOutputStream(OutputStream out, int level) throws IOException {
+      super(out, CHUNK_SIZE);
+      def.setLevel(level);
+    }
+  }
+}
@@ -1,11 +1,5 @@
 package ru.hh.nab.starter.server.cache;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -13,54 +7,101 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-class CachedResponse implements Serializable {
-  private static final long serialVersionUID = 4535812629333313638L;
 
+/**
+ * Stored in OHC by {@link CachedResponseSerializer}.
+ */
+class CachedResponse {
   private static final Set<String> EXCLUDE_HEADERS =
       Stream
           .of("Date", "Connection", "Keep-Alive", "Public", "Upgrade", "Transfer-Encoding", "Proxy-Authenticate", "X-Request-Id")
           .map(String::toLowerCase)
           .collect(Collectors.toSet());
 
-  private static final Logger LOGGER = LoggerFactory.getLogger(CachedResponse.class);
-  static final byte[] PLACEHOLDER = new CachedResponse().getSerialized();
+  static final CachedResponse PLACEHOLDER = new CachedResponse();
+  static final byte IDENTITY_ENCODED = 0;
+  static final byte GZIP_ENCODED = 1;
 
   public final int status;
   public final List<Header> headers;
   public final byte[] body;
+  /**
+   * After this time the response is stale, it is served only while another request revalidates it.
+   */
+  public final long freshUntilMillis;
+  /**
+   * How the body is stored, {@link #GZIP_ENCODED} bodies are compressed by {@link CachedBodyCompressor}.
+   */
+  public final byte encoding;
+  /**
+   * Number of purges made before the request that produced the response started, later purges can match the response.
+   */
+  public final long invalidationEpoch;
+  /**
+   * Path with query string of the request, null if invalidation is disabled.
+   */
+  public final String uri;
+  /**
+   * Tags of the response to purge it by, empty if invalidation is disabled.
+   */
+  public final List<String> tags;
+  /**
+   * Route or controller that produced the response, null if hit ratio is not sampled.
+   */
+  public final String route;
 
   public boolean isPlaceholder() {
     return status == 0;
   }
 
+  public boolean isFresh(long currentTimeMillis) {
+    return currentTimeMillis < freshUntilMillis;
+  }
+
+  public boolean isGzipEncoded() {
+    return encoding == GZIP_ENCODED;
+  }
+
   CachedResponse() {
     this(0, null, null);
   }
 
   CachedResponse(int status, List<Header> headers, byte[] body) {
+    this(status, headers, body, Long.MAX_VALUE);
+  }
+
+  CachedResponse(int status, List<Header> headers, byte[] body, long freshUntilMillis) {
+    this(status, headers, body, freshUntilMillis, IDENTITY_ENCODED);
+  }
+
+  CachedResponse(int status, List<Header> headers, byte[] body, long freshUntilMillis, byte encoding) {
+    this(status, headers, body, freshUntilMillis, encoding, 0, null, List.of(), null);
+  }
+
+  CachedResponse(int status, List<Header> headers, byte[] body, long freshUntilMillis, byte encoding, long invalidationEpoch,
+                 String uri, List<String> tags, String route) {
     this.status = status;
     this.headers = headers;
     this.body = body;
+    this.freshUntilMillis = freshUntilMillis;
+    this.encoding = encoding;
+    this.invalidationEpoch = invalidationEpoch;
+    this.uri = uri;
+    this.tags = tags;
+    this.route = route;
   }
 
-  public byte[] getSerialized() {
-    try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-         ObjectOutputStream outputStream = new ObjectOutputStream(byteArrayOutputStream)) {
-      outputStream.writeObject(this);
-      outputStream.flush();
-
-      return byteArrayOutputStream.toByteArray();
-    } catch (IOException e) {
-      LOGGER.error("CachedResponse serialization error", e);
-    }
-
-    return null;
+  CachedResponse withBody(List<Header> headers, byte[] body, byte encoding) {
+    return new CachedResponse(status, headers, body, freshUntilMillis, encoding, invalidationEpoch, uri, tags, route);
   }
 
-  public static CachedResponse from(CachingResponseWrapper responseWrapper) {
+  /**
+   * @param uri null if invalidation is disabled
+   * @param tags empty if invalidation is disabled
+   * @param route null if hit ratio is not sampled
+   */
+  public static CachedResponse from(CachingResponseWrapper responseWrapper, long invalidationEpoch, long freshUntilMillis,
+                                    String uri, List<String> tags, String route) {
     List<Header> headers = new ArrayList<>();
     for (String header : responseWrapper.getHeaderNames()) {
       Collection<String> values = responseWrapper.getHeaders(header);
@@ -70,22 +111,16 @@ class CachedResponse implements Serializable {
       }
     }
 
-    return new CachedResponse(responseWrapper.getStatus(), headers, responseWrapper.getContentAsByteArray());
-  }
-
-  public static CachedResponse from(byte[] data) {
-    if (data == null) {
-      return null;
-    }
-
-    try (ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(data);
-         ObjectInputStream inputStream = new ObjectInputStream(byteArrayInputStream)) {
-      return (CachedResponse) inputStream.readObject();
-    } catch (IOException | ClassNotFoundException e) {
-      LOGGER.error("CachedResponse deserialization error", e);
-    }
-
-    return null;
+    return new CachedResponse(
+        responseWrapper.getStatus(),
+        headers,
+        responseWrapper.getContentAsByteArray(),
+        freshUntilMillis,
+        IDENTITY_ENCODED,
+        invalidationEpoch,
+        uri,
+        tags,
+        route
+    );
   }
 }
-
@@ -0,0 +1,182 @@
+package ru.hh.nab.starter.server.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.caffinitas.ohc.CacheSerializer;
+
+/**
+ * Writes {@link CachedResponse} straight into OHC memory in the layout:<br/>
+ * version byte, status int, fresh until millis long, body encoding byte, invalidation epoch long, URI (-1 length for null),
+ * tag count int, tags, route (-1 length for null), header count int, headers as name and value,
+ * body length int (-1 for placeholder) and body bytes.<br/>
+ * Strings are written as int length and UTF-8 bytes.<br/>
+ * Status and headers are read without copying the body, so a hit can be written to the client from the off-heap buffer.
+ */
+class CachedResponseSerializer implements CacheSerializer<CachedResponse> {
+  static final byte VERSION = 5;
+  private static final int NULL_LENGTH = -1;
+
+  @Override
+  public void serialize(CachedResponse value, ByteBuffer buf) {
+    buf.put(VERSION);
+    buf.putInt(value.status);
+    buf.putLong(value.freshUntilMillis);
+    buf.put(value.encoding);
+    buf.putLong(value.invalidationEpoch);
+    putNullableString(value.uri, buf);
+    List<String> tags = value.tags == null ? List.of() : value.tags;
+    buf.putInt(tags.size());
+    for (String tag : tags) {
+      putString(tag, buf);
+    }
+    putNullableString(value.route, buf);
+    List<Header> headers = value.headers == null ? List.of() : value.headers;
+    buf.putInt(headers.size());
+    for (Header header : headers) {
+      putString(header.header, buf);
+      putString(header.value, buf);
+    }
+    if (value.body == null) {
+      buf.putInt(NULL_LENGTH);
+    } else {
+      buf.putInt(value.body.length);
+      buf.put(value.body);
+    }
+  }
+
+  @Override
+  public CachedResponse deserialize(ByteBuffer buf) {
+    CachedResponse head = readHead(buf);
+    if (head == null || head.isPlaceholder()) {
+      return head;
+    }
+    ByteBuffer bodyBuffer = readBody(buf);
+    byte[] body = new byte[bodyBuffer.remaining()];
+    bodyBuffer.get(body);
+    return head.withBody(head.headers, body, head.encoding);
+  }
+
+  @Override
+  public int serializedSize(CachedResponse value) {
+    int size = Byte.BYTES + Integer.BYTES + Long.BYTES + Byte.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES + Integer.BYTES
+        + Integer.BYTES;
+    if (value.uri != null) {
+      size += utf8Length(value.uri);
+    }
+    if (value.route != null) {
+      size += utf8Length(value.route);
+    }
+    if (value.tags != null) {
+      for (String tag : value.tags) {
+        size += Integer.BYTES + utf8Length(tag);
+      }
+    }
+    if (value.headers != null) {
+      for (Header header : value.headers) {
+        size += Integer.BYTES + utf8Length(header.header) + Integer.BYTES + utf8Length(header.value);
+      }
+    }
+    return size + Integer.BYTES + (value.body == null ? 0 : value.body.length);
+  }
+
+  /**
+   * Reads status and headers and leaves the buffer positioned at the body.
+   *
+   * @return response without body or null if the buffer was written in another version of the layout
+   */
+  static CachedResponse readHead(ByteBuffer buf) {
+    if (buf.get() != VERSION) {
+      return null;
+    }
+    int status = buf.getInt();
+    long freshUntilMillis = buf.getLong();
+    byte encoding = buf.get();
+    long invalidationEpoch = buf.getLong();
+    String uri = getNullableString(buf);
+    int numOfTags = buf.getInt();
+    List<String> tags = numOfTags == 0 ? List.of() : new ArrayList<>(numOfTags);
+    for (int i = 0; i < numOfTags; i++) {
+      tags.add(getString(buf));
+    }
+    String route = getNullableString(buf);
+    int numOfHeaders = buf.getInt();
+    if (status == 0) {
+      return CachedResponse.PLACEHOLDER;
+    }
+    List<Header> headers = new ArrayList<>(numOfHeaders);
+    for (int i = 0; i < numOfHeaders; i++) {
+      headers.add(new Header(getString(buf), getString(buf)));
+    }
+    return new CachedResponse(status, headers, null, freshUntilMillis, encoding, invalidationEpoch, uri, tags, route);
+  }
+
+  /**
+   * @param buf positioned at the body by {@link #readHead}
+   * @return view of the body bytes, it is valid as long as the buffer is
+   */
+  static ByteBuffer readBody(ByteBuffer buf) {
+    int length = buf.getInt();
+    ByteBuffer body = buf.slice();
+    body.limit(Math.max(length, 0));
+    return body;
+  }
+
+  private static void putString(String value, ByteBuffer buf) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    buf.putInt(bytes.length);
+    buf.put(bytes);
+  }
+
+  private static void putNullableString(String value, ByteBuffer buf) {
+    if (value == null) {
+      buf.putInt(NULL_LENGTH);
+    } else {
+      putString(value, buf);
+    }
+  }
+
+  private static String getNullableString(ByteBuffer buf) {
+    int length = buf.getInt();
+    return length == NULL_LENGTH ? null : getString(length, buf);
+  }
+
+  private static String getString(ByteBuffer buf) {
+    return getString(buf.getInt(), buf);
+  }
+
+  private static String getString(int length, ByteBuffer buf) {
+    String value;
+    if (buf.hasArray()) {
+      value = new String(buf.array(), buf.arrayOffset() + buf.position(), length, StandardCharsets.UTF_8);
+      buf.position(buf.position() + length);
+    } else {
+      byte[] bytes = new byte[length];
+      buf.get(bytes);
+      value = new String(bytes, StandardCharsets.UTF_8);
+    }
+    return value;
+  }
+
+  private static int utf8Length(String value) {
+    int length = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        length++;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else if (Character.isSurrogate(c)) {
+        // String.getBytes replaces a malformed surrogate with '?'
+        length++;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+}
@@ -0,0 +1,95 @@
+package ru.hh.nab.starter.server.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.servlet.http.HttpServletRequest;
+import ru.hh.nab.common.properties.FileSettings;
+
+/**
+ * Key of method, URI, query string and the configured request headers. Settings under http.cache.key:<br/>
+ * normalizeQuery - sort query parameters so that their order does not matter, false by default<br/>
+ * ignoredQueryParams - parameters left out of the key, such as utm_source, they are left out only if normalizeQuery is set<br/>
+ * headers - request headers added to the key, Accept by default
+ */
+public class DefaultCacheKeyBuilder implements CacheKeyBuilder {
+  private static final List<String> DEFAULT_HEADERS = List.of("Accept");
+  private static final char SEPARATOR = '\n';
+  private static final Comparator<String> PARAM_NAME_ORDER = Comparator.comparing(DefaultCacheKeyBuilder::getParamName);
+
+  private final boolean normalizeQuery;
+  private final Set<String> ignoredQueryParams;
+  private final List<String> headers;
+
+  public DefaultCacheKeyBuilder() {
+    this(false, Set.of(), DEFAULT_HEADERS);
+  }
+
+  public DefaultCacheKeyBuilder(boolean normalizeQuery, Set<String> ignoredQueryParams, List<String> headers) {
+    this.normalizeQuery = normalizeQuery;
+    this.ignoredQueryParams = Set.copyOf(ignoredQueryParams);
+    this.headers = List.copyOf(headers);
+  }
+
+  public static DefaultCacheKeyBuilder create(FileSettings keySettings) {
+    List<String> headers = keySettings.getStringList("headers");
+    return new DefaultCacheKeyBuilder(
+        keySettings.getBoolean("normalizeQuery", false),
+        Set.copyOf(keySettings.getStringList("ignoredQueryParams")),
+        headers.isEmpty() ? DEFAULT_HEADERS : headers
+    );
+  }
+
+  @Override
+  public String build(HttpServletRequest request) {
+    StringBuilder key = new StringBuilder(128)
+        .append(request.getMethod())
+        .append(' ')
+        .append(request.getRequestURI());
+    String queryString = request.getQueryString();
+    if (queryString != null && !queryString.isEmpty()) {
+      key.append('?').append(normalizeQuery ? normalizeQuery(queryString) : queryString);
+    }
+    for (String header : headers) {
+      appendHeader(key, header, request);
+    }
+    return key.toString();
+  }
+
+  /**
+   * Appends all values of the header, so that requests with and without the header get different keys.
+   */
+  static void appendHeader(StringBuilder key, String header, HttpServletRequest request) {
+    key.append(SEPARATOR).append(header).append(':');
+    Enumeration<String> values = request.getHeaders(header);
+    if (values == null) {
+      return;
+    }
+    boolean first = true;
+    while (values.hasMoreElements()) {
+      if (!first) {
+        key.append(',');
+      }
+      key.append(values.nextElement());
+      first = false;
+    }
+  }
+
+  private String normalizeQuery(String queryString) {
+    List<String> params = new ArrayList<>(Arrays.asList(queryString.split("&")));
+    if (!ignoredQueryParams.isEmpty()) {
+      params.removeIf(param -> ignoredQueryParams.contains(getParamName(param)));
+    }
+    // stable sort keeps the order of values of a repeated parameter
+    return params.stream().filter(param -> !param.isEmpty()).sorted(PARAM_NAME_ORDER).collect(Collectors.joining("&"));
+  }
+
+  private static String getParamName(String param) {
+    int equalsIndex = param.indexOf('=');
+    return equalsIndex == -1 ? param : param.substring(0, equalsIndex);
+  }
+}
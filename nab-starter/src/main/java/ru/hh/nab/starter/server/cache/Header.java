@@ -1,10 +1,6 @@
 package ru.hh.nab.starter.server.cache;
 
-import java.io.Serializable;
-
-class Header implements Serializable {
-  private static final long serialVersionUID = -1198547959156704720L;
-
+class Header {
   public final String header;
   public final String value;
 
@@ -1,5 +1,6 @@
 package ru.hh.nab.starter.server.cache;
 
+import java.util.concurrent.ScheduledExecutorService;
 import org.eclipse.jetty.servlet.FilterHolder;
 import ru.hh.nab.common.properties.FileSettings;
 import ru.hh.nab.metrics.StatsDSender;
@@ -8,10 +9,28 @@ public class HttpCacheFilterFactory {
   private HttpCacheFilterFactory() {}
 
   public static FilterHolder createCacheFilterHolder(FileSettings fileSettings, String serviceName, StatsDSender statsDSender) {
+    return createCacheFilterHolder(fileSettings, serviceName, statsDSender, null);
+  }
+
+  /**
+   * @param cacheKeyBuilder null to build keys from http.cache.key settings
+   */
+  public static FilterHolder createCacheFilterHolder(FileSettings fileSettings, String serviceName, StatsDSender statsDSender,
+                                                     CacheKeyBuilder cacheKeyBuilder) {
+    return createCacheFilterHolder(fileSettings, serviceName, statsDSender, cacheKeyBuilder, null);
+  }
+
+  /**
+   * @param cacheKeyBuilder null to build keys from http.cache.key settings
+   * @param maintenanceExecutor runs periodic clean up of the cache, see {@link CacheFilter}
+   */
+  public static FilterHolder createCacheFilterHolder(FileSettings fileSettings, String serviceName, StatsDSender statsDSender,
+                                                     CacheKeyBuilder cacheKeyBuilder, ScheduledExecutorService maintenanceExecutor) {
     FilterHolder holder = new FilterHolder();
-    String size = fileSettings.getString("http.cache.sizeInMB");
-    if (size != null) {
-      holder.setFilter(new CacheFilter(serviceName, Integer.parseInt(size), statsDSender));
+    if (fileSettings.getString("http.cache.sizeInMB") != null) {
+      holder.setFilter(
+          new CacheFilter(serviceName, fileSettings.getSubSettings("http.cache"), statsDSender, cacheKeyBuilder, maintenanceExecutor)
+      );
     }
     return holder;
   }
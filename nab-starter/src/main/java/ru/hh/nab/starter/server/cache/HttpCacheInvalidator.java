@@ -0,0 +1,196 @@
+package ru.hh.nab.starter.server.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.caffinitas.ohc.OHCache;
+
+/**
+ * Purges responses cached by {@link CacheFilter}, so that they can have long max-age and be invalidated by events,
+ * for example from application code on change of an entity or from a Kafka consumer.<br/>
+ * Tags are taken from a response header, Surrogate-Key by default, its value is a list of tags separated by spaces or commas.
+ * Purges by tag, URI or prefix need http.cache.invalidation.enabled, otherwise they throw {@link IllegalStateException}.<br/>
+ * There is no index of cached keys: each response is stored with its URI, tags and the number of purges made before its request
+ * started, and a purge only records its number. A response read from the cache is a miss if a later purge matches it,
+ * the next response replaces it. So a purge reaches every response, including the ones that are being stored while it runs,
+ * and its cost does not depend on the number of cached responses.<br/>
+ * A purge is remembered until every response created before it has expired.
+ */
+public class HttpCacheInvalidator {
+  private static final String INVALIDATION_DISABLED_MESSAGE = "http.cache.invalidation.enabled is not set";
+  private static final HttpCacheInvalidator NO_CACHE = new HttpCacheInvalidator(null, false);
+  /**
+   * Covers requests that started before a purge and are still being handled, their responses are stored after it.
+   */
+  private static final long MIN_PURGE_RETENTION_MILLIS = TimeUnit.MINUTES.toMillis(10);
+  private static final long CLEAN_UP_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  private final OHCache<byte[], CachedResponse> ohCache;
+  private final boolean enabled;
+  private final AtomicLong epoch = new AtomicLong(0);
+  private final Map<String, Purge> tagPurges = new ConcurrentHashMap<>();
+  private final Map<String, Purge> uriPurges = new ConcurrentHashMap<>();
+  private final Map<String, Purge> uriPrefixPurges = new ConcurrentHashMap<>();
+  private final AtomicLong maxLifetimeMillis = new AtomicLong(0);
+  private final AtomicInteger purges = new AtomicInteger(0);
+  private final AtomicLong lastCleanUpMillis = new AtomicLong(0);
+  private volatile long allPurgedEpoch = 0;
+  private volatile boolean cleanUpScheduled;
+
+  /**
+   * @param enabled whether responses are stored with their URI and tags
+   */
+  HttpCacheInvalidator(OHCache<byte[], CachedResponse> ohCache, boolean enabled) {
+    this.ohCache = ohCache;
+    this.enabled = enabled;
+  }
+
+  /**
+   * @return invalidator that purges nothing, for services without the HTTP cache
+   */
+  public static HttpCacheInvalidator noCache() {
+    return NO_CACHE;
+  }
+
+  public void purgeTag(String tag) {
+    recordPurge(tagPurges, tag);
+  }
+
+  /**
+   * @param uri path with query string as requested, for example /vacancies/1?lang=ru, all methods and variants of it are purged
+   */
+  public void purgeUri(String uri) {
+    recordPurge(uriPurges, uri);
+  }
+
+  /**
+   * Every read of a cached response is checked against the prefixes purged within the longest lifetime of a response,
+   * prefer {@link #purgeTag} for frequent purges.
+   */
+  public void purgeUriPrefix(String uriPrefix) {
+    recordPurge(uriPrefixPurges, uriPrefix);
+  }
+
+  public void purgeAll() {
+    if (ohCache == null) {
+      return;
+    }
+    allPurgedEpoch = epoch.incrementAndGet();
+    ohCache.clear();
+    purges.incrementAndGet();
+  }
+
+  boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return epoch to store with the response, must be taken before the request is handled
+   */
+  long getEpoch() {
+    return epoch.get();
+  }
+
+  /**
+   * Must be called before the response is stored, so that purges are remembered for as long as the response can be read.
+   */
+  void recordLifetime(long createdAtMillis, long expireAtMillis) {
+    long lifetimeMillis = expireAtMillis - createdAtMillis;
+    if (lifetimeMillis > maxLifetimeMillis.get()) {
+      maxLifetimeMillis.accumulateAndGet(lifetimeMillis, Math::max);
+    }
+  }
+
+  /**
+   * @param cachedResponse head of a cached response read by {@link CachedResponseSerializer#readHead}
+   */
+  boolean isPurged(CachedResponse cachedResponse) {
+    long responseEpoch = cachedResponse.invalidationEpoch;
+    if (allPurgedEpoch > responseEpoch) {
+      return true;
+    }
+    if (!tagPurges.isEmpty()) {
+      for (String tag : cachedResponse.tags) {
+        if (isPurgedAfter(tagPurges.get(tag), responseEpoch)) {
+          return true;
+        }
+      }
+    }
+    String uri = cachedResponse.uri;
+    if (uri == null) {
+      return false;
+    }
+    if (!uriPurges.isEmpty() && isPurgedAfter(uriPurges.get(uri), responseEpoch)) {
+      return true;
+    }
+    if (!uriPrefixPurges.isEmpty()) {
+      for (Map.Entry<String, Purge> prefixPurge : uriPrefixPurges.entrySet()) {
+        if (isPurgedAfter(prefixPurge.getValue(), responseEpoch) && uri.startsWith(prefixPurge.getKey())) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Runs {@link #cleanUp} in the executor every minute. Without it the clean up is run on a purge at most once a minute.
+   */
+  ScheduledFuture<?> scheduleCleanUp(ScheduledExecutorService executor) {
+    cleanUpScheduled = true;
+    return executor.scheduleWithFixedDelay(
+        () -> cleanUp(System.currentTimeMillis()),
+        CLEAN_UP_INTERVAL_MILLIS,
+        CLEAN_UP_INTERVAL_MILLIS,
+        TimeUnit.MILLISECONDS
+    );
+  }
+
+  /**
+   * Forgets purges made before the longest lifetime of a response, all responses they could match have expired.
+   */
+  void cleanUp(long currentTimeMillis) {
+    long minPurgedAtMillis = currentTimeMillis - Math.max(maxLifetimeMillis.get(), MIN_PURGE_RETENTION_MILLIS);
+    tagPurges.values().removeIf(purge -> purge.purgedAtMillis < minPurgedAtMillis);
+    uriPurges.values().removeIf(purge -> purge.purgedAtMillis < minPurgedAtMillis);
+    uriPrefixPurges.values().removeIf(purge -> purge.purgedAtMillis < minPurgedAtMillis);
+  }
+
+  int getPurgeRecordCount() {
+    return tagPurges.size() + uriPurges.size() + uriPrefixPurges.size();
+  }
+
+  int getPurgesAndReset() {
+    return purges.getAndSet(0);
+  }
+
+  private void recordPurge(Map<String, Purge> purgesByName, String name) {
+    if (ohCache == null) {
+      return;
+    }
+    if (!enabled) {
+      throw new IllegalStateException(INVALIDATION_DISABLED_MESSAGE);
+    }
+    Purge purge = new Purge(epoch.incrementAndGet(), System.currentTimeMillis());
+    purgesByName.merge(name, purge, (previous, next) -> previous.epoch > next.epoch ? previous : next);
+    purges.incrementAndGet();
+    if (!cleanUpScheduled) {
+      long lastCleanUp = lastCleanUpMillis.get();
+      if (purge.purgedAtMillis - lastCleanUp >= CLEAN_UP_INTERVAL_MILLIS
+          && lastCleanUpMillis.compareAndSet(lastCleanUp, purge.purgedAtMillis)) {
+        cleanUp(purge.purgedAtMillis);
+      }
+    }
+  }
+
+  private static boolean isPurgedAfter(Purge purge, long responseEpoch) {
+    return purge != null && purge.epoch > responseEpoch;
+  }
+
+  private record Purge(long epoch, long purgedAtMillis) {
+  }
+}
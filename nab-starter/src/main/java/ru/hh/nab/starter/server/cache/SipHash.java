@@ -0,0 +1,102 @@
+package ru.hh.nab.starter.server.cache;
+
+import java.security.SecureRandom;
+
+/**
+ * SipHash-2-4 with 128-bit output, used to keep cache keys short and of fixed size in off-heap memory.<br/>
+ * Unlike an unkeyed hash, with a random key clients can not craft requests whose keys collide and get each other's cached responses.
+ */
+final class SipHash {
+  static final int HASH_128_BYTES = 16;
+
+  private static final int COMPRESSION_ROUNDS = 2;
+  private static final int FINALIZATION_ROUNDS = 4;
+
+  private final long k0;
+  private final long k1;
+
+  SipHash(long k0, long k1) {
+    this.k0 = k0;
+    this.k1 = k1;
+  }
+
+  static SipHash withRandomKey() {
+    SecureRandom random = new SecureRandom();
+    return new SipHash(random.nextLong(), random.nextLong());
+  }
+
+  byte[] hash128(byte[] data) {
+    State state = new State(k0, k1);
+    int length = data.length;
+    int tail = length & ~7;
+    for (int offset = 0; offset < tail; offset += 8) {
+      state.compress(getLong(data, offset));
+    }
+    long lastBlock = (long) length << 56;
+    for (int i = tail; i < length; i++) {
+      lastBlock |= (data[i] & 0xFFL) << (8 * (i - tail));
+    }
+    state.compress(lastBlock);
+
+    byte[] hash = new byte[HASH_128_BYTES];
+    state.v2 ^= 0xee;
+    putLong(hash, 0, state.finish());
+    state.v1 ^= 0xdd;
+    putLong(hash, 8, state.finish());
+    return hash;
+  }
+
+  private static long getLong(byte[] data, int offset) {
+    long value = 0;
+    for (int i = 7; i >= 0; i--) {
+      value = (value << 8) | (data[offset + i] & 0xFFL);
+    }
+    return value;
+  }
+
+  private static void putLong(byte[] data, int offset, long value) {
+    for (int i = 0; i < 8; i++) {
+      data[offset + i] = (byte) (value >>> (8 * i));
+    }
+  }
+
+  private static final class State {
+    private long v0;
+    private long v1;
+    private long v2;
+    private long v3;
+
+    private State(long k0, long k1) {
+      v0 = k0 ^ 0x736f6d6570736575L;
+      v1 = k1 ^ 0x646f72616e646f6dL ^ 0xee;
+      v2 = k0 ^ 0x6c7967656e657261L;
+      v3 = k1 ^ 0x7465646279746573L;
+    }
+
+    private void compress(long block) {
+      v3 ^= block;
+      rounds(COMPRESSION_ROUNDS);
+      v0 ^= block;
+    }
+
+    private long finish() {
+      rounds(FINALIZATION_ROUNDS);
+      return v0 ^ v1 ^ v2 ^ v3;
+    }
+
+    private void rounds(int numOfRounds) {
+      for (int i = 0; i < numOfRounds; i++) {
+        v0 += v1;
+        v1 = Long.rotateLeft(v1, 13) ^ v0;
+        v0 = Long.rotateLeft(v0, 32);
+        v2 += v3;
+        v3 = Long.rotateLeft(v3, 16) ^ v2;
+        v0 += v3;
+        v3 = Long.rotateLeft(v3, 21) ^ v0;
+        v2 += v1;
+        v1 = Long.rotateLeft(v1, 17) ^ v2;
+        v2 = Long.rotateLeft(v2, 32);
+      }
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package ru.hh.nab.starter.server.jetty;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import ru.hh.nab.common.executor.AdaptiveConcurrencyLimiter;
+
+/**
+ * Admits requests to the wrapped handler with {@link AdaptiveConcurrencyLimiter}, a request over the limit is answered with 503.<br/>
+ * Only request handling is limited: acceptor and selector loops and other jobs of the thread pool are not counted.
+ * A request is counted while it is handled in a pool thread, queue lag is the time from the arrival of the request to its handling.
+ */
+public class ConcurrencyLimitHandler extends HandlerWrapper {
+  private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+  public ConcurrencyLimitHandler(AdaptiveConcurrencyLimiter concurrencyLimiter, Handler handler) {
+    this.concurrencyLimiter = concurrencyLimiter;
+    setHandler(handler);
+  }
+
+  @Override
+  public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+      throws IOException, ServletException {
+    if (!concurrencyLimiter.tryAcquire()) {
+      baseRequest.setHandled(true);
+      response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      return;
+    }
+
+    long startNanos = System.nanoTime();
+    long queueLagNanos = getQueueLagNanos(baseRequest);
+    try {
+      super.handle(target, baseRequest, request, response);
+    } finally {
+      concurrencyLimiter.release(queueLagNanos, System.nanoTime() - startNanos);
+    }
+  }
+
+  private static long getQueueLagNanos(Request baseRequest) {
+    // an async dispatch has waited for the application, not for a thread
+    if (baseRequest.getDispatcherType() != DispatcherType.REQUEST) {
+      return 0;
+    }
+    return TimeUnit.MILLISECONDS.toNanos(Math.max(System.currentTimeMillis() - baseRequest.getTimeStamp(), 0));
+  }
+
+  public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+    return concurrencyLimiter;
+  }
+}
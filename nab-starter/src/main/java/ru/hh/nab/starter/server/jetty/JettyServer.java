@@ -4,6 +4,7 @@ import java.util.Optional;
 import static java.util.Optional.ofNullable;
 import javax.servlet.ServletContext;
 import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.HttpConfiguration;
 import org.eclipse.jetty.server.HttpConnectionFactory;
 import org.eclipse.jetty.server.Server;
@@ -47,7 +48,7 @@ public final class JettyServer {
     configureStopTimeout();
     this.servletContextHandler = servletContextHandler;
     handlerCollection = null;
-    server.setHandler(servletContextHandler);
+    server.setHandler(limitConcurrency(threadPool, servletContextHandler));
   }
 
   //ContextHandlerCollection несет доп. логику по маршрутизации внутри коллекции. Поэтому не заменяем ServletContextHandler на него
@@ -61,7 +62,7 @@ public final class JettyServer {
     configureStopTimeout();
     this.servletContextHandler = null;
     handlerCollection = mutableHandlerCollectionForTestRun;
-    server.setHandler(mutableHandlerCollectionForTestRun);
+    server.setHandler(limitConcurrency(threadPool, mutableHandlerCollectionForTestRun));
   }
 
   public void start() throws JettyServerException {
@@ -117,6 +118,13 @@ public final class JettyServer {
     server.addConnector(serverConnector);
   }
 
+  private static Handler limitConcurrency(ThreadPool threadPool, Handler handler) {
+    if (threadPool instanceof MonitoredQueuedThreadPool monitoredThreadPool && monitoredThreadPool.getConcurrencyLimiter() != null) {
+      return new ConcurrencyLimitHandler(monitoredThreadPool.getConcurrencyLimiter(), handler);
+    }
+    return handler;
+  }
+
   private void configureRequestLogger() {
     server.setRequestLog(new StructuredRequestLogger());
   }
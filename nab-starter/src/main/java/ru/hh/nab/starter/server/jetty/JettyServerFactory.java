@@ -16,12 +16,15 @@ import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.util.BlockingArrayQueue;
 import org.eclipse.jetty.util.URIUtil;
 import org.eclipse.jetty.util.thread.ThreadPool;
+import ru.hh.nab.common.executor.AdaptiveConcurrencyLimiter;
 import ru.hh.nab.common.properties.FileSettings;
 import ru.hh.nab.metrics.StatsDSender;
 import ru.hh.nab.metrics.Tag;
 import static ru.hh.nab.metrics.Tag.APP_TAG_NAME;
 import ru.hh.nab.metrics.TaggedSender;
 import static ru.hh.nab.starter.server.jetty.JettySettingsConstants.JETTY;
+import static ru.hh.nab.starter.server.jetty.JettySettingsConstants.LIMITER;
+import static ru.hh.nab.starter.server.jetty.JettySettingsConstants.LIMITER_ENABLED;
 import static ru.hh.nab.starter.server.jetty.JettySettingsConstants.MAX_THREADS;
 import static ru.hh.nab.starter.server.jetty.JettySettingsConstants.MIN_THREADS;
 import static ru.hh.nab.starter.server.jetty.JettySettingsConstants.PORT;
@@ -75,6 +78,9 @@ public final class JettyServerFactory {
     int minThreads = jettySettings.getInteger(MIN_THREADS, maxThreads);
     int queueSize = jettySettings.getInteger(QUEUE_SIZE, maxThreads);
     int idleTimeoutMs = jettySettings.getInteger(THREAD_POOL_IDLE_TIMEOUT_MS, DEFAULT_IDLE_TIMEOUT_MS);
+    AdaptiveConcurrencyLimiter concurrencyLimiter = jettySettings.getBoolean(LIMITER_ENABLED, false)
+        ? AdaptiveConcurrencyLimiter.create(jettySettings.getSubSettings(LIMITER), maxThreads, maxThreads + queueSize)
+        : null;
 
     MonitoredQueuedThreadPool threadPool = new MonitoredQueuedThreadPool(
         maxThreads,
@@ -82,7 +88,8 @@ public final class JettyServerFactory {
         idleTimeoutMs,
         new BlockingArrayQueue<>(queueSize),
         serviceName,
-        statsDSender
+        statsDSender,
+        concurrencyLimiter
     );
     threadPool.start();
     return threadPool;
@@ -14,6 +14,8 @@ public final class JettySettingsConstants {
   public final static String MIN_THREADS = "minThreads";
   public final static String QUEUE_SIZE = "queueSize";
   public final static String THREAD_POOL_IDLE_TIMEOUT_MS = "threadPoolIdleTimeoutMs";
+  public final static String LIMITER = "limiter";
+  public final static String LIMITER_ENABLED = "limiter.enabled";
   public final static String CONNECTION_IDLE_TIMEOUT_MS = "connectionIdleTimeoutMs";
   public final static String ACCEPT_QUEUE_SIZE = "acceptQueueSize";
   public final static String STOP_TIMEOUT_SIZE = "stopTimeoutMs";
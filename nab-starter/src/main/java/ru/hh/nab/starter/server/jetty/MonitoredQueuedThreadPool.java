@@ -3,28 +3,43 @@ package ru.hh.nab.starter.server.jetty;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import ru.hh.nab.common.executor.AdaptiveConcurrencyLimiter;
 import ru.hh.nab.metrics.Max;
 import ru.hh.nab.metrics.StatsDSender;
 import ru.hh.nab.metrics.Tag;
 import ru.hh.nab.metrics.TaggedSender;
 
+/**
+ * If {@link AdaptiveConcurrencyLimiter} is given, {@link JettyServer} admits requests through it with {@link ConcurrencyLimitHandler},
+ * so the limit applies to request handling, not to acceptor, selector and other jobs of the pool, and jobs are run as is.
+ * The pool reports that it is low on threads when the number of handled requests reaches the limit,
+ * so {@link HHServerConnector} closes newly accepted sockets until the load goes down.
+ */
 public class MonitoredQueuedThreadPool extends QueuedThreadPool {
   private final Max queueSize = new Max(0);
   private final Max busyThreads = new Max(0);
   private final Max idleThreads = new Max(0);
   private final Max totalThreads = new Max(0);
   private final Max maxThreads = new Max(0);
+  private final AdaptiveConcurrencyLimiter concurrencyLimiter;
 
   public MonitoredQueuedThreadPool(int maxThreads, int minThreads, int idleTimeout, BlockingQueue<Runnable> queue,
                                    String poolName, StatsDSender statsDSender) {
+    this(maxThreads, minThreads, idleTimeout, queue, poolName, statsDSender, null);
+  }
+
+  public MonitoredQueuedThreadPool(int maxThreads, int minThreads, int idleTimeout, BlockingQueue<Runnable> queue,
+                                   String poolName, StatsDSender statsDSender, AdaptiveConcurrencyLimiter concurrencyLimiter) {
     super(maxThreads, minThreads, idleTimeout, -1, queue, null);
     setName("qtp_" + poolName + "_" + hashCode());
+    this.concurrencyLimiter = concurrencyLimiter;
 
     String queueSizeMetricName = "queueSize";
     String busyThreadsMetricName = "busyThreads";
     String idleThreadsMetricName = "idleThreads";
     String totalThreadsMetricName = "totalThreads";
     String maxThreadsMetricName = "maxThreads";
+    String concurrencyLimitMetricName = "concurrencyLimit";
     var sender = new TaggedSender(statsDSender, Set.of(new Tag("pool", poolName)));
 
     statsDSender.sendPeriodically(() -> {
@@ -33,6 +48,9 @@ public class MonitoredQueuedThreadPool extends QueuedThreadPool {
       sender.sendMax(idleThreadsMetricName, idleThreads);
       sender.sendMax(totalThreadsMetricName, totalThreads);
       sender.sendMax(maxThreadsMetricName, this.maxThreads);
+      if (concurrencyLimiter != null) {
+        sender.sendGauge(concurrencyLimitMetricName, concurrencyLimiter.getLimit());
+      }
     });
   }
 
@@ -46,4 +64,16 @@ public class MonitoredQueuedThreadPool extends QueuedThreadPool {
 
     super.execute(job);
   }
+
+  @Override
+  public boolean isLowOnThreads() {
+    if (super.isLowOnThreads()) {
+      return true;
+    }
+    return concurrencyLimiter != null && concurrencyLimiter.getInFlight() >= concurrencyLimiter.getLimit();
+  }
+
+  public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+    return concurrencyLimiter;
+  }
 }
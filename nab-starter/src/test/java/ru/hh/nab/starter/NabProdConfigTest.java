@@ -35,6 +35,7 @@ import static ru.hh.nab.starter.consul.ConsulService.CONSUL_CHECK_INTERVAL_PROPE
 import static ru.hh.nab.starter.consul.ConsulService.CONSUL_CHECK_TIMEOUT_PROPERTY;
 import static ru.hh.nab.starter.consul.ConsulService.CONSUL_REGISTRATION_ENABLED_PROPERTY;
 import static ru.hh.nab.starter.consul.ConsulService.CONSUL_TAGS_PROPERTY;
+import ru.hh.nab.starter.server.cache.HttpCacheInvalidator;
 import ru.hh.nab.starter.server.jetty.JettySettingsConstants;
 
 public class NabProdConfigTest {
@@ -77,6 +78,7 @@ public class NabProdConfigTest {
     assertNotNull(context.getBean(StatsDClient.class));
     assertNotNull(context.getBean(StatsDSender.class));
     assertNotNull(context.getBean("cacheFilter", FilterHolder.class));
+    assertNotNull(context.getBean(HttpCacheInvalidator.class));
     assertNotNull(context.getBean("jettyThreadPool", ThreadPool.class));
     assertNotNull(context.getBean(ScheduledExecutorService.class));
     assertNotNull(context.getBean(AppMetadata.class));
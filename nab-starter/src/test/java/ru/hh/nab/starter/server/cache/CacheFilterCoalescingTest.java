@@ -0,0 +1,129 @@
+package ru.hh.nab.starter.server.cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import ru.hh.nab.common.properties.FileSettings;
+import ru.hh.nab.metrics.StatsDSender;
+
+public class CacheFilterCoalescingTest {
+  private final AtomicInteger handled = new AtomicInteger();
+  private final CountDownLatch firstHandlerEntered = new CountDownLatch(1);
+  private final CountDownLatch releaseFirstHandler = new CountDownLatch(1);
+  private final ExecutorService executorService = Executors.newFixedThreadPool(8);
+
+  @AfterEach
+  public void tearDown() {
+    releaseFirstHandler.countDown();
+    executorService.shutdownNow();
+  }
+
+  @Test
+  public void testCoalescedRequestsGetFirstResponse() throws Exception {
+    CacheFilter cacheFilter = createCacheFilter(10_000);
+    FilterChain chain = chain(1, "max-age=60");
+
+    Future<String> first = executorService.submit(() -> request(cacheFilter, chain));
+    assertTrue(firstHandlerEntered.await(10, TimeUnit.SECONDS));
+    List<Future<String>> coalesced = new ArrayList<>();
+    for (int i = 0; i < 7; i++) {
+      coalesced.add(executorService.submit(() -> request(cacheFilter, chain)));
+    }
+    Thread.sleep(100);
+    releaseFirstHandler.countDown();
+
+    assertEquals("response 1", first.get(10, TimeUnit.SECONDS));
+    for (Future<String> response : coalesced) {
+      assertEquals("response 1", response.get(10, TimeUnit.SECONDS));
+    }
+    assertEquals(1, handled.get());
+  }
+
+  @Test
+  public void testCoalescingTimeout() throws Exception {
+    CacheFilter cacheFilter = createCacheFilter(100);
+    FilterChain chain = chain(1, "max-age=60");
+
+    Future<String> first = executorService.submit(() -> request(cacheFilter, chain));
+    assertTrue(firstHandlerEntered.await(10, TimeUnit.SECONDS));
+
+    long start = System.nanoTime();
+    assertEquals("response 2", request(cacheFilter, chain));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+    assertEquals(2, handled.get());
+
+    releaseFirstHandler.countDown();
+    assertEquals("response 1", first.get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testStaleWhileRevalidate() throws Exception {
+    CacheFilter cacheFilter = createCacheFilter(10_000);
+    FilterChain chain = chain(2, "max-age=1, stale-while-revalidate=30");
+
+    assertEquals("response 1", request(cacheFilter, chain));
+    Thread.sleep(1100);
+
+    Future<String> revalidating = executorService.submit(() -> request(cacheFilter, chain));
+    assertTrue(firstHandlerEntered.await(10, TimeUnit.SECONDS));
+    assertEquals("response 1", request(cacheFilter, chain));
+    assertEquals(2, handled.get());
+
+    releaseFirstHandler.countDown();
+    assertEquals("response 2", revalidating.get(10, TimeUnit.SECONDS));
+    assertEquals("response 2", request(cacheFilter, chain));
+    assertEquals(2, handled.get());
+  }
+
+  private static CacheFilter createCacheFilter(int coalescingTimeoutMs) {
+    Properties properties = new Properties();
+    properties.setProperty("sizeInMB", "1");
+    properties.setProperty("coalescing.enabled", "true");
+    properties.setProperty("coalescing.timeoutMs", String.valueOf(coalescingTimeoutMs));
+    return new CacheFilter("test", new FileSettings(properties), mock(StatsDSender.class), null);
+  }
+
+  /**
+   * Responds with the number of the handled request, the blockingRequest-th request waits for {@link #releaseFirstHandler}.
+   */
+  private FilterChain chain(int blockingRequest, String cacheControl) {
+    return (request, response) -> {
+      int requestNumber = handled.incrementAndGet();
+      if (requestNumber == blockingRequest) {
+        firstHandlerEntered.countDown();
+        try {
+          releaseFirstHandler.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      HttpServletResponse httpResponse = (HttpServletResponse) response;
+      httpResponse.setHeader("Cache-Control", cacheControl);
+      httpResponse.getOutputStream().write(("response " + requestNumber).getBytes());
+    };
+  }
+
+  private static String request(CacheFilter cacheFilter, FilterChain chain) throws IOException, ServletException {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/vacancies/1");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    cacheFilter.doFilter(request, response, chain);
+    return response.getContentAsString();
+  }
+}
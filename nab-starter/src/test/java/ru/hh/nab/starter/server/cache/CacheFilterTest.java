@@ -1,49 +1,204 @@
 package ru.hh.nab.starter.server.cache;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.Deflater;
+import javax.servlet.http.HttpServletRequest;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class CacheFilterTest {
-  private static final Serializer SERIALIZER = new Serializer();
+  private static final CachedResponseSerializer SERIALIZER = new CachedResponseSerializer();
 
   @Test
   public void testPlaceholderSerializer() {
     CachedResponse response = new CachedResponse();
-    byte[] data = response.getSerialized();
 
-    ByteBuffer buffer = ByteBuffer.allocate(SERIALIZER.serializedSize(data));
-    SERIALIZER.serialize(data, buffer);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(SERIALIZER.serializedSize(response));
+    SERIALIZER.serialize(response, buffer);
+    assertEquals(0, buffer.remaining());
 
     buffer.rewind();
-    CachedResponse result = CachedResponse.from(SERIALIZER.deserialize(buffer));
+    CachedResponse result = SERIALIZER.deserialize(buffer);
 
     assertEquals(response.status, result.status);
-    assertNull(response.headers);
-    assertNull(response.body);
-    assertTrue(response.isPlaceholder());
+    assertNull(result.headers);
+    assertNull(result.body);
+    assertTrue(result.isPlaceholder());
   }
 
   @Test
   public void testSerializer() {
     CachedResponse response = new CachedResponse(200, new ArrayList<>(), new byte[] {1, 2});
     response.headers.add(new Header("1", "2"));
-    response.headers.add(new Header("X-Header", "что-то"));
+    response.headers.add(new Header("X-Header", "что-то 😀 \uD800"));
 
-    byte[] data = response.getSerialized();
-
-    ByteBuffer buffer = ByteBuffer.allocate(SERIALIZER.serializedSize(data));
-    SERIALIZER.serialize(data, buffer);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(SERIALIZER.serializedSize(response));
+    SERIALIZER.serialize(response, buffer);
+    assertEquals(0, buffer.remaining());
 
     buffer.rewind();
-    CachedResponse result = CachedResponse.from(SERIALIZER.deserialize(buffer));
+    CachedResponse result = SERIALIZER.deserialize(buffer);
 
     assertEquals(response.status, result.status);
-    assertEquals(response.headers, result.headers);
+    assertEquals(response.headers.get(0), result.headers.get(0));
+    assertEquals(new Header("X-Header", "что-то 😀 ?"), result.headers.get(1));
     assertArrayEquals(response.body, result.body);
   }
+
+  @Test
+  public void testFreshness() {
+    CachedResponse response = new CachedResponse(200, new ArrayList<>(), new byte[] {1}, 1000L);
+
+    ByteBuffer buffer = ByteBuffer.allocateDirect(SERIALIZER.serializedSize(response));
+    SERIALIZER.serialize(response, buffer);
+
+    buffer.rewind();
+    CachedResponse result = SERIALIZER.deserialize(buffer);
+
+    assertEquals(1000L, result.freshUntilMillis);
+    assertTrue(result.isFresh(999L));
+    assertFalse(result.isFresh(1000L));
+  }
+
+  @Test
+  public void testBodyIsReadWithoutCopy() {
+    CachedResponse response = new CachedResponse(200, new ArrayList<>(), new byte[] {1, 2, 3});
+    response.headers.add(new Header("Content-Type", "application/json"));
+
+    ByteBuffer buffer = ByteBuffer.allocateDirect(SERIALIZER.serializedSize(response));
+    SERIALIZER.serialize(response, buffer);
+
+    buffer.rewind();
+    CachedResponse head = CachedResponseSerializer.readHead(buffer.asReadOnlyBuffer());
+    assertEquals(response.headers, head.headers);
+    assertNull(head.body);
+
+    ByteBuffer readOnlyBuffer = buffer.asReadOnlyBuffer();
+    CachedResponseSerializer.readHead(readOnlyBuffer);
+    ByteBuffer body = CachedResponseSerializer.readBody(readOnlyBuffer);
+    assertEquals(3, body.remaining());
+    assertTrue(body.isDirect());
+    assertEquals(3, body.get(2));
+  }
+
+  @Test
+  public void testUnknownVersionIsMiss() {
+    ByteBuffer buffer = ByteBuffer.allocate(64);
+    buffer.put(0, (byte) (CachedResponseSerializer.VERSION + 1));
+    assertNull(SERIALIZER.deserialize(buffer));
+
+    buffer.rewind();
+    buffer.put(0, CachedResponseSerializer.VERSION);
+    assertSame(CachedResponse.PLACEHOLDER, CachedResponseSerializer.readHead(buffer));
+  }
+
+  @Test
+  public void testKeyHash() {
+    SipHash referenceKeyHash = new SipHash(0x0706050403020100L, 0x0f0e0d0c0b0a0908L);
+    assertArrayEquals(HexFormat.of().parseHex("a3817f04ba25a8e66df67214c7550293"), referenceKeyHash.hash128(new byte[0]));
+
+    byte[] key = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8);
+    assertEquals(SipHash.HASH_128_BYTES, referenceKeyHash.hash128(key).length);
+    assertFalse(Arrays.equals(SipHash.withRandomKey().hash128(key), SipHash.withRandomKey().hash128(key)));
+  }
+
+  @Test
+  public void testNormalizedKey() {
+    DefaultCacheKeyBuilder keyBuilder = new DefaultCacheKeyBuilder(true, Set.of("utm_source"), List.of("Accept", "X-Custom"));
+
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getMethod()).thenReturn("GET");
+    when(request.getRequestURI()).thenReturn("/vacancies");
+    when(request.getQueryString()).thenReturn("b=2&utm_source=mail&a=1&b=1");
+    when(request.getHeaders("Accept")).thenAnswer(invocation -> Collections.enumeration(List.of("application/json")));
+    when(request.getHeaders("X-Custom")).thenAnswer(invocation -> Collections.emptyEnumeration());
+
+    assertEquals("GET /vacancies?a=1&b=2&b=1\nAccept:application/json\nX-Custom:", keyBuilder.build(request));
+  }
+
+  @Test
+  public void testVaryHeaders() {
+    assertEquals(List.of(), CacheKeyResolver.getVaryHeaders(List.of()));
+    assertEquals(List.of("accept-language", "x-custom"), CacheKeyResolver.getVaryHeaders(List.of("X-Custom, Accept-Language", "x-custom")));
+    assertNull(CacheKeyResolver.getVaryHeaders(List.of("Accept", "*")));
+  }
+
+  @Test
+  public void testCompressedBody() throws IOException {
+    byte[] body = "{\"items\": []}".repeat(100).getBytes(StandardCharsets.UTF_8);
+    CachedResponse response = new CachedResponse(200, List.of(new Header("Content-Length", String.valueOf(body.length))), body);
+    CachedResponse compressed = new CachedBodyCompressor(1024, Deflater.DEFAULT_COMPRESSION).compress(response);
+
+    assertTrue(compressed.isGzipEncoded());
+    assertTrue(compressed.body.length < body.length);
+    assertEquals(List.of(new Header("Vary", "Accept-Encoding")), compressed.headers);
+
+    ByteBuffer buffer = ByteBuffer.allocateDirect(SERIALIZER.serializedSize(compressed));
+    SERIALIZER.serialize(compressed, buffer);
+    buffer.rewind();
+    assertTrue(CachedResponseSerializer.readHead(buffer).isGzipEncoded());
+    ByteBuffer compressedBody = CachedResponseSerializer.readBody(buffer);
+    assertEquals(body.length, CachedBodyCompressor.getUncompressedLength(compressedBody));
+
+    ByteArrayOutputStream uncompressed = new ByteArrayOutputStream();
+    CachedBodyCompressor.writeUncompressed(compressedBody, uncompressed);
+    assertArrayEquals(body, uncompressed.toByteArray());
+  }
+
+  @Test
+  public void testCompressedBodyHeaders() {
+    byte[] body = "{\"items\": []}".repeat(100).getBytes(StandardCharsets.UTF_8);
+    List<Header> headers = List.of(
+        new Header("ETag", "\"v1\""),
+        new Header("Content-MD5", "Q2hlY2sgSW50ZWdyaXR5IQ=="),
+        new Header("Digest", "sha-256=X48E9qOokqqrvdts8nOJRJN3OWDUoyWxBf7kbu9DBPE="),
+        new Header("Content-Type", "application/json")
+    );
+    CachedBodyCompressor compressor = new CachedBodyCompressor(1024, Deflater.DEFAULT_COMPRESSION);
+
+    assertEquals(
+        List.of(new Header("ETag", "W/\"v1\""), new Header("Content-Type", "application/json"), new Header("Vary", "Accept-Encoding")),
+        compressor.compress(new CachedResponse(200, headers, body)).headers
+    );
+    assertEquals(
+        List.of(new Header("ETag", "W/\"v1\""), new Header("Vary", "Accept-Encoding")),
+        compressor.compress(new CachedResponse(200, List.of(new Header("ETag", "W/\"v1\"")), body)).headers
+    );
+  }
+
+  @Test
+  public void testSmallBodyIsNotCompressed() {
+    CachedResponse response = new CachedResponse(200, List.of(), new byte[] {1, 2, 3});
+    assertSame(response, new CachedBodyCompressor(1024, Deflater.DEFAULT_COMPRESSION).compress(response));
+  }
+
+  @Test
+  public void testAcceptsGzip() {
+    assertTrue(CachedBodyCompressor.acceptsGzip(requestWithAcceptEncoding("deflate, gzip;q=0.5")));
+    assertTrue(CachedBodyCompressor.acceptsGzip(requestWithAcceptEncoding("*")));
+    assertFalse(CachedBodyCompressor.acceptsGzip(requestWithAcceptEncoding("gzip;q=0, br")));
+    assertFalse(CachedBodyCompressor.acceptsGzip(requestWithAcceptEncoding("identity")));
+  }
+
+  private static HttpServletRequest requestWithAcceptEncoding(String acceptEncoding) {
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getHeaders("Accept-Encoding")).thenAnswer(invocation -> Collections.enumeration(List.of(acceptEncoding)));
+    return request;
+  }
 }
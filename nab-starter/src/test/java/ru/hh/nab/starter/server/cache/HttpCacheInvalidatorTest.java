@@ -0,0 +1,202 @@
+package ru.hh.nab.starter.server.cache;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import ru.hh.nab.common.properties.FileSettings;
+import ru.hh.nab.metrics.StatsDSender;
+
+public class HttpCacheInvalidatorTest {
+  private final AtomicInteger handled = new AtomicInteger();
+
+  @Test
+  public void testPurgeTag() throws Exception {
+    CacheFilter cacheFilter = createCacheFilter(true);
+    FilterChain chain = chain(null);
+
+    request(cacheFilter, "/vacancies/1", null, chain);
+    request(cacheFilter, "/vacancies/1", "lang=ru", chain);
+    request(cacheFilter, "/resumes/1", null, chain);
+    assertCached(cacheFilter, chain, "/vacancies/1", null);
+    assertEquals(3, handled.get());
+
+    cacheFilter.getInvalidator().purgeTag("-vacancies-1");
+
+    assertEquals("/vacancies/1", request(cacheFilter, "/vacancies/1", null, chain));
+    request(cacheFilter, "/vacancies/1", "lang=ru", chain);
+    assertEquals(5, handled.get());
+    assertCached(cacheFilter, chain, "/vacancies/1", null);
+    assertCached(cacheFilter, chain, "/resumes/1", null);
+
+    cacheFilter.getInvalidator().purgeTag("vacancies");
+
+    request(cacheFilter, "/vacancies/1", null, chain);
+    assertEquals(6, handled.get());
+    assertCached(cacheFilter, chain, "/resumes/1", null);
+  }
+
+  @Test
+  public void testPurgeUri() throws Exception {
+    CacheFilter cacheFilter = createCacheFilter(true);
+    FilterChain chain = chain(null);
+
+    request(cacheFilter, "/vacancies/1", null, chain);
+    request(cacheFilter, "/vacancies/1", "lang=ru", chain);
+    request(cacheFilter, "/vacancies/10", null, chain);
+
+    cacheFilter.getInvalidator().purgeUri("/vacancies/1?lang=ru");
+
+    request(cacheFilter, "/vacancies/1", "lang=ru", chain);
+    assertEquals(4, handled.get());
+    assertCached(cacheFilter, chain, "/vacancies/1", null);
+    assertCached(cacheFilter, chain, "/vacancies/10", null);
+  }
+
+  @Test
+  public void testPurgeUriPrefix() throws Exception {
+    CacheFilter cacheFilter = createCacheFilter(true);
+    FilterChain chain = chain(null);
+
+    request(cacheFilter, "/vacancies/1", null, chain);
+    request(cacheFilter, "/vacancies/2", "lang=ru", chain);
+    request(cacheFilter, "/resumes/1", null, chain);
+
+    cacheFilter.getInvalidator().purgeUriPrefix("/vacancies/");
+
+    request(cacheFilter, "/vacancies/1", null, chain);
+    request(cacheFilter, "/vacancies/2", "lang=ru", chain);
+    assertEquals(5, handled.get());
+    assertCached(cacheFilter, chain, "/resumes/1", null);
+  }
+
+  @Test
+  public void testPurgeWhileResponseIsStored() throws Exception {
+    CacheFilter cacheFilter = createCacheFilter(true);
+    FilterChain purgingChain = chain(cacheFilter.getInvalidator());
+    FilterChain chain = chain(null);
+
+    request(cacheFilter, "/vacancies/1", null, purgingChain);
+    request(cacheFilter, "/vacancies/1", null, chain);
+    assertEquals(2, handled.get());
+    assertCached(cacheFilter, chain, "/vacancies/1", null);
+  }
+
+  @Test
+  public void testPurgeAll() throws Exception {
+    CacheFilter cacheFilter = createCacheFilter(true);
+    FilterChain chain = chain(null);
+
+    request(cacheFilter, "/vacancies/1", null, chain);
+    request(cacheFilter, "/resumes/1", null, chain);
+
+    cacheFilter.getInvalidator().purgeAll();
+
+    request(cacheFilter, "/vacancies/1", null, chain);
+    request(cacheFilter, "/resumes/1", null, chain);
+    assertEquals(4, handled.get());
+  }
+
+  @Test
+  public void testInvalidationDisabled() throws Exception {
+    CacheFilter cacheFilter = createCacheFilter(false);
+    FilterChain chain = chain(null);
+    HttpCacheInvalidator invalidator = cacheFilter.getInvalidator();
+
+    request(cacheFilter, "/vacancies/1", null, chain);
+
+    assertThrows(IllegalStateException.class, () -> invalidator.purgeTag("vacancies"));
+    assertThrows(IllegalStateException.class, () -> invalidator.purgeUri("/vacancies/1"));
+    assertThrows(IllegalStateException.class, () -> invalidator.purgeUriPrefix("/vacancies/"));
+    assertCached(cacheFilter, chain, "/vacancies/1", null);
+
+    invalidator.purgeAll();
+
+    request(cacheFilter, "/vacancies/1", null, chain);
+    assertEquals(2, handled.get());
+  }
+
+  @Test
+  public void testPurgesAreCleanedUpInMaintenanceExecutor() {
+    ScheduledThreadPoolExecutor maintenanceExecutor = new ScheduledThreadPoolExecutor(1);
+    maintenanceExecutor.setRemoveOnCancelPolicy(true);
+    try {
+      CacheFilter cacheFilter = createCacheFilter(true, maintenanceExecutor);
+      HttpCacheInvalidator invalidator = cacheFilter.getInvalidator();
+      assertEquals(1, maintenanceExecutor.getQueue().size());
+
+      invalidator.purgeTag("vacancies");
+      assertEquals(1, invalidator.getPurgeRecordCount());
+      invalidator.cleanUp(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(11));
+      assertEquals(0, invalidator.getPurgeRecordCount());
+
+      cacheFilter.destroy();
+      assertEquals(0, maintenanceExecutor.getQueue().size());
+    } finally {
+      maintenanceExecutor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testNoCache() {
+    HttpCacheInvalidator.noCache().purgeTag("vacancies");
+    HttpCacheInvalidator.noCache().purgeAll();
+  }
+
+  private static CacheFilter createCacheFilter(boolean invalidationEnabled) {
+    return createCacheFilter(invalidationEnabled, null);
+  }
+
+  private static CacheFilter createCacheFilter(boolean invalidationEnabled, ScheduledExecutorService maintenanceExecutor) {
+    Properties properties = new Properties();
+    properties.setProperty("sizeInMB", "1");
+    properties.setProperty("coalescing.enabled", "true");
+    properties.setProperty("invalidation.enabled", String.valueOf(invalidationEnabled));
+    return new CacheFilter("test", new FileSettings(properties), mock(StatsDSender.class), null, maintenanceExecutor);
+  }
+
+  /**
+   * Responds with the request URI tagged by its first segment and by the URI with slashes replaced by dashes.
+   */
+  private FilterChain chain(HttpCacheInvalidator purgeWhileHandling) {
+    return (request, response) -> {
+      handled.incrementAndGet();
+      String uri = ((HttpServletRequest) request).getRequestURI();
+      if (purgeWhileHandling != null) {
+        purgeWhileHandling.purgeUri(uri);
+      }
+      HttpServletResponse httpResponse = (HttpServletResponse) response;
+      httpResponse.setHeader("Cache-Control", "max-age=600");
+      httpResponse.setHeader("Surrogate-Key", uri.split("/")[1] + ' ' + uri.replace('/', '-'));
+      httpResponse.getOutputStream().write(uri.getBytes());
+    };
+  }
+
+  private void assertCached(CacheFilter cacheFilter, FilterChain chain, String uri, String queryString)
+      throws IOException, ServletException {
+    int handledBefore = handled.get();
+    assertEquals(uri, request(cacheFilter, uri, queryString, chain));
+    assertEquals(handledBefore, handled.get());
+  }
+
+  private static String request(CacheFilter cacheFilter, String uri, String queryString, FilterChain chain)
+      throws IOException, ServletException {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+    request.setQueryString(queryString);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    cacheFilter.doFilter(request, response, chain);
+    return response.getContentAsString();
+  }
+}
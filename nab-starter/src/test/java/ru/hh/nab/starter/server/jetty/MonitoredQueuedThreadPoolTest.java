@@ -0,0 +1,80 @@
+package ru.hh.nab.starter.server.jetty;
+
+import java.net.Socket;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.awaitility.Awaitility.await;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import ru.hh.nab.common.executor.AdaptiveConcurrencyLimiter;
+import ru.hh.nab.common.properties.FileSettings;
+import ru.hh.nab.metrics.StatsDSender;
+import ru.hh.nab.metrics.TaggedSender;
+import static ru.hh.nab.starter.server.jetty.JettySettingsConstants.PORT;
+
+public class MonitoredQueuedThreadPoolTest {
+  private final ExecutorService executorService = Executors.newCachedThreadPool();
+  private final SimpleAsyncHTTPClient httpClient = new SimpleAsyncHTTPClient(executorService);
+
+  @AfterEach
+  public void tearDown() {
+    executorService.shutdownNow();
+  }
+
+  @Test
+  public void testOnlyRequestsAreCountedByConcurrencyLimiter() throws Exception {
+    AdaptiveConcurrencyLimiter concurrencyLimiter = new AdaptiveConcurrencyLimiter(1, 1, 1, TimeUnit.SECONDS.toNanos(1), 100);
+    MonitoredQueuedThreadPool threadPool = new MonitoredQueuedThreadPool(
+        16,
+        16,
+        60_000,
+        new BlockingArrayQueue<>(16),
+        "test",
+        mock(StatsDSender.class),
+        concurrencyLimiter
+    );
+    HHServerConnectorFailFastTest.ControlledServlet servlet = new HHServerConnectorFailFastTest.ControlledServlet(204);
+    Properties properties = new Properties();
+    properties.setProperty(PORT, "0");
+    JettyServer server = new JettyServer(threadPool, new FileSettings(properties), mock(TaggedSender.class), createHandler(servlet));
+    server.start();
+    try {
+      // acceptor and selector loops are running in the pool
+      assertTrue(threadPool.getBusyThreads() > 0);
+      assertEquals(0, concurrencyLimiter.getInFlight());
+      assertFalse(threadPool.isLowOnThreads());
+
+      try (Socket socket = new Socket("localhost", server.getPort())) {
+        Future<Integer> status = httpClient.request(socket);
+        await().atMost(5, TimeUnit.SECONDS).until(() -> concurrencyLimiter.getInFlight() == 1);
+        assertTrue(threadPool.isLowOnThreads());
+
+        servlet.respond();
+        assertEquals(204, status.get(5, TimeUnit.SECONDS).intValue());
+      }
+      await().atMost(5, TimeUnit.SECONDS).until(() -> concurrencyLimiter.getInFlight() == 0);
+      assertFalse(threadPool.isLowOnThreads());
+    } finally {
+      server.stop();
+    }
+  }
+
+  private static ServletContextHandler createHandler(HHServerConnectorFailFastTest.ControlledServlet servlet) {
+    ServletHandler servletHandler = new ServletHandler();
+    servletHandler.addServletWithMapping(new ServletHolder("MainServlet", servlet), "/*");
+    ServletContextHandler servletContextHandler = new ServletContextHandler();
+    servletContextHandler.setServletHandler(servletHandler);
+    return servletContextHandler;
+  }
+}
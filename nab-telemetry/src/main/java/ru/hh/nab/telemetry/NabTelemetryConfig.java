@@ -39,6 +39,11 @@ public class NabTelemetryConfig {
     return openTelemetrySdkBuilder.buildAndRegisterGlobal();
   }
 
+  @Bean
+  TelemetryContextCarrier telemetryContextCarrier() {
+    return new TelemetryContextCarrier();
+  }
+
   @Bean
   IdGenerator idGenerator(HttpClientContextThreadLocalSupplier httpClientContextSupplier) {
     return new IdGeneratorImpl(httpClientContextSupplier);
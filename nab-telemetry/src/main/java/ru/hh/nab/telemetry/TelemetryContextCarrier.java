@@ -0,0 +1,21 @@
+package ru.hh.nab.telemetry;
+
+import io.opentelemetry.context.Context;
+import ru.hh.nab.common.executor.ContextCarrier;
+
+/**
+ * Carries OpenTelemetry {@link Context}, the same context {@link ContextStorage} moves to jclient callback threads.
+ */
+public class TelemetryContextCarrier implements ContextCarrier<Context> {
+
+  @Override
+  public Context capture() {
+    Context context = Context.current();
+    return context == Context.root() ? null : context;
+  }
+
+  @Override
+  public Scope attach(Context context) {
+    return context.makeCurrent()::close;
+  }
+}
@@ -25,6 +25,7 @@ import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
 import org.reflections.Reflections;
 import org.reflections.scanners.SubTypesScanner;
+import ru.hh.nab.common.cache.TinyLfuCache;
 import ru.hh.nab.performance.variants.GenericCache;
 import ru.hh.nab.performance.variants.PartiallyOverflowingCache;
 import ru.hh.nab.performance.variants.PartiallyOverflowingCacheOptional;
@@ -109,6 +110,18 @@ public class PartiallyOverflowingCachePerformanceTest {
     process(doubleStorageCache);
   }
 
+  @Benchmark
+  public void tinyLfuCacheBigTest() {
+    TinyLfuCache<Class<?>, Object> tinyLfuCache = new TinyLfuCache<>(dataSize);
+    process(tinyLfuCache::computeIfAbsent);
+  }
+
+  @Benchmark
+  public void tinyLfuCacheTest() {
+    TinyLfuCache<Class<?>, Object> tinyLfuCache = new TinyLfuCache<>(strongCollectionSize);
+    process(tinyLfuCache::computeIfAbsent);
+  }
+
   @Benchmark
   public void concurrentHashMapTest() {
     ConcurrentHashMap<Class<?>, Object> concurrentHashMap = new ConcurrentHashMap<>();
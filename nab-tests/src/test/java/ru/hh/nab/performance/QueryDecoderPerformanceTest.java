@@ -0,0 +1,64 @@
+package ru.hh.nab.performance;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import ru.hh.nab.common.servlet.UriComponent;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 4)
+public class QueryDecoderPerformanceTest {
+  private final String queryString = "text=java%20developer&area=1&area=2&salary=100000&currency=RUR&experience=between1And3"
+      + "&schedule=remote&order_by=relevance&search_field=name&search_field=description&page=3&per_page=20&debug=true";
+
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(QueryDecoderPerformanceTest.class.getSimpleName())
+        .forks(1)
+        .build();
+    new Runner(opt).run();
+  }
+
+  @Benchmark
+  public List<String> decodeQueryReadOneTest() {
+    return UriComponent.decodeQuery(queryString, true, true).get("debug");
+  }
+
+  @Benchmark
+  public List<String> decodeQueryLazilyReadOneTest() {
+    return UriComponent.decodeQueryLazily(queryString, true, true).get("debug");
+  }
+
+  @Benchmark
+  public int decodeQueryReadAllTest() {
+    return readAll(UriComponent.decodeQuery(queryString, true, true));
+  }
+
+  @Benchmark
+  public int decodeQueryLazilyReadAllTest() {
+    return readAll(UriComponent.decodeQueryLazily(queryString, true, true));
+  }
+
+  private static int readAll(Map<String, List<String>> parameters) {
+    int numOfValues = 0;
+    for (List<String> values : parameters.values()) {
+      numOfValues += values.size();
+    }
+    return numOfValues;
+  }
+}
@@ -0,0 +1,46 @@
+package ru.hh.nab.performance;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import ru.hh.nab.common.mdc.MDC;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 4)
+@Threads(8)
+public class RequestIdPerformanceTest {
+  private final Random random = new Random();
+
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(RequestIdPerformanceTest.class.getSimpleName())
+        .forks(1)
+        .build();
+    new Runner(opt).run();
+  }
+
+  @Benchmark
+  public String sharedRandomWithFormatTest() {
+    return System.currentTimeMillis() + String.format("%016x", random.nextLong()) + String.format("%03x", random.nextInt(2 ^ 12 - 1));
+  }
+
+  @Benchmark
+  public String threadLocalRandomWithBufferTest() {
+    return MDC.generateRequestId();
+  }
+}